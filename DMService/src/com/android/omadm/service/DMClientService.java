@@ -37,11 +37,14 @@ import com.android.omadm.plugin.impl.DmtPluginManager;
 import net.jcip.annotations.GuardedBy;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -56,6 +59,9 @@ public class DMClientService extends IntentService {
     private static final String TAG = "DMClientService";
     static final boolean DBG = false;    // STOPSHIP: change to false
 
+    /** Size of the reusable buffer for reading binary node values. */
+    private static final int BINARY_READ_BUFFER_SIZE = 1024;
+
     // flag "DM session in progress" used from DMIntentReceiver
     public static boolean sIsDMSessionInProgress;
 
@@ -97,6 +103,10 @@ public class DMClientService extends IntentService {
     // Class for clients to access. Because we know this service always runs
     // in the same process as its clients, we don't need to deal with IPC.
     public class LocalBinder extends IDMClientService.Stub {
+        /** Scratch buffer for binary node reads; most BIN leaves fit without a resize. */
+        @GuardedBy("mSessionLock")
+        private final byte[] mBinaryBuffer = new byte[BINARY_READ_BUFFER_SIZE];
+
         @Override
         public DmtData getDMTree(String path, boolean recursive)
                 throws RemoteException {
@@ -105,8 +115,7 @@ public class DMClientService extends IntentService {
                     logd("getDMTree(\"" + path + "\", " + recursive + ") called");
                 synchronized (mSessionLock) {
                     int nodeType = NativeDM.getNodeType(path);
-                    String nodeValue = NativeDM.getNodeValue(path);
-                    DmtData dmtData = new DmtData(nodeValue, nodeType);
+                    DmtData dmtData = readNodeData(path, nodeType);
                     if (nodeType == DmtData.NODE && recursive) {
                         addNodeChildren(path, dmtData);
                     }
@@ -123,9 +132,7 @@ public class DMClientService extends IntentService {
                 String childPath = path + '/' + child.getKey();
 
                 int nodeType = NativeDM.getNodeType(childPath);
-                String nodeValue = NativeDM.getNodeValue(childPath);
-
-                DmtData newChildNode = new DmtData(nodeValue, nodeType);
+                DmtData newChildNode = readNodeData(childPath, nodeType);
 
                 node.addChildNode(child.getKey(), newChildNode);
 
@@ -135,6 +142,39 @@ public class DMClientService extends IntentService {
             }
         }
 
+        /**
+         * Read a node value through the typed native accessors, so that integer, boolean,
+         * float and binary leaves don't round trip through a String.
+         */
+        @GuardedBy("mSessionLock")
+        private DmtData readNodeData(String path, int nodeType) throws DmtException {
+            switch (nodeType) {
+                case DmtData.INT:
+                    return new DmtData(NativeDM.getNodeIntValue(path));
+
+                case DmtData.BOOL:
+                    return new DmtData(NativeDM.getNodeBooleanValue(path));
+
+                case DmtData.FLOAT:
+                    return new DmtData(NativeDM.getNodeFloatValue(path));
+
+                case DmtData.BIN:
+                    int length = NativeDM.getNodeBinaryValue(path, mBinaryBuffer);
+                    if (length <= 0) {
+                        return new DmtData((byte[]) null);
+                    }
+                    if (length > mBinaryBuffer.length) {
+                        byte[] value = new byte[length];
+                        NativeDM.getNodeBinaryValue(path, value);
+                        return new DmtData(value);
+                    }
+                    return new DmtData(Arrays.copyOf(mBinaryBuffer, length));
+
+                default:
+                    return new DmtData(NativeDM.getNodeValue(path), nodeType);
+            }
+        }
+
         @Override
         public int startClientSession(String path, String clientCert, String privateKey,
                                       String alertType, String redirectURI, String username, String password)
@@ -180,6 +220,9 @@ public class DMClientService extends IntentService {
 
         mInitGood = (NativeDM.initialize() == DMResult.SYNCML_DM_SUCCESS);
         DmtPluginManager.setContext(this);
+        // bind plug-in services in the background before the first session needs them
+        DmtPluginManager.prebindPlugins(
+                new File(getFilesDir(), "dm/plugin/sysplugins.ini"));
 
         PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
         WakeLock lock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, getClass().getName());
@@ -201,6 +244,7 @@ public class DMClientService extends IntentService {
         mAbortSession = null;
 
         if (mInitGood) NativeDM.destroy();
+        DmtPluginManager.unbindPlugins();
 
         getConfigDB().closeDatabase();
 
@@ -214,6 +258,13 @@ public class DMClientService extends IntentService {
         if (DBG) logd("leave onDestroy");
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("DMClientService: initialized=" + mInitGood
+                + " sessionInProgress=" + sIsDMSessionInProgress);
+        DmtPluginManager.dumpPluginStats(pw, false);
+    }
+
     /**
      * AsyncTask to create the DMConfigureDB object on a helper thread.
      */
@@ -18,8 +18,13 @@ package com.android.omadm.service;
 
 import android.util.Log;
 
+import com.android.omadm.plugin.impl.DmtPluginManager;
+
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
+import java.io.PrintWriter;
 
 class DMSession {
     private static final String TAG = "DMSession";
@@ -53,6 +58,7 @@ class DMSession {
 
     public int startClientSession(String serverID) {
         prepareLogFile();
+        DmtPluginManager.startSession();
 
         try {
             mServerID = serverID;
@@ -68,6 +74,7 @@ class DMSession {
 
         mHttpConnector.closeSession();
         mHttpConnector = null;
+        logPluginStats();
         mLogName = null;
 
         return mResultCode;
@@ -75,6 +82,7 @@ class DMSession {
 
     public int startFotaClientSession(String serverID, String alertStr) {
         prepareLogFile();
+        DmtPluginManager.startSession();
 
         try {
             mServerID = serverID;
@@ -91,6 +99,7 @@ class DMSession {
 
         mHttpConnector.closeSession();
         mHttpConnector = null;
+        logPluginStats();
         mLogName = null;
 
         return mResultCode;
@@ -98,6 +107,7 @@ class DMSession {
 
     public int startLawmoNotifySession(FotaNotifyContext LawmoContext) {
         prepareLogFile();
+        DmtPluginManager.startSession();
 
         try {
             mServerID = mDMClientService.getConfigDB().getFotaServerID();
@@ -121,6 +131,7 @@ class DMSession {
 
         mHttpConnector.closeSession();
         mHttpConnector = null;
+        logPluginStats();
         mLogName = null;
 
         return mResultCode;
@@ -155,6 +166,7 @@ class DMSession {
             mDMAlert.setUIMode(false);
         }
         prepareLogFile();
+        DmtPluginManager.startSession();
 
         mServerID = notification.getServerID();
         mHttpConnector = new DMHttpConnector(this);
@@ -183,6 +195,7 @@ class DMSession {
 
         mHttpConnector.closeSession();
         mHttpConnector = null;
+        logPluginStats();
         mLogName = null;
 
         return mResultCode;
@@ -190,6 +203,7 @@ class DMSession {
 
     public int fotaNotifyDMServer(FotaNotifyContext fotaContext) {
         prepareLogFile();
+        DmtPluginManager.startSession();
 
         try {
             mServerID = fotaContext.mServerID;
@@ -209,6 +223,7 @@ class DMSession {
 
         mHttpConnector.closeSession();
         mHttpConnector = null;
+        logPluginStats();
         mLogName = null;
 
         return mResultCode;
@@ -261,6 +276,29 @@ class DMSession {
         if (DBG) logd("Log File: " + mLogName);
     }
 
+    /**
+     * Append the plug-in call statistics of the session to the session log,
+     * if SyncML logging is enabled.
+     */
+    private void logPluginStats() {
+        if (mLogName == null || mDMClientService.getConfigDB().getSyncMLLogLevel() <= 0) {
+            return;
+        }
+
+        PrintWriter pw = null;
+        try {
+            pw = new PrintWriter(new FileOutputStream(mLogName, true));
+            pw.println("===================================");
+            DmtPluginManager.dumpPluginStats(pw, true);
+        } catch (FileNotFoundException e) {
+            loge("Exception writing plug-in stats to " + mLogName, e);
+        } finally {
+            if (pw != null) {
+                pw.close();
+            }
+        }
+    }
+
     public DMClientService getServiceContext() {
         return mDMClientService;
     }
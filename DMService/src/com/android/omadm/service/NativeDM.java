@@ -18,9 +18,37 @@ package com.android.omadm.service;
 
 import android.util.Log;
 
+import com.android.omadm.plugin.DmtException;
+
 final class NativeDM {
     private static final String TAG = "NativeDM";
 
+    /** Change action bits reported to {@link TreeChangeListener}, as in dmtDefs.h. */
+    public static final int TREE_EVENT_ADD = 0x01;
+    public static final int TREE_EVENT_REPLACE = 0x02;
+    public static final int TREE_EVENT_DELETE = 0x04;
+    public static final int TREE_EVENT_RENAME = 0x08;
+    public static final int TREE_EVENT_INDIRECT = 0x10;
+
+    /**
+     * Receives the changes of the DM tree in batches, one call per commit.
+     */
+    public interface TreeChangeListener {
+        /**
+         * Called from the native commit path after the changed file set was saved.
+         * The arrays are parallel and consecutive changes of the same node are merged.
+         * Implementations must not access the DM tree from this callback; hand the
+         * batch off to another thread instead.
+         * @param paths the OMA DM paths of the changed nodes
+         * @param actions bitmask of {@code TREE_EVENT_*} actions for each node
+         * @param types the new {@link com.android.omadm.plugin.DmtData} type of each
+         *              node, or {@code DmtData.UNDEFINED} if deleted or unknown
+         * @param newNames the new name of each node renamed by the commit
+         *                 ({@link #TREE_EVENT_RENAME}), null for the other nodes
+         */
+        void onTreeChanged(String[] paths, int[] actions, int[] types, String[] newNames);
+    }
+
     private NativeDM() {}
 
     static {
@@ -140,12 +168,63 @@ final class NativeDM {
     public static native String setStringNode(String node, String value);
 
     /**
-     *
-     * @param node
-     * @param value
-     * @return
+     * Create an integer leaf node without going through a string encoding.
+     * @param node the OMA DM path of the node to create
+     * @param value the initial value
+     * @return either {@link DMResult#SYNCML_DM_SUCCESS} or a {@link DMResult} error code
+     */
+    public static native int createLeafInteger(String node, int value);
+
+    /**
+     * Create a boolean leaf node without going through a string encoding.
+     * @param node the OMA DM path of the node to create
+     * @param value the initial value
+     * @return either {@link DMResult#SYNCML_DM_SUCCESS} or a {@link DMResult} error code
+     */
+    public static native int createLeafBoolean(String node, boolean value);
+
+    /**
+     * Create a float leaf node without going through a Java string encoding.
+     * @param node the OMA DM path of the node to create
+     * @param value the initial value
+     * @return either {@link DMResult#SYNCML_DM_SUCCESS} or a {@link DMResult} error code
+     */
+    public static native int createLeafFloat(String node, float value);
+
+    /**
+     * Replace the value of an existing leaf with an integer value.
+     * @param node the OMA DM path to use
+     * @param value the new value
+     * @return either {@link DMResult#SYNCML_DM_SUCCESS} or a {@link DMResult} error code
+     */
+    public static native int setNodeIntValue(String node, int value);
+
+    /**
+     * Replace the value of an existing leaf with a boolean value.
+     * @param node the OMA DM path to use
+     * @param value the new value
+     * @return either {@link DMResult#SYNCML_DM_SUCCESS} or a {@link DMResult} error code
      */
-    public static native String createLeafInteger(String node, String value);
+    public static native int setNodeBooleanValue(String node, boolean value);
+
+    /**
+     * Replace the value of an existing leaf with a float value.
+     * @param node the OMA DM path to use
+     * @param value the new value
+     * @return either {@link DMResult#SYNCML_DM_SUCCESS} or a {@link DMResult} error code
+     */
+    public static native int setNodeFloatValue(String node, float value);
+
+    /**
+     * Replace the value of an existing leaf with a binary value.
+     * @param node the OMA DM path to use
+     * @param value the array holding the new value
+     * @param offset offset of the first byte to use in {@code value}
+     * @param length number of bytes to use
+     * @return either {@link DMResult#SYNCML_DM_SUCCESS} or a {@link DMResult} error code
+     */
+    public static native int setNodeBinaryValue(String node, byte[] value, int offset,
+            int length);
 
     /**
      *
@@ -220,6 +299,50 @@ final class NativeDM {
      */
     public static native String getNodeValue(String path);
 
+    /**
+     * Get the value of an integer leaf without converting it to a String.
+     * @param path the OMA DM path to use
+     * @return the DM node value
+     * @throws DmtException with the engine status if the node is missing, can't be
+     *         read or is not an integer
+     */
+    public static native int getNodeIntValue(String path) throws DmtException;
+
+    /**
+     * Get the value of a boolean leaf without converting it to a String.
+     * @param path the OMA DM path to use
+     * @return the DM node value
+     * @throws DmtException with the engine status if the node is missing, can't be
+     *         read or is not a boolean
+     */
+    public static native boolean getNodeBooleanValue(String path) throws DmtException;
+
+    /**
+     * Get the value of a float leaf without converting it to a Java String.
+     * @param path the OMA DM path to use
+     * @return the DM node value
+     * @throws DmtException with the engine status if the node is missing, can't be
+     *         read or is not a float
+     */
+    public static native float getNodeFloatValue(String path) throws DmtException;
+
+    /**
+     * Copy the value of a binary leaf into a caller-supplied buffer. Nothing is copied
+     * if {@code buffer} is null or shorter than the value, so callers can query the
+     * length first and reuse their buffers across calls.
+     * @param path the OMA DM path to use
+     * @param buffer the buffer to copy the value into, may be null
+     * @return the length of the value in bytes, or -1 if the node is missing or not binary
+     */
+    public static native int getNodeBinaryValue(String path, byte[] buffer);
+
+    /**
+     * Register the listener for committed tree changes. Changes are only collected
+     * while a listener is set.
+     * @param listener the listener to notify, or null to stop notifications
+     */
+    public static native void setTreeChangeListener(TreeChangeListener listener);
+
     private static void logd(String msg) {
         Log.d(TAG, msg);
     }
@@ -76,6 +76,10 @@ else
     LOCAL_SRC_FILES += $(DM_JNI_SRC_FILES)
 endif
 
+# libdmjavaplugin reads the JNI cache in both configurations; getJniCache()
+# returns NULL when registerJniCache() doesn't run
+LOCAL_SRC_FILES += jni/DMJniCache.cc
+
 
 # DM source files
 LOCAL_SRC_FILES += $(DM_ENGINE_SRC_FILES)
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef __DMTPREFETCHPLUGIN_H__
+#define __DMTPREFETCHPLUGIN_H__
+
+#ifndef __cplusplus
+#error "This is a C++ header file; it requires C++ to compile."
+#endif
+
+/**
+  \file dmtPrefetchPlugin.hpp
+  \brief  The dmtPrefetchPlugin.hpp header file contains the optional prefetch interface\n
+                of data plug-in trees.\n
+               <b>Warning:</b>  All functions, structures, and classes from this header file are for internal usage only!!!
+
+<P>
+
+The interface is kept out of DmtAPIPluginTree so the vtable of plug-ins built against\n
+the older dmtPlugin.hpp stays the same. A data plug-in which supports prefetching\n
+exports one more function, which returns the interface of a tree it created:<P>
+
+\code
+
+    //Data plug-in, optional:
+    extern "C"
+    SYNCML_DM_RET_STATUS_T DMT_PluginLib_Data_GetPrefetchTree(
+    	PDmtAPIPluginTree & pPluginTree,	      //tree returned by DMT_PluginLib_Data_GetPluginTree
+    	DmtPrefetchPluginTree *& pPrefetchTree	//NULL if the tree doesn't prefetch
+    );
+ \endcode
+*/
+
+#include "dmtPlugin.hpp"
+
+/**
+* Prefetch interface of a data plug-in tree. The object is owned by the plug-in tree
+* it was returned for and is valid as long as the DM Engine holds that tree.
+*/
+class DmtPrefetchPluginTree
+{
+public:
+  /**
+  * Will be called by DM Engine before a Get command reads several leaf nodes of the plugin.
+  * The plugin may start reading the values in the background and return without waiting;
+  * the nodes are read with GetNode()/GetValue() afterwards as usual.
+  * \par Sync (or) Async:
+  * This is an Asynchronous function.
+  * \par Secure (or) Non-Secure (or) N/A:
+  * This is a Non-Secure function.
+  * \param aPaths [in] - paths of the leaf nodes, relative to the plugin root
+  * \return status code. Return Type (SYNCML_DM_RET_STATUS_T) \n
+  * - SYNCML_DM_SUCCESS - indicates that the values are being read. \n
+  * - SYNCML_DM_FEATURE_NOT_SUPPORTED - indicates that the plugin reads values on demand only.
+  * - All other codes indicates failure. The description can be found in dmtError.h \n
+  * \par Prospective Clients:
+  * All potential applications that require configuration settings and Internal Classes.
+  */
+  virtual SYNCML_DM_RET_STATUS_T PrefetchNodeValues( const DMStringVector& aPaths ) = 0;
+
+  /**
+  * Will be called by DM Engine when the Get command which called PrefetchNodeValues()
+  * has finished. The plugin drops the prefetched values which weren't read.
+  * \par Sync (or) Async:
+  * This is a Synchronous function.
+  * \par Secure (or) Non-Secure (or) N/A:
+  * This is a Non-Secure function.
+  * \return status code. Return Type (SYNCML_DM_RET_STATUS_T) \n
+  * - SYNCML_DM_SUCCESS - indicates that the operation is completed successfully. \n
+  * - All other codes indicates failure. The description can be found in dmtError.h \n
+  * \par Prospective Clients:
+  * All potential applications that require configuration settings and Internal Classes.
+  */
+  virtual SYNCML_DM_RET_STATUS_T ClearPrefetchedValues() = 0;
+
+protected:
+  /**
+  * Destructor, the interface is released together with its plug-in tree
+  */
+  virtual ~DmtPrefetchPluginTree() {}
+};
+
+#endif
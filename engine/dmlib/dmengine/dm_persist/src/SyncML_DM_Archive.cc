@@ -36,6 +36,9 @@ SyncML_DM_Archive::SyncML_DM_Archive(CEnv* env, CPCHAR pURI, CPCHAR path)
   dirty = FALSE;
   m_bWritableExist = FALSE;
   m_permission = -1;
+  m_lastAccessedTime = 0;
+  m_nMemorySize = 0;
+  m_bChangesOverflow = FALSE;
 
   env->GetWFSFullPath(path,m_strWFSFileName);
 }
@@ -99,3 +102,102 @@ SyncML_DM_Archive::getLastAccessedTime()
 {
     return m_lastAccessedTime;
 }
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_Archive::logChange
+ 
+Description: Records a changed node of the archive, or a changed subtree with bSubtree. A change
+             covered by a recorded subtree is dropped. After MAX_CHANGES changes the list is
+             dropped and the archive is serialized as a whole.
+ 
+==================================================================================================*/
+void
+SyncML_DM_Archive::logChange(CPCHAR szURI, BOOLEAN bSubtree)
+{
+    if ( m_bChangesOverflow || !szURI )
+        return;
+
+    // the properties (?prop=...) are written with the node
+    DMString strURI;
+    CPCHAR szQuery = DmStrchr(szURI, '?');
+
+    if ( !strURI.assign(szURI, szQuery ? (INT32)(szQuery - szURI) : DmStrlen(szURI)) )
+    {
+        m_bChangesOverflow = TRUE;
+        m_aChanges.clear();
+        return;
+    }
+
+    if ( !DmIsParentURI(m_pURI, strURI) )
+        return;
+
+    for ( INT32 i = 0; i < m_aChanges.size(); i++ )
+    {
+        if ( m_aChanges[i].m_strURI == strURI && m_aChanges[i].m_bSubtree == bSubtree )
+            return;
+
+        if ( m_aChanges[i].m_bSubtree && DmIsParentURI(m_aChanges[i].m_strURI, strURI) )
+            return;
+    }
+
+    if ( bSubtree )
+    {
+        for ( INT32 i = m_aChanges.size() - 1; i >= 0; i-- )
+        {
+            if ( DmIsParentURI(strURI, m_aChanges[i].m_strURI) )
+                m_aChanges.remove(i);
+        }
+    }
+
+    if ( m_aChanges.size() >= MAX_CHANGES )
+    {
+        XPL_LOG_DM_TMN_Debug(("more than %d changes of %s\n", MAX_CHANGES, m_pURI));
+        m_bChangesOverflow = TRUE;
+        m_aChanges.clear();
+        return;
+    }
+
+    Change oChange;
+    oChange.m_strURI = strURI;
+    oChange.m_bSubtree = bSubtree;
+    m_aChanges.push_back(oChange);
+}
+
+UINT32
+SyncML_DM_Archive::getMemorySize()
+{
+    DMNode *pRoot = getRootNode();
+
+    if ( !pRoot || pRoot->IsSkeletonNode() )
+        return 0;
+
+    if ( m_nMemorySize )
+        return m_nMemorySize;
+
+    // traverse sub-tree, skipping the sub-trees of child archives
+    UINT32 nSize = pRoot->GetMemorySize();
+    DMNode *pNode = pRoot->pcFirstChild;
+
+    while ( pNode && pNode != pRoot )
+    {
+        BOOLEAN bSkipChildren = ( pNode->pArchive && pNode->pArchive != this );
+
+        if ( !bSkipChildren )
+            nSize += pNode->GetMemorySize();
+
+        if ( !bSkipChildren && pNode->pcFirstChild )
+            pNode = pNode->pcFirstChild;
+        else
+        {
+            while ( pNode != pRoot && !pNode->pcNextSibling )
+                pNode = pNode->pcParentOfNode;
+
+            if ( pNode != pRoot )
+                pNode = pNode->pcNextSibling;
+        }
+    }
+
+    m_nMemorySize = nSize;
+    return m_nMemorySize;
+}
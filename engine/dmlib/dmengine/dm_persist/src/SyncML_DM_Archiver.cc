@@ -174,11 +174,20 @@ SyncML_DM_Archiver::serialize(FILESETTYPE nFileSet, CPCHAR szURI)
     FILESETTYPE set=1;
     SYNCML_DM_RET_STATUS_T retStat=SYNCML_DM_SUCCESS;
     INT32 i=0;
+    INT32 nDirty=0;
+    FILESETTYPE nDeltaSet=0; // archives which appended their changes to the delta file
    
     if( !m_pTree ) return SYNCML_DM_FAIL;
 
     XPL_LOG_DM_TMN_Debug(("Enter to serialize\n"));
 
+    for (i=0; i< m_numArchives && m_pArchives[i] !=NULL; i++, set = set <<1)
+    {
+        if ( (nFileSet & set) !=0  && m_pArchives[i]->isDirty() )
+            nDirty++;
+    }
+
+    set = 1;
     for (i=0; i< m_numArchives && m_pArchives[i] !=NULL; i++)
     {
         if (  (nFileSet & set) !=0 ) {
@@ -190,7 +199,15 @@ SyncML_DM_Archiver::serialize(FILESETTYPE nFileSet, CPCHAR szURI)
                 }
 #endif
                 XPL_LOG_DM_TMN_Debug(("m_pArchives[%d] %s is dirty, to be serialized", i, m_pArchives[i]->getURI()));
-                retStat=m_pArchives[i]->serialize(m_pTree);
+                // The commit marker of the delta file is the commit point of a single file only
+                retStat = SYNCML_DM_FEATURE_NOT_SUPPORTED;
+                if ( nDirty == 1 )
+                    retStat=m_pArchives[i]->serializeDelta(m_pTree);
+
+                if ( retStat == SYNCML_DM_SUCCESS )
+                    nDeltaSet |= set;
+                else
+                    retStat=m_pArchives[i]->serialize(m_pTree);
                 XPL_LOG_DM_TMN_Debug(("serialize retStat = %d", retStat));
                 if (retStat != SYNCML_DM_SUCCESS )
                     break;
@@ -205,19 +222,23 @@ SyncML_DM_Archiver::serialize(FILESETTYPE nFileSet, CPCHAR szURI)
 
     /* Begin the power loss-tolerant steps to protect against a partially written Archive file:
     * 1. Rename the original file by adding ".bak" to the name; this indicates the .temp file
-    *    was completely written
+    *    was completely written. The delta file is renamed the same way.
     * 2. Rename the .temp file to the original name (i.e., without the .temp extention)
     * 3. Delete the .bak file
+    * An archive which appended its changes to the delta file commits them in step 2 instead.
     */
     DMString strOrgFilePathBuffer, strTmpFilePathBuffer, strBakFilePathBuffer;
+    DMString strDltFilePathBuffer, strDltBakFilePathBuffer;
     
     char *orgFilePath = strOrgFilePathBuffer.AllocateBuffer(XPL_FS_MAX_FILE_NAME_LENGTH);
     char *tmpFilePath =strTmpFilePathBuffer.AllocateBuffer(XPL_FS_MAX_FILE_NAME_LENGTH);
     char *bakFilePath = strBakFilePathBuffer.AllocateBuffer(XPL_FS_MAX_FILE_NAME_LENGTH);
+    char *dltFilePath = strDltFilePathBuffer.AllocateBuffer(XPL_FS_MAX_FILE_NAME_LENGTH);
+    char *dltBakFilePath = strDltBakFilePathBuffer.AllocateBuffer(XPL_FS_MAX_FILE_NAME_LENGTH);
     XPL_FS_RET_STATUS_T ret=0;
     BOOLEAN   bAtLeastOneDirty = FALSE; // check if at least one change exist to invoke commit plug-in
 
-    if ( !orgFilePath || !tmpFilePath || !bakFilePath)
+    if ( !orgFilePath || !tmpFilePath || !bakFilePath || !dltFilePath || !dltBakFilePath )
       return SYNCML_DM_DEVICE_FULL;
     
    
@@ -237,6 +258,9 @@ SyncML_DM_Archiver::serialize(FILESETTYPE nFileSet, CPCHAR szURI)
 		if (retStat != SYNCML_DM_SUCCESS )
 			return retStat; 	  
 #endif
+            if ( (nDeltaSet & set) != 0 )
+                continue;
+
             m_pArchives[i]->getFilePath(orgFilePath, "");
             m_pArchives[i]->getFilePath(bakFilePath, ".bak");
             ret=XPL_FS_Rename(  orgFilePath, bakFilePath );    
@@ -246,6 +270,16 @@ SyncML_DM_Archiver::serialize(FILESETTYPE nFileSet, CPCHAR szURI)
                 retStat=SYNCML_DM_IO_FAILURE;
                 break;
             }
+
+            // the changes in the delta file are part of the new file
+            m_pArchives[i]->getFilePath(dltFilePath, ".dlt");
+            m_pArchives[i]->getFilePath(dltBakFilePath, ".dlt.bak");
+            if ( XPL_FS_Exist(dltFilePath) && XPL_FS_Rename( dltFilePath, dltBakFilePath ) != XPL_FS_RET_SUCCESS )
+            {
+                // the old delta file must not be replayed on the new file; leave it to the recovery
+                XPL_FS_Rename( bakFilePath, orgFilePath );
+                return SYNCML_DM_IO_FAILURE;
+            }
         }
     }
 
@@ -262,6 +296,14 @@ SyncML_DM_Archiver::serialize(FILESETTYPE nFileSet, CPCHAR szURI)
 
             bAtLeastOneDirty = TRUE;
 
+            if ( (nDeltaSet & set) != 0 )
+            {
+                retStat=m_pArchives[i]->commitDelta();
+                if (retStat != SYNCML_DM_SUCCESS)
+                    break;
+                continue;
+            }
+
             m_pArchives[i]->getFilePath(tmpFilePath, ".temp");
             m_pArchives[i]->getFilePath(orgFilePath, "");
             m_pArchives[i]->getFilePath(bakFilePath, ".bak");
@@ -277,7 +319,13 @@ SyncML_DM_Archiver::serialize(FILESETTYPE nFileSet, CPCHAR szURI)
 
     // commit plug-in support - invoke it only when some changes were done
     if ( bAtLeastOneDirty )
+    {
       InvokeCommitPlugins( nFileSet, szURI );
+
+      // the listener hears only of changes which are in the files now
+      if ( retStat == SYNCML_DM_SUCCESS )
+        m_pTree->DispatchTreeChanges( nFileSet );
+    }
     
     for (i=0, set=1; i< m_numArchives && m_pArchives[i] !=NULL; i++, set = set <<1)
     {
@@ -300,9 +348,14 @@ SyncML_DM_Archiver::serialize(FILESETTYPE nFileSet, CPCHAR szURI)
             m_pArchives[i]->serializeDone();
             XPL_LOG_DM_TMN_Debug(("serializeDone for %s\n", orgFilePath));
 
-            if ( m_pArchives[i]->isWritableExist() ) 
+            if ( m_pArchives[i]->isWritableExist() && (nDeltaSet & set) == 0 ) 
             {
                 m_pArchives[i]->getFilePath(bakFilePath, ".bak");
+                m_pArchives[i]->getFilePath(dltBakFilePath, ".dlt.bak");
+
+                // before the .bak file, which makes the recovery roll forward
+                if ( XPL_FS_Exist(dltBakFilePath) )
+                    XPL_FS_Remove(dltBakFilePath);
 
 #ifndef DM_NO_LOCKING                
                 ret=XPL_FS_Unlink(bakFilePath);
@@ -500,8 +553,11 @@ SyncML_DM_Archiver::checkRecovery()
     char *tmpFilePath =strTmpFilePathBuffer.AllocateBuffer(XPL_FS_MAX_FILE_NAME_LENGTH);
     char *bakFilePath = strBakFilePathBuffer.AllocateBuffer(XPL_FS_MAX_FILE_NAME_LENGTH);
     char *cmtFilePath = strCmtFilePathBuffer.AllocateBuffer(XPL_FS_MAX_FILE_NAME_LENGTH);
+    DMString strDltFilePathBuffer, strDltBakFilePathBuffer;
+    char *dltFilePath = strDltFilePathBuffer.AllocateBuffer(XPL_FS_MAX_FILE_NAME_LENGTH);
+    char *dltBakFilePath = strDltBakFilePathBuffer.AllocateBuffer(XPL_FS_MAX_FILE_NAME_LENGTH);
 
-    if ( !orgFilePath || !tmpFilePath || !bakFilePath || !cmtFilePath)
+    if ( !orgFilePath || !tmpFilePath || !bakFilePath || !cmtFilePath || !dltFilePath || !dltBakFilePath )
       return SYNCML_DM_DEVICE_FULL;
     
     XPL_FS_RET_STATUS_T ret=0;
@@ -551,6 +607,15 @@ SyncML_DM_Archiver::checkRecovery()
         }
         for (i=0; i< m_numArchives; i++)
         {
+            // the delta file belongs to the restored file
+            m_pArchives[i]->getFilePath(dltFilePath, ".dlt");
+            m_pArchives[i]->getFilePath(dltBakFilePath, ".dlt.bak");
+            if (XPL_FS_Exist(dltBakFilePath))
+            {
+                ret=XPL_FS_Rename(dltBakFilePath, dltFilePath);
+                XPL_LOG_DM_TMN_Debug(("DmFsRename %s->%s ret=%d\n", dltBakFilePath, dltFilePath, ret));
+            }
+
             m_pArchives[i]->getFilePath(tmpFilePath, ".temp");
             m_pArchives[i]->getFilePath(cmtFilePath, ".cmt");
 #ifndef DM_NO_LOCKING                
@@ -573,6 +638,13 @@ SyncML_DM_Archiver::checkRecovery()
             {
                 m_pArchives[i]->getFilePath(bakFilePath, ".bak");
                 m_pArchives[i]->getFilePath(cmtFilePath, ".cmt");
+                m_pArchives[i]->getFilePath(dltBakFilePath, ".dlt.bak");
+                // Remove old delta file, its changes are in the new file
+                if (XPL_FS_Exist(dltBakFilePath))
+                {
+                    ret=XPL_FS_Remove(dltBakFilePath);
+                    XPL_LOG_DM_TMN_Debug(("delete %s ret=%d\n", dltBakFilePath, ret));
+                }
                 // Remove .bak file		   
                 if (XPL_FS_Exist(bakFilePath))
                 {
@@ -651,6 +723,8 @@ SyncML_DM_Archiver::rollback(INT32 nFileSet)
         }
     }
 
+    m_pTree->DiscardTreeChanges( nFileSet );
+
     return retStat;
 }
 
@@ -681,6 +755,67 @@ SyncML_DM_Archiver::CheckMemoryAging(INT32 nAgingTime)
     }
 }
 
+UINT32
+SyncML_DM_Archiver::getMemorySize()
+{
+    UINT32 nSize = 0;
+
+    for (INT32 i=0; i < m_numArchives && m_pArchives[i] !=NULL; i++)
+        nSize += m_pArchives[i]->getMemorySize();
+
+    return nSize;
+}
+
+void
+SyncML_DM_Archiver::CheckMemoryBudget(UINT32 nBudget)
+{
+    if( !m_pTree ) return;
+
+    UINT32 nTotalSize = 0;
+
+    for (INT32 i=0; i < m_numArchives && m_pArchives[i] !=NULL; i++)
+    {
+        UINT32 nSize = m_pArchives[i]->getMemorySize();
+        if ( nSize )
+            XPL_LOG_DM_TMN_Debug(("m_pArchives[%d]->getURI() : %s, %d bytes loaded\n", i, m_pArchives[i]->getURI(), nSize));
+
+        nTotalSize += nSize;
+    }
+
+    XPL_LOG_DM_TMN_Debug(("CheckMemoryBudget: %d bytes loaded, budget %d bytes\n", nTotalSize, nBudget));
+
+    while ( nTotalSize > nBudget )
+    {
+        // least recently used loaded file without uncommitted changes;
+        // a file with the root node only would free nothing
+        INT32 nLRU = -1;
+        for (INT32 i=0; i < m_numArchives && m_pArchives[i] !=NULL; i++)
+        {
+            if ( m_pArchives[i]->getRootNode()
+                && !m_pArchives[i]->getRootNode()->IsSkeletonNode()
+                && !m_pArchives[i]->isDirty()
+                && m_pArchives[i]->getMemorySize() > m_pArchives[i]->getRootNode()->GetMemorySize()
+                && ( nLRU < 0 || m_pArchives[i]->getLastAccessedTime() < m_pArchives[nLRU]->getLastAccessedTime() ) )
+            {
+                nLRU = i;
+            }
+        }
+
+        if ( nLRU < 0 )
+        {
+            XPL_LOG_DM_TMN_Debug(("CheckMemoryBudget: %d bytes in dirty files exceed the budget\n", nTotalSize));
+            break;
+        }
+
+        UINT32 nSize = m_pArchives[nLRU]->getMemorySize();
+        XPL_LOG_DM_TMN_Debug(("m_pArchives[%d]->getURI() : %s is being unloaded, %d bytes, total %d > budget %d\n",
+                              nLRU, m_pArchives[nLRU]->getURI(), nSize, nTotalSize, nBudget));
+
+        m_pTree->UnloadArchive(m_pArchives[nLRU]->getRootNode());
+        nTotalSize -= nSize;
+    }
+}
+
 //------------------------------------------------------------------------
 // FUNCTION        : InvokeCommitPlugins
 // DESCRIPTION     : This function iterates all commit plug-ins 
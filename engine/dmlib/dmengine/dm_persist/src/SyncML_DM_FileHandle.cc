@@ -34,6 +34,7 @@ const char DMFileHandler::BAK_FILE_EXTENSION[]= ".bak";
 const char DMFileHandler::COMMIT_LOG_EXTENSION[]= ".cmt";
 const char DMFileHandler::LOG_FILE_EXTENSION[]= ".log";
 const char DMFileHandler::MIDDLE_FILE_EXTENSION[]= ".mid";
+const char DMFileHandler::DELTA_FILE_EXTENSION[]= ".dlt";
 
 /*==================================================================================================
 
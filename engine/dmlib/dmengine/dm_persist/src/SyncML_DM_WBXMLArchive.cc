@@ -43,6 +43,33 @@ const UINT8 SyncML_DM_WBXMLArchive::DEFAULT_FILE_HEADER[] = {
 /* The wchar_t standard and handy L"string"; usage are not supported by the ARM compiler.*/
 const char SyncML_DM_WBXMLArchive::FILE_EXTENSION[] = ".wbxml";
 
+/* Last bytes of an indexed file; a plain file ends with two END_TAGs */
+const UINT8 SyncML_DM_WBXMLArchive::INDEX_MAGIC[4] = { 'D', 'M', 'I', 'X' };
+
+/* Start of the delta file, of each batch in it and the commit marker after a batch */
+const UINT8 SyncML_DM_WBXMLArchive::DELTA_MAGIC[4] = { 'D', 'M', 'D', 'L' };
+const UINT8 SyncML_DM_WBXMLArchive::DELTA_BATCH_MAGIC[4] = { 'D', 'M', 'D', 'B' };
+const UINT8 SyncML_DM_WBXMLArchive::DELTA_COMMIT_MAGIC[4] = { 'D', 'M', 'D', 'C' };
+
+/* Writes a UINT32 big endian */
+static SYNCML_DM_RET_STATUS_T
+WriteIndexValue(SyncML_DM_WBXMLWriter & writer, UINT32 nValue)
+{
+    UINT8 aValue[4] = { static_cast<UINT8>(nValue >> 24),
+                        static_cast<UINT8>(nValue >> 16),
+                        static_cast<UINT8>(nValue >> 8),
+                        static_cast<UINT8>(nValue & 0xFF) };
+    return writer.writeData(aValue, sizeof(aValue));
+}
+
+/* Reads a UINT32 stored big endian */
+static UINT32
+ReadIndexValue(const UINT8 * pData)
+{
+    return ((UINT32)pData[0] << 24) | ((UINT32)pData[1] << 16) |
+           ((UINT32)pData[2] << 8) | (UINT32)pData[3];
+}
+
 /*==================================================================================================
  
 Function:    SyncML_DM_WBXMLArchive::SyncML_DM_WBXMLArchive 
@@ -55,11 +82,16 @@ SyncML_DM_WBXMLArchive::SyncML_DM_WBXMLArchive(CEnv* env, CPCHAR pURI, CPCHAR pa
           m_pEnv( env )
 {
     lastSavedTime = 0;
+    m_nDeltaPending = 0;
+    m_bDeltaCompact = FALSE;
 #ifdef LOB_SUPPORT  
     commitLog = NULL;
 #endif
 
     if (!m_strWFSFileName.empty() && m_strWFSFileName.length() > 0) {
+        m_strDeltaFileName = m_strWFSFileName;
+        m_strDeltaFileName += DMFileHandler::DELTA_FILE_EXTENSION;
+
         m_permission = 0;
         // initialize permission mask
         if (XPL_FS_CheckPermission(m_strWFSFileName, XPL_FS_RDONLY_MODE)) {
@@ -116,6 +148,10 @@ SyncML_DM_WBXMLArchive::serialize(DMTree* tree)
     if (this->rootTreeNode==NULL)
         return SYNCML_DM_SKIP_SUBTREE;
 
+    /* The whole archive is written, also the subtrees not loaded yet */
+    if (deserializeSubtrees(tree) != SYNCML_DM_SUCCESS)
+        return SYNCML_DM_IO_FAILURE;
+
     tree->InitSerializationList(this->rootTreeNode);
 
     /* Path + Extension + null */
@@ -158,6 +194,10 @@ SyncML_DM_WBXMLArchive::serialize(DMTree* tree)
       * buffer as the loop runs, putting in a nil terminator where its needed.
       */
     DMNode * pRetNode = NULL;
+    /* Nodes written and not ended yet with their offsets, for the index */
+    DMVector<DMNode*> aOpenNodes;
+    DMVector<UINT32> aStarts;
+    DMVector<IndexEntry> aIndex;
     /* Loop on the nodes returned by the tree and node manager */
     INT32 nEndTagsNumber = 0;
     while((ser_ret_stat = tree->GetSerializationListNextItem(&pRetNode, nEndTagsNumber)) == SYNCML_DM_SERIALIZATION_SUCCESS) 
@@ -169,32 +209,16 @@ SyncML_DM_WBXMLArchive::serialize(DMTree* tree)
           
           if(writer.writeByte(SyncML_DM_WBXMLArchive::END_TAG) != SYNCML_DM_SUCCESS) 
               return  SYNCML_DM_IO_FAILURE;
-        }
-#ifdef LOB_SUPPORT  
-	// Special case for ESN
-	if(pRetNode->IsESN())
-	{
-		SYNCML_DM_RET_STATUS_T retStatus;
-		 // Convert to	ESN pointer
-		DMDefaultESN *tempESN = reinterpret_cast< DMDefaultESN *>(pRetNode);
-		// Close internal files
-		retStatus = tempESN->CloseInternalFile();
-		if(retStatus != SYNCML_DM_SUCCESS)
-				return retStatus;
-	}
-#endif
 
-        if(writer.writeNode(pRetNode) != SYNCML_DM_SUCCESS) {
-            XPL_LOG_DM_TMN_Error((" SYNCML_DM_IO_FAILURE on %s\n",  (const char *)m_pURI ));
-            return  SYNCML_DM_IO_FAILURE;
+          closeNode(aOpenNodes, aStarts, writer.getOffset(), aIndex);
         }
 
-        if ( pRetNode->opiInSync() ) 
-        {
-             UINT8 flag = pRetNode->getFlags(); 
-             flag &= ~( DMNode::enum_NodeOPISyncUptodate );
-             pRetNode->setFlags(flag);   
-        }     
+        aOpenNodes.push_back(pRetNode);
+        aStarts.push_back(writer.getOffset());
+
+        retstat = writeNode(writer, pRetNode);
+        if (retstat != SYNCML_DM_SUCCESS)
+            return retstat;
 
     }/* End while */
 
@@ -209,6 +233,8 @@ SyncML_DM_WBXMLArchive::serialize(DMTree* tree)
         
           if(writer.writeByte(SyncML_DM_WBXMLArchive::END_TAG) != SYNCML_DM_SUCCESS) 
               return SYNCML_DM_IO_FAILURE;
+
+          closeNode(aOpenNodes, aStarts, writer.getOffset(), aIndex);
         }
     } else /* ser_ret_stat == SYNCML_DM_SERIALIZATION_FAIL */
     {
@@ -223,6 +249,14 @@ SyncML_DM_WBXMLArchive::serialize(DMTree* tree)
         fileHandle.close();
         return SYNCML_DM_IO_FAILURE;
     }
+
+    /* Index the big subtrees of a big file */
+    if (writer.getOffset() >= INDEX_MIN_FILE_SIZE && aIndex.size() > 0 &&
+        writeIndex(writer, aIndex) != SYNCML_DM_SUCCESS)
+    {
+        fileHandle.close();
+        return SYNCML_DM_IO_FAILURE;
+    }
     /* Close the file */
     if (fileHandle.close() != SYNCML_DM_SUCCESS)
         return SYNCML_DM_IO_FAILURE;
@@ -232,6 +266,290 @@ SyncML_DM_WBXMLArchive::serialize(DMTree* tree)
 
 /*==================================================================================================
  
+Function:    SyncML_DM_WBXMLArchive::writeNode
+ 
+Description: Writes the properties of a node, without its END_TAG
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::writeNode(SyncML_DM_WBXMLWriter & writer, DMNode* pNode)
+{
+#ifdef LOB_SUPPORT  
+	// Special case for ESN
+	if(pNode->IsESN())
+	{
+		SYNCML_DM_RET_STATUS_T retStatus;
+		 // Convert to	ESN pointer
+		DMDefaultESN *tempESN = reinterpret_cast< DMDefaultESN *>(pNode);
+		// Close internal files
+		retStatus = tempESN->CloseInternalFile();
+		if(retStatus != SYNCML_DM_SUCCESS)
+				return retStatus;
+	}
+#endif
+
+    if(writer.writeNode(pNode) != SYNCML_DM_SUCCESS) {
+        XPL_LOG_DM_TMN_Error((" SYNCML_DM_IO_FAILURE on %s\n",  (const char *)m_pURI ));
+        return  SYNCML_DM_IO_FAILURE;
+    }
+
+    if ( pNode->opiInSync() ) 
+    {
+         UINT8 flag = pNode->getFlags(); 
+         flag &= ~( DMNode::enum_NodeOPISyncUptodate );
+         pNode->setFlags(flag);   
+    }     
+
+    return SYNCML_DM_SUCCESS;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::serializeDelta
+ 
+Description: Appends a batch with the nodes changed since the archive was last written to the
+             delta file. Returns SYNCML_DM_FEATURE_NOT_SUPPORTED if the archive has to be
+             written as a whole: the file is small or doesn't exist yet, the delta file is due
+             for compaction, or the changes are too many or include the root of an archive.
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::serializeDelta(DMTree* tree)
+{
+    if ( !rootTreeNode || rootTreeNode->IsSkeletonNode() || !isWritableExist() ||
+         m_strDeltaFileName.empty() || m_bDeltaCompact || m_nDeltaPending ||
+         m_bChangesOverflow || m_aChanges.size() == 0 )
+        return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+
+    /* Deleting or replacing the root of an archive changes more than one file */
+    SyncML_DM_Archiver & oArchiver = tree->GetArchiver();
+
+    for ( INT32 i = 0; i < m_aChanges.size(); i++ )
+    {
+        if ( !m_aChanges[i].m_bSubtree )
+            continue;
+
+        for ( INT32 j = 0; j < oArchiver.getNumArchives() && oArchiver.getArchive(j); j++ )
+        {
+            if ( DmIsParentURI(m_aChanges[i].m_strURI, oArchiver.getArchive(j)->getURI()) )
+                return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+        }
+    }
+
+    UINT32 nFileSize = 0;
+    {
+        DMFileHandler oFile(m_strWFSFileName);
+
+        if ( oFile.open(XPL_FS_FILE_READ) != SYNCML_DM_SUCCESS )
+            return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+
+        nFileSize = (UINT32)oFile.size();
+        oFile.close();
+    }
+
+    if ( nFileSize < DELTA_MIN_FILE_SIZE )
+        return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+
+    /* The whole archive is written with the subtrees not loaded yet */
+    if ( deserializeSubtrees(tree) != SYNCML_DM_SUCCESS )
+        return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+
+#ifdef DM_PROFILER_ENABLED
+    DMString strCaption = "serialize delta "; 
+    strCaption += getURI(); strCaption += ", \""; 
+    strCaption += m_path; strCaption += "\"";
+    DM_PROFILE( strCaption );
+#endif
+
+    DMFileHandler fileHandle(m_strDeltaFileName);
+
+    if ( fileHandle.open(XPL_FS_FILE_RDWR) != SYNCML_DM_SUCCESS )
+        return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+
+    UINT32 nDeltaSize = (UINT32)fileHandle.size();
+
+    if ( nDeltaSize >= nFileSize / DELTA_MAX_RATIO )
+    {
+        XPL_LOG_DM_TMN_Debug(("compacting %s, delta file size %d\n", m_strWFSFileName.c_str(), nDeltaSize));
+        fileHandle.close();
+        return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+    }
+
+    /* Offsets of the writer are counted from the end of the file */
+    if ( fileHandle.seek(XPL_FS_SEEK_END, 0) != SYNCML_DM_SUCCESS )
+    {
+        fileHandle.close();
+        return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+    }
+
+    SyncML_DM_WBXMLWriter writer(&fileHandle);
+    SYNCML_DM_RET_STATUS_T ret_stat = SYNCML_DM_SUCCESS;
+
+    if ( nDeltaSize == 0 )
+        ret_stat = writer.writeData(DELTA_MAGIC, sizeof(DELTA_MAGIC));
+
+    UINT32 nBatchStart = nDeltaSize + writer.getOffset();
+    UINT32 nCount = 0;
+
+    /* The length and the count are set when the records are written */
+    if ( ret_stat == SYNCML_DM_SUCCESS &&
+         ( writer.writeData(DELTA_BATCH_MAGIC, sizeof(DELTA_BATCH_MAGIC)) != SYNCML_DM_SUCCESS ||
+           WriteIndexValue(writer, 0) != SYNCML_DM_SUCCESS ||
+           WriteIndexValue(writer, 0) != SYNCML_DM_SUCCESS ) )
+        ret_stat = SYNCML_DM_IO_FAILURE;
+
+    for ( INT32 i = 0; i < m_aChanges.size() && ret_stat == SYNCML_DM_SUCCESS; i++ )
+        ret_stat = writeDeltaRecord(tree, writer, m_aChanges[i], nCount);
+
+    UINT32 nBatchEnd = nDeltaSize + writer.getOffset();
+
+    if ( ret_stat == SYNCML_DM_SUCCESS )
+    {
+        SyncML_DM_WBXMLWriter oHeaderWriter(&fileHandle);
+
+        if ( fileHandle.seek(XPL_FS_SEEK_SET, nBatchStart + sizeof(DELTA_BATCH_MAGIC)) != SYNCML_DM_SUCCESS ||
+             WriteIndexValue(oHeaderWriter, nBatchEnd - nBatchStart - DELTA_BATCH_HEADER_SIZE) != SYNCML_DM_SUCCESS ||
+             WriteIndexValue(oHeaderWriter, nCount) != SYNCML_DM_SUCCESS )
+            ret_stat = SYNCML_DM_IO_FAILURE;
+    }
+
+    if ( fileHandle.close() != SYNCML_DM_SUCCESS && ret_stat == SYNCML_DM_SUCCESS )
+        ret_stat = SYNCML_DM_IO_FAILURE;
+
+    if ( ret_stat != SYNCML_DM_SUCCESS )
+    {
+        /* The batch is ignored without the commit marker; the next write compacts the file */
+        XPL_LOG_DM_TMN_Error((" ! Cannot append to %s, ret_stat=%d\n", m_strDeltaFileName.c_str(), ret_stat));
+        m_bDeltaCompact = TRUE;
+        return ret_stat;
+    }
+
+    XPL_LOG_DM_TMN_Debug(("serialize delta %s: %d records, %d bytes\n", getURI(), nCount, nBatchEnd - nBatchStart));
+    m_nDeltaPending = nBatchEnd;
+
+    return SYNCML_DM_SUCCESS;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::commitDelta
+ 
+Description: Writes the commit marker after the batch appended by serializeDelta
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::commitDelta()
+{
+    if ( !m_nDeltaPending )
+        return SYNCML_DM_FAIL;
+
+    DMFileHandler fileHandle(m_strDeltaFileName);
+
+    if ( fileHandle.open(XPL_FS_FILE_RDWR) != SYNCML_DM_SUCCESS )
+        return SYNCML_DM_IO_FAILURE;
+
+    SyncML_DM_WBXMLWriter writer(&fileHandle);
+    SYNCML_DM_RET_STATUS_T ret_stat = SYNCML_DM_SUCCESS;
+
+    if ( fileHandle.seek(XPL_FS_SEEK_SET, m_nDeltaPending) != SYNCML_DM_SUCCESS ||
+         writer.writeData(DELTA_COMMIT_MAGIC, sizeof(DELTA_COMMIT_MAGIC)) != SYNCML_DM_SUCCESS )
+        ret_stat = SYNCML_DM_IO_FAILURE;
+
+    if ( fileHandle.close() != SYNCML_DM_SUCCESS )
+        ret_stat = SYNCML_DM_IO_FAILURE;
+
+    if ( ret_stat == SYNCML_DM_SUCCESS )
+        m_nDeltaPending = 0;
+
+    return ret_stat;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::writeDeltaRecord
+ 
+Description: Writes the record of a change with the current state of the node; a node which
+             doesn't exist anymore is written as deleted. Nodes of plug-ins and child archives
+             are not written.
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::writeDeltaRecord(DMTree* pTree,
+                                         SyncML_DM_WBXMLWriter & writer,
+                                         const Change & oChange,
+                                         UINT32 & nCount)
+{
+    DMString strPath;
+    DMNode * pNode = NULL;
+
+    if ( !getDeltaPath(oChange.m_strURI, strPath) )
+        return SYNCML_DM_SUCCESS;
+
+    SYNCML_DM_RET_STATUS_T ret_stat = findDeltaNode(pTree, strPath, &pNode);
+
+    if ( ret_stat == SYNCML_DM_SKIP_SUBTREE )
+        return SYNCML_DM_SUCCESS;
+
+    if ( ret_stat != SYNCML_DM_SUCCESS && ret_stat != SYNCML_DM_NOT_FOUND )
+        return ret_stat;
+
+    UINT8 bKind = DELTA_DELETE;
+
+    if ( pNode )
+        bKind = oChange.m_bSubtree ? DELTA_SUBTREE : DELTA_NODE;
+
+    if ( writer.writeByte(bKind) != SYNCML_DM_SUCCESS ||
+         writer.writeString(strPath) != SYNCML_DM_SUCCESS )
+        return SYNCML_DM_IO_FAILURE;
+
+    nCount++;
+
+    if ( bKind == DELTA_DELETE )
+        return SYNCML_DM_SUCCESS;
+
+    if ( bKind == DELTA_NODE )
+    {
+        ret_stat = writeNode(writer, pNode);
+        if ( ret_stat != SYNCML_DM_SUCCESS )
+            return ret_stat;
+
+        return writer.writeByte(END_TAG);
+    }
+
+    SYNCML_DM_SERIALIZATION_STATUS_T ser_ret_stat;
+    DMNode * pRetNode = NULL;
+    INT32 nEndTagsNumber = 0;
+
+    pTree->InitSerializationList(pNode);
+
+    while ( (ser_ret_stat = pTree->GetSerializationListNextItem(&pRetNode, nEndTagsNumber)) == SYNCML_DM_SERIALIZATION_SUCCESS )
+    {
+        for ( ; nEndTagsNumber > 0; nEndTagsNumber-- )
+        {
+            if ( writer.writeByte(END_TAG) != SYNCML_DM_SUCCESS )
+                return SYNCML_DM_IO_FAILURE;
+        }
+
+        ret_stat = writeNode(writer, pRetNode);
+        if ( ret_stat != SYNCML_DM_SUCCESS )
+            return ret_stat;
+    }
+
+    if ( ser_ret_stat != SYNCML_DM_TREE_TRAVERSING_OVER )
+        return SYNCML_DM_FAIL;
+
+    /* End tags of the last node and its parents, then of the changed node */
+    for ( nEndTagsNumber++; nEndTagsNumber > 0; nEndTagsNumber-- )
+    {
+        if ( writer.writeByte(END_TAG) != SYNCML_DM_SUCCESS )
+            return SYNCML_DM_IO_FAILURE;
+    }
+
+    return SYNCML_DM_SUCCESS;
+}
+
+/*==================================================================================================
+ 
   
 Function:    SyncML_DM_WBXMLArchive::deserialize
  
@@ -267,6 +585,7 @@ SyncML_DM_WBXMLArchive::deserialize(DMTree * pTree,
 
     DMPluginManager & oPluginManager = m_pTree->GetPluginManager();
 
+    m_aIndex.clear();
     ret_stat = deserializeFile( pTree, m_strWFSFileName, true );
 
     if ( ret_stat == SYNCML_DM_FILE_NOT_FOUND )
@@ -274,6 +593,8 @@ SyncML_DM_WBXMLArchive::deserialize(DMTree * pTree,
     else 
     {
         setWritableExist( TRUE );
+        if ( ret_stat == SYNCML_DM_SUCCESS )
+            replayDelta( pTree );
         return oPluginManager.UpdatePluginNodes(m_pURI);
     }
 
@@ -311,6 +632,10 @@ SYNCML_DM_RET_STATUS_T SyncML_DM_WBXMLArchive::deserializeFile(
     }
 
     m_permission |= XPL_FS_RDONLY_MODE;
+
+    /* The subtrees listed in the index of the WFS file are loaded on demand,
+     * unless the delta file changes them */
+    BOOLEAN bSkipIndexed = bWFS && !XPL_FS_Exist(m_strDeltaFileName) && readIndex(fileHandle);
     
     /* Create a reader utility class for the reading of tree data */
     SyncML_DM_WBXMLReader reader(&fileHandle);
@@ -349,12 +674,48 @@ SYNCML_DM_RET_STATUS_T SyncML_DM_WBXMLArchive::deserializeFile(
         fileHandle.close();
         return SYNCML_DM_IO_FAILURE;
     }
-    
-    /* The properties data structure */
-    DMAddNodeProp props;
 
     DMNode* pNode = rootTreeNode->GetParent(); // can be null for '.'; otherwise is valid parent
 
+    ret_stat = deserializeNodes(pTree, reader, fileHandle, pNode, rootTreeNode, bYte, bSkipIndexed);
+
+    fileHandle.close();
+    XPL_LOG_DM_TMN_Debug(("End of deserialize ret_stat=%d, %d subtrees not loaded\n", ret_stat, m_aIndex.size()));
+
+    if ( ret_stat == SYNCML_DM_IO_FAILURE )
+        return ret_stat;
+
+    //set time stamp to emmory file
+    if ( bWFS )
+        serializeDone();
+
+    return ret_stat;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::deserializeNodes
+ 
+Description: Reads the nodes which follow the NODE_START_TAG in bYte and adds them to the tree
+             below pNode, until the END_TAG of pStopNode, or of the first node if it is NULL.
+             With bSkipIndexed the subtrees listed in the index are skipped; their root nodes
+             are added as skeleton nodes.
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::deserializeNodes(DMTree* pTree,
+                                         SyncML_DM_WBXMLReader & reader,
+                                         DMFileHandler & fileHandle,
+                                         DMNode* pNode,
+                                         DMNode* pStopNode,
+                                         UINT8 bYte,
+                                         BOOLEAN bSkipIndexed)
+{
+    SYNCML_DM_RET_STATUS_T ret_stat = SYNCML_DM_SUCCESS;
+
+    /* The properties data structure */
+    DMAddNodeProp props;
+
     /* Loop until an internal break occurs (hopefully, not until the last END_TAG */
     while(1) 
     {
@@ -362,12 +723,11 @@ SYNCML_DM_RET_STATUS_T SyncML_DM_WBXMLArchive::deserializeFile(
         if(bYte == END_TAG) 
         {
           
-            if ( pNode == rootTreeNode )
+            if ( pNode == pStopNode )
                 break; // end of subtree
             
             if ( !pNode || !pNode->GetParent() ){
                 XPL_LOG_DM_TMN_Error((" ! Unexpected condition (node is null) inside deserialize\n"));
-                fileHandle.close();
                 return SYNCML_DM_TREE_CORRUPT;  // unexpected condition - looks like extra "end tag"
             }
             
@@ -377,7 +737,6 @@ SYNCML_DM_RET_STATUS_T SyncML_DM_WBXMLArchive::deserializeFile(
             ret_stat=reader.readByte(&bYte);
             if(ret_stat != SYNCML_DM_SUCCESS) {
                 XPL_LOG_DM_TMN_Error((" ! Error ret_stat=%d\n", ret_stat));
-                fileHandle.close();
                 return SYNCML_DM_IO_FAILURE;
             }
         } 
@@ -391,10 +750,7 @@ SYNCML_DM_RET_STATUS_T SyncML_DM_WBXMLArchive::deserializeFile(
                 * It also sets props->pbURI to NULL.
                 */
                 if(reader.readNode(&props, &bYte) != SYNCML_DM_SUCCESS) 
-                {
-                    fileHandle.close();
                     return SYNCML_DM_IO_FAILURE;
-                }
 
                 /* Add the node to the tree */
            
@@ -403,6 +759,29 @@ SYNCML_DM_RET_STATUS_T SyncML_DM_WBXMLArchive::deserializeFile(
                 if (ret_stat != SYNCML_DM_SUCCESS) 
                     break;
 
+                if ( !pStopNode )
+                    pStopNode = pNode;
+
+                if ( bSkipIndexed && pNode != pStopNode && pNode->getFormat() == SYNCML_DM_FORMAT_NODE )
+                {
+                    INT32 nEntry = findIndexEntry(pNode);
+
+                    if ( nEntry >= 0 )
+                    {
+                        /* Continue with the END_TAG of the subtree */
+                        pNode->addFlags(DMNode::enum_NodeSkeleton);
+
+                        if ( fileHandle.seek(XPL_FS_SEEK_SET, m_aIndex[nEntry].m_nEnd - 1) != SYNCML_DM_SUCCESS ||
+                             reader.readByte(&bYte) != SYNCML_DM_SUCCESS )
+                            return SYNCML_DM_IO_FAILURE;
+
+                        if ( bYte != END_TAG )
+                        {
+                            XPL_LOG_DM_TMN_Error((" ! Invalid index entry %s\n", m_aIndex[nEntry].m_strPath.c_str()));
+                            return SYNCML_DM_TREE_CORRUPT;
+                        }
+                    }
+                }
             } 
             else
             {
@@ -412,18 +791,600 @@ SYNCML_DM_RET_STATUS_T SyncML_DM_WBXMLArchive::deserializeFile(
             }
     }/* End while */
 
-    fileHandle.close();
-    XPL_LOG_DM_TMN_Debug(("End of deserialize ret_stat=%d\n", ret_stat));
+    return ret_stat;
+}
 
-    //set time stamp to emmory file
-    if ( bWFS )
-        serializeDone();
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::deserializeSubtree
+ 
+Description: Loads a subtree listed in the index of the WFS file which was left out when the
+             archive was loaded. The subtrees listed in the index below it are left out as well.
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::deserializeSubtree(DMTree* pTree, DMNode* pNode)
+{
+    return loadSubtree(pTree, pNode, TRUE);
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::deserializeSubtrees
+ 
+Description: Loads all subtrees which were left out when the archive was loaded, e.g. before the
+             archive is changed or written. A subtree listed in the index below another one is
+             loaded with it.
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::deserializeSubtrees(DMTree* pTree)
+{
+    SYNCML_DM_RET_STATUS_T ret_stat = SYNCML_DM_SUCCESS;
+
+    for ( INT32 i = 0; i < m_aIndex.size() && ret_stat == SYNCML_DM_SUCCESS; i++ )
+    {
+        DMNode * pNode = findIndexedNode(m_aIndex[i].m_strPath);
+
+        // not loaded yet: the parent is a skeleton too, or the subtree was deleted
+        if ( pNode && pNode->IsSkeletonNode() )
+            ret_stat = loadSubtree(pTree, pNode, FALSE);
+    }
+
+    if ( ret_stat == SYNCML_DM_SUCCESS )
+        m_aIndex.clear();
+
+    return ret_stat;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::loadSubtree
+ 
+Description: Reads a subtree listed in the index from the WFS file
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::loadSubtree(DMTree* pTree, DMNode* pNode, BOOLEAN bSkipIndexed)
+{
+    INT32 nEntry = findIndexEntry(pNode);
+
+    if ( nEntry < 0 )
+        return SYNCML_DM_NOT_FOUND;
+
+#ifdef DM_PROFILER_ENABLED
+    DMString strCaption = "deserialize subtree "; 
+    strCaption += getURI(); strCaption += "/"; 
+    strCaption += m_aIndex[nEntry].m_strPath;
+    DM_PROFILE( strCaption );
+#endif
+
+    // the offsets are valid for the file which was loaded
+    if ( getLastModifiedTime() != lastSavedTime )
+    {
+        XPL_LOG_DM_TMN_Error((" ! %s changed after it was loaded\n", m_strWFSFileName.c_str()));
+        return SYNCML_DM_TREE_CORRUPT;
+    }
+
+    DMFileHandler fileHandle(m_strWFSFileName);
+
+    if ( fileHandle.open(XPL_FS_FILE_READ) != SYNCML_DM_SUCCESS )
+        return SYNCML_DM_IO_FAILURE;
+
+    SyncML_DM_WBXMLReader reader(&fileHandle);
+    UINT8 bYte;
+
+    if ( fileHandle.seek(XPL_FS_SEEK_SET, m_aIndex[nEntry].m_nStart) != SYNCML_DM_SUCCESS ||
+         reader.readByte(&bYte) != SYNCML_DM_SUCCESS )
+    {
+        fileHandle.close();
+        return SYNCML_DM_IO_FAILURE;
+    }
+
+    if ( bYte != (NODE_START_TAG | TAG_CONTENT_MASK) )
+    {
+        XPL_LOG_DM_TMN_Error((" ! Invalid index entry %s\n", m_aIndex[nEntry].m_strPath.c_str()));
+        fileHandle.close();
+        return SYNCML_DM_TREE_CORRUPT;
+    }
+
+    XPL_LOG_DM_TMN_Debug(("deserialize subtree %s of %s\n", m_aIndex[nEntry].m_strPath.c_str(), getURI()));
+
+    SYNCML_DM_RET_STATUS_T ret_stat = deserializeNodes(pTree, reader, fileHandle, pNode->GetParent(),
+                                                       pNode, bYte, bSkipIndexed);
+    fileHandle.close();
 
     return ret_stat;
 }
 
 /*==================================================================================================
  
+Function:    SyncML_DM_WBXMLArchive::readIndex
+ 
+Description: Reads the index of the subtrees from the end of an indexed file.
+             Returns FALSE for a file in the plain format or with an invalid index, which is
+             loaded as a whole then.
+ 
+==================================================================================================*/
+BOOLEAN
+SyncML_DM_WBXMLArchive::readIndex(DMFileHandler & fileHandle)
+{
+    UINT32 nSize = (UINT32)fileHandle.size();
+
+    if ( nSize < INDEX_MIN_FILE_SIZE + INDEX_FOOTER_SIZE )
+        return FALSE;
+
+    // mapped until the file handle is destroyed
+    const UINT8 * pFile = fileHandle.mmap();
+
+    if ( !pFile )
+        return FALSE;
+
+    const UINT8 * pFooter = pFile + nSize - INDEX_FOOTER_SIZE;
+
+    if ( memcmp(pFooter + 8, INDEX_MAGIC, sizeof(INDEX_MAGIC)) != 0 )
+        return FALSE;
+
+    UINT32 nIndexStart = ReadIndexValue(pFooter);
+    UINT32 nCount = ReadIndexValue(pFooter + 4);
+    UINT32 nIndexEnd = nSize - INDEX_FOOTER_SIZE;
+    UINT32 nPos = nIndexStart;
+
+    for ( UINT32 i = 0; i < nCount; i++ )
+    {
+        IndexEntry oEntry;
+        UINT32 nLen = 0;
+        UINT8 bYte = 0x80;
+
+        if ( nPos >= nIndexEnd || pFile[nPos++] != OPAQUE_CODE )
+            break;
+
+        while ( (bYte & 0x80) && nPos < nIndexEnd )
+        {
+            bYte = pFile[nPos++];
+            nLen = (nLen << 7) | (bYte & 0x7F);
+        }
+
+        if ( (bYte & 0x80) || nLen == 0 || nLen > nIndexEnd - nPos ||
+             nIndexEnd - nPos - nLen < 8 || !oEntry.m_strPath.assign((CPCHAR)pFile + nPos, nLen) )
+            break;
+
+        nPos += nLen;
+        oEntry.m_nStart = ReadIndexValue(pFile + nPos);
+        oEntry.m_nEnd = ReadIndexValue(pFile + nPos + 4);
+        nPos += 8;
+
+        if ( oEntry.m_nStart >= oEntry.m_nEnd || oEntry.m_nEnd > nIndexStart )
+            break;
+
+        m_aIndex.push_back(oEntry);
+    }
+
+    if ( m_aIndex.size() != (INT32)nCount || nPos != nIndexEnd )
+    {
+        XPL_LOG_DM_TMN_Error((" ! Invalid index in %s, loading the whole file\n", m_strWFSFileName.c_str()));
+        m_aIndex.clear();
+        return FALSE;
+    }
+
+    return TRUE;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::writeIndex
+ 
+Description: Writes the index of the subtrees and the footer after the WBXML document
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::writeIndex(SyncML_DM_WBXMLWriter & writer,
+                                   const DMVector<IndexEntry> & aIndex)
+{
+    UINT32 nIndexStart = writer.getOffset();
+
+    for ( INT32 i = 0; i < aIndex.size(); i++ )
+    {
+        if ( writer.writeString(aIndex[i].m_strPath) != SYNCML_DM_SUCCESS ||
+             WriteIndexValue(writer, aIndex[i].m_nStart) != SYNCML_DM_SUCCESS ||
+             WriteIndexValue(writer, aIndex[i].m_nEnd) != SYNCML_DM_SUCCESS )
+            return SYNCML_DM_IO_FAILURE;
+    }
+
+    if ( WriteIndexValue(writer, nIndexStart) != SYNCML_DM_SUCCESS ||
+         WriteIndexValue(writer, (UINT32)aIndex.size()) != SYNCML_DM_SUCCESS ||
+         writer.writeData(INDEX_MAGIC, sizeof(INDEX_MAGIC)) != SYNCML_DM_SUCCESS )
+        return SYNCML_DM_IO_FAILURE;
+
+    return SYNCML_DM_SUCCESS;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::closeNode
+ 
+Description: Called by serialize after the END_TAG of the last open node; an interior node below
+             the archive root with a big subtree is listed in the index.
+ 
+==================================================================================================*/
+void
+SyncML_DM_WBXMLArchive::closeNode(DMVector<DMNode*> & aOpenNodes,
+                                  DMVector<UINT32> & aStarts,
+                                  UINT32 nEnd,
+                                  DMVector<IndexEntry> & aIndex)
+{
+    INT32 nTop = aOpenNodes.size() - 1;
+
+    if ( nTop < 0 )
+        return;
+
+    DMNode * pNode = aOpenNodes[nTop];
+    UINT32 nStart = aStarts[nTop];
+
+    if ( nTop > 0 && pNode->getFormat() == SYNCML_DM_FORMAT_NODE &&
+         nEnd - nStart >= INDEX_MIN_SUBTREE_SIZE )
+    {
+        IndexEntry oEntry;
+
+        for ( INT32 i = 1; i <= nTop; i++ )
+        {
+            if ( i > 1 )
+                oEntry.m_strPath += "/";
+            oEntry.m_strPath += aOpenNodes[i]->getName();
+        }
+        oEntry.m_nStart = nStart;
+        oEntry.m_nEnd = nEnd;
+
+        aIndex.push_back(oEntry);
+    }
+
+    aOpenNodes.remove(nTop);
+    aStarts.remove(nTop);
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::getIndexPath
+ 
+Description: Builds the path of a node below the archive root, as listed in the index
+ 
+==================================================================================================*/
+BOOLEAN
+SyncML_DM_WBXMLArchive::getIndexPath(DMNode* pNode, DMString & strPath)
+{
+    if ( pNode == rootTreeNode )
+        return TRUE;
+
+    if ( !pNode || !getIndexPath(pNode->GetParent(), strPath) )
+        return FALSE;
+
+    if ( !strPath.empty() )
+        strPath += "/";
+    strPath += pNode->getName();
+
+    return TRUE;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::findIndexEntry
+ 
+Description: Returns the index entry of a node or -1 if the node is not listed in the index
+ 
+==================================================================================================*/
+INT32
+SyncML_DM_WBXMLArchive::findIndexEntry(DMNode* pNode)
+{
+    if ( m_aIndex.size() == 0 || pNode == rootTreeNode )
+        return -1;
+
+    DMString strPath;
+
+    if ( !getIndexPath(pNode, strPath) )
+        return -1;
+
+    for ( INT32 i = 0; i < m_aIndex.size(); i++ )
+    {
+        if ( m_aIndex[i].m_strPath == strPath )
+            return i;
+    }
+
+    return -1;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::findIndexedNode
+ 
+Description: Returns the node of a path listed in the index or NULL if the node is not in the tree
+ 
+==================================================================================================*/
+DMNode*
+SyncML_DM_WBXMLArchive::findIndexedNode(CPCHAR szPath)
+{
+    DMString strPath(szPath);
+    char * szSegment = strPath.GetBuffer();
+    DMNode * pNode = rootTreeNode;
+
+    while ( pNode && szSegment )
+    {
+        char * szNext = (char*)DmStrchr(szSegment, '/');
+
+        if ( szNext )
+            *szNext++ = 0;
+
+        pNode = pNode->GetChildByName(szSegment);
+        szSegment = szNext;
+    }
+
+    return pNode;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::replayDelta
+ 
+Description: Applies the committed batches of the delta file to the loaded archive. A batch
+             without the commit marker was written by a serialization which didn't complete and
+             is ignored; the next write of the archive removes it by compacting the delta file.
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::replayDelta(DMTree* pTree)
+{
+    m_nDeltaPending = 0;
+    m_bDeltaCompact = FALSE;
+
+    if ( m_strDeltaFileName.empty() || !XPL_FS_Exist(m_strDeltaFileName) )
+        return SYNCML_DM_SUCCESS;
+
+#ifdef DM_PROFILER_ENABLED
+    DMString strCaption = "replay delta "; 
+    strCaption += getURI(); strCaption += ", \""; 
+    strCaption += m_path; strCaption += "\"";
+    DM_PROFILE( strCaption );
+#endif
+
+    DMFileHandler fileHandle(m_strDeltaFileName);
+
+    if ( fileHandle.open(XPL_FS_FILE_READ) != SYNCML_DM_SUCCESS )
+    {
+        m_bDeltaCompact = TRUE;
+        return SYNCML_DM_IO_FAILURE;
+    }
+
+    UINT32 nSize = (UINT32)fileHandle.size();
+
+    if ( nSize == 0 )
+    {
+        fileHandle.close();
+        return SYNCML_DM_SUCCESS;
+    }
+
+    // mapped until the file handle is destroyed
+    const UINT8 * pFile = fileHandle.mmap();
+    SyncML_DM_WBXMLReader reader(&fileHandle);
+    SYNCML_DM_RET_STATUS_T ret_stat = SYNCML_DM_SUCCESS;
+    UINT32 nPos = sizeof(DELTA_MAGIC);
+    INT32 nBatches = 0;
+
+    if ( !pFile || nSize < sizeof(DELTA_MAGIC) || memcmp(pFile, DELTA_MAGIC, sizeof(DELTA_MAGIC)) != 0 )
+        ret_stat = SYNCML_DM_TREE_CORRUPT;
+
+    while ( ret_stat == SYNCML_DM_SUCCESS && nPos < nSize )
+    {
+        if ( nSize - nPos < DELTA_BATCH_HEADER_SIZE ||
+             memcmp(pFile + nPos, DELTA_BATCH_MAGIC, sizeof(DELTA_BATCH_MAGIC)) != 0 )
+        {
+            ret_stat = SYNCML_DM_TREE_CORRUPT;
+            break;
+        }
+
+        UINT32 nLength = ReadIndexValue(pFile + nPos + 4);
+        UINT32 nCount = ReadIndexValue(pFile + nPos + 8);
+        UINT32 nBody = nPos + DELTA_BATCH_HEADER_SIZE;
+
+        if ( nLength > nSize - nBody || nSize - nBody - nLength < sizeof(DELTA_COMMIT_MAGIC) ||
+             memcmp(pFile + nBody + nLength, DELTA_COMMIT_MAGIC, sizeof(DELTA_COMMIT_MAGIC)) != 0 )
+        {
+            XPL_LOG_DM_TMN_Debug(("%s: batch at %d is not committed\n", m_strDeltaFileName.c_str(), nPos));
+            m_bDeltaCompact = TRUE;
+            break;
+        }
+
+        if ( fileHandle.seek(XPL_FS_SEEK_SET, nBody) != SYNCML_DM_SUCCESS )
+            ret_stat = SYNCML_DM_IO_FAILURE;
+
+        for ( UINT32 i = 0; i < nCount && ret_stat == SYNCML_DM_SUCCESS; i++ )
+            ret_stat = replayDeltaRecord(pTree, reader, fileHandle);
+
+        nPos = nBody + nLength + sizeof(DELTA_COMMIT_MAGIC);
+        nBatches++;
+    }
+
+    fileHandle.close();
+
+    if ( ret_stat != SYNCML_DM_SUCCESS )
+    {
+        XPL_LOG_DM_TMN_Error((" ! Invalid delta file %s at %d, ret_stat=%d\n", m_strDeltaFileName.c_str(), nPos, ret_stat));
+        m_bDeltaCompact = TRUE;
+        return ret_stat;
+    }
+
+    XPL_LOG_DM_TMN_Debug(("replayed %d batches of %s\n", nBatches, m_strDeltaFileName.c_str()));
+    return SYNCML_DM_SUCCESS;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::replayDeltaRecord
+ 
+Description: Reads a record of the delta file and applies it to the tree
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::replayDeltaRecord(DMTree* pTree,
+                                          SyncML_DM_WBXMLReader & reader,
+                                          DMFileHandler & fileHandle)
+{
+    UINT8 bKind, bYte;
+    DMBuffer oPath;
+    DMString strPath;
+
+    if ( reader.readByte(&bKind) != SYNCML_DM_SUCCESS ||
+         reader.readByte(&bYte) != SYNCML_DM_SUCCESS || bYte != OPAQUE_CODE ||
+         reader.readOpaque(&oPath) != SYNCML_DM_SUCCESS )
+        return SYNCML_DM_IO_FAILURE;
+
+    if ( oPath.getSize() > 0 && !strPath.assign((CPCHAR)oPath.getBuffer(), oPath.getSize()) )
+        return SYNCML_DM_DEVICE_FULL;
+
+    if ( bKind != DELTA_NODE && bKind != DELTA_SUBTREE && bKind != DELTA_DELETE )
+        return SYNCML_DM_TREE_CORRUPT;
+
+    DMNode * pNode = NULL;
+    SYNCML_DM_RET_STATUS_T ret_stat = findDeltaNode(pTree, strPath, &pNode);
+
+    if ( ret_stat != SYNCML_DM_SUCCESS && ret_stat != SYNCML_DM_NOT_FOUND )
+        return SYNCML_DM_TREE_CORRUPT;
+
+    /* Only the properties of the root are changed */
+    if ( pNode == rootTreeNode && bKind != DELTA_NODE )
+        return SYNCML_DM_TREE_CORRUPT;
+
+    if ( bKind == DELTA_DELETE )
+    {
+        if ( pNode )
+            pTree->DeleteNodesFromTree(pNode);
+        return SYNCML_DM_SUCCESS;
+    }
+
+    DMNode * pParent = NULL;
+
+    if ( pNode )
+        pParent = pNode->GetParent();
+    else
+    {
+        DMString strParentPath;
+        CPCHAR szSlash = DmStrrchr(strPath.c_str(), '/');
+
+        if ( szSlash && !strParentPath.assign(strPath, (INT32)(szSlash - strPath.c_str())) )
+            return SYNCML_DM_DEVICE_FULL;
+
+        if ( findDeltaNode(pTree, strParentPath, &pParent) != SYNCML_DM_SUCCESS )
+            return SYNCML_DM_TREE_CORRUPT;
+    }
+
+    if ( reader.readByte(&bYte) != SYNCML_DM_SUCCESS )
+        return SYNCML_DM_IO_FAILURE;
+
+    if ( bYte != (NODE_START_TAG | TAG_CONTENT_MASK) )
+        return SYNCML_DM_TREE_CORRUPT;
+
+    if ( bKind == DELTA_SUBTREE )
+    {
+        if ( pNode )
+            pTree->DeleteNodesFromTree(pNode);
+
+        return deserializeNodes(pTree, reader, fileHandle, pParent, NULL, bYte, FALSE);
+    }
+
+    DMAddNodeProp props;
+
+    if ( reader.readNode(&props, &bYte) != SYNCML_DM_SUCCESS )
+        return SYNCML_DM_IO_FAILURE;
+
+    if ( bYte != END_TAG )
+        return SYNCML_DM_TREE_CORRUPT;
+
+    /* The children of an interior node are kept: AddNode sets the properties of an
+     * existing skeleton node. A leaf is added again, it may be of another class now. */
+    if ( pNode && pNode->getFormat() == SYNCML_DM_FORMAT_NODE &&
+         (props.m_nFormat == SYNCML_DM_FORMAT_NODE || props.m_nFormat == SYNCML_DM_FORMAT_NODE_PDATA) )
+        pNode->addFlags(DMNode::enum_NodeSkeleton);
+    else if ( pNode )
+        pTree->DeleteNodesFromTree(pNode);
+
+    return pTree->AddNode(&pParent, props);
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::getDeltaPath
+ 
+Description: Builds the path below the archive root of a URI of the archive
+ 
+==================================================================================================*/
+BOOLEAN
+SyncML_DM_WBXMLArchive::getDeltaPath(CPCHAR szURI, DMString & strPath)
+{
+    INT32 nLength = DmStrlen(m_pURI);
+
+    if ( DmStrncmp(szURI, m_pURI, nLength) != 0 )
+        return FALSE;
+
+    if ( szURI[nLength] == 0 )
+    {
+        strPath = "";
+        return TRUE;
+    }
+
+    if ( szURI[nLength] != '/' )
+        return FALSE;
+
+    strPath = szURI + nLength + 1;
+    return TRUE;
+}
+
+/*==================================================================================================
+ 
+Function:    SyncML_DM_WBXMLArchive::findDeltaNode
+ 
+Description: Finds the node of a path below the archive root.
+             Returns SYNCML_DM_NOT_FOUND if the node is not in the tree and SYNCML_DM_SKIP_SUBTREE
+             if the node is not written by this archive, i.e. it belongs to a plug-in or to a
+             child archive.
+ 
+==================================================================================================*/
+SYNCML_DM_RET_STATUS_T
+SyncML_DM_WBXMLArchive::findDeltaNode(DMTree* pTree, CPCHAR szPath, DMNode** ppNode)
+{
+    DMString strPath(szPath);
+    char * szSegment = strPath.GetBuffer(); // NULL for the root
+    DMNode * pNode = rootTreeNode;
+
+    *ppNode = NULL;
+
+    while ( szSegment && *szSegment )
+    {
+        char * szNext = (char*)DmStrchr(szSegment, '/');
+
+        if ( szNext )
+            *szNext++ = 0;
+
+        if ( pNode->isPlugin() )
+            return SYNCML_DM_SKIP_SUBTREE;
+
+        pNode = pNode->GetChildByName(szSegment);
+
+        if ( !pNode )
+            return SYNCML_DM_NOT_FOUND;
+
+        if ( pTree->GetArchive(pNode) != this )
+            return SYNCML_DM_SKIP_SUBTREE;
+
+        szSegment = szNext;
+    }
+
+    if ( pNode->isPlugin() )
+        return SYNCML_DM_SKIP_SUBTREE;
+
+    *ppNode = pNode;
+    return SYNCML_DM_SUCCESS;
+}
+
+/*==================================================================================================
+ 
 Function:    SyncML_DM_WBXMLArchive::getLastModifiedTime
  
 Description: Retrieves the last modification time of the archive
@@ -434,6 +1395,14 @@ XPL_CLK_CLOCK_T
 SyncML_DM_WBXMLArchive::getLastModifiedTime() 
 {
     XPL_CLK_CLOCK_T lastModified=XPL_FS_GetModTime(m_strWFSFileName);
+
+    // appending to the delta file changes the archive too
+    if ( !m_strDeltaFileName.empty() )
+    {
+        XPL_CLK_CLOCK_T deltaModified=XPL_FS_GetModTime(m_strDeltaFileName);
+        if ( deltaModified > lastModified )
+            lastModified = deltaModified;
+    }
     return lastModified;
 }
 
@@ -444,7 +1413,14 @@ XPL_CLK_CLOCK_T SyncML_DM_WBXMLArchive::getLastSavedTime()
 
 void SyncML_DM_WBXMLArchive::serializeDone() 
 {
-    lastSavedTime=XPL_FS_GetModTime(m_strWFSFileName);
+    lastSavedTime=getLastModifiedTime();
+
+    // the whole archive was written, the delta file was removed
+    if ( !m_strDeltaFileName.empty() && !XPL_FS_Exist(m_strDeltaFileName) )
+    {
+        m_nDeltaPending = 0;
+        m_bDeltaCompact = FALSE;
+    }
     oEventLogger.OnTreeSaved();
 }
 
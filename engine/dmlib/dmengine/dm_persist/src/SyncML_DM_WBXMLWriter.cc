@@ -33,6 +33,7 @@ Description: Write a byte of data to the file handle
 ==================================================================================================*/
 SYNCML_DM_RET_STATUS_T
 SyncML_DM_WBXMLWriter::writeByte(UINT8 byte) {
+    m_nOffset++;
     return this->fileHandle->write(&byte, 1);
 }
 
@@ -63,6 +64,7 @@ Description: Writes a given amount of raw data (without WBXML formatting or spec
 ==================================================================================================*/
 SYNCML_DM_RET_STATUS_T
 SyncML_DM_WBXMLWriter::writeData(const UINT8* data, UINT8 len) {
+    m_nOffset += len;
     return this->fileHandle->write(data, len);
 }
 
@@ -110,6 +112,7 @@ SyncML_DM_WBXMLWriter::writeOpaque(const UINT8* data, UINT32 len) {
         if (ret_stat != SYNCML_DM_SUCCESS)
             return SYNCML_DM_IO_FAILURE;
 
+        m_nOffset += (UINT16)len;
         ret_stat = this->fileHandle->write(data, (UINT16)len);
 
     } else {
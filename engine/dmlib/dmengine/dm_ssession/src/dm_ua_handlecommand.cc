@@ -1949,6 +1949,43 @@ HandleExecCommand (InstanceID_t  id,
 }
 
 
+/*==================================================================================================
+FUNCTION        : PrefetchGetItems
+
+DESCRIPTION     : Collects the leaf node URIs of a GET command and asks the DM tree to start
+                  reading the plug-in backed ones, so plug-ins under different roots are read in
+                  parallel while the items are still executed one by one.
+ARGUMENT PASSED : pItemList
+                  pUserData
+OUTPUT PARAMETER:
+RETURN VALUE    :
+IMPORTANT NOTES : Only called for GET, which doesn't change the tree, and not within an Atomic.
+                  Property, structure and list gets are not prefetched.
+
+==================================================================================================*/
+static void
+PrefetchGetItems (SmlItemListPtr_t pItemList,
+                  SYNCML_DM_USER_DATA_T *pUserData)
+{
+    DMStringVector aURIs;
+
+    for ( ; pItemList != NULL; pItemList = pItemList->next )
+    {
+        DMString strTargetUri;
+
+        if ( pItemList->item == NULL ||
+             PrepareCommandItem (pItemList->item, pUserData, strTargetUri) != SYNCML_DM_SUCCESS )
+            continue;
+
+        if ( dmTreeObj.URIValidateAndParse(strTargetUri.c_str()) == SYNCML_DM_COMMAND_ON_NODE )
+            aURIs.push_back(strTargetUri);
+    }
+
+    /* a single node is read as fast without the prefetch */
+    if ( aURIs.size() > 1 )
+        dmTreeObj.PrefetchPluginValues(aURIs);
+}
+
 /*==================================================================================================
 FUNCTION        : HandleGetCommand
 
@@ -2015,6 +2052,7 @@ HandleGetCommand (InstanceID_t id,
     if (pDmMgmtSessionObj->GetInAtomicCommand() == FALSE &&
          pDmMgmtSessionObj->IsAuthorized())
     {
+      PrefetchGetItems (pContent->itemList, pUserData);
 
       while (p_get_item != NULL)
       {                              /* Loop through each GET ITEM */
@@ -2145,6 +2183,8 @@ HandleGetCommand (InstanceID_t id,
                 p_get_item = NULL;
       } /* End of while */
 
+      /* values prefetched for this command and not read mustn't outlive it */
+      dmTreeObj.ClearPluginPrefetch();
    }
    else
    { /* !inAtomicCommand && dmSecState */  /* inAtomicCommand == TRUE || dmSecState not authenticated */
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+//------------------------------------------------------------------------
+//
+//   Module Name: dm_tree_child_index.cc
+//
+//   General Description:Contains the implementations of the methods of
+//                       DMNodeChildIndex class.
+//------------------------------------------------------------------------
+
+#include "dmdefs.h"
+#include "dm_tree_child_index.H"
+#include "dm_tree_node_class.H"
+
+DMNodeChildIndex::DMNodeChildIndex() :
+  m_ppSlots(NULL),
+  m_nMask(0),
+  m_nCount(0)
+{
+}
+
+DMNodeChildIndex::~DMNodeChildIndex()
+{
+  if ( m_ppSlots )
+    DmFreeMem(m_ppSlots);
+}
+
+DMNodeChildIndex * DMNodeChildIndex::Build(DMNode * pFirstChild)
+{
+  INT32 nCount = 0;
+  for ( DMNode * pNode = pFirstChild; pNode; pNode = pNode->pcNextSibling )
+    nCount++;
+
+  DMNodeChildIndex * pIndex = new DMNodeChildIndex;
+  if ( !pIndex )
+    return NULL;
+
+  // keep the table at most half full
+  UINT32 nCapacity = 2 * DM_CHILD_INDEX_MIN_CHILDREN;
+  while ( nCapacity < (UINT32)nCount * 2 )
+    nCapacity <<= 1;
+
+  if ( !pIndex->Resize(nCapacity) )
+  {
+    delete pIndex;
+    return NULL;
+  }
+
+  for ( DMNode * pNode = pFirstChild; pNode; pNode = pNode->pcNextSibling )
+  {
+    if ( !pIndex->Add(pNode) )
+    {
+      XPL_LOG_DM_TMN_Debug(("DMNodeChildIndex::Build: duplicate child %s\n", pNode->getName()));
+      delete pIndex;
+      return NULL;
+    }
+  }
+
+  return pIndex;
+}
+
+UINT32 DMNodeChildIndex::Hash(CPCHAR szName)
+{
+  // FNV-1a
+  UINT32 nHash = 2166136261U;
+  while ( *szName )
+  {
+    nHash ^= (UINT8)*szName++;
+    nHash *= 16777619U;
+  }
+  return nHash;
+}
+
+DMNode * DMNodeChildIndex::Find(CPCHAR szName) const
+{
+  UINT32 i = Hash(szName) & m_nMask;
+
+  while ( m_ppSlots[i] )
+  {
+    if ( DmStrcmp(m_ppSlots[i]->getName(), szName) == 0 )
+      return m_ppSlots[i];
+
+    i = (i + 1) & m_nMask;
+  }
+
+  return NULL;
+}
+
+BOOLEAN DMNodeChildIndex::Add(DMNode * pChild)
+{
+  if ( (UINT32)(m_nCount + 1) * 2 > m_nMask + 1 && !Resize((m_nMask + 1) * 2) )
+    return FALSE;
+
+  CPCHAR szName = pChild->getName();
+  UINT32 i = Hash(szName) & m_nMask;
+
+  while ( m_ppSlots[i] )
+  {
+    if ( DmStrcmp(m_ppSlots[i]->getName(), szName) == 0 )
+      return FALSE;
+
+    i = (i + 1) & m_nMask;
+  }
+
+  m_ppSlots[i] = pChild;
+  m_nCount++;
+  return TRUE;
+}
+
+void DMNodeChildIndex::Remove(const DMNode * pChild)
+{
+  UINT32 i = Hash(pChild->getName()) & m_nMask;
+
+  while ( m_ppSlots[i] != pChild )
+  {
+    if ( !m_ppSlots[i] )
+      return;   // not indexed
+
+    i = (i + 1) & m_nMask;
+  }
+
+  m_ppSlots[i] = NULL;
+  m_nCount--;
+
+  // move back the following entries of the probe run which can't be found
+  // any more across the freed slot
+  UINT32 j = i;
+  for ( ;; )
+  {
+    j = (j + 1) & m_nMask;
+    if ( !m_ppSlots[j] )
+      break;
+
+    UINT32 nHome = Hash(m_ppSlots[j]->getName()) & m_nMask;
+    if ( ((j - nHome) & m_nMask) >= ((j - i) & m_nMask) )
+    {
+      m_ppSlots[i] = m_ppSlots[j];
+      m_ppSlots[j] = NULL;
+      i = j;
+    }
+  }
+}
+
+BOOLEAN DMNodeChildIndex::Resize(UINT32 nCapacity)
+{
+  DMNode ** ppSlots = (DMNode **)DmAllocMem(nCapacity * sizeof(DMNode *));
+  if ( !ppSlots )
+    return FALSE;
+
+  memset(ppSlots, 0, nCapacity * sizeof(DMNode *));
+
+  DMNode ** ppOldSlots = m_ppSlots;
+  UINT32 nOldCapacity = ppOldSlots ? m_nMask + 1 : 0;
+
+  m_ppSlots = ppSlots;
+  m_nMask = nCapacity - 1;
+
+  for ( UINT32 k = 0; k < nOldCapacity; k++ )
+  {
+    DMNode * pNode = ppOldSlots[k];
+    if ( !pNode )
+      continue;
+
+    UINT32 i = Hash(pNode->getName()) & m_nMask;
+    while ( m_ppSlots[i] )
+      i = (i + 1) & m_nMask;
+
+    m_ppSlots[i] = pNode;
+  }
+
+  if ( ppOldSlots )
+    DmFreeMem(ppOldSlots);
+
+  return TRUE;
+}
@@ -296,6 +296,10 @@ DMNode* DMTree::FindNodeByURI(CPCHAR pbURI)
   while ( m_oOPICacheData.aPD.size() )
     m_oOPICacheData.aPD.remove(0);    // function "remove" does not free buffer in contrast to "removeall"
 
+  psFindNode = FindCachedNode( pbURI, currentTime );
+  if ( psFindNode )
+    return psFindNode;
+
   psFindNode  = m_psRoot;
 
   pbURISegment = GetURISegment(&szURI);
@@ -355,24 +359,20 @@ DMNode* DMTree::FindNodeByURI(CPCHAR pbURI)
     // For plugin Proxy node, use the proxy node for ALL subtree.
     if ((pbURISegment == NULL) || (pbURISegment[0] == '\0') || (psFindNode->isPlugin())) {
 
-        if ( psFindNode->IsSkeletonNode() && psFindNode->pArchive )
-          psFindNode->pArchive->deserialize(this);
-
-        // e50024
-        // Update last access time of the archive
-        DMNode * pNode = psFindNode;
+        FinishFoundNode( psFindNode, currentTime );
 
-        while ( pNode ) {
-            if ( pNode->pArchive ) {
-                pNode->pArchive->setLastAccessedTime(currentTime);
-                break;
-            }
-            pNode = pNode->pcParentOfNode;
-        }
+        UINT8 nESN = DMURICache::DM_URI_CACHE_ESN_UNKNOWN;
 #ifdef LOB_SUPPORT
+    nESN = DMURICache::DM_URI_CACHE_ESN_NO;
     if(psFindNode != NULL && m_oMDFObj.IsESN( pbURI ))
+    {
             SetESNCache(pbURI ,psFindNode);
+            nESN = DMURICache::DM_URI_CACHE_ESN_YES;
+    }
 #endif
+        // a trailing '/' is not cached, the URI would name a different parent
+        if ( pbURISegment == NULL || pbURISegment[0] != '\0' )
+          CacheFoundNode( pbURI, psFindNode, nESN, pbURISegment == NULL );
 
         return (psFindNode);
     }
@@ -398,6 +398,154 @@ DMNode* DMTree::FindNodeByURI(CPCHAR pbURI)
   return (NULL);
 }
 
+//------------------------------------------------------------------------
+//
+// FUNCTION        : FindCachedNode
+//
+// DESCRIPTION     : Resolves a URI from the cache of recently resolved
+//                   URIs: either the URI itself is cached or its parent is,
+//                   and the last segment is a child of the cached parent.
+//
+// ARGUMENTS PASSED: pbURI - URI to resolve
+//                   currentTime - last access time for the archive
+//
+// RETURN VALUE    : node or NULL if the tree has to be walked
+// PRE-CONDITIONS  : OPI cache is reset
+// POST-CONDITIONS :
+// IMPORTANT NOTES : Only nodes found without an OPI on the path are cached,
+//                   so the OPI cache stays reset for a cached node.
+//------------------------------------------------------------------------
+DMNode* DMTree::FindCachedNode( CPCHAR pbURI, XPL_CLK_CLOCK_T currentTime )
+{
+  INT32 nLength = DmStrlen( pbURI );
+  UINT8 nESN = DMURICache::DM_URI_CACHE_ESN_UNKNOWN;
+
+  DMNode *psNode = m_oURICache.Find( pbURI, nLength, &nESN );
+  if ( psNode )
+  {
+    FinishFoundNode( psNode, currentTime );
+#ifdef LOB_SUPPORT
+    if ( nESN == DMURICache::DM_URI_CACHE_ESN_UNKNOWN )
+    {
+      nESN = m_oMDFObj.IsESN( pbURI ) ? DMURICache::DM_URI_CACHE_ESN_YES : DMURICache::DM_URI_CACHE_ESN_NO;
+      m_oURICache.SetESN( pbURI, nESN );
+    }
+    if ( nESN == DMURICache::DM_URI_CACHE_ESN_YES )
+      SetESNCache( pbURI, psNode );
+#endif
+    m_oURICache.CountHit();
+    return psNode;
+  }
+
+  // sibling commands: the parent is cached
+  CPCHAR pbLastSegment = DmStrrchr( pbURI, SYNCML_DM_FORWARD_SLASH );
+  if ( pbLastSegment && pbLastSegment > pbURI && pbLastSegment[1] != '\0' )
+  {
+    DMNode *psParent = m_oURICache.Find( pbURI, (INT32)(pbLastSegment - pbURI) );
+
+    // a skeleton parent has to be loaded by the walk first
+    if ( psParent && !psParent->IsSkeletonNode() )
+    {
+      // for plugin Proxy node, use the proxy node for ALL subtree
+      psNode = psParent->isPlugin() ? psParent : psParent->GetChildByName( pbLastSegment + 1 );
+
+      if ( psNode && !psNode->IsOverlayPI() && !psNode->IsOverlayPIData() )
+      {
+        FinishFoundNode( psNode, currentTime );
+
+        nESN = DMURICache::DM_URI_CACHE_ESN_UNKNOWN;
+#ifdef LOB_SUPPORT
+        nESN = DMURICache::DM_URI_CACHE_ESN_NO;
+        if ( m_oMDFObj.IsESN( pbURI ) )
+        {
+          SetESNCache( pbURI, psNode );
+          nESN = DMURICache::DM_URI_CACHE_ESN_YES;
+        }
+#endif
+        m_oURICache.Put( pbURI, nLength, psNode, nESN );
+        m_oURICache.CountParentHit();
+        return psNode;
+      }
+    }
+  }
+
+  m_oURICache.CountMiss();
+  return NULL;
+}
+
+//------------------------------------------------------------------------
+//
+// FUNCTION        : CacheFoundNode
+//
+// DESCRIPTION     : Caches a node found by walking the tree and, if the
+//                   whole URI was walked, its parent.
+//
+// ARGUMENTS PASSED: pbURI - resolved URI
+//                   psFoundNode - node the URI resolves to
+//                   nESN - ESN state of the URI
+//                   bWholeURI - FALSE if psFoundNode is a plugin Proxy node
+//                               for a node below it
+//
+// RETURN VALUE    :
+// PRE-CONDITIONS  :
+// POST-CONDITIONS :
+// IMPORTANT NOTES :
+//------------------------------------------------------------------------
+void DMTree::CacheFoundNode( CPCHAR pbURI, DMNode* psFoundNode, UINT8 nESN, BOOLEAN bWholeURI )
+{
+  // the walk collected OPI data for this node, a cached node would miss it
+  if ( m_ptrCacheOPI != NULL || m_oOPICacheData.aPD.size() )
+    return;
+
+  INT32 nLength = DmStrlen( pbURI );
+  m_oURICache.Put( pbURI, nLength, psFoundNode, nESN );
+
+  if ( !bWholeURI || !psFoundNode->pcParentOfNode )
+    return;
+
+  CPCHAR pbLastSegment = DmStrrchr( pbURI, SYNCML_DM_FORWARD_SLASH );
+  if ( pbLastSegment && pbLastSegment > pbURI )
+    m_oURICache.Put( pbURI, (INT32)(pbLastSegment - pbURI), psFoundNode->pcParentOfNode,
+                     DMURICache::DM_URI_CACHE_ESN_UNKNOWN );
+}
+
+//------------------------------------------------------------------------
+//
+// FUNCTION        : FinishFoundNode
+//
+// DESCRIPTION     : Loads a found skeleton node and updates the last access
+//                   time of its archive.
+//
+// ARGUMENTS PASSED: psFoundNode - found node
+//                   currentTime - last access time for the archive
+//
+// RETURN VALUE    :
+// PRE-CONDITIONS  :
+// POST-CONDITIONS :
+// IMPORTANT NOTES :
+//------------------------------------------------------------------------
+void DMTree::FinishFoundNode( DMNode* psFoundNode, XPL_CLK_CLOCK_T currentTime )
+{
+  if ( psFoundNode->IsSkeletonNode() && psFoundNode->pArchive )
+    psFoundNode->pArchive->deserialize(this);
+  else if ( psFoundNode->IsSkeletonNode() ) {
+    // subtree left out when its archive was loaded
+    while ( LoadSkeletonSubtree( psFoundNode ) );
+  }
+
+  // e50024
+  // Update last access time of the archive
+  DMNode * pNode = psFoundNode;
+
+  while ( pNode ) {
+    if ( pNode->pArchive ) {
+      pNode->pArchive->setLastAccessedTime(currentTime);
+      break;
+    }
+    pNode = pNode->pcParentOfNode;
+  }
+}
+
 //------------------------------------------------------------------------
 //
 // FUNCTION        : ParseACL
@@ -575,6 +723,12 @@ DMNode* DMTree::FindNodeInNextSiblingsList(DMNode *psFindNode,
 {
   DMNode *psCurNode = psFindNode;
 
+  // a whole sibling list: look the child up through its parent, which
+  // indexes the children of wide nodes
+  if(psCurNode != NULL && psCurNode->pcParentOfNode != NULL &&
+     psCurNode->pcParentOfNode->pcFirstChild == psCurNode)
+    return psCurNode->pcParentOfNode->GetChildByName(pbURISegment);
+
   while(psCurNode != NULL)
   {
     if(DmStrcmp(psCurNode->abNodeName, pbURISegment) == 0)
@@ -638,6 +792,8 @@ SYNCML_DM_RET_STATUS_T DMTree::InsertNodeIntoNextSiblingsList(
 
   psInsertNode->pcParentOfNode = psNextSiblingStartNode->pcParentOfNode;
   psNextSiblingStartNode->pcNextSibling = psInsertNode;
+  if(psInsertNode->pcParentOfNode != NULL)
+    psInsertNode->pcParentOfNode->IndexChild(psInsertNode);
   return (SYNCML_DM_SUCCESS);
 }
 
@@ -921,6 +1077,8 @@ DMTree::DeleteNode(DMNode *psDeletingNode,
                 if(dm_stat != SYNCML_DM_SUCCESS)
                     return dm_stat;
 
+                m_oURICache.Invalidate();
+                psRemovingNode->pcParentOfNode->UnindexChild(psRemovingNode);
                 psRemovingNode->pcParentOfNode->pcFirstChild = psRemovingNode->pcNextSibling;
                 delete psRemovingNode;
                 psRemovingNode = NULL;
@@ -965,6 +1123,8 @@ DMTree::DeleteNode(DMNode *psDeletingNode,
         if (dm_stat != SYNCML_DM_SUCCESS)
             return dm_stat;
 
+        m_oURICache.Invalidate();
+        psParentNode->UnindexChild(psDeletingNode);
         if (psPrevNode != NULL)
         {
             // If previous node is not equals to NULL then we will
@@ -1025,6 +1185,8 @@ DMTree::DeleteNodesFromTree(DMNode * psStartNode)
 
   XPL_LOG_DM_TMN_Debug(("Entered DMTree::DeleteNodesFromTree \n"));
 
+  m_oURICache.Invalidate();
+
   if (psStartNode != m_psRoot)
   {
       //detach the node.
@@ -1206,6 +1368,7 @@ BOOLEAN DMTree::GetPluginURI(CPCHAR szURI, DMString& strURI, DMString& strShortU
 void DMTree::UnloadArchive(DMNode * psStartNode )
 {
   ResetOPICache();
+  m_oURICache.Invalidate();
 #ifdef LOB_SUPPORT
   ResetESNCache();
 #endif
@@ -1226,6 +1389,8 @@ void DMTree::UnloadArchive(DMNode * psStartNode )
       bSkipChildren = TRUE;
       pNode->ConvertPathToSkeleton( psStartNode );
     }
+    else
+      pNode->m_nFlags &= ~DMNode::enum_NodeSkeleton; // subtree not loaded; freed below
 
     if ( !bSkipChildren && pNode->pcFirstChild )
       pNode = pNode->pcFirstChild;
@@ -1278,20 +1443,103 @@ void DMTree::UnloadArchive(DMNode * psStartNode )
   }
 
   psStartNode->m_nFlags |= DMNode::enum_NodeSkeleton;
+
+  if ( psStartNode->pArchive )
+    psStartNode->pArchive->resetMemorySize();
 }
 
 BOOLEAN DMTree::LoadSkeletonParentArchive( DMNode* pNode )
 {
-  while ( pNode ) {
-    if ( pNode->pArchive ) {
-      if ( pNode->IsSkeletonNode() )
-        return ( (pNode->pArchive->deserialize(this) == SYNCML_DM_SUCCESS) ? TRUE : FALSE );
+  BOOLEAN bLoaded = FALSE;
+  DMNode* pArchiveNode = pNode;
 
-      return FALSE; // parent node already loaded
-    }
+  while ( pArchiveNode && !pArchiveNode->pArchive )
+    pArchiveNode = pArchiveNode->pcParentOfNode;
+
+  if ( !pArchiveNode )
+    return FALSE;
+
+  if ( pArchiveNode->IsSkeletonNode() ) {
+    if ( pArchiveNode->pArchive->deserialize(this) != SYNCML_DM_SUCCESS )
+      return FALSE;
+    bLoaded = TRUE;
+  }
+
+  // subtrees of the archive left out by the load
+  while ( LoadSkeletonSubtree( pNode ) )
+    bLoaded = TRUE;
+
+  return bLoaded;
+}
+
+//------------------------------------------------------------------------
+//
+// FUNCTION        : LoadSkeletonSubtree
+//
+// DESCRIPTION     : Loads the outermost subtree on the path of a node that
+//                   its archive left out when it was loaded. The subtrees
+//                   below it are left out again, so the caller repeats
+//                   until the node itself is loaded.
+//
+// ARGUMENTS PASSED: pNode - node in a loaded archive
+//
+// RETURN VALUE    : TRUE if a subtree was loaded
+// PRE-CONDITIONS  :
+// POST-CONDITIONS :
+// IMPORTANT NOTES : The archive root itself is loaded by
+//                   LoadSkeletonParentArchive.
+//------------------------------------------------------------------------
+BOOLEAN DMTree::LoadSkeletonSubtree( DMNode* pNode )
+{
+  DMNode* pSubtree = NULL;
+
+  while ( pNode && !pNode->pArchive ) {
+    if ( pNode->IsSkeletonNode() )
+      pSubtree = pNode;
     pNode = pNode->pcParentOfNode;
   }
-  return FALSE;
+
+  if ( !pNode || !pSubtree || pNode->IsSkeletonNode() )
+    return FALSE;
+
+  if ( pNode->pArchive->deserializeSubtree(this, pSubtree) != SYNCML_DM_SUCCESS )
+    return FALSE;
+
+  pNode->pArchive->resetMemorySize();
+
+  return pSubtree->IsSkeletonNode() ? FALSE : TRUE;
+}
+
+//------------------------------------------------------------------------
+//
+// FUNCTION        : LoadWholeArchive
+//
+// DESCRIPTION     : Loads the archive of a URI together with the subtrees
+//                   it left out when it was loaded, before the archive is
+//                   changed.
+//
+// ARGUMENTS PASSED: szURI - URI in the archive
+//
+// RETURN VALUE    :
+// PRE-CONDITIONS  :
+// POST-CONDITIONS :
+// IMPORTANT NOTES :
+//------------------------------------------------------------------------
+void DMTree::LoadWholeArchive( CPCHAR szURI )
+{
+  SyncML_DM_Archive* pArchive = GetArchiver().getArchiveByURI( szURI );
+
+  if ( !pArchive )
+    return;
+
+  DMNode* pRoot = pArchive->getRootNode();
+
+  if ( pRoot && pRoot->IsSkeletonNode() &&
+       pArchive->deserialize(this) != SYNCML_DM_SUCCESS )
+    return;
+
+  if ( pArchive->deserializeSubtrees(this) == SYNCML_DM_SUCCESS )
+    pArchive->resetMemorySize();
 }
 
 
@@ -1498,18 +1746,10 @@ void DMTree::OpiSync( DMNode* pNode, const char* szURI )
 
     if ( data[i].m_nStatus == DmtOverlayPluginSyncData::enum_StatusDeleted )
     { // find and delete the node
-      pChild = pNode->pcFirstChild;
-
-      while ( pChild )
-      {
-        if ( pChild->abNodeName == data[i].m_strNodeName )
-        {
-          DeleteNodesFromTree( pChild );
-          break;
-        }
+      pChild = pNode->GetChildByName( data[i].m_strNodeName );
 
-        pChild = pChild->pcNextSibling;
-      }
+      if ( pChild )
+        DeleteNodesFromTree( pChild );
 
     }
   }
@@ -82,6 +82,10 @@ DMTree::LogEvent(CPCHAR pbURI, const DMStringVector & aDeletedChildren)
         return SYNCML_DM_FAIL;
 
     pArchive->setDirty(TRUE);
+    LogArchiveChange(pArchive, pbURI, SYNCML_DM_EVENT_DELETE, NULL);
+
+    if ( m_pChangeListener )
+        RecordTreeChange(pArchive, pbURI, SYNCML_DM_EVENT_DELETE, NULL, SYNCML_DM_FORMAT_INVALID);
 
     return m_oEvtObj.OnNodeDeleted(pArchive, pbURI, aDeletedChildren);
 }
@@ -96,6 +100,7 @@ DMTree::LogEvent(CPCHAR pbURI, const DMStringVector & aDeletedChildren)
 // ARGUMENTS PASSED :   commandType ADD/REPLACE/DELETE/RENAME/INDIRECT UPDATE
 //                                  pbURI - updated node
 //                                  szNewName - new name
+//                                  eFormat - new node format, if known
 // RETURN VALUE     :   SYNCML_DM_RET_STATUS_T
 //                      SYNCML_DM_SUCCESS or SYNCML_DM_FAIL if some
 //                      failure in logCommand occured
@@ -107,7 +112,8 @@ DMTree::LogEvent(CPCHAR pbURI, const DMStringVector & aDeletedChildren)
 SYNCML_DM_RET_STATUS_T
 DMTree::LogEvent(SYNCML_DM_EVENT_ACTION_T eEvent,
                                CPCHAR pbURI,
-                               CPCHAR szNewName)
+                               CPCHAR szNewName,
+                               SYNCML_DM_FORMAT_T eFormat)
 {
     SyncML_DM_Archive * pArchive = m_oArchiver.getArchiveByURI(pbURI);
 
@@ -115,10 +121,59 @@ DMTree::LogEvent(SYNCML_DM_EVENT_ACTION_T eEvent,
         return SYNCML_DM_FAIL;
 
     pArchive->setDirty(TRUE);
+    LogArchiveChange(pArchive, pbURI, eEvent, szNewName);
+
+    if ( m_pChangeListener )
+        RecordTreeChange(pArchive, pbURI, eEvent, szNewName, eFormat);
 
     return m_oEvtObj.OnNodeChanged( pArchive, pbURI, eEvent, szNewName );
 }
 
+//------------------------------------------------------------------------
+// FUNCTION         :   LogArchiveChange
+// DESCRIPTION      :   Records the nodes changed by a command in the archive,
+//                      so that the archive can write only them.
+//                      Add, Delete and Rename change the subtree of the node,
+//                      Add and Delete also the timestamp of the parent.
+// ARGUMENTS PASSED :   pArchive - archive containing the node
+//                      pbURI - updated node
+//                      eAction - ADD/REPLACE/DELETE/RENAME/INDIRECT UPDATE
+//                      szNewName - new name for RENAME
+// RETURN VALUE     :   void
+//------------------------------------------------------------------------
+void DMTree::LogArchiveChange(SyncML_DM_Archive * pArchive,
+                              CPCHAR pbURI,
+                              SYNCML_DM_EVENT_ACTION_T eAction,
+                              CPCHAR szNewName)
+{
+  if ( eAction != SYNCML_DM_EVENT_ADD && eAction != SYNCML_DM_EVENT_DELETE &&
+       eAction != SYNCML_DM_EVENT_RENAME )
+  {
+    pArchive->logChange(pbURI, FALSE);
+    return;
+  }
+
+  pArchive->logChange(pbURI, TRUE);
+
+  DMString strParentURI = pbURI, strLastSegment;
+
+  if ( !GetLastSegmentOfURI(strParentURI, strLastSegment) )
+  {
+    // no parent or out of memory: the whole archive is written
+    pArchive->logChange(pArchive->getURI(), TRUE);
+    return;
+  }
+
+  if ( eAction == SYNCML_DM_EVENT_RENAME )
+  {
+    strParentURI += "/";
+    strParentURI += szNewName;
+    pArchive->logChange(strParentURI, TRUE);
+  }
+  else if ( m_oArchiver.getArchiveByURI(strParentURI) == pArchive )
+    pArchive->logChange(strParentURI, FALSE);
+}
+
 //------------------------------------------------------------------------
 // FUNCTION         :   LogESNCommandForArchiver
 // DESCRIPTION     :   Logging the command which was executed
@@ -248,6 +303,8 @@ void DMTree::DetachNodeFromTree(DMNode *psDeletingNode)
     DMNode *psPrevNode = NULL;
     DMNode *psListNode = NULL;
 
+    m_oURICache.Invalidate();
+
     psParentNode = psDeletingNode->pcParentOfNode;
     psListNode = psParentNode->pcFirstChild;
 
@@ -262,6 +319,7 @@ void DMTree::DetachNodeFromTree(DMNode *psDeletingNode)
 
     if(psListNode == psDeletingNode)
     {
+       psParentNode->UnindexChild(psDeletingNode);
        if(psPrevNode != NULL)
        {
          // If previous node is not equals to NULL then we will
@@ -290,6 +348,8 @@ DMTree::DMTree()
     m_wMaxTotLen( SYNCML_DM_URI_MAX_TOTAL_LENGTH ),
     m_wMaxSegLen( SYNCML_DM_URI_MAX_SEGMENT_LENGTH ),
     m_nRefCount( 0 ),
+    m_pChangeListener( NULL ),
+    m_pChangeListenerContext( NULL ),
     m_currentTime( 0 )
 {
   m_strPrincipal = "";
@@ -562,6 +622,7 @@ void DMTree::InternalDeInit()
 {
   XPL_LOG_DM_TMN_Debug(("Uninitializing, releasing locks...\n" ));
   m_oLockContextManager.ReleaseAll();
+  m_aPendingChanges.clear();
 
   XPL_LOG_DM_TMN_Debug(("Uninitializing ACL...\n" ));
   m_oACLObj.DeInit();
@@ -582,6 +643,10 @@ void DMTree::InternalDeInit()
   ResetOPICache();
   m_oOPICacheData.aPD.clear();
 
+  XPL_LOG_DM_TMN_Debug(("Uninitializing, URI cache: %d hits, %d parent hits, %d misses, %d invalidations\n",
+                         m_oURICache.GetStats().nHits, m_oURICache.GetStats().nParentHits,
+                         m_oURICache.GetStats().nMisses, m_oURICache.GetStats().nInvalidations ));
+
   XPL_LOG_DM_TMN_Debug(("Uninitializing, deleting nodes...\n" ));
   if( m_psRoot )
   {
@@ -626,6 +691,121 @@ SYNCML_DM_RET_STATUS_T DMTree::Flush()
   return m_oPluginManager.Init( &m_oEnv, this );
 }
 
+void DMTree::SetTreeChangeListener(DM_TREE_CHANGE_LISTENER_T pListener, void * pContext)
+{
+  m_pChangeListener = pListener;
+  m_pChangeListenerContext = pContext;
+
+  if ( !m_pChangeListener )
+    m_aPendingChanges.clear();
+}
+
+//------------------------------------------------------------------------
+// FUNCTION         :   RecordTreeChange
+// DESCRIPTION      :   Queues a change for the tree change listener.
+//                      Consecutive changes of the same node are merged,
+//                      so repeated Replace commands produce a single entry.
+// ARGUMENTS PASSED :   pArchive - archive containing the node
+//                      pbURI - updated node
+//                      eAction - ADD/REPLACE/DELETE/RENAME/INDIRECT UPDATE
+//                      szNewName - new node name for RENAME, NULL otherwise
+//                      eFormat - new node format
+// RETURN VALUE     :   void
+//------------------------------------------------------------------------
+void DMTree::RecordTreeChange(SyncML_DM_Archive * pArchive,
+                              CPCHAR pbURI,
+                              SYNCML_DM_EVENT_ACTION_T eAction,
+                              CPCHAR szNewName,
+                              SYNCML_DM_FORMAT_T eFormat)
+{
+  INT32 nLast = m_aPendingChanges.size() - 1;
+
+  if ( nLast >= 0 && m_aPendingChanges[nLast].m_strURI == pbURI )
+  {
+    DMTreeChange & oLast = m_aPendingChanges[nLast];
+    oLast.m_eAction |= eAction;
+    if ( eAction == SYNCML_DM_EVENT_DELETE || eFormat != SYNCML_DM_FORMAT_INVALID )
+      oLast.m_eFormat = eFormat;
+    if ( eAction == SYNCML_DM_EVENT_RENAME && szNewName )
+      oLast.m_strNewName = szNewName;
+    return;
+  }
+
+  DMTreeChange oChange;
+  oChange.m_strURI = pbURI;
+  if ( eAction == SYNCML_DM_EVENT_RENAME && szNewName )
+    oChange.m_strNewName = szNewName;
+  oChange.m_eAction = eAction;
+  oChange.m_eFormat = eFormat;
+  oChange.m_pArchive = pArchive;
+  m_aPendingChanges.push_back(oChange);
+}
+
+// moves the pending changes of archives in nFileSet into aChanges
+void DMTree::ExtractTreeChanges(FILESETTYPE nFileSet, DMTreeChangeVector & aChanges)
+{
+  SyncML_DM_Archive * aArchives[MAX_ARCHIVES];
+  INT32 nArchives = 0;
+  FILESETTYPE set = 1;
+
+  for ( INT32 i = 0; i < m_oArchiver.getNumArchives(); i++, set <<= 1 )
+  {
+    if ( (nFileSet & set) != 0 )
+      aArchives[nArchives++] = m_oArchiver.getArchive(i);
+  }
+
+  DMTreeChangeVector aRemaining;
+  for ( INT32 nChange = 0; nChange < m_aPendingChanges.size(); nChange++ )
+  {
+    const DMTreeChange & oChange = m_aPendingChanges[nChange];
+    BOOLEAN bInSet = FALSE;
+
+    for ( INT32 i = 0; i < nArchives && !bInSet; i++ )
+      bInSet = (aArchives[i] == oChange.m_pArchive);
+
+    if ( bInSet )
+      aChanges.push_back(oChange);
+    else
+      aRemaining.push_back(oChange);
+  }
+
+  m_aPendingChanges = aRemaining;
+}
+
+//------------------------------------------------------------------------
+// FUNCTION         :   DispatchTreeChanges
+// DESCRIPTION      :   Delivers all changes committed with nFileSet to the
+//                      listener in a single call.
+// ARGUMENTS PASSED :   nFileSet - file set which was just serialized
+// RETURN VALUE     :   void
+// PRE-CONDITIONS   :   called after successful serialization; the changes of
+//                      a failed one stay queued for the next commit
+//------------------------------------------------------------------------
+void DMTree::DispatchTreeChanges(FILESETTYPE nFileSet)
+{
+  if ( !m_pChangeListener || m_aPendingChanges.size() == 0 )
+    return;
+
+  DMTreeChangeVector aChanges;
+  ExtractTreeChanges(nFileSet, aChanges);
+
+  if ( aChanges.size() > 0 )
+  {
+    XPL_LOG_DM_TMN_Debug(("DMTree::DispatchTreeChanges: %d changes\n", aChanges.size()));
+    m_pChangeListener(aChanges, m_pChangeListenerContext);
+  }
+}
+
+// drops the changes of a rolled back file set
+void DMTree::DiscardTreeChanges(FILESETTYPE nFileSet)
+{
+  if ( m_aPendingChanges.size() == 0 )
+    return;
+
+  DMTreeChangeVector aChanges;
+  ExtractTreeChanges(nFileSet, aChanges);
+}
+
 void DMTree::GetTreeMountEntry (CPCHAR &p_Uri,  CPCHAR& p_TreePath,  UINT16   index) const
 {
   m_oTreeMountObj.GetTreeMountEntry( p_Uri, p_TreePath, index );
@@ -909,6 +1089,9 @@ SYNCML_DM_RET_STATUS_T DMTree::AddNodeInternal( DMAddData & oAddData,
     return (SYNCML_DM_COMMAND_NOT_ALLOWED);
   }
 
+  // the archive is written back as a whole
+  LoadWholeArchive(strURI);
+
   XPL_LOG_DM_TMN_Debug(("DMTree::Add: Get Parent Node from:%s\n",strURI.c_str()));
   DMNode  *psParentNodeOftheAddingNode = FindNodeByURI(strURI);
   BOOLEAN bInPlugin = FALSE;
@@ -1139,7 +1322,7 @@ SYNCML_DM_RET_STATUS_T DMTree::AddNodeInternal( DMAddData & oAddData,
 #endif
    XPL_LOG_DM_TMN_Debug(("DMTree::Add: log command and send event\n"));
    //Logging the command which was executed successfully in the log file
-   LogEvent(SYNCML_DM_EVENT_ADD, oAddData.getURI());
+   LogEvent(SYNCML_DM_EVENT_ADD, oAddData.getURI(), NULL, oAddData.m_nFormat);
    if ( asChildDepend.size() > 0 )
       CheckForIndirectUpdates( oAddData.getURI(), asChildDepend, psTheNode );
 
@@ -1239,6 +1422,9 @@ SYNCML_DM_RET_STATUS_T DMTree::Delete(CPCHAR pbURI,
     return (SYNCML_DM_COMMAND_NOT_ALLOWED);
   }
 
+  // the archive is written back as a whole
+  LoadWholeArchive(strURI);
+
   psDeletingNode = FindNodeByURI(strURI);
   BOOLEAN bIsEnabled;
   bIsEnabled = IsUriEnabled(strURI);
@@ -1695,6 +1881,117 @@ SYNCML_DM_RET_STATUS_T DMTree::Get(CPCHAR pbUri,
   return oReturnData.set(bNodeFormat,strData,strData.length(),NULL);
 }
 
+//------------------------------------------------------------------------
+// FUNCTION        : PrefetchPluginValues
+// DESCRIPTION     : Starts reading the values of plug-in leaf nodes which
+//                   a Get command is about to read. The URIs are grouped
+//                   by plug-in root and each plug-in tree is asked to read
+//                   its nodes in the background, so plug-ins under
+//                   different roots are read in parallel.
+// ARGUMENTS PASSED: aURIs -- URIs of the leaf nodes, without properties
+// RETURN VALUE    : SYNCML_DM_SUCCESS; prefetching is only a hint, the
+//                   values are read and checked again by Get()
+// PRE-CONDITIONS  : ONLY THE DM ENGINE INVOKES THIS,it is an INTERNAL
+//                   METHOD
+// POST-CONDITIONS :
+// IMPORTANT NOTES : URIs the server has no Get access to are skipped, so
+//                   no plug-in is read for a node it can't read itself.
+//------------------------------------------------------------------------
+SYNCML_DM_RET_STATUS_T DMTree::PrefetchPluginValues(const DMStringVector & aURIs)
+{
+  m_oLockContextManager.OnTreeAccessed();
+
+  DMVector<DMNode*> aRootNodes;     // plug-in root of each prefetched URI
+  DMStringVector aPluginPaths;      // URI relative to the plug-in root
+
+  for ( INT32 i = 0; i < aURIs.size(); i++ )
+  {
+    DMString strURI;
+    DMString strPluginURI;
+
+    if ( !GetPluginURI( aURIs[i], strURI, strPluginURI ) )
+      continue;
+
+    if ( !VerifyArchiveReadAccess(strPluginURI) || !IsUriEnabled(strPluginURI) )
+      continue;
+
+    DMNode *psNode = FindNodeByURI( strPluginURI );
+    if ( psNode == NULL || !psNode->isPlugin() || psNode->IsOverlayPI() )
+      continue;
+
+    if ( psNode->IsGetAccess(strPluginURI) == FALSE ||
+         IsValidServer(strPluginURI, SYNCML_DM_GET_ACCESS_TYPE,
+                       SYNCML_DM_REQUEST_TYPE_SERVER, TRUE, TRUE) != SYNCML_DM_SUCCESS )
+      continue;
+
+    CPCHAR pPluginPath = ((DMPluginRootNode*)psNode)->GetPluginURI(strPluginURI);
+    if ( DmStrlen(pPluginPath) == 0 )
+      continue;
+
+    aRootNodes.push_back(psNode);
+    aPluginPaths.push_back(DMString(pPluginPath));
+  }
+
+  for ( INT32 i = 0; i < aRootNodes.size(); i++ )
+  {
+    DMNode *psRoot = aRootNodes[i];
+    if ( psRoot == NULL )
+      continue;
+
+    // collect the paths of this root and mark them done
+    DMStringVector aPaths;
+    for ( INT32 j = i; j < aRootNodes.size(); j++ )
+    {
+      if ( aRootNodes[j] == psRoot )
+      {
+        aPaths.push_back(aPluginPaths[j]);
+        aRootNodes[j] = NULL;
+      }
+    }
+
+    PDmtAPIPluginTree ptrTree;
+    if ( ((DMPluginRootNode*)psRoot)->GetTree(ptrTree) != SYNCML_DM_SUCCESS )
+      continue;
+
+    // only plug-ins which export the prefetch interface read ahead
+    DmtPrefetchPluginTree *pPrefetcher =
+      ((DMPluginRootNode*)psRoot)->GetPlugin()->GetPrefetchTree(ptrTree);
+    if ( pPrefetcher == NULL )
+      continue;
+
+    SYNCML_DM_RET_STATUS_T dm_stat = pPrefetcher->PrefetchNodeValues(aPaths);
+    XPL_LOG_DM_TMN_Debug(("PrefetchPluginValues: %d nodes, status %d\n", aPaths.size(), dm_stat));
+    if ( dm_stat == SYNCML_DM_SUCCESS )
+    {
+      m_aPrefetchTrees.push_back(ptrTree);
+      m_aPrefetchers.push_back(pPrefetcher);
+    }
+  }
+
+  return SYNCML_DM_SUCCESS;
+}
+
+//------------------------------------------------------------------------
+// FUNCTION        : ClearPluginPrefetch
+// DESCRIPTION     : Drops the values the plug-in trees prefetched for a Get
+//                   command and nobody read, so they aren't returned to a
+//                   later command after the plug-in changed them.
+// ARGUMENTS PASSED:
+// RETURN VALUE    :
+// PRE-CONDITIONS  : ONLY THE DM ENGINE INVOKES THIS, after the items of
+//                   the Get command which called PrefetchPluginValues()
+// POST-CONDITIONS :
+// IMPORTANT NOTES :
+//------------------------------------------------------------------------
+void DMTree::ClearPluginPrefetch()
+{
+  for ( INT32 i = 0; i < m_aPrefetchers.size(); i++ )
+    m_aPrefetchers[i]->ClearPrefetchedValues();
+
+  m_aPrefetchers.clear();
+  m_aPrefetchTrees.clear();
+}
+
 //------------------------------------------------------------------------
 // FUNCTION        : InternalGetAttributes
 // DESCRIPTION     : This method is called INTERNALLY by the DM Engine(UA)
@@ -1972,7 +2269,7 @@ SYNCML_DM_RET_STATUS_T DMTree::ReplaceNodeInternal( const DMString&        strUR
 
   if(wReturnStatusCode == SYNCML_DM_SUCCESS)
   {
-    LogEvent(SYNCML_DM_EVENT_REPLACE,oReplaceData.getURI());
+    LogEvent(SYNCML_DM_EVENT_REPLACE,oReplaceData.getURI(),NULL,psReplacingNode->getFormat());
 
 #ifdef LOB_SUPPORT
     if(psReplacingNode->IsESN())
@@ -2116,7 +2413,8 @@ SYNCML_DM_RET_STATUS_T DMTree::ReplaceNameProperty( const DMString&         strU
     if((wURIValidateRetCode == SYNCML_DM_COMMAND_ON_NAME_PROPERTY) && !bInPlugin)
     {
       origName = psReplacingNode->abNodeName;
-      psReplacingNode->abNodeName = oReplaceData.getCharData();
+      psReplacingNode->SetNodeName(oReplaceData.getCharData());
+      m_oURICache.Invalidate();
     }
 
     DMString strParentURI = strURI, strLastSegment;
@@ -2137,7 +2435,10 @@ SYNCML_DM_RET_STATUS_T DMTree::ReplaceNameProperty( const DMString&         strU
     if(wURIValidateRetCode == SYNCML_DM_COMMAND_ON_NAME_PROPERTY)
     {
         if (!bInPlugin)
-            psReplacingNode->abNodeName = origName;
+        {
+            psReplacingNode->SetNodeName(origName.c_str());
+            m_oURICache.Invalidate();
+        }
     }
 
     if(wReturnStatusCode != SYNCML_DM_SUCCESS)
@@ -2152,6 +2453,7 @@ SYNCML_DM_RET_STATUS_T DMTree::ReplaceNameProperty( const DMString&         strU
   {
     if (!bInPlugin) {
         psReplacingNode->SetName( oReplaceData.getURI(), oReplaceData.getCharData());
+        m_oURICache.Invalidate();
     }
 
     LogEvent(SYNCML_DM_EVENT_RENAME,strURI,oReplaceData.getCharData());
@@ -2299,6 +2601,9 @@ SYNCML_DM_RET_STATUS_T DMTree::Replace( DMAddData & oReplaceData,
     return (SYNCML_DM_COMMAND_NOT_ALLOWED);
   }
 
+  // the archive is written back as a whole
+  LoadWholeArchive(strURI);
+
   DMNode *psReplacingNode = FindNodeByURI(strURI);
 
   BOOLEAN bIsEnabled;
@@ -2628,6 +2933,7 @@ SYNCML_DM_RET_STATUS_T DMTree::AddNode(DMNode **psNodeObject,
     if ( pParent ) {
       pChild->pcNextSibling = pParent->pcFirstChild;
       pParent->pcFirstChild = pChild;
+      pParent->IndexChild(pChild);
     }
   } else {
     if ( pNewNode )
@@ -2709,6 +3015,9 @@ BOOLEAN DMTree::GetParentOfKeyValue(CPCHAR pbValueOfKey,
     strURI += "/";
     strURI += psFindNode->abNodeName;
 
+    // children left out when the archive was loaded
+    while ( LoadSkeletonSubtree( psFindNode ) );
+
     psKeyNode = FindNodeInNextSiblingsList(psFindNode->pcFirstChild,pbKey);
     if(psKeyNode != NULL)
     {
@@ -3060,6 +3369,7 @@ DMNode* DMTree::CreateSkeletonNode( CPCHAR pbURI )
 
       pChild->pcNextSibling = psParentNode->pcFirstChild;
       psParentNode->pcFirstChild = pChild;
+      psParentNode->IndexChild(pChild);
     }
 
     psParentNode = pChild;
@@ -3071,7 +3381,12 @@ DMNode* DMTree::CreateSkeletonNode( CPCHAR pbURI )
 // function "detaches" old node from the tree and inserts new node in the same place.
 void DMTree::SubstituteNode( DMNode* pOldNode, DMNode* pNewNode )
 {
+  m_oURICache.Invalidate();
+
   // parent
+  if ( pOldNode->pcParentOfNode )
+    pOldNode->pcParentOfNode->UnindexChild(pOldNode);
+
   if ( pOldNode->pcParentOfNode && pOldNode->pcParentOfNode->pcFirstChild == pOldNode )
     pOldNode->pcParentOfNode->pcFirstChild = pNewNode;
 
@@ -3095,6 +3410,8 @@ void DMTree::SubstituteNode( DMNode* pOldNode, DMNode* pNewNode )
     pNode = pNode->pcNextSibling;
   }
 
+  if ( pNewNode->pcParentOfNode )
+    pNewNode->pcParentOfNode->IndexChild(pNewNode);
 }
 
 /**
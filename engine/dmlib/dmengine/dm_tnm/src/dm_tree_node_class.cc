@@ -37,7 +37,8 @@ class DMTree;
 DMNode::DMNode(BOOLEAN bPlugin): 
   pcParentOfNode(NULL), 
   pcFirstChild(NULL),
-  pcNextSibling(NULL)
+  pcNextSibling(NULL),
+  m_pChildIndex(NULL)
 {
   bFormat = 0;
   m_nFlags = bPlugin ? enum_NodePlugin : 0;
@@ -62,8 +63,7 @@ DMNode::~DMNode()
       }
   }
 
-
-
+  DropChildIndex();
 }
 
 
@@ -77,10 +77,21 @@ SYNCML_DM_RET_STATUS_T DMNode::SetName(CPCHAR pbUri, CPCHAR pbNewName)
 {
     SYNCML_DM_RET_STATUS_T sRetStatus = SYNCML_DM_SUCCESS;
 
-    this->abNodeName = pbNewName;
+    SetNodeName(pbNewName);
     return sRetStatus;
 }
 
+void DMNode::SetNodeName(CPCHAR szName)
+{
+    if ( pcParentOfNode )
+      pcParentOfNode->UnindexChild(this);
+
+    abNodeName = szName;
+
+    if ( pcParentOfNode )
+      pcParentOfNode->IndexChild(this);
+}
+
 SYNCML_DM_RET_STATUS_T DMNode::GetTitle(CPCHAR pbUri,  DMString& ppbTitle)
 {
     ppbTitle = m_strTitle;
@@ -115,14 +126,49 @@ SYNCML_DM_RET_STATUS_T DMNode::SetVerNo(CPCHAR pbUri, UINT16 verNo)
 
 DMNode* DMNode::GetChildByName( CPCHAR szName ) const
 {
+  if ( m_pChildIndex )
+    return m_pChildIndex->Find(szName);
+
   DMNode *pNode = pcFirstChild;
+  INT32 nWalked = 0;
 
-  while ( pNode && pNode->abNodeName != szName )
+  while ( pNode && pNode->abNodeName != szName ) {
     pNode = pNode->pcNextSibling;
+    nWalked++;
+  }
+
+  // wide node: index the children so the next lookups don't walk the list
+  if ( nWalked >= DMNodeChildIndex::DM_CHILD_INDEX_MIN_CHILDREN )
+    m_pChildIndex = DMNodeChildIndex::Build(pcFirstChild);
 
   return pNode;
 }
 
+void DMNode::IndexChild(DMNode *pChild)
+{
+  if ( m_pChildIndex && !m_pChildIndex->Add(pChild) )
+    DropChildIndex();
+}
+
+void DMNode::UnindexChild(DMNode *pChild)
+{
+  if ( !m_pChildIndex )
+    return;
+
+  m_pChildIndex->Remove(pChild);
+
+  if ( m_pChildIndex->Size() < DMNodeChildIndex::DM_CHILD_INDEX_MIN_CHILDREN / 2 )
+    DropChildIndex();
+}
+
+void DMNode::DropChildIndex()
+{
+  if ( m_pChildIndex ) {
+    delete m_pChildIndex;
+    m_pChildIndex = NULL;
+  }
+}
+
 DMNode* DMNode::GetNextSerializeItem() 
 {
   DMNode *pItem = this;
@@ -149,6 +195,20 @@ void DMNode::ConvertPathToSkeleton( DMNode* psStartNode )
     pNode->m_nFlags |= enum_NodeSkeleton;
 }
 
+UINT32 DMNode::GetMemorySize() const
+{
+  UINT32 nSize = sizeof(DMNode) + abNodeName.length() + psType_.length() + m_strTitle.length();
+
+  const DMBuffer *pData = getData();
+  if ( pData )
+    nSize += sizeof(DMBuffer) + pData->getSize();
+
+  if ( m_pChildIndex )
+    nSize += m_pChildIndex->GetMemorySize();
+
+  return nSize;
+}
+
 CPCHAR DMNode::getType() const
 {
     if (psType_ == DEFAULT_MIME_TYPE_INTERNAL) {
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+//------------------------------------------------------------------------
+//
+//   Module Name: dm_tree_uri_cache.cc
+//
+//   General Description:Contains the implementations of the methods of
+//                       DMURICache class.
+//------------------------------------------------------------------------
+
+#include "dmdefs.h"
+#include "dm_tree_uri_cache.H"
+
+DMURICache::DMURICache() :
+  m_nClock(0),
+  m_bUsed(FALSE)
+{
+  for ( INT32 i = 0; i < DM_URI_CACHE_SIZE; i++ )
+  {
+    m_aEntries[i].m_nLength = 0;
+    m_aEntries[i].m_nHash = 0;
+    m_aEntries[i].m_pNode = NULL;
+    m_aEntries[i].m_nLastUse = 0;
+    m_aEntries[i].m_nESN = DM_URI_CACHE_ESN_UNKNOWN;
+  }
+  memset(&m_oStats, 0, sizeof(m_oStats));
+}
+
+UINT32 DMURICache::Hash(CPCHAR szURI, INT32 nLength)
+{
+  // FNV-1a
+  UINT32 nHash = 2166136261U;
+  for ( INT32 i = 0; i < nLength; i++ )
+  {
+    nHash ^= (UINT8)szURI[i];
+    nHash *= 16777619U;
+  }
+  return nHash;
+}
+
+DMURICache::Entry * DMURICache::Lookup(CPCHAR szURI, INT32 nLength, UINT32 nHash)
+{
+  for ( INT32 i = 0; i < DM_URI_CACHE_SIZE; i++ )
+  {
+    Entry & oEntry = m_aEntries[i];
+
+    if ( oEntry.m_pNode && oEntry.m_nHash == nHash && oEntry.m_nLength == nLength &&
+         DmStrncmp(oEntry.m_strURI.c_str(), szURI, nLength) == 0 )
+      return &oEntry;
+  }
+  return NULL;
+}
+
+DMNode * DMURICache::Find(CPCHAR szURI, INT32 nLength, UINT8 * pnESN)
+{
+  if ( !m_bUsed )
+    return NULL;
+
+  Entry * pEntry = Lookup(szURI, nLength, Hash(szURI, nLength));
+  if ( !pEntry )
+    return NULL;
+
+  pEntry->m_nLastUse = ++m_nClock;
+  if ( pnESN )
+    *pnESN = pEntry->m_nESN;
+
+  return pEntry->m_pNode;
+}
+
+void DMURICache::Put(CPCHAR szURI, INT32 nLength, DMNode * pNode, UINT8 nESN)
+{
+  UINT32 nHash = Hash(szURI, nLength);
+  Entry * pEntry = Lookup(szURI, nLength, nHash);
+
+  if ( !pEntry )
+  {
+    // free entry or the least recently used one
+    pEntry = &m_aEntries[0];
+    for ( INT32 i = 0; i < DM_URI_CACHE_SIZE && pEntry->m_pNode; i++ )
+    {
+      if ( !m_aEntries[i].m_pNode || m_aEntries[i].m_nLastUse < pEntry->m_nLastUse )
+        pEntry = &m_aEntries[i];
+    }
+
+    if ( !pEntry->m_strURI.assign(szURI, nLength) )
+    {
+      // out of memory; not cached
+      pEntry->m_pNode = NULL;
+      return;
+    }
+
+    pEntry->m_nLength = nLength;
+    pEntry->m_nHash = nHash;
+  }
+
+  pEntry->m_pNode = pNode;
+  pEntry->m_nESN = nESN;
+  pEntry->m_nLastUse = ++m_nClock;
+  m_bUsed = TRUE;
+}
+
+void DMURICache::SetESN(CPCHAR szURI, UINT8 nESN)
+{
+  INT32 nLength = DmStrlen(szURI);
+  Entry * pEntry = Lookup(szURI, nLength, Hash(szURI, nLength));
+
+  if ( pEntry )
+    pEntry->m_nESN = nESN;
+}
+
+void DMURICache::Invalidate()
+{
+  if ( !m_bUsed )
+    return;
+
+  // the URI strings are kept until the entries are reused
+  for ( INT32 i = 0; i < DM_URI_CACHE_SIZE; i++ )
+    m_aEntries[i].m_pNode = NULL;
+
+  m_bUsed = FALSE;
+  m_oStats.nInvalidations++;
+}
@@ -266,6 +266,8 @@ private:
   SYNCML_DM_FILE_TYPE_T m_nLockWithConfig_ID[2]; 
   /** Memory aging time */
   INT32 m_nAgingTime;
+  /** Memory budget of the loaded files in bytes, 0 if not limited */
+  UINT32 m_nMemoryBudget;
 #ifndef DM_NO_LOCKING
   /** Global lock to share access to DMT */
   DMCriticalSection m_csTNMLock;  
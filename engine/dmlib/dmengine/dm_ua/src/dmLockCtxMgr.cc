@@ -56,6 +56,15 @@ DMLockContextManager::DMLockContextManager()
         INT32 agingTime = DmAtoi(dm_aging_env);
         m_nAgingTime = ((agingTime>=0) ? agingTime : 0); 
     }  
+
+    // memory budget in KB
+    m_nMemoryBudget = 0;
+    CPCHAR dm_budget_env = XPL_DM_GetEnv(SYNCML_DM_MEMORY_BUDGET);
+    if ( dm_budget_env != NULL )
+    {
+        INT32 budget = DmAtoi(dm_budget_env);
+        m_nMemoryBudget = ((budget>0) ? (UINT32)budget * 1024 : 0);
+    }
   
 #ifndef DM_NO_LOCKING  
     m_ptrFM = NULL;
@@ -467,7 +476,12 @@ DMLockContextManager::ReleaseContext(INT32 nLockID,
         DmResetMemFailedFlag();
 
         // force to unload all loaded sub-trees and plug-ins
-        m_pTree->Flush(); 
+        m_pTree->Flush();
+    }
+    else if ( m_mapContexts.size() == 0 && m_nMemoryBudget > 0 )
+    {
+        // no node is in use now; unload files down to the budget
+        m_pTree->GetArchiver().CheckMemoryBudget(m_nMemoryBudget); 
     }
   
     return dm_stat;
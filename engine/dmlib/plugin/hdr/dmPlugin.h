@@ -32,6 +32,7 @@ General Description: This file contains the declaration of DMPlugin.
 #include "dmt.hpp"
 #include "xpl_dm_Manager.h"
 #include "dmtPlugin.hpp" 
+#include "dmtPrefetchPlugin.hpp"
 #include "dmtEventData.hpp"
 #include "xpl_Lib.h"
 #include "xpl_Time.h"
@@ -114,6 +115,13 @@ class DMPlugin: public DMEventSubscription, public JemBaseObject
   SYNCML_DM_RET_STATUS_T GetTree(CPCHAR szPath, 
                                  PDmtAPIPluginTree & pTree);
 
+  /**
+  * Retrieves the prefetch interface of the plug-in tree, if the data plug-in has one
+  * \param pTree [in] - plug-in tree returned by GetTree()
+  * \return Return Type (DmtPrefetchPluginTree *), NULL if the plug-in reads values on demand only
+  */
+  DmtPrefetchPluginTree * GetPrefetchTree(PDmtAPIPluginTree & pTree);
+
    /**
   * Verifies if plug-in tree is empty  
   * \return TRUE if is empty 
@@ -205,6 +213,10 @@ private:
                                         DMStringMap & mapParameters,    
                                         PDmtAPIPluginTree & pPluginTree);
 
+  /* Pointer on optional exported function that retrieves prefetch interface of plug-in tree  */
+  SYNCML_DM_RET_STATUS_T (* pfGetPrefetchTree) (PDmtAPIPluginTree & pPluginTree,
+                                                DmtPrefetchPluginTree *& pPrefetchTree);
+
   /* Pointer on exported function that performs "Execute" command on a plug-in node  */
  SYNCML_DM_RET_STATUS_T (* pfExecute2) (CPCHAR szPath, 
                                         DMStringMap & mapParameters,
@@ -33,11 +33,10 @@ General Description: This file contains the declaration of DMPluginManager.
 #include "dmt.hpp"
 #include "dmtPlugin.hpp"  
 #include "dmPlugin.h"  
+#include "dmPluginTrie.h"
 #include "dm_tree_typedef.h"
 #include "xpl_Lib.h"
 
-typedef DMVector<PDMPlugin> DMPluginVector;
-
 class CEnv;
 class DMTree;
 
@@ -87,7 +86,8 @@ public:
 
 
   /**
-  * Finds suitable plug-in by specified path (exact match)
+  * Finds suitable plug-in by specified path; the first registered plug-in
+  * mounted on the path or on one of its parents
   * \param type [in] - plug-in type
   * \param szPath [in] - plug-in path
   * \return Return Type (PDMPlugin) 
@@ -184,6 +184,14 @@ private:
    DMPluginVector m_execPlugins;
    /* Commit plug-ins vector */
    DMPluginVector m_commPlugins;
+   /* Data plug-ins keyed on path segments */
+   DMPluginTrie m_dataTrie;
+   /* Constraint plug-ins keyed on path segments */
+   DMPluginTrie m_constTrie;
+   /* Executable plug-ins keyed on path segments */
+   DMPluginTrie m_execTrie;
+   /* Commit plug-ins keyed on path segments */
+   DMPluginTrie m_commTrie;
    /* Blocked plug-ins vector */
    DMStringVector m_oBlockedPlugins;
 
@@ -235,13 +243,13 @@ private:
 
 
   /**
-  * Matches node path and plun-in path  (due to multinode support)
-  * \param szNodePath [in] - DM node path
-  * \param szPluginPath [in] -  plug-in path
-  * \return TRUE if paths are matched 
-  */    
-  static BOOLEAN PathMatch(CPCHAR szNodePath,  
-                           CPCHAR szPluginPath);
+  * Retrieves plug-in trie of specified type
+  * \param type [in] - plug-in type
+  * \return Return Type (DMPluginTrie *)
+  * - pointer on plug-in trie if operation is completed successfully,
+  * - NULL otherwise
+  */
+  DMPluginTrie * GetPluginTrie(SYNCML_DM_PLUGIN_TYPE_T type);
 
   /**
   * Parses line from a config file 
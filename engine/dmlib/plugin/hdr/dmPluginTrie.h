@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef DMPLUGINTRIE_H
+#define DMPLUGINTRIE_H
+
+#ifndef __cplusplus
+#error "This is a C++ header file; it requires C++ to compile."
+#endif
+
+/*==================================================================================================
+
+Header Name: dmPluginTrie.h
+
+General Description: This file contains the declaration of DMPluginTrie.
+
+==================================================================================================*/
+
+#include "dmPlugin.h"
+
+typedef DMVector<PDMPlugin> DMPluginVector;
+
+/**
+ * Trie node; one per distinct plug-in path prefix
+ */
+struct DMPluginTrieNode
+{
+  /**
+  * Constructor
+  * \param szSegment [in] - URI segment of the node
+  * \param nLen [in] - length of the segment
+  */
+  DMPluginTrieNode(CPCHAR szSegment, INT32 nLen);
+
+  /**
+  * Destructor, deletes the sub tree
+  */
+  ~DMPluginTrieNode();
+
+  /* URI segment of the node */
+  DMString m_strSegment;
+  /* Child nodes sorted by segment, "*" excluded */
+  DMVector<DMPluginTrieNode*> m_aChildren;
+  /* Child node for the "*" segment */
+  DMPluginTrieNode * m_pWildcard;
+  /* Registration indexes of plug-ins mounted on this path, ascending */
+  DMVector<INT32> m_aIndexes;
+};
+
+/**
+ * Plug-in registry keyed on URI segments. Looking up the plug-ins of a URI walks
+ * the segments of the URI instead of matching every registered plug-in path.
+ * A "*" segment of a plug-in path matches any one segment of a URI. When several
+ * plug-ins match, the one registered first wins, as it did with linear matching.
+ * Plug-in paths with "*" inside a segment (for example "./A/B*") are not kept in
+ * the trie; they are matched one by one.
+ */
+class DMPluginTrie
+{
+public:
+  /**
+  * Default constructor
+  */
+  DMPluginTrie();
+
+  /**
+  * Destructor
+  */
+  ~DMPluginTrie();
+
+  /**
+  * Registers plug-in on its path
+  * \param pPlugin [in] - smart pointer on plug-in object
+  */
+  void Add(const PDMPlugin & pPlugin);
+
+  /**
+  * Removes all plug-ins
+  */
+  void Clear();
+
+  /**
+  * Retrieves number of registered plug-ins
+  * \return number of plug-ins
+  */
+  INT32 Size() const { return m_aPlugins.size(); }
+
+  /**
+  * Finds first registered plug-in mounted on the node path or on one of its parents
+  * \param szPath [in] - node path
+  * \return Return Type (PDMPlugin)
+  * - smart pointer on plug-in object if operation is completed successfully,
+  * - NULL otherwise
+  */
+  PDMPlugin Find(CPCHAR szPath) const;
+
+  /**
+  * Finds first registered plug-in with the specified path (exact match)
+  * \param szPath [in] - plug-in path
+  * \return Return Type (PDMPlugin)
+  * - smart pointer on plug-in object if operation is completed successfully,
+  * - NULL otherwise
+  */
+  PDMPlugin FindExact(CPCHAR szPath) const;
+
+  /**
+  * Retrieves plug-ins mounted on the sub tree, in registration order
+  * \param szPath [in] - root path of sub tree; empty for all plug-ins
+  * \param aPlugins [out] - list of requested plug-ins
+  */
+  void GetPlugins(CPCHAR szPath, DMPluginVector & aPlugins) const;
+
+  /**
+  * Matches node path and plug-in path character by character; the rest of
+  * the plug-in path after "*" has to be found in the rest of the node path.
+  * \param szNodePath [in] - DM node path
+  * \param szPluginPath [in] -  plug-in path
+  * \return TRUE if paths are matched
+  */
+  static BOOLEAN PathMatch(CPCHAR szNodePath,
+                           CPCHAR szPluginPath);
+
+private:
+  /* Root of the trie */
+  DMPluginTrieNode * m_pRoot;
+  /* Plug-ins in registration order */
+  DMPluginVector m_aPlugins;
+  /* Registration indexes of plug-ins not kept in the trie */
+  DMVector<INT32> m_aIrregular;
+
+  /**
+  * Verifies that every segment of a plug-in path is either "*" or has no "*"
+  * \param szPath [in] - plug-in path
+  * \return TRUE if the path can be kept in the trie
+  */
+  static BOOLEAN IsRegularPath(CPCHAR szPath);
+
+  /**
+  * Extracts next segment of a path
+  * \param szPath [in/out] - rest of a path; set to the start of the segment
+  * \param nLen [out] - length of the segment, 0 at the end of the path
+  * \return pointer on the rest of the path after the segment
+  */
+  static CPCHAR NextSegment(CPCHAR & szPath, INT32 & nLen);
+
+  /**
+  * Looks for child node by segment
+  * \param pNode [in] - parent node
+  * \param szSegment [in] - segment, not necessarily null terminated
+  * \param nLen [in] - length of the segment
+  * \param nPos [out] - position of the child, or position to insert it at
+  * \return pointer on child node if found, NULL otherwise
+  */
+  static DMPluginTrieNode * FindChild(const DMPluginTrieNode * pNode,
+                                      CPCHAR szSegment,
+                                      INT32 nLen,
+                                      INT32 & nPos);
+
+  /**
+  * Walks the trie along a node path and keeps the lowest registration index seen
+  * \param pNode [in] - node matched so far
+  * \param szPath [in] - rest of the node path
+  * \param nBest [in/out] - lowest registration index, -1 if none
+  */
+  static void FindPrefix(const DMPluginTrieNode * pNode,
+                         CPCHAR szPath,
+                         INT32 & nBest);
+
+  /**
+  * Walks the trie along a sub tree path and collects registration indexes below it
+  * \param pNode [in] - node matched so far
+  * \param szPath [in] - rest of the sub tree path
+  * \param aIndexes [out] - collected registration indexes
+  */
+  static void FindSubtree(const DMPluginTrieNode * pNode,
+                          CPCHAR szPath,
+                          DMVector<INT32> & aIndexes);
+
+  /**
+  * Collects registration indexes of a node and all nodes below it
+  * \param pNode [in] - node
+  * \param aIndexes [out] - collected registration indexes
+  */
+  static void CollectAll(const DMPluginTrieNode * pNode,
+                         DMVector<INT32> & aIndexes);
+};
+
+#endif
@@ -40,6 +40,7 @@ DMPlugin::DMPlugin(SYNCML_DM_PLUGIN_TYPE_T type,
     m_mapParameters=mapParameters;
 
     pfGetTree = NULL;
+    pfGetPrefetchTree = NULL;
     pfExecute2 = NULL;
     pfCheckConstraint = NULL;
     pfOnCommit = NULL;
@@ -71,6 +72,7 @@ DMPlugin::UnloadSymbols()
     }
 
     pfGetTree = NULL;
+    pfGetPrefetchTree = NULL;
     pfExecute2 = NULL;
     pfCheckConstraint = NULL;
     pfOnCommit = NULL;
@@ -155,6 +157,26 @@ DMPlugin::GetTree(CPCHAR szPath,
     return dm_stat;
 }
 
+DmtPrefetchPluginTree *
+DMPlugin::GetPrefetchTree(PDmtAPIPluginTree & pTree)
+{
+    DmtPrefetchPluginTree * pPrefetchTree = NULL;
+
+    if ( pTree == NULL || m_bOverlayPlugin )
+      return NULL;
+
+    if ( pfGetPrefetchTree==NULL)
+      LoadSymbol( PLUGIN_DATA_NAME,
+        "DMT_PluginLib_Data_GetPrefetchTree",&m_hLibData,(void **) &pfGetPrefetchTree);
+
+    if (pfGetPrefetchTree != NULL &&
+        pfGetPrefetchTree(pTree,pPrefetchTree) != SYNCML_DM_SUCCESS)
+        pPrefetchTree = NULL;
+
+    XPL_LOG_DM_PLG_Debug(("DMPlugin::GetPrefetchTree(%s)=0x%x\n", m_strPath.c_str(), (void *)pPrefetchTree));
+    return pPrefetchTree;
+}
+
 SYNCML_DM_RET_STATUS_T 
 DMPlugin::Execute(CPCHAR szPath, 
                   CPCHAR szArgs, 
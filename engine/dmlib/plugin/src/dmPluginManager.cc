@@ -269,6 +269,7 @@ DMPluginManager::AddPlugin(CPCHAR filename,
       {
          DMPluginVector * pPlugins = GetPlugins(m_nIndex[i]);
          pPlugins->push_back(pPlugin);
+         GetPluginTrie(m_nIndex[i])->Add(pPlugin);
       }   
    }
 
@@ -479,6 +480,11 @@ DMPluginManager::DeInit()
    m_execPlugins.clear();
    m_commPlugins.clear();
 
+   m_dataTrie.Clear();
+   m_constTrie.Clear();
+   m_execTrie.Clear();
+   m_commTrie.Clear();
+
 #ifndef DM_STATIC_PLUGINS
    m_mapFilePluginVectors.clear();
 #endif
@@ -509,72 +515,44 @@ DMPluginManager::GetPlugins(SYNCML_DM_PLUGIN_TYPE_T type)
 }
 
 
-BOOLEAN 
-DMPluginManager::PathMatch(CPCHAR szNodePath, CPCHAR szPluginPath) 
+DMPluginTrie * 
+DMPluginManager::GetPluginTrie(SYNCML_DM_PLUGIN_TYPE_T type)
 {
-   /* szNodePath must NOT contain "*"
-    * szPluginPath may contain "*" */
-   BOOLEAN matched=FALSE;
-
-   CPCHAR ptr = szNodePath;
-   CPCHAR ptr1 = szPluginPath;
-
-   while ( TRUE  )
-   {
-      if ( *ptr1 == '\0' )
-      {
-         matched = TRUE;
-         return matched;
-      }
-   
-      if ( *ptr1 == '*')
-         break;
-               
-      if (* ptr == '\0' || *ptr != * ptr1)
-      {
-         matched = FALSE;
-         return matched;
-      }
-      ptr++;
-      ptr1++;
-   } 
+    switch ( type )
+    {
+        case SYNCML_DM_DATA_PLUGIN:
+            return &m_dataTrie;
+            
+        case SYNCML_DM_EXECUTE_PLUGIN:
+            return &m_execTrie;
+            
+        case SYNCML_DM_CONSTRAINT_PLUGIN:
+            return &m_constTrie;
+            
+        case SYNCML_DM_COMMIT_PLUGIN:
+            return &m_commTrie;
 
-   //Now there is * in ptr1;
-   ptr1++;
-   if ( DmStrstr(ptr, ptr1) != NULL)
-   {
-      matched = TRUE;
-      return matched;
-   }
-      
-   return matched;
+        default:
+            return NULL;
+    }         
 }
   
 PDMPlugin 
 DMPluginManager::FindPlugin(SYNCML_DM_PLUGIN_TYPE_T type,  CPCHAR szPath)
 {
    XPL_LOG_DM_PLG_Debug(("DMPluginManager::FindPlugin, type=%d path=%s\n", type, szPath));
-   DMPluginVector * pPlugins = GetPlugins(type);
-   INT32 size = pPlugins->size();
-   for (int i = 0; i<size; i++)
-   {
-      CPCHAR szPluginPath = (*pPlugins)[i]->GetPath();
-      if ( PathMatch(szPath, szPluginPath )  )
-         return (*pPlugins)[i];
-   }
-   return NULL;
+   DMPluginTrie * pTrie = GetPluginTrie(type);
+   if ( pTrie == NULL )
+      return NULL;
+
+   return pTrie->Find(szPath);
 }
 
 
 PDMPlugin  
 DMPluginManager::FindCommitPlugin(CPCHAR szPath)
 {
-   for (int i = 0; i<m_commPlugins.size(); i++)
-   {
-      if ( (m_commPlugins[i])->GetPath() == szPath )
-        return m_commPlugins[i];    
-   }
-   return NULL;
+   return m_commTrie.FindExact(szPath);
 }
 
 
@@ -744,15 +722,9 @@ DMPluginManager::GetPlugins(CPCHAR szPath,
                                        SYNCML_DM_PLUGIN_TYPE_T type,
                                        DMPluginVector& aPlugins )
 {
-  const DMPluginVector* pArray = GetPlugins(type);
+  const DMPluginTrie* pTrie = GetPluginTrie(type);
 
-  DMString strURI = szPath;
-  for (INT32 i = 0; i < pArray->size(); i++ )
-  {
-    if ( DmIsParentURI(strURI.c_str(), (*pArray)[i]->GetPath() ) )
-    {
-      aPlugins.push_back( (*pArray)[i] );
-    }
-  }
+  if ( pTrie != NULL )
+    pTrie->GetPlugins(szPath, aPlugins);
   XPL_LOG_DM_PLG_Debug(("GetPlugins, szURI:%s\n", szPath));
 }
@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*==================================================================================================
+
+    Source Name: dmPluginTrie.cc
+
+    General Description: Implementation of the DMPluginTrie class
+
+==================================================================================================*/
+
+#include "xpl_Logger.h"
+#include "dmStringUtil.h"
+#include "dm_uri_utils.h"
+#include "dmPluginTrie.h"
+
+DMPluginTrieNode::DMPluginTrieNode(CPCHAR szSegment, INT32 nLen)
+  : m_strSegment(szSegment, nLen),
+    m_pWildcard(NULL)
+{
+}
+
+DMPluginTrieNode::~DMPluginTrieNode()
+{
+   for (INT32 i = 0; i < m_aChildren.size(); i++)
+      delete m_aChildren[i];
+
+   delete m_pWildcard;
+}
+
+
+DMPluginTrie::DMPluginTrie()
+  : m_pRoot(NULL)
+{
+}
+
+DMPluginTrie::~DMPluginTrie()
+{
+   Clear();
+}
+
+
+void
+DMPluginTrie::Clear()
+{
+   delete m_pRoot;
+   m_pRoot = NULL;
+   m_aPlugins.clear();
+   m_aIrregular.clear();
+}
+
+
+void
+DMPluginTrie::Add(const PDMPlugin & pPlugin)
+{
+   INT32 nIndex = m_aPlugins.push_back(pPlugin);
+   CPCHAR szPath = pPlugin->GetPath();
+
+   if ( !IsRegularPath(szPath) )
+   {
+      XPL_LOG_DM_PLG_Debug(("DMPluginTrie::Add, matching %s linearly\n", szPath));
+      m_aIrregular.push_back(nIndex);
+      return;
+   }
+
+   if ( m_pRoot == NULL )
+   {
+      m_pRoot = new DMPluginTrieNode("", 0);
+      if ( m_pRoot == NULL )
+         return;
+   }
+
+   DMPluginTrieNode * pNode = m_pRoot;
+   INT32 nLen = 0;
+   CPCHAR szSegment = szPath;
+   CPCHAR szNext = NextSegment(szSegment, nLen);
+
+   while ( nLen > 0 )
+   {
+      DMPluginTrieNode * pChild = NULL;
+
+      if ( nLen == 1 && *szSegment == '*' )
+      {
+         if ( pNode->m_pWildcard == NULL )
+            pNode->m_pWildcard = new DMPluginTrieNode(szSegment, nLen);
+         pChild = pNode->m_pWildcard;
+      }
+      else
+      {
+         INT32 nPos = 0;
+         pChild = FindChild(pNode, szSegment, nLen, nPos);
+         if ( pChild == NULL )
+         {
+            pChild = new DMPluginTrieNode(szSegment, nLen);
+            if ( pChild != NULL )
+            {
+               // keep children sorted; shift the tail up by one
+               pNode->m_aChildren.push_back(pChild);
+               for (INT32 i = pNode->m_aChildren.size() - 1; i > nPos; i--)
+                  pNode->m_aChildren[i] = pNode->m_aChildren[i - 1];
+               pNode->m_aChildren[nPos] = pChild;
+            }
+         }
+      }
+
+      if ( pChild == NULL )
+         return;
+
+      pNode = pChild;
+      szSegment = szNext;
+      szNext = NextSegment(szSegment, nLen);
+   }
+
+   pNode->m_aIndexes.push_back(nIndex);
+}
+
+
+PDMPlugin
+DMPluginTrie::Find(CPCHAR szPath) const
+{
+   INT32 nBest = -1;
+
+   if ( m_pRoot != NULL )
+      FindPrefix(m_pRoot, szPath, nBest);
+
+   for (INT32 i = 0; i < m_aIrregular.size(); i++)
+   {
+      INT32 nIndex = m_aIrregular[i];
+      if ( nBest >= 0 && nIndex > nBest )
+         break;
+
+      if ( PathMatch(szPath, m_aPlugins[nIndex]->GetPath()) )
+      {
+         nBest = nIndex;
+         break;
+      }
+   }
+
+   if ( nBest < 0 )
+      return NULL;
+
+   return m_aPlugins[nBest];
+}
+
+
+PDMPlugin
+DMPluginTrie::FindExact(CPCHAR szPath) const
+{
+   INT32 nBest = -1;
+   const DMPluginTrieNode * pNode = m_pRoot;
+   INT32 nLen = 0;
+   CPCHAR szSegment = szPath;
+   CPCHAR szNext = NextSegment(szSegment, nLen);
+
+   while ( pNode != NULL && nLen > 0 )
+   {
+      if ( nLen == 1 && *szSegment == '*' )
+      {
+         pNode = pNode->m_pWildcard;
+      }
+      else
+      {
+         INT32 nPos = 0;
+         pNode = FindChild(pNode, szSegment, nLen, nPos);
+      }
+      szSegment = szNext;
+      szNext = NextSegment(szSegment, nLen);
+   }
+
+   // segments match; the stored path may still differ in separators
+   if ( pNode != NULL )
+   {
+      for (INT32 i = 0; i < pNode->m_aIndexes.size(); i++)
+      {
+         if ( m_aPlugins[pNode->m_aIndexes[i]]->GetPath() == szPath )
+         {
+            nBest = pNode->m_aIndexes[i];
+            break;
+         }
+      }
+   }
+
+   for (INT32 i = 0; i < m_aIrregular.size(); i++)
+   {
+      INT32 nIndex = m_aIrregular[i];
+      if ( nBest >= 0 && nIndex > nBest )
+         break;
+
+      if ( m_aPlugins[nIndex]->GetPath() == szPath )
+      {
+         nBest = nIndex;
+         break;
+      }
+   }
+
+   if ( nBest < 0 )
+      return NULL;
+
+   return m_aPlugins[nBest];
+}
+
+
+void
+DMPluginTrie::GetPlugins(CPCHAR szPath, DMPluginVector & aPlugins) const
+{
+   DMVector<INT32> aIndexes;
+
+   if ( szPath == NULL )
+      szPath = "";
+
+   if ( m_pRoot != NULL )
+      FindSubtree(m_pRoot, szPath, aIndexes);
+
+   for (INT32 i = 0; i < m_aIrregular.size(); i++)
+   {
+      if ( DmIsParentURI(szPath, m_aPlugins[m_aIrregular[i]]->GetPath()) )
+         aIndexes.push_back(m_aIrregular[i]);
+   }
+
+   // callers expect registration order; results are short, insertion sort is enough
+   for (INT32 i = 1; i < aIndexes.size(); i++)
+   {
+      INT32 nIndex = aIndexes[i];
+      INT32 j = i;
+      for (; j > 0 && aIndexes[j - 1] > nIndex; j--)
+         aIndexes[j] = aIndexes[j - 1];
+      aIndexes[j] = nIndex;
+   }
+
+   for (INT32 i = 0; i < aIndexes.size(); i++)
+      aPlugins.push_back(m_aPlugins[aIndexes[i]]);
+}
+
+
+BOOLEAN
+DMPluginTrie::PathMatch(CPCHAR szNodePath, CPCHAR szPluginPath)
+{
+   /* szNodePath must NOT contain "*"
+    * szPluginPath may contain "*" */
+   BOOLEAN matched=FALSE;
+
+   CPCHAR ptr = szNodePath;
+   CPCHAR ptr1 = szPluginPath;
+
+   while ( TRUE  )
+   {
+      if ( *ptr1 == '\0' )
+      {
+         matched = TRUE;
+         return matched;
+      }
+
+      if ( *ptr1 == '*')
+         break;
+
+      if (* ptr == '\0' || *ptr != * ptr1)
+      {
+         matched = FALSE;
+         return matched;
+      }
+      ptr++;
+      ptr1++;
+   }
+
+   //Now there is * in ptr1;
+   ptr1++;
+   if ( DmStrstr(ptr, ptr1) != NULL)
+   {
+      matched = TRUE;
+      return matched;
+   }
+
+   return matched;
+}
+
+
+BOOLEAN
+DMPluginTrie::IsRegularPath(CPCHAR szPath)
+{
+   INT32 nLen = 0;
+   CPCHAR szSegment = szPath;
+   CPCHAR szNext = NextSegment(szSegment, nLen);
+
+   while ( nLen > 0 )
+   {
+      if ( nLen > 1 )
+      {
+         for (INT32 i = 0; i < nLen; i++)
+         {
+            if ( szSegment[i] == '*' )
+               return FALSE;
+         }
+      }
+      szSegment = szNext;
+      szNext = NextSegment(szSegment, nLen);
+   }
+
+   return TRUE;
+}
+
+
+CPCHAR
+DMPluginTrie::NextSegment(CPCHAR & szPath, INT32 & nLen)
+{
+   nLen = 0;
+   if ( szPath == NULL )
+      return NULL;
+
+   // empty segments ("a//b", trailing "/") are skipped
+   while ( *szPath == '/' )
+      szPath++;
+
+   CPCHAR ptr = szPath;
+   while ( *ptr != '\0' && *ptr != '/' )
+      ptr++;
+
+   nLen = (INT32)(ptr - szPath);
+   if ( *ptr == '/' )
+      ptr++;
+
+   return ptr;
+}
+
+
+DMPluginTrieNode *
+DMPluginTrie::FindChild(const DMPluginTrieNode * pNode,
+                        CPCHAR szSegment,
+                        INT32 nLen,
+                        INT32 & nPos)
+{
+   INT32 nLow = 0;
+   INT32 nHigh = pNode->m_aChildren.size() - 1;
+
+   while ( nLow <= nHigh )
+   {
+      INT32 nMid = (nLow + nHigh) / 2;
+      DMPluginTrieNode * pChild = pNode->m_aChildren[nMid];
+      CPCHAR szChild = pChild->m_strSegment.c_str();
+
+      INT32 nCmp = DmStrncmp(szChild, szSegment, nLen);
+      if ( nCmp == 0 && szChild[nLen] != '\0' )
+         nCmp = 1;
+
+      if ( nCmp == 0 )
+      {
+         nPos = nMid;
+         return pChild;
+      }
+
+      if ( nCmp < 0 )
+         nLow = nMid + 1;
+      else
+         nHigh = nMid - 1;
+   }
+
+   nPos = nLow;
+   return NULL;
+}
+
+
+void
+DMPluginTrie::FindPrefix(const DMPluginTrieNode * pNode,
+                         CPCHAR szPath,
+                         INT32 & nBest)
+{
+   if ( pNode->m_aIndexes.size() > 0 &&
+        (nBest < 0 || pNode->m_aIndexes[0] < nBest) )
+      nBest = pNode->m_aIndexes[0];
+
+   INT32 nLen = 0;
+   CPCHAR szNext = NextSegment(szPath, nLen);
+   if ( nLen == 0 )
+      return;
+
+   if ( nLen != 1 || *szPath != '*' )
+   {
+      INT32 nPos = 0;
+      DMPluginTrieNode * pChild = FindChild(pNode, szPath, nLen, nPos);
+      if ( pChild != NULL )
+         FindPrefix(pChild, szNext, nBest);
+   }
+
+   if ( pNode->m_pWildcard != NULL )
+      FindPrefix(pNode->m_pWildcard, szNext, nBest);
+}
+
+
+void
+DMPluginTrie::FindSubtree(const DMPluginTrieNode * pNode,
+                          CPCHAR szPath,
+                          DMVector<INT32> & aIndexes)
+{
+   INT32 nLen = 0;
+   CPCHAR szNext = NextSegment(szPath, nLen);
+   if ( nLen == 0 )
+   {
+      CollectAll(pNode, aIndexes);
+      return;
+   }
+
+   if ( nLen == 1 && *szPath == '*' )
+   {
+      for (INT32 i = 0; i < pNode->m_aChildren.size(); i++)
+         FindSubtree(pNode->m_aChildren[i], szNext, aIndexes);
+   }
+   else
+   {
+      INT32 nPos = 0;
+      DMPluginTrieNode * pChild = FindChild(pNode, szPath, nLen, nPos);
+      if ( pChild != NULL )
+         FindSubtree(pChild, szNext, aIndexes);
+   }
+
+   if ( pNode->m_pWildcard != NULL )
+      FindSubtree(pNode->m_pWildcard, szNext, aIndexes);
+}
+
+
+void
+DMPluginTrie::CollectAll(const DMPluginTrieNode * pNode,
+                         DMVector<INT32> & aIndexes)
+{
+   for (INT32 i = 0; i < pNode->m_aIndexes.size(); i++)
+      aIndexes.push_back(pNode->m_aIndexes[i]);
+
+   for (INT32 i = 0; i < pNode->m_aChildren.size(); i++)
+      CollectAll(pNode->m_aChildren[i], aIndexes);
+
+   if ( pNode->m_pWildcard != NULL )
+      CollectAll(pNode->m_pWildcard, aIndexes);
+}
@@ -40,6 +40,7 @@ enum {
   SYNCML_DM_NODENAME_SERVERID,
   SYNCML_DM_FEATURE_ID_POC_PROVISION_VIA_OMADM,
   SYNCML_DM_SESSION_ID,
+  SYNCML_DM_MEMORY_BUDGET,
 };
 typedef INT8 SYNCML_DM_ENVIRONMENT_T;
 
@@ -0,0 +1,44 @@
+# Copyright 2014 The Android Open Source Project
+
+LOCAL_PATH:= $(call my-dir)
+
+include $(CLEAR_VARS)
+
+# Built with "make dm_jni_callback_bench"; run on the device:
+#   adb shell dm_jni_callback_bench [packages] [callbacks per package]
+LOCAL_MODULE_TAGS := tests
+
+LOCAL_SRC_FILES := jni_callback_bench.cc
+
+DM_ENGINE_PATH := $(LOCAL_PATH)/../../..
+
+LOCAL_C_INCLUDES += \
+ $(DM_ENGINE_PATH)/dmlib/api/common \
+ $(DM_ENGINE_PATH)/xpl/hdr \
+ $(JNI_H_INCLUDE)
+
+# must match the flags libdmengine is built with
+LOCAL_CFLAGS += \
+ -DVRTXMC \
+ -DDM_ATOMIC_SUPPORTED \
+ -DLOB_SUPPORT \
+ -DDM_NO_LOCKING \
+ -DDM_NO_SESSION_LIB \
+ -DTNDS_SUPPORT \
+ -DEZX_PORT -DPLATFORM_X86 -DPLATFORM_ANDROID \
+ -DDM_SUPPORT_AUTHPREF \
+ -DNO_CAF \
+ -DNO_OTHER_PLUGIN
+
+LOCAL_SHARED_LIBRARIES += \
+  liblog \
+  libnativehelper \
+  libdmengine
+
+LOCAL_MODULE := dm_jni_callback_bench
+
+LOCAL_CPP_EXTENSION := .cc
+
+LOCAL_MULTILIB := 32
+
+include $(BUILD_EXECUTABLE)
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*==================================================================================================
+
+    Source Name: jni_callback_bench.cc
+
+    General Description: Measures the Java callback overhead of one OTA package with the
+                         per-call class and method ID lookups the bridges used to do, and
+                         with the IDs DMJniCache resolves once at JNI_OnLoad.
+
+    Usage: dm_jni_callback_bench [packages] [callbacks per package]
+
+==================================================================================================*/
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include <jni.h>
+#include <JniInvocation.h>
+
+#include "xpl_Time.h"
+
+#define DEFAULT_PACKAGES   20000
+
+// setContentType, sendRequest, getResponseLength, getResponseData and
+// getResponseHeader: the DMHttpConnector callbacks of one package in Send()
+#define DEFAULT_CALLBACKS  5
+
+///////////////////////////////////////////////////////////////
+// The service classes aren't on the class path of a bare VM, so the package
+// calls cheap java.lang.String methods instead; all take (or ignore) one int.
+struct Callback
+{
+  const char * szName;
+  const char * szSignature;
+};
+
+static const Callback aCallbacks[] =
+{
+  { "length",      "()I"  },
+  { "hashCode",    "()I"  },
+  { "indexOf",     "(I)I" },
+  { "lastIndexOf", "(I)I" },
+  { "codePointAt", "(I)I" },
+};
+
+#define NUM_CALLBACKS ((INT32)(sizeof(aCallbacks) / sizeof(aCallbacks[0])))
+
+///////////////////////////////////////////////////////////////
+// DMServiceConnection before the cache: FindClass and GetMethodID per call.
+static jint CallFindClass(JNIEnv * env, jobject obj, INT32 n)
+{
+  const Callback & c = aCallbacks[n % NUM_CALLBACKS];
+
+  jclass clazz = env->FindClass("java/lang/String");
+  jmethodID method = env->GetMethodID(clazz, c.szName, c.szSignature);
+  jint result = env->CallIntMethod(obj, method, (jint)0);
+  env->DeleteLocalRef(clazz);
+  return result;
+}
+
+///////////////////////////////////////////////////////////////
+// DmtJavaMethod before the cache: GetObjectClass and GetMethodID per call.
+static jint CallObjectClass(JNIEnv * env, jobject obj, INT32 n)
+{
+  const Callback & c = aCallbacks[n % NUM_CALLBACKS];
+
+  jclass clazz = env->GetObjectClass(obj);
+  jmethodID method = env->GetMethodID(clazz, c.szName, c.szSignature);
+  jint result = env->CallIntMethod(obj, method, (jint)0);
+  env->DeleteLocalRef(clazz);
+  return result;
+}
+
+///////////////////////////////////////////////////////////////
+// Runs nPackages packages of nCallbacks callbacks each, returns usec.
+static XPL_CLK_LONG_CLOCK_T RunLookups(JNIEnv * env, jobject obj,
+                                       INT32 nPackages, INT32 nCallbacks,
+                                       jint (*pfCall)(JNIEnv *, jobject, INT32),
+                                       jlong & nSum)
+{
+  XPL_CLK_LONG_CLOCK_T nStart = XPL_CLK_GetClockMs();
+  for (INT32 i = 0; i < nPackages; i++)
+  {
+    for (INT32 j = 0; j < nCallbacks; j++)
+      nSum += pfCall(env, obj, j);
+  }
+  return XPL_CLK_GetClockMs() - nStart;
+}
+
+static XPL_CLK_LONG_CLOCK_T RunCached(JNIEnv * env, jobject obj,
+                                      INT32 nPackages, INT32 nCallbacks,
+                                      const jmethodID * aMethods,
+                                      jlong & nSum)
+{
+  XPL_CLK_LONG_CLOCK_T nStart = XPL_CLK_GetClockMs();
+  for (INT32 i = 0; i < nPackages; i++)
+  {
+    for (INT32 j = 0; j < nCallbacks; j++)
+      nSum += env->CallIntMethod(obj, aMethods[j % NUM_CALLBACKS], (jint)0);
+  }
+  return XPL_CLK_GetClockMs() - nStart;
+}
+
+static void PrintResult(CPCHAR szName, XPL_CLK_LONG_CLOCK_T nTime, INT32 nPackages)
+{
+  printf("%-12s %lld usec total, %.3f usec per package\n",
+         szName, (long long)nTime, (double)nTime / nPackages);
+}
+
+int main(int argc, char** argv)
+{
+  INT32 nPackages = argc > 1 ? atoi(argv[1]) : DEFAULT_PACKAGES;
+  INT32 nCallbacks = argc > 2 ? atoi(argv[2]) : DEFAULT_CALLBACKS;
+
+  if ( nPackages <= 0 || nCallbacks <= 0 )
+  {
+    printf("Usage: %s [packages] [callbacks per package]\n", argv[0]);
+    return 1;
+  }
+
+  JniInvocation jniInvocation;
+  jniInvocation.Init(NULL);
+
+  JavaVMInitArgs initArgs;
+  memset(&initArgs, 0, sizeof(initArgs));
+  initArgs.version = JNI_VERSION_1_6;
+  initArgs.ignoreUnrecognized = JNI_TRUE;
+
+  JavaVM * jvm = NULL;
+  JNIEnv * env = NULL;
+  if ( JNI_CreateJavaVM(&jvm, &env, &initArgs) != JNI_OK )
+  {
+    printf("Failed to create a Java VM\n");
+    return 2;
+  }
+
+  jobject obj = env->NewStringUTF("./DevDetail/Ext/Conf/Timeout");
+
+  // what registerJniCache() does once per process
+  jmethodID aMethods[NUM_CALLBACKS];
+  jclass globalClass = (jclass)env->NewGlobalRef(env->GetObjectClass(obj));
+  for (INT32 i = 0; i < NUM_CALLBACKS; i++)
+  {
+    aMethods[i] = env->GetMethodID(globalClass, aCallbacks[i].szName, aCallbacks[i].szSignature);
+    if ( aMethods[i] == NULL )
+    {
+      printf("Method %s%s not found\n", aCallbacks[i].szName, aCallbacks[i].szSignature);
+      return 2;
+    }
+  }
+
+  // warm up all three paths before timing them
+  jlong nSum = 0;
+  INT32 nWarmup = nPackages / 10 + 1;
+  RunLookups(env, obj, nWarmup, nCallbacks, CallFindClass, nSum);
+  RunLookups(env, obj, nWarmup, nCallbacks, CallObjectClass, nSum);
+  RunCached(env, obj, nWarmup, nCallbacks, aMethods, nSum);
+
+  XPL_CLK_LONG_CLOCK_T nFindClass = RunLookups(env, obj, nPackages, nCallbacks, CallFindClass, nSum);
+  XPL_CLK_LONG_CLOCK_T nObjectClass = RunLookups(env, obj, nPackages, nCallbacks, CallObjectClass, nSum);
+  XPL_CLK_LONG_CLOCK_T nCached = RunCached(env, obj, nPackages, nCallbacks, aMethods, nSum);
+
+  if ( env->ExceptionCheck() )
+  {
+    env->ExceptionDescribe();
+    return 2;
+  }
+
+  printf("packages: %d, callbacks per package: %d, checksum: %lld\n",
+         (int)nPackages, (int)nCallbacks, (long long)nSum);
+  PrintResult("FindClass:", nFindClass, nPackages);
+  PrintResult("ObjectClass:", nObjectClass, nPackages);
+  PrintResult("cached:", nCached, nPackages);
+
+  env->DeleteGlobalRef(globalClass);
+  jvm->DestroyJavaVM();
+  return 0;
+}
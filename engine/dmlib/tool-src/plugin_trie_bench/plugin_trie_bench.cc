@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*==================================================================================================
+
+    Source Name: plugin_trie_bench.cc
+
+    General Description: Compares plug-in lookup through DMPluginTrie with the linear
+                         matching it replaced, for a few hundred registered plug-in roots.
+
+    Usage: dm_plugin_trie_bench [roots] [lookups]
+
+==================================================================================================*/
+
+#include <stdio.h>
+#include <stdlib.h>
+
+#include "xpl_Time.h"
+#include "dmPluginTrie.h"
+
+#define DEFAULT_ROOTS    400
+#define DEFAULT_LOOKUPS  200000
+
+///////////////////////////////////////////////////////////////
+// Registers roots shaped like a production sysplugins.ini: many single leaf
+// DevDetail entries, some interior roots and some roots below a "*" segment.
+static void AddRoots(INT32 nRoots, DMPluginVector & aPlugins, DMPluginTrie & oTrie)
+{
+  char szPath[128];
+  DMStringMap aMap;
+
+  for (INT32 i = 0; i < nRoots; i++)
+  {
+    switch ( i % 4 )
+    {
+      case 0:
+      case 1:
+        snprintf(szPath, sizeof(szPath), "./DevDetail/Ext/Leaf%04d", (int)i);
+        break;
+      case 2:
+        snprintf(szPath, sizeof(szPath), "./ManagedObjects/MO%04d", (int)i);
+        break;
+      default:
+        snprintf(szPath, sizeof(szPath), "./Vendor/App%04d/*/Settings", (int)i);
+        break;
+    }
+
+    PDMPlugin pPlugin = new DMPlugin(SYNCML_DM_DATA_PLUGIN, FALSE, DMString(szPath), aMap);
+    aPlugins.push_back(pPlugin);
+    oTrie.Add(pPlugin);
+  }
+}
+
+///////////////////////////////////////////////////////////////
+// Builds node paths for the lookups; every fifth one has no plug-in.
+static void MakeQueries(INT32 nRoots, INT32 nQueries, DMStringVector & aQueries)
+{
+  char szPath[160];
+
+  for (INT32 i = 0; i < nQueries; i++)
+  {
+    INT32 n = (i * 7919) % nRoots;
+
+    if ( i % 5 == 4 )
+      snprintf(szPath, sizeof(szPath), "./DevInfo/Ext/Node%04d", (int)n);
+    else if ( n % 4 < 2 )
+      snprintf(szPath, sizeof(szPath), "./DevDetail/Ext/Leaf%04d", (int)n);
+    else if ( n % 4 == 2 )
+      snprintf(szPath, sizeof(szPath), "./ManagedObjects/MO%04d/Cfg/Name", (int)n);
+    else
+      snprintf(szPath, sizeof(szPath), "./Vendor/App%04d/x%d/Settings/Mode", (int)n, (int)i);
+
+    aQueries.push_back(DMString(szPath));
+  }
+}
+
+///////////////////////////////////////////////////////////////
+// The lookup DMPluginManager::FindPlugin used to do.
+static PDMPlugin FindLinear(const DMPluginVector & aPlugins, CPCHAR szPath)
+{
+  for (INT32 i = 0; i < aPlugins.size(); i++)
+  {
+    if ( DMPluginTrie::PathMatch(szPath, aPlugins[i]->GetPath()) )
+      return aPlugins[i];
+  }
+  return NULL;
+}
+
+int main(int argc, char** argv)
+{
+  INT32 nRoots = argc > 1 ? atoi(argv[1]) : DEFAULT_ROOTS;
+  INT32 nLookups = argc > 2 ? atoi(argv[2]) : DEFAULT_LOOKUPS;
+
+  if ( nRoots <= 0 || nLookups <= 0 )
+  {
+    printf("Usage: %s [roots] [lookups]\n", argv[0]);
+    return 1;
+  }
+
+  DMPluginVector aPlugins;
+  DMPluginTrie oTrie;
+  AddRoots(nRoots, aPlugins, oTrie);
+
+  DMStringVector aQueries;
+  MakeQueries(nRoots, 1000, aQueries);
+
+  INT32 nMismatches = 0;
+  for (INT32 i = 0; i < aQueries.size(); i++)
+  {
+    if ( FindLinear(aPlugins, aQueries[i]) != oTrie.Find(aQueries[i]) )
+      nMismatches++;
+  }
+
+  INT32 nFound = 0;
+  XPL_CLK_LONG_CLOCK_T nStart = XPL_CLK_GetClockMs();
+  for (INT32 i = 0; i < nLookups; i++)
+  {
+    if ( FindLinear(aPlugins, aQueries[i % aQueries.size()]) != NULL )
+      nFound++;
+  }
+  XPL_CLK_LONG_CLOCK_T nLinear = XPL_CLK_GetClockMs() - nStart;
+
+  nStart = XPL_CLK_GetClockMs();
+  for (INT32 i = 0; i < nLookups; i++)
+  {
+    if ( oTrie.Find(aQueries[i % aQueries.size()]) != NULL )
+      nFound++;
+  }
+  XPL_CLK_LONG_CLOCK_T nTrie = XPL_CLK_GetClockMs() - nStart;
+
+  printf("roots: %d, lookups: %d, found: %d, mismatches: %d\n",
+         (int)nRoots, (int)nLookups, (int)(nFound / 2), (int)nMismatches);
+  printf("linear: %lld usec total, %.3f usec per lookup\n",
+         (long long)nLinear, (double)nLinear / nLookups);
+  printf("trie:   %lld usec total, %.3f usec per lookup\n",
+         (long long)nTrie, (double)nTrie / nLookups);
+
+  return nMismatches == 0 ? 0 : 2;
+}
@@ -0,0 +1,51 @@
+# Copyright 2014 The Android Open Source Project
+
+LOCAL_PATH:= $(call my-dir)
+
+include $(CLEAR_VARS)
+
+# Built with "make dm_tree_lookup_bench"; run on the device:
+#   adb shell dm_tree_lookup_bench [max fan-out] [lookups]
+LOCAL_MODULE_TAGS := tests
+
+LOCAL_SRC_FILES := tree_lookup_bench.cc
+
+DM_ENGINE_PATH := $(LOCAL_PATH)/../../..
+
+LOCAL_C_INCLUDES += \
+ $(DM_ENGINE_PATH)/dmlib/api/common \
+ $(DM_ENGINE_PATH)/dmlib/api/native \
+ $(DM_ENGINE_PATH)/dmlib/api/native/plugin \
+ $(DM_ENGINE_PATH)/dmlib/plugin/hdr \
+ $(DM_ENGINE_PATH)/dmlib/dmengine/dm_tnm/hdr \
+ $(DM_ENGINE_PATH)/dmlib/dmengine/dm_ua/hdr \
+ $(DM_ENGINE_PATH)/dmlib/dmengine/dm_persist/hdr \
+ $(DM_ENGINE_PATH)/dmlib/dmengine/dm_security/hdr \
+ $(DM_ENGINE_PATH)/dmlib/dmengine/dm_util/hdr \
+ $(DM_ENGINE_PATH)/dmlib/dmtapi/native/hdr \
+ $(DM_ENGINE_PATH)/xpl/hdr
+
+# must match the flags libdmengine is built with
+LOCAL_CFLAGS += \
+ -DVRTXMC \
+ -DDM_ATOMIC_SUPPORTED \
+ -DLOB_SUPPORT \
+ -DDM_NO_LOCKING \
+ -DDM_NO_SESSION_LIB \
+ -DTNDS_SUPPORT \
+ -DEZX_PORT -DPLATFORM_X86 -DPLATFORM_ANDROID \
+ -DDM_SUPPORT_AUTHPREF \
+ -DNO_CAF \
+ -DNO_OTHER_PLUGIN
+
+LOCAL_SHARED_LIBRARIES += \
+  liblog \
+  libdmengine
+
+LOCAL_MODULE := dm_tree_lookup_bench
+
+LOCAL_CPP_EXTENSION := .cc
+
+LOCAL_MULTILIB := 32
+
+include $(BUILD_EXECUTABLE)
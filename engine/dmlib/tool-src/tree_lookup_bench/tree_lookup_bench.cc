@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*==================================================================================================
+
+    Source Name: tree_lookup_bench.cc
+
+    General Description: Times URI resolution in synthetic wide trees, e.g. ./DMAcc with
+                         many accounts, for fan-outs from below the child index threshold
+                         up to the given maximum. The nodes are skeleton nodes, so no
+                         archive, MDF or plug-in is involved; a URI is resolved segment by
+                         segment through DMNode::GetChildByName(), the lookup
+                         DMTree::FindNodeByURI() does on each level.
+
+    Usage: dm_tree_lookup_bench [max fan-out] [lookups]
+
+==================================================================================================*/
+
+#include <stdio.h>
+#include <stdlib.h>
+
+#include "xpl_Time.h"
+#include "dm_tree_class.H"
+
+#define DEFAULT_MAX_FANOUT  4096
+#define DEFAULT_LOOKUPS     200000
+#define QUERIES             1000
+
+///////////////////////////////////////////////////////////////
+// Builds ./DMAcc<fan-out> with nFanout accounts, each with a few leaves.
+static BOOLEAN BuildTree(DMTree * pTree, INT32 nFanout)
+{
+  char szURI[128];
+
+  for (INT32 i = 0; i < nFanout; i++)
+  {
+    snprintf(szURI, sizeof(szURI), "./DMAcc%d/Acc%05d/AppAddr/Addr", (int)nFanout, (int)i);
+    if ( !pTree->CreateSkeletonNode(szURI) )
+      return FALSE;
+
+    snprintf(szURI, sizeof(szURI), "./DMAcc%d/Acc%05d/Name", (int)nFanout, (int)i);
+    if ( !pTree->CreateSkeletonNode(szURI) )
+      return FALSE;
+  }
+  return TRUE;
+}
+
+int main(int argc, char** argv)
+{
+  INT32 nMaxFanout = argc > 1 ? atoi(argv[1]) : DEFAULT_MAX_FANOUT;
+  INT32 nLookups = argc > 2 ? atoi(argv[2]) : DEFAULT_LOOKUPS;
+
+  if ( nMaxFanout <= 0 || nLookups <= 0 )
+  {
+    printf("Usage: %s [max fan-out] [lookups]\n", argv[0]);
+    return 1;
+  }
+
+  // never deleted: the tree has no archives to release
+  DMTree * pTree = new DMTree();
+  if ( !pTree )
+    return 1;
+
+  printf("child index threshold: %d children\n",
+         (int)DMNodeChildIndex::DM_CHILD_INDEX_MIN_CHILDREN);
+
+  for (INT32 nFanout = 8; nFanout <= nMaxFanout; nFanout *= 8)
+  {
+    XPL_CLK_LONG_CLOCK_T nStart = XPL_CLK_GetClockMs();
+    if ( !BuildTree(pTree, nFanout) )
+    {
+      printf("out of memory\n");
+      return 1;
+    }
+    XPL_CLK_LONG_CLOCK_T nBuild = XPL_CLK_GetClockMs() - nStart;
+
+    DMStringVector aQueries;
+    char szURI[128];
+    for (INT32 i = 0; i < QUERIES; i++)
+    {
+      snprintf(szURI, sizeof(szURI), "./DMAcc%d/Acc%05d/AppAddr/Addr",
+               (int)nFanout, (int)((i * 7919) % nFanout));
+      aQueries.push_back(DMString(szURI));
+    }
+
+    DMNode * pExpected = pTree->CreateSkeletonNode(aQueries[0]);
+    INT32 nMismatches = 0;
+
+    nStart = XPL_CLK_GetClockMs();
+    for (INT32 i = 0; i < nLookups; i++)
+    {
+      // resolves an existing URI without creating nodes
+      DMNode * pNode = pTree->CreateSkeletonNode(aQueries[i % QUERIES]);
+      if ( i % QUERIES == 0 && pNode != pExpected )
+        nMismatches++;
+    }
+    XPL_CLK_LONG_CLOCK_T nLookup = XPL_CLK_GetClockMs() - nStart;
+
+    printf("fan-out %5d: build %.3f usec per account, lookup %.3f usec per URI, mismatches: %d\n",
+           (int)nFanout, (double)nBuild / nFanout, (double)nLookup / nLookups,
+           (int)nMismatches);
+
+    if ( nMismatches )
+      return 2;
+  }
+
+  return 0;
+}
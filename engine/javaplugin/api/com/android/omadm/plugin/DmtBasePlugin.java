@@ -18,10 +18,15 @@ package com.android.omadm.plugin;
 
 import android.os.RemoteException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public abstract class DmtBasePlugin extends IDmtPlugin.Stub {
 
+    /** Version of {@link IDmtPlugin} implemented by this class. */
+    public static final int PROTOCOL_VERSION = 4;
+
     private String mServerId;
     protected static final boolean DEBUG = false;
 
@@ -65,6 +70,55 @@ public abstract class DmtBasePlugin extends IDmtPlugin.Stub {
         return null;
     }
 
+    @Override
+    public int getProtocolVersion() {
+        return PROTOCOL_VERSION;
+    }
+
+    @Override
+    public DmtPluginResult getNodeValueResult(String path) throws RemoteException {
+        DmtData value = getNodeValue(path);
+        return new DmtPluginResult(getResultStatus(value), value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public DmtPluginResult getNodesResult(String path) throws RemoteException {
+        Map<String, DmtPluginNode> nodes = getNodes(path);
+        return new DmtPluginResult(getResultStatus(nodes), nodes);
+    }
+
+    @Override
+    public List<DmtPluginResult> getNodeValues(List<String> paths) throws RemoteException {
+        List<DmtPluginResult> results = new ArrayList<DmtPluginResult>(paths.size());
+        for (String path : paths) {
+            results.add(getNodeValueResult(path));
+        }
+        return results;
+    }
+
+    /**
+     * Plug-ins which can enumerate one level of their subtree cheaply override this
+     * method; the default makes the engine fall back to {@link #getNodes(String)}.
+     */
+    @Override
+    public DmtPluginResult getChildNodes(String path) throws RemoteException {
+        return new DmtPluginResult(ErrorCodes.SYNCML_DM_UNSUPPORTED_OPERATION,
+                (Map<String, DmtPluginNode>) null);
+    }
+
+    /**
+     * Status reported with a read result: success if the plug-in returned data, otherwise
+     * the operation result it has set.
+     */
+    private int getResultStatus(Object data) {
+        if (data != null) {
+            return ErrorCodes.SYNCML_DM_SUCCESS;
+        }
+        int result = getOperationResult();
+        return result == ErrorCodes.SYNCML_DM_SUCCESS ? ErrorCodes.SYNCML_DM_FAIL : result;
+    }
+
     @Override
     public int createInteriorNode(String arg0) throws RemoteException {
         return setOperationResult(ErrorCodes.SYNCML_DM_UNSUPPORTED_OPERATION);
@@ -105,6 +159,11 @@ public abstract class DmtBasePlugin extends IDmtPlugin.Stub {
         return setOperationResult(ErrorCodes.SYNCML_DM_UNSUPPORTED_OPERATION);
     }
 
+    @Override
+    public int rollback() throws RemoteException {
+        return setOperationResult(ErrorCodes.SYNCML_DM_UNSUPPORTED_OPERATION);
+    }
+
     @Override
     public String getServerPW(String aiServerPW) {
         return null;
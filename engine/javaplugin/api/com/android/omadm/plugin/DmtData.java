@@ -17,10 +17,13 @@
 package com.android.omadm.plugin;
 
 import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
 import android.os.Parcelable;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -40,6 +43,7 @@ import java.util.Map;
  *     Time
  *     Float
  *     NODE
+ *     Stream
  * </pre>
  */
 public class DmtData implements Parcelable {
@@ -105,28 +109,50 @@ public class DmtData implements Parcelable {
      */
     public static final int FLOAT = 11;
 
+    /**
+     * Binary data read from a stream, see {@link #fromStream(ParcelFileDescriptor, int)}.
+     * Nodes of this type are external storage nodes in the DM engine, their values
+     * are sent to the server in chunks.
+     */
+    public static final int STREAM = 12;
+
     /*
      * Used to create a DmtData((String)null)
      */
     public static final String NULLVALUE = null;
 
-    private int type;
-
-    private String stringValue;
-
-    private int intValue;
+    /**
+     * Flag for {@link #writeToParcel(Parcel, int)}: write the layout of plug-ins built
+     * before the layout was versioned; they read the current layout as an unknown type.
+     * STREAM values are written as NULL. Used by the DM engine for plug-ins with an older
+     * IDmtPlugin version.
+     */
+    public static final int PARCELABLE_WRITE_LEGACY = 0x10000;
 
-    private boolean boolValue;
+    /*
+     * Parcels start with (PARCEL_VERSION << 16 | type). Parcels written before the
+     * format was versioned start with the bare type, so they are still read.
+     * Version 2 added STREAM values, version 3 passes large BIN values through
+     * shared memory.
+     */
+    private static final int PARCEL_VERSION = 3;
 
-    private byte[] binValue;
+    private static final int TRANSPORT_INLINE = 0;
+    private static final int TRANSPORT_SHARED_MEMORY = 1;
 
-    private String dateValue;
+    private static final int PARCEL_TYPE_MASK = 0xffff;
 
-    private String timeValue;
+    private int type;
 
-    private float floatValue;
+    /*
+     * The value of the type: String for STRING, DATE and TIME, byte[] for BIN, the
+     * LinkedHashMap of child nodes for NODE, the ParcelFileDescriptor for STREAM,
+     * null otherwise. The child map is only created with the first child.
+     */
+    private Object value;
 
-    private final LinkedHashMap<String, DmtData> childNodes = new LinkedHashMap<String, DmtData>();
+    /* INT value, BOOL value as 0 or 1, the raw bits of a FLOAT value, or STREAM size */
+    private int bits;
 
     /**
      * Data represent a default value, it is only used for setting default value
@@ -149,43 +175,35 @@ public class DmtData implements Parcelable {
             case NULL:
                 break;
             case STRING:
-                stringValue = str;
+            case DATE:
+            case TIME:
+                value = str;
                 break;
             case INT:
                 try {
-                    intValue = Integer.parseInt(str);
+                    bits = Integer.parseInt(str);
                 } catch (NumberFormatException e) {
                     Log.e(TAG, "can't parse init value as integer", e);
                 }
                 break;
             case BOOL:
-                boolValue = Boolean.parseBoolean(str);
+                bits = Boolean.parseBoolean(str) ? 1 : 0;
                 break;
             case BIN:
-                binValue = str.getBytes();
-                break;
-            case DATE:
-                dateValue = str;
-                break;
-            case TIME:
-                timeValue = str;
+                value = str.getBytes();
                 break;
             case FLOAT:
                 try {
-                    floatValue = Float.parseFloat(str);
+                    bits = Float.floatToRawIntBits(Float.parseFloat(str));
                 } catch (NumberFormatException e) {
                     Log.e(TAG, "can't parse init value as float", e);
                 }
                 break;
             case NODE:
-                childNodes.clear();
-                String[] strArray = str.split("\\|");
-                int cnt = strArray.length;
-                if (cnt > 0 && !strArray[0].isEmpty()) {
-                    for (String name : strArray) {
-                        childNodes.put(name, new DmtData());
-                    }
-                }
+                parseChildNames(str);
+                break;
+            case STREAM:
+                // only the type, the stream is read with getNodeValue()
                 break;
             default:
                 type = UNDEFINED;
@@ -193,13 +211,44 @@ public class DmtData implements Parcelable {
         }
     }
 
+    /* Adds a NULL child for every name of a '|' separated list, skipping empty names. */
+    private void parseChildNames(String names) {
+        int start = 0;
+        int length = names.length();
+        while (start < length) {
+            int end = names.indexOf('|', start);
+            if (end == -1) {
+                end = length;
+            }
+            if (end > start) {
+                children().put(names.substring(start, end), new DmtData());
+            }
+            start = end + 1;
+        }
+    }
+
+    /* Returns the child map of a NODE value, creating it if needed. */
+    @SuppressWarnings("unchecked")
+    private LinkedHashMap<String, DmtData> children() {
+        if (value == null) {
+            value = new LinkedHashMap<String, DmtData>();
+        }
+        return (LinkedHashMap<String, DmtData>) value;
+    }
+
+    /* Returns the child map of a NODE value, or null if it has no children yet. */
+    @SuppressWarnings("unchecked")
+    private LinkedHashMap<String, DmtData> childrenOrNull() {
+        return (LinkedHashMap<String, DmtData>) value;
+    }
+
     /**
      * Data represent an String type.
      *
      * @param str String type data. The size may be restricted by MDF.
      */
     public DmtData(String str) {
-        stringValue = str;
+        value = str;
         type = STRING;
     }
 
@@ -207,7 +256,7 @@ public class DmtData implements Parcelable {
      * Data represent an integer type Data range may be restricted by MDF
      */
     public DmtData(int integer) {
-        intValue = integer;
+        bits = integer;
         type = INT;
     }
 
@@ -215,7 +264,7 @@ public class DmtData implements Parcelable {
      * Data represent a boolean type
      */
     public DmtData(boolean bool) {
-        boolValue = bool;
+        bits = bool ? 1 : 0;
         type = BOOL;
     }
 
@@ -224,15 +273,53 @@ public class DmtData implements Parcelable {
      * be null.
      */
     public DmtData(byte[] bin) {
-        binValue = bin;
+        value = bin;
         type = BIN;
     }
 
     public DmtData(float value) {
-        floatValue = value;
+        bits = Float.floatToRawIntBits(value);
         type = FLOAT;
     }
 
+    /**
+     * Returns data representing a binary value read from a stream, for values too
+     * large to be passed as a byte array, e.g. logs or certificates. The stream is a
+     * file opened with {@link ParcelFileDescriptor#open} or the read side of a pipe
+     * created with {@link ParcelFileDescriptor#createPipe()}, and is read once;
+     * plug-ins return a new stream for every read of the node. The descriptor is
+     * closed when the data is written to a parcel with
+     * {@link #PARCELABLE_WRITE_RETURN_VALUE}.
+     *
+     * @param stream the stream to read the value from.
+     * @param size the number of bytes the stream provides.
+     * @return the data.
+     */
+    public static DmtData fromStream(ParcelFileDescriptor stream, int size) {
+        DmtData data = new DmtData();
+        data.value = stream;
+        data.bits = size;
+        data.type = STREAM;
+        return data;
+    }
+
+    /**
+     * Returns data which can be changed without changing this data. Only the child
+     * list of an interior node can be changed, so leaf data is returned as it is.
+     */
+    DmtData copy() {
+        if (type != NODE) {
+            return this;
+        }
+        DmtData data = new DmtData();
+        data.type = NODE;
+        LinkedHashMap<String, DmtData> childNodes = childrenOrNull();
+        if (childNodes != null) {
+            data.value = new LinkedHashMap<String, DmtData>(childNodes);
+        }
+        return data;
+    }
+
     @Override
     public String toString() {
         return getString();
@@ -248,30 +335,31 @@ public class DmtData implements Parcelable {
             case NULL:
                 return "";
             case STRING:
-                return stringValue;
+            case DATE:
+            case TIME:
+                return (String) value;
             case INT:
-                return String.valueOf(intValue);
+                return String.valueOf(bits);
             case BOOL:
-                return String.valueOf(boolValue);
+                return String.valueOf(bits != 0);
             case BIN:
-                return (binValue == null) ? null : (new String(binValue));
-            case DATE:
-                return dateValue;
-            case TIME:
-                return timeValue;
+                return (value == null) ? null : (new String((byte[]) value));
             case FLOAT:
-                return String.valueOf(floatValue);
+                return String.valueOf(Float.intBitsToFloat(bits));
+            case STREAM:
+                // the stream is not read here, see getStream()
+                return null;
             case NODE:
+                LinkedHashMap<String, DmtData> childNodes = childrenOrNull();
+                if (childNodes == null) {
+                    return "";
+                }
                 StringBuilder tmpValue = new StringBuilder();
-                try {
-                    for (String node : childNodes.keySet()) {
-                        tmpValue.append(node).append('|');
-                    }
+                for (String node : childNodes.keySet()) {
                     if (tmpValue.length() != 0) {
-                        tmpValue.deleteCharAt(tmpValue.length() - 1);
+                        tmpValue.append('|');
                     }
-                } catch (Exception e) {
-                    Log.e(TAG, "getString() failed for node object", e);
+                    tmpValue.append(node);
                 }
                 return tmpValue.toString();
             default:
@@ -289,7 +377,7 @@ public class DmtData implements Parcelable {
             throw new DmtException(ErrorCodes.SYNCML_DM_INVALID_PARAMETER,
                     "The value requested is not boolean");
         }
-        return boolValue;
+        return bits != 0;
     }
 
     /**
@@ -302,7 +390,7 @@ public class DmtData implements Parcelable {
             throw new DmtException(ErrorCodes.SYNCML_DM_INVALID_PARAMETER,
                     "The value requested is not integer");
         }
-        return intValue;
+        return bits;
     }
 
     /**
@@ -315,7 +403,33 @@ public class DmtData implements Parcelable {
             throw new DmtException(ErrorCodes.SYNCML_DM_INVALID_PARAMETER,
                     "The value requested is not binary");
         }
-        return binValue;
+        return (byte[]) value;
+    }
+
+    /**
+     * Get the stream of a STREAM value.
+     *
+     * @return the stream, or null if the data was created for the type only.
+     */
+    public ParcelFileDescriptor getStream() throws DmtException {
+        if (type != STREAM) {
+            throw new DmtException(ErrorCodes.SYNCML_DM_INVALID_PARAMETER,
+                    "The value requested is not a stream");
+        }
+        return (ParcelFileDescriptor) value;
+    }
+
+    /**
+     * Get the size of a STREAM value.
+     *
+     * @return the number of bytes the stream provides.
+     */
+    public int getStreamSize() throws DmtException {
+        if (type != STREAM) {
+            throw new DmtException(ErrorCodes.SYNCML_DM_INVALID_PARAMETER,
+                    "The value requested is not a stream");
+        }
+        return bits;
     }
 
     /**
@@ -329,7 +443,7 @@ public class DmtData implements Parcelable {
             throw new DmtException(ErrorCodes.SYNCML_DM_INVALID_PARAMETER,
                     "can't add children to leaf node");
         }
-        childNodes.put(name, child);
+        children().put(name, child);
     }
 
     public void removeChildNode(String name) throws DmtException {
@@ -337,7 +451,10 @@ public class DmtData implements Parcelable {
             throw new DmtException(ErrorCodes.SYNCML_DM_INVALID_PARAMETER,
                     "can't add children to leaf node");
         }
-        childNodes.remove(name);
+        LinkedHashMap<String, DmtData> childNodes = childrenOrNull();
+        if (childNodes != null) {
+            childNodes.remove(name);
+        }
     }
 
     /**
@@ -350,7 +467,8 @@ public class DmtData implements Parcelable {
             throw new DmtException(ErrorCodes.SYNCML_DM_INVALID_PARAMETER,
                     "can't get children of leaf node");
         }
-        return childNodes.get(name);
+        LinkedHashMap<String, DmtData> childNodes = childrenOrNull();
+        return (childNodes == null) ? null : childNodes.get(name);
     }
 
     /**
@@ -363,6 +481,10 @@ public class DmtData implements Parcelable {
             throw new DmtException(ErrorCodes.SYNCML_DM_INVALID_PARAMETER,
                     "can't get children of leaf node");
         }
+        LinkedHashMap<String, DmtData> childNodes = childrenOrNull();
+        if (childNodes == null) {
+            return Collections.emptyMap();
+        }
         return Collections.unmodifiableMap(childNodes);
     }
 
@@ -402,6 +524,10 @@ public class DmtData implements Parcelable {
                     byte[] bytes2 = data.getBinary();
                     return Arrays.equals(bytes1, bytes2);
 
+                case STREAM:
+                    // streams can't be compared without reading them
+                    return value == data.value && bits == data.bits;
+
                 default:
                     return false;
             }
@@ -421,49 +547,120 @@ public class DmtData implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel out, int flags) {
-        out.writeInt(type);
+        if ((flags & PARCELABLE_WRITE_LEGACY) != 0) {
+            writeLegacyParcel(out, flags);
+            return;
+        }
+        out.writeInt((PARCEL_VERSION << 16) | type);
         switch (type) {
-            case NULL:
-                break;
-
             case STRING:
-                out.writeString(stringValue);
+            case DATE:
+            case TIME:
+                out.writeString((String) value);
                 break;
 
             case INT:
-                out.writeInt(intValue);
-                break;
-
             case BOOL:
-                out.writeInt(boolValue ? 1 : 0);
+            case FLOAT:
+                out.writeInt(bits);
                 break;
 
             case BIN:
-                if (binValue == null || binValue.length == 0) {
+                writeBinary(out, (byte[]) value);
+                break;
+
+            case STREAM:
+                out.writeInt(bits);
+                if (value == null) {
                     out.writeInt(0);
                 } else {
-                    out.writeInt(binValue.length);
-                    out.writeByteArray(binValue);
+                    out.writeInt(1);
+                    ((ParcelFileDescriptor) value).writeToParcel(out, flags);
                 }
                 break;
 
-            case DATE:
-                out.writeString(dateValue);
+            case NODE:
+                LinkedHashMap<String, DmtData> childNodes = childrenOrNull();
+                if (childNodes == null) {
+                    out.writeInt(0);
+                    break;
+                }
+                out.writeInt(childNodes.size());
+                for (Map.Entry<String, DmtData> entry : childNodes.entrySet()) {
+                    out.writeString(entry.getKey());
+                    entry.getValue().writeToParcel(out, flags);
+                }
+                break;
+
+            default:
                 break;
+        }
+    }
 
+    /* Writes a BIN value, through shared memory if it is large. */
+    private static void writeBinary(Parcel out, byte[] bin) {
+        if (bin != null && bin.length >= DmtSharedMemory.THRESHOLD) {
+            DmtSharedMemory.Writer writer = null;
+            try {
+                writer = new DmtSharedMemory.Writer(4 + bin.length);
+                writer.writeByteArray(bin);
+                writer.writeToParcel(out, TRANSPORT_SHARED_MEMORY);
+                return;
+            } catch (IOException e) {
+                Log.e(TAG, "can't write value to shared memory, sending inline", e);
+            } finally {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+        out.writeInt(TRANSPORT_INLINE);
+        out.writeByteArray(bin);
+    }
+
+    /* Writes the layout read by readLegacyParcel(). */
+    private void writeLegacyParcel(Parcel out, int flags) {
+        if (type == STREAM) {
+            out.writeInt(NULL);
+            return;
+        }
+        out.writeInt(type);
+        switch (type) {
+            case STRING:
+            case DATE:
             case TIME:
-                out.writeString(timeValue);
+                out.writeString((String) value);
+                break;
+
+            case INT:
+            case BOOL:
+                out.writeInt(bits);
+                break;
+
+            case BIN:
+                byte[] bin = (byte[]) value;
+                if (bin == null || bin.length == 0) {
+                    out.writeInt(0);
+                } else {
+                    out.writeInt(bin.length);
+                    out.writeByteArray(bin);
+                }
                 break;
 
             case FLOAT:
-                out.writeFloat(floatValue);
+                out.writeFloat(Float.intBitsToFloat(bits));
                 break;
 
             case NODE:
+                LinkedHashMap<String, DmtData> childNodes = childrenOrNull();
+                if (childNodes == null) {
+                    out.writeInt(0);
+                    break;
+                }
                 out.writeInt(childNodes.size());
                 for (Map.Entry<String, DmtData> entry : childNodes.entrySet()) {
                     out.writeString(entry.getKey());
-                    entry.getValue().writeToParcel(out, flags);
+                    entry.getValue().writeLegacyParcel(out, flags);
                 }
                 break;
 
@@ -474,6 +671,20 @@ public class DmtData implements Parcelable {
 
     @Override
     public int describeContents() {
+        if (type == STREAM && value != null) {
+            return CONTENTS_FILE_DESCRIPTOR;
+        }
+        if (type == BIN && value != null
+                && ((byte[]) value).length >= DmtSharedMemory.THRESHOLD) {
+            return CONTENTS_FILE_DESCRIPTOR;
+        }
+        if (type == NODE && value != null) {
+            for (DmtData child : childrenOrNull().values()) {
+                if (child.describeContents() != 0) {
+                    return CONTENTS_FILE_DESCRIPTOR;
+                }
+            }
+        }
         return 0;
     }
 
@@ -490,57 +701,184 @@ public class DmtData implements Parcelable {
     };
 
     DmtData(Parcel in) {
-        type = in.readInt();
+        int header = in.readInt();
+        type = header & PARCEL_TYPE_MASK;
+        int version = header >>> 16;
+        if (version == 0) {
+            readLegacyParcel(in);
+            return;
+        }
         switch (type) {
-            case NULL:
+            case STRING:
+            case DATE:
+            case TIME:
+                value = in.readString();
                 break;
 
+            case INT:
+            case BOOL:
+            case FLOAT:
+                bits = in.readInt();
+                break;
+
+            case BIN:
+                if (version < 3 || in.readInt() == TRANSPORT_INLINE) {
+                    value = in.createByteArray();
+                } else {
+                    value = readSharedBinary(in);
+                }
+                break;
+
+            case STREAM:
+                bits = in.readInt();
+                if (in.readInt() != 0) {
+                    value = ParcelFileDescriptor.CREATOR.createFromParcel(in);
+                }
+                break;
+
+            case NODE:
+                readChildren(in);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private static byte[] readSharedBinary(Parcel in) {
+        try {
+            return DmtSharedMemory.Reader.readFromParcel(in).readByteArray();
+        } catch (IOException e) {
+            Log.e(TAG, "can't read value from shared memory", e);
+        } catch (BufferUnderflowException e) {
+            Log.e(TAG, "truncated value in shared memory", e);
+        }
+        return null;
+    }
+
+    /* Reads the rest of a parcel written before the format was versioned. */
+    private void readLegacyParcel(Parcel in) {
+        switch (type) {
             case STRING:
-                stringValue = in.readString();
+            case DATE:
+            case TIME:
+                value = in.readString();
                 break;
 
             case INT:
-                intValue = in.readInt();
+                bits = in.readInt();
                 break;
 
             case BOOL:
-                boolValue = (in.readInt() != 0);
+                bits = (in.readInt() != 0) ? 1 : 0;
                 break;
 
             case BIN:
                 int length = in.readInt();
-                if (length == 0) {
-                    binValue = null;
-                } else {
-                    binValue = new byte[length];
-                    in.readByteArray(binValue);
+                if (length != 0) {
+                    byte[] bin = new byte[length];
+                    in.readByteArray(bin);
+                    value = bin;
                 }
                 break;
 
+            case FLOAT:
+                bits = Float.floatToRawIntBits(in.readFloat());
+                break;
+
+            case NODE:
+                readChildren(in);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void readChildren(Parcel in) {
+        int childNodeCount = in.readInt();
+        for (int i = 0; i < childNodeCount; i++) {
+            String name = in.readString();
+            children().put(name, new DmtData(in));
+        }
+    }
+
+    /*
+     * Writes the value in the compact encoding of DmtSharedMemory. STREAM values hold
+     * a descriptor of their own and can't be written there.
+     */
+    void writeCompact(DmtSharedMemory.Output out) throws IOException {
+        if (type == STREAM) {
+            throw new IOException("stream values can't be written to shared memory");
+        }
+        out.writeByte(type);
+        switch (type) {
+            case STRING:
             case DATE:
-                dateValue = in.readString();
+            case TIME:
+                out.writeString((String) value);
+                break;
+
+            case INT:
+            case BOOL:
+            case FLOAT:
+                out.writeInt(bits);
+                break;
+
+            case BIN:
+                out.writeByteArray((byte[]) value);
+                break;
+
+            case NODE:
+                LinkedHashMap<String, DmtData> childNodes = childrenOrNull();
+                if (childNodes == null) {
+                    out.writeInt(0);
+                    break;
+                }
+                out.writeInt(childNodes.size());
+                for (Map.Entry<String, DmtData> entry : childNodes.entrySet()) {
+                    out.writeString(entry.getKey());
+                    entry.getValue().writeCompact(out);
+                }
                 break;
 
+            default:
+                break;
+        }
+    }
+
+    /* Reads a value written by writeCompact(). */
+    static DmtData readCompact(DmtSharedMemory.Reader in) {
+        DmtData data = new DmtData();
+        data.type = in.readByte();
+        switch (data.type) {
+            case STRING:
+            case DATE:
             case TIME:
-                timeValue = in.readString();
+                data.value = in.readString();
                 break;
 
+            case INT:
+            case BOOL:
             case FLOAT:
-                floatValue = in.readFloat();
+                data.bits = in.readInt();
+                break;
+
+            case BIN:
+                data.value = in.readByteArray();
                 break;
 
             case NODE:
-                childNodes.clear();
                 int childNodeCount = in.readInt();
                 for (int i = 0; i < childNodeCount; i++) {
                     String name = in.readString();
-                    DmtData value = new DmtData(in);
-                    childNodes.put(name, value);
+                    data.children().put(name, readCompact(in));
                 }
                 break;
 
             default:
                 break;
         }
+        return data;
     }
 }
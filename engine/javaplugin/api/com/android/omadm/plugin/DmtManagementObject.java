@@ -18,17 +18,37 @@ package com.android.omadm.plugin;
 
 import android.text.TextUtils;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Base class of management objects kept in memory by plug-ins.
+ *
+ * <p>Binder calls arrive on several threads. Changes are made under the lock of the
+ * object; the read methods use an unmodifiable snapshot of the nodes taken on the
+ * first read after a change, so reads aren't blocked by a commit writing the nodes
+ * to storage, and a series of changes doesn't copy shared nodes for each change.
+ */
 public abstract class DmtManagementObject implements IDmtSubTree {
 
     private final String mPath;
 
-    private boolean mIsUpdated;
+    private final DmtPath mRootPath;
+
+    private volatile boolean mIsUpdated;
+
+    private final DmtNodeStore mNodeStore = new DmtNodeStore();
+
+    /**
+     * Nodes of the subtree by full path, iterated parents first and siblings by name.
+     * Changed only while holding the lock of this object; subclasses changing it
+     * directly call {@link #publishNodes()} when they are done. A node returned by
+     * {@link Map#get} may be changed in place.
+     */
+    protected final Map<String, DmtPluginNode> mNodes = mNodeStore;
 
-    protected final Map<String, DmtPluginNode> mNodes = new HashMap<String, DmtPluginNode>();
+    /* the last published version of mNodes, null if changes were published since */
+    private volatile DmtNodeStore mSnapshot;
 
     private final IDmtRootPlugin mRootPlugin;     // FIXME: assigned but never accessed
 
@@ -38,9 +58,88 @@ public abstract class DmtManagementObject implements IDmtSubTree {
         }
 
         mPath = path;
+        mRootPath = DmtPath.of(path);
         mRootPlugin = rootPlugin;
 
         mNodes.put(path, new DmtPluginNode(mPath, new DmtData(null, DmtData.NODE)));
+        mSnapshot = mNodeStore.snapshot();
+    }
+
+    /**
+     * Makes the current state of {@link #mNodes} visible to the read methods. The
+     * methods changing nodes call this when they are done; the snapshot itself is
+     * taken on the next read.
+     */
+    protected final synchronized void publishNodes() {
+        mSnapshot = null;
+    }
+
+    /**
+     * Returns the nodes as of the last published change. The map can't be changed
+     * and stays the same while the management object changes, so it can be read
+     * without locking, e.g. to write the nodes to storage.
+     *
+     * @return the map of paths and node objects.
+     */
+    public final Map<String, DmtPluginNode> getSnapshot() {
+        return snapshot();
+    }
+
+    private DmtNodeStore snapshot() {
+        DmtNodeStore nodes = mSnapshot;
+        if (nodes == null) {
+            synchronized (this) {
+                nodes = mSnapshot;
+                if (nodes == null) {
+                    nodes = mNodeStore.snapshot();
+                    mSnapshot = nodes;
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Makes the current nodes the committed state: {@link #rollback()} returns to it
+     * and {@link #getUncommittedChanges()} reports the changes made since. Changes are
+     * recorded from the first call on.
+     */
+    public final synchronized void markCommitted() {
+        mSnapshot = mNodeStore.markCommitted();
+    }
+
+    /**
+     * Makes the state some changes lead to the committed state, once the changes are
+     * written to storage. Changes made after they were taken stay uncommitted.
+     *
+     * @param changes changes returned by {@link #getUncommittedChanges()}.
+     * @return false if the object was committed or rolled back since the changes were
+     *         taken; the committed state is left as it is then.
+     */
+    public final synchronized boolean markCommitted(DmtNodeDelta changes) {
+        return mNodeStore.markCommitted(changes);
+    }
+
+    /**
+     * Returns the net changes since the last commit, in time proportional to the
+     * changed nodes rather than to all nodes.
+     *
+     * @throws IllegalStateException if {@link #markCommitted()} was never called.
+     * @return the changes.
+     */
+    public final synchronized DmtNodeDelta getUncommittedChanges() {
+        DmtNodeDelta changes = mNodeStore.getChanges();
+        mSnapshot = changes.mNodes;
+        return changes;
+    }
+
+    /**
+     * Drops the changes made since the last commit, e.g. when an Atomic command fails.
+     * Takes constant time. Does nothing if {@link #markCommitted()} was never called.
+     */
+    public final synchronized void rollback() {
+        mNodeStore.rollback();
+        mSnapshot = mNodeStore.snapshot();
     }
 
     /**
@@ -49,8 +148,8 @@ public abstract class DmtManagementObject implements IDmtSubTree {
      * @param nodePath path to the node.
      * @return true if the node is exist otherwise false.
      */
-    protected boolean isNodeExist(String nodePath) {
-        return (mNodes.get(nodePath) != null);
+    protected synchronized boolean isNodeExist(String nodePath) {
+        return mNodeStore.containsKey(nodePath);
     }
 
     /**
@@ -60,17 +159,20 @@ public abstract class DmtManagementObject implements IDmtSubTree {
      * @param nodeValue new node value.
      * @return {@link ErrorCodes#SYNCML_DM_SUCCESS} in success case otherwise an error.
      */
-    protected final int createLeafNode_(String nodePath, DmtData nodeValue) {
+    protected final synchronized int createLeafNode_(String nodePath, DmtData nodeValue) {
         if (nodeValue == null) {
             return ErrorCodes.SYNCML_DM_INVALID_PARAMETER;
         }
 
-        String[] data = DmtPathUtils.splitPath(nodePath);
+        if (!DmtPathUtils.isValidPath(nodePath)) {
+            return ErrorCodes.SYNCML_DM_INVALID_URI;
+        }
 
-        String rootNodePath = data[0];
-        String nodeName     = data[1];
+        DmtPath path = DmtPath.of(nodePath);
+        DmtPath rootPath = path.parent();
+        String nodeName = path.name();
 
-        if (TextUtils.isEmpty(rootNodePath) || TextUtils.isEmpty(nodeName)) {
+        if (rootPath == null || rootPath.isEmpty() || nodeName.isEmpty()) {
             return ErrorCodes.SYNCML_DM_INVALID_URI;
         }
 
@@ -78,17 +180,18 @@ public abstract class DmtManagementObject implements IDmtSubTree {
             return updateLeafNode_(nodePath, nodeValue);
         }
 
-        int retcode = createInteriorNode_(rootNodePath);
+        int retcode = createInteriorNode_(rootPath);
         if (retcode != ErrorCodes.SYNCML_DM_SUCCESS) {
             return retcode;
         }
 
-        retcode = addNameToInteriorNode(rootNodePath, nodeName);
+        retcode = addNameToInteriorNode(rootPath.toString(), nodeName);
         if (retcode != ErrorCodes.SYNCML_DM_SUCCESS) {
             return retcode;
         }
 
         mNodes.put(nodePath, new DmtPluginNode(nodePath, nodeValue));
+        publishNodes();
 
         return ErrorCodes.SYNCML_DM_SUCCESS;
     }
@@ -99,38 +202,46 @@ public abstract class DmtManagementObject implements IDmtSubTree {
      * @param nodePath path to the new node.
      * @return {@link ErrorCodes#SYNCML_DM_SUCCESS} in success case otherwise an error.
      */
-    protected final int createInteriorNode_(String nodePath) {
-        String[] data = DmtPathUtils.splitPath(nodePath);
+    protected final synchronized int createInteriorNode_(String nodePath) {
+        if (!DmtPathUtils.isValidPath(nodePath)) {
+            return ErrorCodes.SYNCML_DM_INVALID_URI;
+        }
+        return createInteriorNode_(DmtPath.of(nodePath));
+    }
 
-        String rootNodePath = data[0];
-        String nodeName     = data[1];
+    /* the parents of the path share its string and are copied only when created */
+    private int createInteriorNode_(DmtPath path) {
+        DmtPath rootPath = path.parent();
+        String nodeName = path.name();
 
-        if (TextUtils.isEmpty(rootNodePath) || TextUtils.isEmpty(nodeName)) {
+        if (rootPath == null || rootPath.isEmpty() || nodeName.isEmpty()) {
             return ErrorCodes.SYNCML_DM_INVALID_URI;
         }
 
-        if (!DmtPathUtils.isSubPath(mPath, nodePath)) {
+        if (!mRootPath.isPrefixOf(path)) {
             return ErrorCodes.SYNCML_DM_INVALID_URI;
         }
 
         /* Check that exist node is an interior node and engine tries to set interior node too */
-        DmtPluginNode node = mNodes.get(nodePath);
+        String nodePath = path.toString();
+        DmtPluginNode node = mNodeStore.peek(nodePath);
         if (node != null) {
             return node.isLeaf() ? ErrorCodes.SYNCML_DM_ENTRY_EXIST
                     : ErrorCodes.SYNCML_DM_SUCCESS;
         }
 
-        int retcode = createInteriorNode_(rootNodePath);
+        int retcode = createInteriorNode_(rootPath);
         if (retcode != ErrorCodes.SYNCML_DM_SUCCESS) {
             return retcode;
         }
 
-        retcode = addNameToInteriorNode(rootNodePath, nodeName);
+        retcode = addNameToInteriorNode(rootPath.toString(), nodeName);
         if (retcode != ErrorCodes.SYNCML_DM_SUCCESS) {
             return retcode;
         }
 
         mNodes.put(nodePath, new DmtPluginNode(nodePath, new DmtData(null, DmtData.NODE)));
+        publishNodes();
 
         return ErrorCodes.SYNCML_DM_SUCCESS;
     }
@@ -159,12 +270,12 @@ public abstract class DmtManagementObject implements IDmtSubTree {
      * @param nodeValue new node value.
      * @return {@link ErrorCodes#SYNCML_DM_SUCCESS} in success case otherwise an error.
      */
-    protected final int updateLeafNode_(String nodePath, DmtData nodeValue) {
+    protected final synchronized int updateLeafNode_(String nodePath, DmtData nodeValue) {
         if (nodeValue == null) {
             return ErrorCodes.SYNCML_DM_INVALID_PARAMETER;
         }
 
-        DmtPluginNode node = mNodes.get(nodePath);
+        DmtPluginNode node = mNodeStore.peek(nodePath);
         if (node == null) {
             return ErrorCodes.SYNCML_DM_ENTRY_NOT_FOUND;
         }
@@ -173,7 +284,8 @@ public abstract class DmtManagementObject implements IDmtSubTree {
             return ErrorCodes.SYNCML_DM_COMMAND_NOT_ALLOWED;
         }
 
-        node.setValue(nodeValue);
+        mNodes.get(nodePath).setValue(nodeValue);
+        publishNodes();
 
         return ErrorCodes.SYNCML_DM_SUCCESS;
     }
@@ -185,62 +297,98 @@ public abstract class DmtManagementObject implements IDmtSubTree {
      * @param nodePath path to the node.
      * @return {@link ErrorCodes#SYNCML_DM_SUCCESS} in success case otherwise an error.
      */
-    protected final int deleteNode_(String nodePath) {
-        DmtPluginNode node = mNodes.get(nodePath);
-        if (node == null) {
+    protected final synchronized int deleteNode_(String nodePath) {
+        if (!mNodeStore.containsKey(nodePath)) {
             return ErrorCodes.SYNCML_DM_ENTRY_NOT_FOUND;
         }
 
         if (mPath.equals(nodePath)) {
             mNodes.clear();
+            publishNodes();
             return ErrorCodes.SYNCML_DM_SUCCESS;
         }
 
-        String[] data = DmtPathUtils.splitPath(nodePath);
-        if (TextUtils.isEmpty(data[0]) || TextUtils.isEmpty(data[1])) {
+        if (!DmtPathUtils.isValidPath(nodePath)) {
             return ErrorCodes.SYNCML_DM_FAIL;
         }
 
-        DmtPluginNode rootNode = mNodes.get(data[0]);
-        if (rootNode == null) {
+        DmtPath path = DmtPath.of(nodePath);
+        DmtPath rootPath = path.parent();
+        String nodeName = path.name();
+        if (rootPath == null || rootPath.isEmpty() || nodeName.isEmpty()) {
+            return ErrorCodes.SYNCML_DM_FAIL;
+        }
+
+        String rootNodePath = rootPath.toString();
+        if (!mNodeStore.containsKey(rootNodePath)) {
             return ErrorCodes.SYNCML_DM_TREE_CORRUPT;
         }
+        DmtPluginNode rootNode = mNodes.get(rootNodePath);
 
         /* Remove the node name from root node's list */
-        Map<String, DmtData> children;
         try {
-            children = rootNode.getValue().getChildNodeMap();
+            rootNode.getValue().removeChildNode(nodeName);
         } catch (DmtException e) {
             return e.getCode();
         }
 
-        if (children == null) {
-            return ErrorCodes.SYNCML_DM_TREE_CORRUPT;
+        /* Remove the node and, for an interior node, all nodes below it */
+        mNodeStore.removeSubtree(nodePath);
+        publishNodes();
+
+        return ErrorCodes.SYNCML_DM_SUCCESS;
+    }
+
+    /**
+     * Renames a node. The parent node and the paths of all nodes below the node are
+     * updated automatically. {@link #renameNode} doesn't call this method; management
+     * objects that allow renaming override it to do so.
+     *
+     * @param nodePath path to the node.
+     * @param newName new node name.
+     * @return {@link ErrorCodes#SYNCML_DM_SUCCESS} in success case otherwise an error.
+     */
+    protected final synchronized int renameNode_(String nodePath, String newName) {
+        if (TextUtils.isEmpty(newName) || newName.indexOf('/') != -1) {
+            return ErrorCodes.SYNCML_DM_INVALID_PARAMETER;
         }
 
-        children.remove(data[1]);
+        if (!isNodeExist(nodePath)) {
+            return ErrorCodes.SYNCML_DM_ENTRY_NOT_FOUND;
+        }
 
-        /*
-         * Since getNodeValue() returns reference to
-         * its own object we can change it without creating
-         * of new DmtData object
-         */
-        // rootNode.setValue(new DmtData(children));
+        if (mPath.equals(nodePath)) {
+            return ErrorCodes.SYNCML_DM_COMMAND_NOT_ALLOWED;
+        }
 
-        /* Remove the node from the sub tree */
-        mNodes.remove(nodePath);
+        String[] data = DmtPathUtils.splitPath(nodePath);
+        if (TextUtils.isEmpty(data[0]) || TextUtils.isEmpty(data[1])) {
+            return ErrorCodes.SYNCML_DM_FAIL;
+        }
 
-        /* Remove all sub nodes for the interior node */
-        if (!node.isLeaf()) {
-            String subPath = nodePath + '/';
+        if (isNodeExist(data[0] + '/' + newName)) {
+            return ErrorCodes.SYNCML_DM_ENTRY_EXIST;
+        }
 
-            String[] paths = mNodes.keySet().toArray(new String[mNodes.size()]);
-            for (String path : paths) {
-                if (path.startsWith(subPath)) {
-                    mNodes.remove(path);
-                }
-            }
+        if (!mNodeStore.containsKey(data[0])) {
+            return ErrorCodes.SYNCML_DM_TREE_CORRUPT;
         }
+        DmtPluginNode rootNode = mNodes.get(data[0]);
+
+        /* Rename the node in root node's list */
+        try {
+            DmtData rootValue = rootNode.getValue();
+            DmtData child = rootValue.getChild(data[1]);
+            rootValue.removeChildNode(data[1]);
+            rootValue.addChildNode(newName, child != null ? child : new DmtData());
+        } catch (DmtException e) {
+            return e.getCode();
+        }
+
+        if (!mNodeStore.renameSubtree(nodePath, newName)) {
+            return ErrorCodes.SYNCML_DM_TREE_CORRUPT;
+        }
+        publishNodes();
 
         return ErrorCodes.SYNCML_DM_SUCCESS;
     }
@@ -348,15 +496,17 @@ public abstract class DmtManagementObject implements IDmtSubTree {
         }
         nodePath = mPath + '/' + nodePath;
 
-        if (isNodeExist(nodePath)) {
-            if (updateLeafNode_(nodePath, value) != ErrorCodes.SYNCML_DM_SUCCESS) {
-                throw new DmtException("Cannot update node");
+        synchronized (this) {
+            if (isNodeExist(nodePath)) {
+                if (updateLeafNode_(nodePath, value) != ErrorCodes.SYNCML_DM_SUCCESS) {
+                    throw new DmtException("Cannot update node");
+                }
+                return;
             }
-            return;
-        }
 
-        if (createLeafNode_(nodePath, value) != ErrorCodes.SYNCML_DM_SUCCESS) {
-            throw new DmtException("Cannot create node");
+            if (createLeafNode_(nodePath, value) != ErrorCodes.SYNCML_DM_SUCCESS) {
+                throw new DmtException("Cannot create node");
+            }
         }
     }
 
@@ -381,7 +531,7 @@ public abstract class DmtManagementObject implements IDmtSubTree {
     }
 
     @Override
-    public int createInteriorNode(String path) {
+    public synchronized int createInteriorNode(String path) {
         String[] data = DmtPathUtils.splitPath(path);
         if (TextUtils.isEmpty(data[0]) || !isNodeExist(data[0])) {
             return ErrorCodes.SYNCML_DM_NOT_FOUND;
@@ -395,7 +545,7 @@ public abstract class DmtManagementObject implements IDmtSubTree {
     }
 
     @Override
-    public int createLeafNode(String path, DmtData value) {
+    public synchronized int createLeafNode(String path, DmtData value) {
         String[] data = DmtPathUtils.splitPath(path);
         if (TextUtils.isEmpty(data[0]) || !isNodeExist(data[0])) {
             return ErrorCodes.SYNCML_DM_NOT_FOUND;
@@ -448,15 +598,43 @@ public abstract class DmtManagementObject implements IDmtSubTree {
                                    "Cannot get nodes for given path");
         }
 
+        DmtNodeStore nodes = snapshot();
         if (nodePath.equals(mPath)) {
-            return mNodes;
+            return nodes;
+        }
+
+        return nodes.subtree(nodePath);
+    }
+
+    /**
+     * Returns an interior node and its direct leaf children, one level of the subtree
+     * as returned by {@link IDmtPlugin#getChildNodes}. Values of lazy leaf nodes are
+     * not loaded.
+     *
+     * @param nodePath full path to the interior node.
+     * @throws DmtException if the node is not present or is a leaf node.
+     * @return the map of paths and node objects.
+     */
+    public Map<String, DmtPluginNode> getChildNodes(String nodePath) throws DmtException {
+        DmtNodeStore snapshot = snapshot();
+        DmtPluginNode node = snapshot.peek(nodePath);
+        if (node == null) {
+            throw new DmtException(ErrorCodes.SYNCML_DM_NOT_FOUND,
+                                   "The requested node doesn't exist");
+        }
+        if (node.isLeaf()) {
+            throw new DmtException(ErrorCodes.SYNCML_DM_COMMAND_NOT_ALLOWED,
+                                   "The requested node is not an interior node");
         }
 
         Map<String, DmtPluginNode> nodes = new HashMap<String, DmtPluginNode>();
+        nodes.put(nodePath, node);
 
-        for (Map.Entry<String, DmtPluginNode> nodeEntry : mNodes.entrySet()) {
-            if (DmtPathUtils.isSubPath(nodePath, nodeEntry.getKey())) {
-                nodes.put(nodeEntry.getKey(), nodeEntry.getValue());
+        for (String childName : node.getValue().getChildNodeMap().keySet()) {
+            String childPath = nodePath + '/' + childName;
+            DmtPluginNode child = snapshot.peek(childPath);
+            if (child != null && child.isLeaf()) {
+                nodes.put(childPath, child);
             }
         }
         return nodes;
@@ -464,7 +642,7 @@ public abstract class DmtManagementObject implements IDmtSubTree {
 
     @Override
     public DmtPluginNode getNode(String nodePath) throws DmtException {
-        DmtPluginNode node = mNodes.get(nodePath);
+        DmtPluginNode node = snapshot().peek(nodePath);
         if (node == null) {
             throw new DmtException(ErrorCodes.SYNCML_DM_NOT_FOUND,
                                    "The requested node doesn't exist");
@@ -474,7 +652,7 @@ public abstract class DmtManagementObject implements IDmtSubTree {
 
     @Override
     public DmtData getNodeValue(String nodePath) throws DmtException {
-        DmtPluginNode node = mNodes.get(nodePath);
+        DmtPluginNode node = snapshot().peek(nodePath);
         if (node == null) {
             throw new DmtException(ErrorCodes.SYNCML_DM_NOT_FOUND,
                                    "The requested node doesn't exist");
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Net changes of a management object since its last commit, see
+ * {@link DmtManagementObject#getUncommittedChanges()}. Several changes of a node are
+ * coalesced into one: a node added and deleted again doesn't appear at all, a leaf
+ * updated several times appears once with its last value. Paths are listed parents
+ * first.
+ */
+public final class DmtNodeDelta {
+
+    /* the version the changes lead to */
+    final DmtNodeStore mNodes;
+
+    /* journal entries covered by the changes */
+    final int mJournalLength;
+
+    final int mJournalGeneration;
+
+    final Map<String, DmtPluginNode> mAdded = new LinkedHashMap<String, DmtPluginNode>();
+
+    final Map<String, DmtPluginNode> mReplaced = new LinkedHashMap<String, DmtPluginNode>();
+
+    final Set<String> mDeleted = new LinkedHashSet<String>();
+
+    DmtNodeDelta(DmtNodeStore nodes, int journalLength, int journalGeneration) {
+        mNodes = nodes;
+        mJournalLength = journalLength;
+        mJournalGeneration = journalGeneration;
+    }
+
+    /**
+     * @return nodes which didn't exist at the last commit, by full path.
+     */
+    public Map<String, DmtPluginNode> getAddedNodes() {
+        return Collections.unmodifiableMap(mAdded);
+    }
+
+    /**
+     * @return leaf nodes whose value or type changed since the last commit, by full path.
+     */
+    public Map<String, DmtPluginNode> getReplacedNodes() {
+        return Collections.unmodifiableMap(mReplaced);
+    }
+
+    /**
+     * @return full paths of nodes which existed at the last commit and don't anymore,
+     *         including all nodes below a deleted interior node.
+     */
+    public Set<String> getDeletedPaths() {
+        return Collections.unmodifiableSet(mDeleted);
+    }
+
+    /**
+     * @return all nodes of the management object after the changes; the map can't
+     *         be changed.
+     */
+    public Map<String, DmtPluginNode> getNodes() {
+        return mNodes;
+    }
+
+    /**
+     * @return true if nothing changed since the last commit.
+     */
+    public boolean isEmpty() {
+        return mAdded.isEmpty() && mReplaced.isEmpty() && mDeleted.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "added=" + mAdded.keySet() + " replaced=" + mReplaced.keySet()
+                + " deleted=" + mDeleted;
+    }
+}
@@ -0,0 +1,777 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Nodes of a management object keyed by full path, kept as a tree of path segments.
+ * Besides the map operations it removes and renames whole subtrees in time proportional
+ * to the subtree, and returns live views of subtrees without copying them. Iteration is
+ * depth first, parents before children, siblings ordered by name.
+ *
+ * <p>A path may be in the tree without a node of its own when only nodes below it were
+ * put; such paths are not keys of the map. Null keys and values are not allowed.
+ *
+ * <p>The tree is versioned: {@link #snapshot()} returns an unmodifiable copy in constant
+ * time, which shares all segments with this store. Segments reachable from a snapshot
+ * are copied before they are changed, so a snapshot never changes and can be read by
+ * any number of threads while one thread changes the store. Nodes are copied as well
+ * before {@link #get} returns them for changing; nodes returned by iteration or by
+ * {@link #peek} must not be changed. The store itself is not thread safe.
+ *
+ * <p>After {@link #markCommitted} the store records the paths it changes, so it can
+ * return to the committed version with {@link #rollback()} and tell the net changes
+ * since then with {@link #getChanges()}.
+ */
+final class DmtNodeStore extends AbstractMap<String, DmtPluginNode> {
+
+    private static final class Slot {
+        final Object mEdit;                 // version which may change the slot in place
+        final String mName;
+        final String mPath;
+        TreeMap<String, Slot> mChildren;    // created with the first child
+        DmtPluginNode mNode;                // null if only descendants have nodes
+        Object mNodeEdit;                   // version which may change mNode in place
+
+        Slot(Object edit, String name, String path) {
+            mEdit = edit;
+            mName = name;
+            mPath = path;
+        }
+
+        Slot(Object edit, Slot slot) {
+            mEdit = edit;
+            mName = slot.mName;
+            mPath = slot.mPath;
+            if (slot.mChildren != null) {
+                mChildren = new TreeMap<String, Slot>(slot.mChildren);
+            }
+            mNode = slot.mNode;
+            mNodeEdit = slot.mNodeEdit;
+        }
+
+        boolean hasChildren() {
+            return mChildren != null && !mChildren.isEmpty();
+        }
+    }
+
+    /* an entry of the journal: a changed node, or a changed subtree */
+    private static final class Change {
+        final String mPath;                 // null if all nodes changed
+        final boolean mSubtree;
+
+        Change(String path, boolean subtree) {
+            mPath = path;
+            mSubtree = subtree;
+        }
+    }
+
+    /* parent of the first path segments, not part of the map */
+    private Slot mRoot;
+
+    private int mSize;
+
+    /* the current version, null for a snapshot which can't be changed */
+    private Object mEdit;
+
+    /* snapshot of the current version, null if it has changed since */
+    private DmtNodeStore mSnapshot;
+
+    /* the version rollback() returns to, null until markCommitted() is called */
+    private DmtNodeStore mCommitted;
+
+    /* changes since mCommitted in order, null until markCommitted() is called */
+    private ArrayList<Change> mJournal;
+
+    /* counts markCommitted() and rollback() calls, see getChanges() */
+    private int mJournalGeneration;
+
+    private int mModCount;
+
+    private Set<Map.Entry<String, DmtPluginNode>> mEntrySet;
+
+    DmtNodeStore() {
+        mEdit = new Object();
+        mRoot = new Slot(mEdit, "", "");
+    }
+
+    private DmtNodeStore(Slot root, int size) {
+        mRoot = root;
+        mSize = size;
+    }
+
+    /**
+     * Returns the current state of the store as an unmodifiable map. Changes made to
+     * the store later aren't visible in the snapshot.
+     *
+     * @return the snapshot; the same object until the store changes.
+     */
+    DmtNodeStore snapshot() {
+        if (mEdit == null) {
+            return this;
+        }
+        if (mSnapshot == null) {
+            mSnapshot = new DmtNodeStore(mRoot, mSize);
+            mEdit = new Object();
+        }
+        return mSnapshot;
+    }
+
+    /**
+     * Makes the current version the committed one.
+     *
+     * @return the snapshot of the committed version.
+     */
+    DmtNodeStore markCommitted() {
+        checkWritable();
+        mCommitted = snapshot();
+        mJournal = new ArrayList<Change>();
+        mJournalGeneration++;
+        return mCommitted;
+    }
+
+    /**
+     * Makes the version some changes were taken from the committed one. Changes made
+     * after {@link #getChanges()} returned them stay uncommitted.
+     *
+     * @param changes the changes, see {@link #getChanges()}.
+     * @return false if another version was committed or rolled back to since the
+     *         changes were taken.
+     */
+    boolean markCommitted(DmtNodeDelta changes) {
+        checkWritable();
+        if (mJournal == null || changes.mJournalGeneration != mJournalGeneration) {
+            return false;
+        }
+        mCommitted = changes.mNodes;
+        mJournal.subList(0, changes.mJournalLength).clear();
+        mJournalGeneration++;
+        return true;
+    }
+
+    /**
+     * Returns to the committed version, dropping the changes made since.
+     */
+    void rollback() {
+        checkWritable();
+        if (mJournal == null || mJournal.isEmpty()) {
+            return;
+        }
+        mRoot = mCommitted.mRoot;
+        mSize = mCommitted.mSize;
+        mEdit = new Object();
+        mSnapshot = mCommitted;
+        mJournal.clear();
+        mJournalGeneration++;
+        mModCount++;
+    }
+
+    /**
+     * Returns the net changes since the committed version: a node added and removed
+     * again is left out, a node removed and added again is replaced, and an interior
+     * node is replaced only if it was a leaf before. Takes time proportional to the
+     * changed subtrees, not to the whole store.
+     *
+     * @return the changes.
+     */
+    DmtNodeDelta getChanges() {
+        checkWritable();
+        if (mJournal == null) {
+            throw new IllegalStateException("changes aren't recorded");
+        }
+
+        DmtNodeStore current = snapshot();
+        DmtNodeDelta changes = new DmtNodeDelta(current, mJournal.size(), mJournalGeneration);
+
+        // sorted, a path comes after the paths of its ancestors
+        TreeMap<String, Boolean> paths = new TreeMap<String, Boolean>();
+        for (Change change : mJournal) {
+            if (change.mPath == null) {
+                compare(mCommitted, current, changes);
+                return changes;
+            }
+            if (change.mSubtree || !paths.containsKey(change.mPath)) {
+                paths.put(change.mPath, change.mSubtree);
+            }
+        }
+
+        HashSet<String> subtrees = new HashSet<String>();
+        for (Map.Entry<String, Boolean> entry : paths.entrySet()) {
+            String path = entry.getKey();
+            if (isBelow(path, subtrees)) {
+                continue;
+            }
+            if (entry.getValue()) {
+                subtrees.add(path);
+                compare(mCommitted.subtree(path), current.subtree(path), changes);
+            } else {
+                compare(path, mCommitted.peek(path), current.peek(path), changes);
+            }
+        }
+        return changes;
+    }
+
+    private static boolean isBelow(String path, Set<String> roots) {
+        for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+            if (roots.contains(path.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void compare(Map<String, DmtPluginNode> before,
+            Map<String, DmtPluginNode> after, DmtNodeDelta changes) {
+        for (Map.Entry<String, DmtPluginNode> entry : before.entrySet()) {
+            if (!after.containsKey(entry.getKey())) {
+                changes.mDeleted.add(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, DmtPluginNode> entry : after.entrySet()) {
+            compare(entry.getKey(), before.get(entry.getKey()), entry.getValue(), changes);
+        }
+    }
+
+    private static void compare(String path, DmtPluginNode old, DmtPluginNode node,
+            DmtNodeDelta changes) {
+        if (node == null) {
+            if (old != null) {
+                changes.mDeleted.add(path);
+            }
+        } else if (old == null) {
+            changes.mAdded.put(path, node);
+        } else if (old != node && (old.isLeaf() || node.isLeaf())
+                && !isSameValue(old, node)) {
+            changes.mReplaced.put(path, node);
+        }
+    }
+
+    private static boolean isSameValue(DmtPluginNode old, DmtPluginNode node) {
+        if (old.getType() != node.getType()) {
+            return false;
+        }
+        // a copy of a lazy node whose value isn't loaded has not been set either
+        if (!old.isValueLoaded() && !node.isValueLoaded()) {
+            return true;
+        }
+        return old.getValue().equals(node.getValue());
+    }
+
+    /* Records that the node at the path, or all nodes below it, may change. */
+    private void journal(String path, boolean subtree) {
+        if (mJournal != null) {
+            mJournal.add(new Change(path, subtree));
+        }
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return peek(key) != null;
+    }
+
+    /**
+     * Returns the node stored for a path. For a store which isn't a snapshot, the node
+     * is copied first if it is shared with a snapshot, so it may be changed in place.
+     */
+    @Override
+    public DmtPluginNode get(Object key) {
+        Slot slot = find(key);
+        if (slot == null || slot.mNode == null) {
+            return null;
+        }
+        if (mEdit == null || slot.mNodeEdit == mEdit) {
+            return slot.mNode;
+        }
+
+        slot = edit((String) key, null);
+        slot.mNode = slot.mNode.copy();
+        slot.mNodeEdit = mEdit;
+        mSnapshot = null;
+        journal((String) key, false);
+        return slot.mNode;
+    }
+
+    /**
+     * Returns the node stored for a path without copying it.
+     *
+     * @param key full path of the node.
+     * @return the node, which must not be changed, or null.
+     */
+    DmtPluginNode peek(Object key) {
+        Slot slot = find(key);
+        return slot != null ? slot.mNode : null;
+    }
+
+    @Override
+    public DmtPluginNode put(String key, DmtPluginNode value) {
+        checkWritable();
+        if (key == null || value == null) {
+            throw new NullPointerException("null path or node");
+        }
+
+        Slot slot = find(key);
+        if (slot == null || slot.mEdit != mEdit) {
+            slot = edit(key, null);
+        }
+        DmtPluginNode old = slot.mNode;
+        slot.mNode = value;
+        slot.mNodeEdit = mEdit;
+        if (old == null) {
+            mSize++;
+            mModCount++;
+        }
+        mSnapshot = null;
+        journal(key, false);
+        return old;
+    }
+
+    @Override
+    public DmtPluginNode remove(Object key) {
+        checkWritable();
+        Slot slot = find(key);
+        if (slot == null || slot.mNode == null) {
+            return null;
+        }
+
+        ArrayList<Slot> trail = new ArrayList<Slot>();
+        slot = edit((String) key, trail);
+        DmtPluginNode old = slot.mNode;
+        slot.mNode = null;
+        mSize--;
+        mModCount++;
+        mSnapshot = null;
+        journal((String) key, false);
+        prune(trail);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        mRoot = new Slot(mEdit, "", "");
+        mSize = 0;
+        mModCount++;
+        mSnapshot = null;
+        journal(null, true);
+    }
+
+    @Override
+    public Set<Map.Entry<String, DmtPluginNode>> entrySet() {
+        if (mEntrySet == null) {
+            mEntrySet = new AbstractSet<Map.Entry<String, DmtPluginNode>>() {
+                @Override
+                public int size() {
+                    return mSize;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, DmtPluginNode>> iterator() {
+                    return new SlotIterator(mRoot, mEdit == null);
+                }
+
+                @Override
+                public void clear() {
+                    DmtNodeStore.this.clear();
+                }
+            };
+        }
+        return mEntrySet;
+    }
+
+    /**
+     * Removes the node at the path and all nodes below it.
+     *
+     * @param path full path of the subtree root.
+     * @return the number of nodes removed.
+     */
+    int removeSubtree(String path) {
+        checkWritable();
+        Slot slot = find(path);
+        if (slot == null) {
+            return 0;
+        }
+
+        ArrayList<Slot> trail = new ArrayList<Slot>();
+        slot = edit(path, trail);
+        trail.remove(trail.size() - 1);
+
+        int removed = countNodes(slot);
+        trail.get(trail.size() - 1).mChildren.remove(slot.mName);
+        mSize -= removed;
+        mModCount++;
+        mSnapshot = null;
+        journal(path, true);
+        prune(trail);
+        return removed;
+    }
+
+    /**
+     * Renames the last segment of a path, moving all nodes below it along. Nodes get
+     * new {@link DmtPluginNode} objects carrying their new paths.
+     *
+     * @param path full path of the subtree root.
+     * @param newName new last segment of the path.
+     * @return false if the path isn't in the tree or the new path already is.
+     */
+    boolean renameSubtree(String path, String newName) {
+        checkWritable();
+        Slot slot = find(path);
+        if (slot == null) {
+            return false;
+        }
+
+        ArrayList<Slot> trail = new ArrayList<Slot>();
+        slot = edit(path, trail);
+        Slot parent = trail.get(trail.size() - 2);
+        if (parent.mChildren.containsKey(newName)) {
+            return false;
+        }
+
+        parent.mChildren.remove(slot.mName);
+        String newPath = childPath(parent, newName);
+        parent.mChildren.put(newName, move(slot, newName, newPath));
+        mModCount++;
+        mSnapshot = null;
+        journal(path, true);
+        journal(newPath, true);
+        return true;
+    }
+
+    /**
+     * Returns a live, read-only view of the node at the path and all nodes below it.
+     * Building the view costs nothing; {@link Map#size()} of the view walks the subtree.
+     *
+     * @param path full path of the subtree root.
+     * @return the view.
+     */
+    Map<String, DmtPluginNode> subtree(String path) {
+        return new SubtreeView(path);
+    }
+
+    private void checkWritable() {
+        if (mEdit == null) {
+            throw new UnsupportedOperationException("snapshot can't be changed");
+        }
+    }
+
+    private String childPath(Slot parent, String name) {
+        return parent == mRoot ? name : parent.mPath + '/' + name;
+    }
+
+    /* Returns the slot of a path, or null if the path isn't in the tree. */
+    private Slot find(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        String path = (String) key;
+        int length = path.length();
+        Slot slot = mRoot;
+        int start = 0;
+        while (slot.mChildren != null) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            slot = slot.mChildren.get(path.substring(start, end));
+            if (slot == null || end == length) {
+                return slot;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /*
+     * Returns the slot of a path which the current version may change, copying the
+     * slots from the root down to it which are shared with a snapshot and creating
+     * the missing ones. Adds the slots from the root to the path to the trail if set.
+     */
+    private Slot edit(String path, ArrayList<Slot> trail) {
+        if (mRoot.mEdit != mEdit) {
+            mRoot = new Slot(mEdit, mRoot);
+        }
+
+        int length = path.length();
+        Slot slot = mRoot;
+        int start = 0;
+        while (true) {
+            if (trail != null) {
+                trail.add(slot);
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            String name = path.substring(start, end);
+
+            Slot child = (slot.mChildren != null) ? slot.mChildren.get(name) : null;
+            if (child == null || child.mEdit != mEdit) {
+                child = (child == null) ? new Slot(mEdit, name, path.substring(0, end))
+                        : new Slot(mEdit, child);
+                if (slot.mChildren == null) {
+                    slot.mChildren = new TreeMap<String, Slot>();
+                }
+                slot.mChildren.put(name, child);
+            }
+            slot = child;
+
+            if (end == length) {
+                if (trail != null) {
+                    trail.add(slot);
+                }
+                return slot;
+            }
+            start = end + 1;
+        }
+    }
+
+    /* Drops slots at the end of the trail which neither hold a node nor have children. */
+    private void prune(ArrayList<Slot> trail) {
+        for (int i = trail.size() - 1; i > 0; i--) {
+            Slot slot = trail.get(i);
+            if (slot.mNode != null || slot.hasChildren()) {
+                return;
+            }
+            trail.get(i - 1).mChildren.remove(slot.mName);
+        }
+    }
+
+    private static int countNodes(Slot slot) {
+        int nodes = (slot.mNode != null) ? 1 : 0;
+        if (slot.mChildren != null) {
+            for (Slot child : slot.mChildren.values()) {
+                nodes += countNodes(child);
+            }
+        }
+        return nodes;
+    }
+
+    /* Returns a copy of the subtree of the slot under a new name and path. */
+    private Slot move(Slot slot, String newName, String newPath) {
+        Slot moved = new Slot(mEdit, newName, newPath);
+        if (slot.mNode != null) {
+            // the copy shares the value, which is copied before changes as before
+            moved.mNode = slot.mNode.withPath(newPath);
+            moved.mNodeEdit = slot.mNodeEdit;
+        }
+        if (slot.mChildren != null) {
+            moved.mChildren = new TreeMap<String, Slot>();
+            for (Slot child : slot.mChildren.values()) {
+                moved.mChildren.put(child.mName,
+                        move(child, child.mName, newPath + '/' + child.mName));
+            }
+        }
+        return moved;
+    }
+
+    private final class SlotEntry implements Map.Entry<String, DmtPluginNode> {
+        private final Slot mSlot;
+
+        SlotEntry(Slot slot) {
+            mSlot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return mSlot.mPath;
+        }
+
+        @Override
+        public DmtPluginNode getValue() {
+            return mSlot.mNode;
+        }
+
+        @Override
+        public DmtPluginNode setValue(DmtPluginNode value) {
+            return put(mSlot.mPath, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return mSlot.mPath.equals(e.getKey()) && mSlot.mNode.equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return mSlot.mPath.hashCode() ^ mSlot.mNode.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return mSlot.mPath + '=' + mSlot.mNode;
+        }
+    }
+
+    /**
+     * Depth first walk over the slots holding nodes. Removing through the iterator only
+     * clears the node; empty slots are dropped by later removals. The walk goes on over
+     * the slots as they were when it reached them, so entries of nodes replaced after
+     * that return the old node.
+     */
+    private final class SlotIterator implements Iterator<Map.Entry<String, DmtPluginNode>> {
+        private final ArrayList<Iterator<Slot>> mStack = new ArrayList<Iterator<Slot>>();
+        private final boolean mReadOnly;
+        private int mExpectedModCount = mModCount;
+        private Slot mNext;
+        private Slot mLast;
+
+        /**
+         * @param start the slot to walk below; included itself unless it is the root.
+         * @param readOnly true to refuse {@link #remove()}.
+         */
+        SlotIterator(Slot start, boolean readOnly) {
+            mReadOnly = readOnly;
+            if (start == null) {
+                return;
+            }
+            if (start.hasChildren()) {
+                mStack.add(start.mChildren.values().iterator());
+            }
+            if (start != mRoot && start.mNode != null) {
+                mNext = start;
+            } else {
+                advance();
+            }
+        }
+
+        private void advance() {
+            mNext = null;
+            while (!mStack.isEmpty()) {
+                Iterator<Slot> it = mStack.get(mStack.size() - 1);
+                if (!it.hasNext()) {
+                    mStack.remove(mStack.size() - 1);
+                    continue;
+                }
+                Slot slot = it.next();
+                if (slot.hasChildren()) {
+                    mStack.add(slot.mChildren.values().iterator());
+                }
+                if (slot.mNode != null) {
+                    mNext = slot;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public Map.Entry<String, DmtPluginNode> next() {
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (mNext == null) {
+                throw new NoSuchElementException();
+            }
+            mLast = mNext;
+            advance();
+            return new SlotEntry(mLast);
+        }
+
+        @Override
+        public void remove() {
+            if (mReadOnly) {
+                throw new UnsupportedOperationException();
+            }
+            if (mLast == null) {
+                throw new IllegalStateException();
+            }
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            // copying slots only replaces values of the maps being walked
+            Slot slot = edit(mLast.mPath, null);
+            mLast = null;
+            if (slot.mNode == null) {
+                throw new IllegalStateException();
+            }
+            slot.mNode = null;
+            mSize--;
+            mSnapshot = null;
+            journal(slot.mPath, false);
+            mExpectedModCount = ++mModCount;
+        }
+    }
+
+    private final class SubtreeView extends AbstractMap<String, DmtPluginNode> {
+        private final String mPath;
+
+        SubtreeView(String path) {
+            mPath = path;
+        }
+
+        private boolean inSubtree(Object key) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+            return DmtPath.isPrefix(mPath, (String) key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inSubtree(key) && DmtNodeStore.this.containsKey(key);
+        }
+
+        @Override
+        public DmtPluginNode get(Object key) {
+            return inSubtree(key) ? peek(key) : null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, DmtPluginNode>> entrySet() {
+            return new AbstractSet<Map.Entry<String, DmtPluginNode>>() {
+                @Override
+                public int size() {
+                    int size = 0;
+                    for (Iterator<Map.Entry<String, DmtPluginNode>> it = iterator();
+                            it.hasNext(); it.next()) {
+                        size++;
+                    }
+                    return size;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, DmtPluginNode>> iterator() {
+                    return new SlotIterator(find(mPath), true);
+                }
+            };
+        }
+    }
+}
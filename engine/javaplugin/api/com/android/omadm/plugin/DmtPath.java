@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin;
+
+/**
+ * Immutable DM tree path. A path is a range of a backing string, so the parent of a
+ * path and a path relative to one of its ancestors share the backing string of the
+ * original path instead of copying it. Segments are separated by '/'.
+ */
+public final class DmtPath {
+
+    private final String mBacking;
+    private final int mStart;       // index of the first character in mBacking
+    private final int mEnd;         // index after the last character in mBacking
+
+    private String mString;         // cached toString()
+    private int mHash;              // cached hashCode(), 0 if not computed
+
+    private DmtPath(String backing, int start, int end) {
+        mBacking = backing;
+        mStart = start;
+        mEnd = end;
+    }
+
+    /**
+     * Returns the path for a string, without copying the string.
+     *
+     * @param path an absolute ("./A/B") or relative ("A/B") path.
+     * @return the path.
+     */
+    public static DmtPath of(String path) {
+        if (path == null) {
+            throw new NullPointerException("null path");
+        }
+        DmtPath p = new DmtPath(path, 0, path.length());
+        p.mString = path;
+        return p;
+    }
+
+    /**
+     * Checks whether a path is the root path or lies below it, without building
+     * either path.
+     *
+     * @param rootPath root path.
+     * @param path some path.
+     * @return true if the paths are equal or path starts with rootPath and '/'.
+     */
+    public static boolean isPrefix(String rootPath, String path) {
+        int len = rootPath.length();
+        return path.startsWith(rootPath) && (path.length() == len || path.charAt(len) == '/');
+    }
+
+    /**
+     * @return the number of characters in the path.
+     */
+    public int length() {
+        return mEnd - mStart;
+    }
+
+    /**
+     * @return true if the path is empty, as the path of a node relative to itself is.
+     */
+    public boolean isEmpty() {
+        return mEnd == mStart;
+    }
+
+    /**
+     * Returns the path of the parent node.
+     *
+     * @return the parent path sharing this path's backing string, or null for a path
+     *         of one segment.
+     */
+    public DmtPath parent() {
+        int index = lastSeparator();
+        return index < 0 ? null : new DmtPath(mBacking, mStart, index);
+    }
+
+    /**
+     * Returns the last segment of the path.
+     *
+     * @return the node name; empty if the path is empty or ends with '/'.
+     */
+    public String name() {
+        int index = lastSeparator();
+        if (index < 0) {
+            return toString();
+        }
+        return mBacking.substring(index + 1, mEnd);
+    }
+
+    /**
+     * Returns the path of a node below this one.
+     *
+     * @param name the name of the child node, or a relative path of several segments.
+     * @return the child path.
+     */
+    public DmtPath child(String name) {
+        if (isEmpty()) {
+            return of(name);
+        }
+        return of(toString() + '/' + name);
+    }
+
+    /**
+     * Checks whether this path is the given path or one of its ancestors.
+     *
+     * @param other some path.
+     * @return true if the paths are equal or other starts with this path and '/'.
+     */
+    public boolean isPrefixOf(DmtPath other) {
+        int len = length();
+        if (other.length() < len
+                || !other.mBacking.regionMatches(other.mStart, mBacking, mStart, len)) {
+            return false;
+        }
+        return other.length() == len || other.mBacking.charAt(other.mStart + len) == '/';
+    }
+
+    /**
+     * Checks whether this path is the given path or one of its ancestors.
+     *
+     * @param path some path.
+     * @return true if the paths are equal or path starts with this path and '/'.
+     */
+    public boolean isPrefixOf(String path) {
+        int len = length();
+        if (path.length() < len || !path.regionMatches(0, mBacking, mStart, len)) {
+            return false;
+        }
+        return path.length() == len || path.charAt(len) == '/';
+    }
+
+    /**
+     * Returns the path of a node relative to this one. The result shares the backing
+     * string of the given path.
+     *
+     * @param other the path of this node or a node below it.
+     * @return the relative path, empty for this node itself, or null if other isn't
+     *         below this path.
+     */
+    public DmtPath relativize(DmtPath other) {
+        if (!isPrefixOf(other)) {
+            return null;
+        }
+        int len = length();
+        if (other.length() == len) {
+            return new DmtPath(other.mBacking, other.mEnd, other.mEnd);
+        }
+        return new DmtPath(other.mBacking, other.mStart + len + 1, other.mEnd);
+    }
+
+    private int lastSeparator() {
+        int index = mBacking.lastIndexOf('/', mEnd - 1);
+        return index < mStart ? -1 : index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DmtPath)) {
+            return false;
+        }
+        DmtPath other = (DmtPath) o;
+        return length() == other.length()
+                && mBacking.regionMatches(mStart, other.mBacking, other.mStart, length());
+    }
+
+    /**
+     * Same as {@link String#hashCode()} of {@link #toString()}, computed in place.
+     */
+    @Override
+    public int hashCode() {
+        int hash = mHash;
+        if (hash == 0) {
+            for (int i = mStart; i < mEnd; i++) {
+                hash = 31 * hash + mBacking.charAt(i);
+            }
+            mHash = hash;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        if (mString == null) {
+            mString = mBacking.substring(mStart, mEnd);
+        }
+        return mString;
+    }
+}
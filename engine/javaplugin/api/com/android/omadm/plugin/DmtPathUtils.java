@@ -18,8 +18,6 @@ package com.android.omadm.plugin;
 
 import android.text.TextUtils;
 
-import java.util.Arrays;
-
 public final class DmtPathUtils {
 
     public static final String ROOTNODE = "__ROOT__";
@@ -43,8 +41,15 @@ public final class DmtPathUtils {
      * @return node name or null in bad case.
      */
     public static String getNodeName(String nodePath) {
-        String[] data = splitPath(nodePath);
-        return data[1];
+        if (!isValidPath(nodePath)) {
+            return null;
+        }
+
+        int index = nodePath.lastIndexOf('/');
+        if (index == nodePath.length() - 1) {
+            return null;
+        }
+        return nodePath.substring(index + 1);
     }
 
     /**
@@ -60,17 +65,16 @@ public final class DmtPathUtils {
             return null;
         }
 
-        String prefix = rootPath + '/';
-
-        if (!nodePath.startsWith(prefix)) {
+        int nameStart = rootPath.length() + 1;
+        if (nodePath.length() < nameStart || !DmtPath.isPrefix(rootPath, nodePath)) {
             return null;
         }
 
-        int nameEnd = nodePath.indexOf('/', prefix.length());
+        int nameEnd = nodePath.indexOf('/', nameStart);
         if (nameEnd == -1) {
-            return nodePath.substring(prefix.length());
+            return nodePath.substring(nameStart);
         }
-        return nodePath.substring(prefix.length(), nameEnd);
+        return nodePath.substring(nameStart, nameEnd);
     }
 
     /**
@@ -81,7 +85,6 @@ public final class DmtPathUtils {
      */
     public static String[] splitPath(String nodePath) {
         String[] data = new String[2];
-        Arrays.fill(data, null);
 
         if (!isValidPath(nodePath)) {
             return data;
@@ -102,14 +105,10 @@ public final class DmtPathUtils {
             return data;
         }
 
-        if (index == nodePath.length() - 1) {
-            data[0] = nodePath.substring(0, index);
-            return data;
-        }
-
         data[0] = nodePath.substring(0, index);
-        data[1] = nodePath.substring(index + 1);
-
+        if (index < nodePath.length() - 1) {
+            data[1] = nodePath.substring(index + 1);
+        }
         return data;
     }
 
@@ -125,11 +124,7 @@ public final class DmtPathUtils {
             return false;
         }
 
-        if (nodePath.equals(rootPath)) {
-            return true;
-        }
-
-        return nodePath.startsWith(rootPath + '/');
+        return DmtPath.isPrefix(rootPath, nodePath);
     }
 
     public static String toRelativePath(String rootPath, String path) {
@@ -139,7 +134,7 @@ public final class DmtPathUtils {
         if (rootPath.equals(path) || path.isEmpty()) {
             r = ROOTNODE;
         }
-        else if (path.startsWith(rootPath)) {
+        else if (DmtPath.isPrefix(rootPath, path)) {
             r = path.substring(rootPath.length() + 1);
         }
 //        Log.i(TAG, "'" + path + "' -> '" + r + "'");
@@ -154,7 +149,7 @@ public final class DmtPathUtils {
         if (path.isEmpty() || path.equals(ROOTNODE)) {
             a = rootPath;
         }
-        else if (!path.startsWith(rootPath)) {
+        else if (!DmtPath.isPrefix(rootPath, path)) {
             a = rootPath + '/' + path;
         }
 //        Log.i(TAG, "'" + path + "' -> '" + a + "'");
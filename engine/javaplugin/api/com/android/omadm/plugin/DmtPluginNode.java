@@ -23,12 +23,25 @@ import android.util.Log;
 public class DmtPluginNode implements Parcelable {
     private static final String TAG = "DM_DmtPluginNode";
 
+    /**
+     * Reads the value of a lazy node, see {@link #DmtPluginNode(String, int, ValueLoader)}.
+     */
+    public interface ValueLoader {
+        /**
+         * @param path the path of the node.
+         * @return the node value, or null if it can't be read.
+         */
+        DmtData loadValue(String path);
+    }
+
     private String mPath;
 
     private DmtData mValue;
 
     private int mType;  // 0 == DmtData.UNDEFINED
 
+    private volatile ValueLoader mLoader;   // set until the value of a lazy node is loaded
+
     public DmtPluginNode() {
     }
 
@@ -43,17 +56,66 @@ public class DmtPluginNode implements Parcelable {
         setValue(value);
     }
 
+    /**
+     * Creates a node whose value is read by the loader on first access, so plug-ins
+     * backed by expensive sources only read the values the server asks for.
+     *
+     * @param path the path of the node.
+     * @param type type of the value, defined as constants in {@link DmtData}.
+     * @param loader reads the value when {@link #getValue()} is first called.
+     */
+    public DmtPluginNode(String path, int type, ValueLoader loader) {
+        mPath = path;
+        mType = type;
+        mLoader = loader;
+    }
+
     public String getPath() {
         return mPath;
     }
 
+    /**
+     * Returns a copy of this node under another path, used when a subtree is renamed.
+     * The value of a lazy node stays unloaded and is read from the new path.
+     */
+    DmtPluginNode withPath(String path) {
+        DmtPluginNode node = new DmtPluginNode(path, mType);
+        node.mValue = mValue;
+        node.mLoader = mLoader;
+        return node;
+    }
+
+    /**
+     * Returns a copy of this node whose value can be changed without changing this
+     * node, used before a node shared with a snapshot of the tree is changed.
+     */
+    DmtPluginNode copy() {
+        DmtPluginNode node = withPath(mPath);
+        if (mValue != null) {
+            node.mValue = mValue.copy();
+        }
+        return node;
+    }
+
     public DmtData getValue() {
+        if (mLoader != null) {
+            loadValue();
+        }
         if (mValue == null) {
             mValue = new DmtData("xxxyyyzz");
         }
         return mValue;
     }
 
+    /* Nodes of a snapshot are read by several threads, so the value is loaded once. */
+    private synchronized void loadValue() {
+        ValueLoader loader = mLoader;
+        if (loader != null) {
+            setValue(loader.loadValue(mPath));
+            mLoader = null;
+        }
+    }
+
     public void setValue(DmtData value) {
         if (value != null) {
             int oldType = mType;
@@ -62,6 +124,8 @@ public class DmtPluginNode implements Parcelable {
                 mValue = value;
                 mType = newType;
             }
+            // cleared last, readers seeing no loader see the value
+            mLoader = null;
         }
     }
 
@@ -73,12 +137,21 @@ public class DmtPluginNode implements Parcelable {
         return mType;
     }
 
+    /**
+     * @return true if this is a lazy node whose value hasn't been read yet
+     */
+    public boolean isValueLoaded() {
+        return mLoader == null;
+    }
+
     @Override
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(mPath);
         dest.writeInt(mType);
-        if (mValue != null) {
-            dest.writeString(mValue.getString());
+        // write a value exactly when the reader expects one; the value of a lazy node
+        // is not loaded for the transfer, it is read with getNodeValue() if needed
+        if (mType > DmtData.NULL && mType <= DmtData.NODE) {
+            dest.writeString(mValue != null ? mValue.getString() : null);
         }
     }
 
@@ -103,7 +176,8 @@ public class DmtPluginNode implements Parcelable {
         mPath = in.readString();
         mType = in.readInt();
         if (mType <= DmtData.NULL || mType > DmtData.NODE) {
-            if (mType != DmtData.NULL) {
+            // stream values are never sent with the node, but the type is kept
+            if (mType != DmtData.NULL && mType != DmtData.STREAM) {
                 mType = DmtData.UNDEFINED;
             }
             mValue = null;
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Result of a plug-in read: the operation status together with the node value or the
+ * set of nodes, so the DM engine doesn't need a second getOperationResult() transaction.
+ * Nodes are written field by field instead of as a generic Map, and large results
+ * are moved through shared memory in the compact encoding of {@link DmtSharedMemory}.
+ */
+public final class DmtPluginResult implements Parcelable {
+
+    private static final String TAG = "DM_DmtPluginResult";
+
+    private static final int TRANSPORT_INLINE = 0;
+    private static final int TRANSPORT_SHARED_MEMORY = 1;
+
+    private final int mStatus;
+
+    private final DmtData mValue;
+
+    private final Map<String, DmtPluginNode> mNodes;
+
+    public DmtPluginResult(int status, DmtData value) {
+        this(status, value, null);
+    }
+
+    public DmtPluginResult(int status, Map<String, DmtPluginNode> nodes) {
+        this(status, null, nodes);
+    }
+
+    private DmtPluginResult(int status, DmtData value, Map<String, DmtPluginNode> nodes) {
+        mStatus = status;
+        mValue = value;
+        mNodes = nodes;
+    }
+
+    /** @return {@link ErrorCodes#SYNCML_DM_SUCCESS} or the error of the operation */
+    public int getStatus() {
+        return mStatus;
+    }
+
+    /** @return the node value, or null if the operation failed or returned nodes */
+    public DmtData getValue() {
+        return mValue;
+    }
+
+    /** @return the nodes keyed by full path, or null if the operation failed */
+    public Map<String, DmtPluginNode> getNodes() {
+        return mNodes;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        int size = getCompactSize();
+        if (size < DmtSharedMemory.THRESHOLD || !writeSharedMemory(dest, size)) {
+            dest.writeInt(TRANSPORT_INLINE);
+            writeInline(dest, flags);
+        }
+    }
+
+    private void writeInline(Parcel dest, int flags) {
+        dest.writeInt(mStatus);
+
+        if (mValue == null) {
+            dest.writeInt(0);
+        } else {
+            dest.writeInt(1);
+            mValue.writeToParcel(dest, flags);
+        }
+
+        if (mNodes == null) {
+            dest.writeInt(-1);
+            return;
+        }
+
+        dest.writeInt(mNodes.size());
+        for (Map.Entry<String, DmtPluginNode> entry : mNodes.entrySet()) {
+            DmtPluginNode node = entry.getValue();
+            dest.writeString(entry.getKey());
+            dest.writeInt(node.getType());
+            if (node.getType() == DmtData.NODE) {
+                // only the child names of interior nodes are needed by the engine
+                DmtData value = node.getValue();
+                if (value.getType() != DmtData.NODE) {
+                    value = new DmtData(null, DmtData.NODE);
+                }
+                value.writeToParcel(dest, flags);
+            }
+        }
+    }
+
+    /* @return the size of the compact encoding, or -1 if it can't hold the result */
+    private int getCompactSize() {
+        DmtSharedMemory.Counter counter = new DmtSharedMemory.Counter();
+        try {
+            writeCompact(counter);
+        } catch (IOException e) {
+            // a STREAM value carries a descriptor of its own
+            return -1;
+        }
+        return counter.getSize();
+    }
+
+    /* The same fields as writeInline(), in the compact encoding. */
+    private void writeCompact(DmtSharedMemory.Output out) throws IOException {
+        out.writeInt(mStatus);
+
+        if (mValue == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(1);
+            mValue.writeCompact(out);
+        }
+
+        if (mNodes == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(mNodes.size());
+        for (Map.Entry<String, DmtPluginNode> entry : mNodes.entrySet()) {
+            DmtPluginNode node = entry.getValue();
+            out.writeString(entry.getKey());
+            out.writeByte(node.getType());
+            if (node.getType() == DmtData.NODE) {
+                DmtData value = node.getValue();
+                if (value.getType() != DmtData.NODE) {
+                    value = new DmtData(null, DmtData.NODE);
+                }
+                value.writeCompact(out);
+            }
+        }
+    }
+
+    /**
+     * Encode a large result straight into ashmem and pass only the descriptor in the
+     * binder transaction.
+     * @return false if the shared memory couldn't be set up; nothing is written then
+     */
+    private boolean writeSharedMemory(Parcel dest, int size) {
+        DmtSharedMemory.Writer writer = null;
+        try {
+            writer = new DmtSharedMemory.Writer(size);
+            writeCompact(writer);
+            writer.writeToParcel(dest, TRANSPORT_SHARED_MEMORY);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "can't write result to shared memory, sending inline", e);
+            return false;
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    private static DmtPluginResult readSharedMemory(Parcel in) {
+        try {
+            return readCompact(DmtSharedMemory.Reader.readFromParcel(in));
+        } catch (IOException e) {
+            Log.e(TAG, "can't read result from shared memory", e);
+        } catch (BufferUnderflowException e) {
+            Log.e(TAG, "truncated result in shared memory", e);
+        }
+        return new DmtPluginResult(ErrorCodes.SYNCML_DM_IO_FAILURE, (DmtData) null);
+    }
+
+    private static DmtPluginResult readCompact(DmtSharedMemory.Reader in) {
+        int status = in.readInt();
+        DmtData value = in.readByte() != 0 ? DmtData.readCompact(in) : null;
+
+        int count = in.readInt();
+        if (count < 0) {
+            return new DmtPluginResult(status, value, null);
+        }
+
+        Map<String, DmtPluginNode> nodes =
+                new LinkedHashMap<String, DmtPluginNode>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            String path = in.readString();
+            int type = in.readByte();
+            if (type == DmtData.NODE) {
+                nodes.put(path, new DmtPluginNode(path, DmtData.readCompact(in)));
+            } else {
+                nodes.put(path, new DmtPluginNode(path, type));
+            }
+        }
+        return new DmtPluginResult(status, value, nodes);
+    }
+
+    private static DmtPluginResult readInline(Parcel in) {
+        int status = in.readInt();
+        DmtData value = in.readInt() != 0 ? new DmtData(in) : null;
+
+        int count = in.readInt();
+        if (count < 0) {
+            return new DmtPluginResult(status, value, null);
+        }
+
+        Map<String, DmtPluginNode> nodes =
+                new LinkedHashMap<String, DmtPluginNode>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            String path = in.readString();
+            int type = in.readInt();
+            if (type == DmtData.NODE) {
+                nodes.put(path, new DmtPluginNode(path, new DmtData(in)));
+            } else {
+                nodes.put(path, new DmtPluginNode(path, type));
+            }
+        }
+        return new DmtPluginResult(status, value, nodes);
+    }
+
+    @Override
+    public int describeContents() {
+        return mValue != null ? mValue.describeContents() : 0;
+    }
+
+    public static final Creator<DmtPluginResult> CREATOR = new Creator<DmtPluginResult>() {
+        @Override
+        public DmtPluginResult createFromParcel(Parcel source) {
+            if (source.readInt() == TRANSPORT_SHARED_MEMORY) {
+                return readSharedMemory(source);
+            }
+            return readInline(source);
+        }
+
+        @Override
+        public DmtPluginResult[] newArray(int size) {
+            return new DmtPluginResult[size];
+        }
+    };
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin;
+
+import android.os.MemoryFile;
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Moves large plug-in payloads, e.g. big DiagMon or ConnMO subtrees and binary values,
+ * through ashmem instead of the binder buffer. Only the size and the descriptor are
+ * written to the parcel.
+ *
+ * <p>The payload uses a compact binary encoding: big-endian ints, one byte per type
+ * and UTF-8 strings prefixed with their length, -1 for null. The writer encodes
+ * straight into the {@link MemoryFile}, large byte arrays are copied into the region
+ * as they are. The reader maps the descriptor and decodes from the mapping.
+ */
+final class DmtSharedMemory {
+
+    private static final String TAG = "DM_DmtSharedMemory";
+
+    /** Encoded payloads of this size or larger are passed through ashmem. */
+    static final int THRESHOLD = 64 * 1024;
+
+    /* small fields are collected before they are copied into the region */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private DmtSharedMemory() {
+    }
+
+    /** Target of the compact encoding. */
+    abstract static class Output {
+        abstract void writeByte(int value) throws IOException;
+
+        abstract void writeInt(int value) throws IOException;
+
+        abstract void writeBytes(byte[] bytes, int offset, int count) throws IOException;
+
+        /* writes the UTF-8 encoding of the string, which is length bytes long */
+        abstract void writeUtf8(String str, int length) throws IOException;
+
+        final void writeByteArray(byte[] bytes) throws IOException {
+            if (bytes == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        final void writeString(String str) throws IOException {
+            if (str == null) {
+                writeInt(-1);
+                return;
+            }
+            int length = utf8Length(str);
+            writeInt(length);
+            writeUtf8(str, length);
+        }
+    }
+
+    /** Counts the bytes of an encoding, to size the region before it is written. */
+    static final class Counter extends Output {
+        private int mSize;
+
+        int getSize() {
+            return mSize;
+        }
+
+        @Override
+        void writeByte(int value) {
+            mSize += 1;
+        }
+
+        @Override
+        void writeInt(int value) {
+            mSize += 4;
+        }
+
+        @Override
+        void writeBytes(byte[] bytes, int offset, int count) {
+            mSize += count;
+        }
+
+        @Override
+        void writeUtf8(String str, int length) {
+            mSize += length;
+        }
+    }
+
+    /** Writes an encoding into a new ashmem region of the counted size. */
+    static final class Writer extends Output {
+        private final MemoryFile mMemory;
+
+        private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+        private int mBuffered;
+
+        /* offset in the region where the buffer is copied to */
+        private int mOffset;
+
+        Writer(int size) throws IOException {
+            mMemory = new MemoryFile(TAG, size);
+        }
+
+        @Override
+        void writeByte(int value) throws IOException {
+            if (mBuffered == mBuffer.length) {
+                flush();
+            }
+            mBuffer[mBuffered++] = (byte) value;
+        }
+
+        @Override
+        void writeInt(int value) throws IOException {
+            if (mBuffered + 4 > mBuffer.length) {
+                flush();
+            }
+            mBuffer[mBuffered++] = (byte) (value >>> 24);
+            mBuffer[mBuffered++] = (byte) (value >>> 16);
+            mBuffer[mBuffered++] = (byte) (value >>> 8);
+            mBuffer[mBuffered++] = (byte) value;
+        }
+
+        @Override
+        void writeBytes(byte[] bytes, int offset, int count) throws IOException {
+            if (count >= mBuffer.length / 2) {
+                flush();
+                mMemory.writeBytes(bytes, offset, mOffset, count);
+                mOffset += count;
+                return;
+            }
+            if (mBuffered + count > mBuffer.length) {
+                flush();
+            }
+            System.arraycopy(bytes, offset, mBuffer, mBuffered, count);
+            mBuffered += count;
+        }
+
+        @Override
+        void writeUtf8(String str, int length) throws IOException {
+            int count = str.length();
+            for (int i = 0; i < count; i++) {
+                if (mBuffered + 4 > mBuffer.length) {
+                    flush();
+                }
+                char c = str.charAt(i);
+                if (c < 0x80) {
+                    mBuffer[mBuffered++] = (byte) c;
+                } else if (c < 0x800) {
+                    mBuffer[mBuffered++] = (byte) (0xc0 | (c >> 6));
+                    mBuffer[mBuffered++] = (byte) (0x80 | (c & 0x3f));
+                } else if (isSurrogatePair(str, i)) {
+                    int cp = Character.toCodePoint(c, str.charAt(++i));
+                    mBuffer[mBuffered++] = (byte) (0xf0 | (cp >> 18));
+                    mBuffer[mBuffered++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    mBuffer[mBuffered++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    mBuffer[mBuffered++] = (byte) (0x80 | (cp & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    mBuffer[mBuffered++] = '?';
+                } else {
+                    mBuffer[mBuffered++] = (byte) (0xe0 | (c >> 12));
+                    mBuffer[mBuffered++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    mBuffer[mBuffered++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+        }
+
+        private void flush() throws IOException {
+            if (mBuffered > 0) {
+                mMemory.writeBytes(mBuffer, 0, mOffset, mBuffered);
+                mOffset += mBuffered;
+                mBuffered = 0;
+            }
+        }
+
+        /**
+         * Writes the header, the size and the descriptor of the region into the parcel.
+         * Nothing is written if the region can't be completed. The parcel holds its own
+         * duplicate of the descriptor, so the writer can be closed after.
+         */
+        void writeToParcel(Parcel dest, int header) throws IOException {
+            flush();
+            FileDescriptor fd = mMemory.getFileDescriptor();
+            dest.writeInt(header);
+            dest.writeInt(mOffset);
+            dest.writeFileDescriptor(fd);
+        }
+
+        void close() {
+            mMemory.close();
+        }
+    }
+
+    /** Decodes a region written by {@link Writer#writeToParcel(Parcel, int)}. */
+    static final class Reader {
+        private final ByteBuffer mBuffer;
+
+        private byte[] mScratch;
+
+        private Reader(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        /**
+         * Maps the region of the size and descriptor at the parcel position. The mapping
+         * stays valid after the descriptor is closed.
+         */
+        static Reader readFromParcel(Parcel in) throws IOException {
+            int size = in.readInt();
+            ParcelFileDescriptor pfd = in.readFileDescriptor();
+            if (pfd == null || size < 0) {
+                throw new IOException("invalid shared memory");
+            }
+
+            FileInputStream is = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+            try {
+                return new Reader(is.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size));
+            } finally {
+                is.close();
+            }
+        }
+
+        int readByte() {
+            return mBuffer.get();
+        }
+
+        int readInt() {
+            return mBuffer.getInt();
+        }
+
+        byte[] readByteArray() {
+            int length = mBuffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            mBuffer.get(bytes);
+            return bytes;
+        }
+
+        String readString() {
+            int length = mBuffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            if (mScratch == null || mScratch.length < length) {
+                mScratch = new byte[Math.max(length, 256)];
+            }
+            mBuffer.get(mScratch, 0, length);
+            return new String(mScratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static boolean isSurrogatePair(String str, int index) {
+        return Character.isHighSurrogate(str.charAt(index)) && index + 1 < str.length()
+                && Character.isLowSurrogate(str.charAt(index + 1));
+    }
+
+    /* the length of the UTF-8 encoding written by Writer.writeUtf8() */
+    static int utf8Length(String str) {
+        int length = 0;
+        int count = str.length();
+        for (int i = 0; i < count; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (isSurrogatePair(str, i)) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
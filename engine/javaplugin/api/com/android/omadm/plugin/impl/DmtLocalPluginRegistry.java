@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.impl;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.omadm.plugin.DmtBasePlugin;
+import com.android.omadm.plugin.IDmtPlugin;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plug-ins whose service is declared by our own package and runs in our own process,
+ * such as DevPlugin and DiagmonPlugin. They are instantiated directly from the
+ * {@code _uid} class name and called without binding their service. Like DevService and
+ * DiagmonService, which create the plug-in in onBind() and drop it in onUnbind(), one
+ * instance serves all roots of a uid while any of them is bound: it is created by the
+ * first {@link #acquire} and dropped by the last {@link #release}.
+ * <p>
+ * Two things differ from a bound service. The plug-in is constructed with the
+ * application context instead of the service. And its methods are called on the
+ * session thread, or on a {@link DmtPluginCallGuard} watchdog thread when the root has
+ * a deadline, instead of on binder threads; calls to one uid are still made one at a
+ * time.
+ */
+final class DmtLocalPluginRegistry {
+
+    private static final String TAG = "DM_DmtLocalPluginRegistry";
+    private static final boolean DBG = false;
+
+    /* in-process plug-in classes by uid, null for uids which must be bound as services */
+    private static final Map<String, Class<? extends DmtBasePlugin>> sClasses =
+            new HashMap<String, Class<? extends DmtBasePlugin>>();
+
+    /* plug-ins currently acquired by at least one root */
+    private static final Map<String, LocalPlugin> sPlugins = new HashMap<String, LocalPlugin>();
+
+    private static final class LocalPlugin {
+        final DmtBasePlugin mPlugin;
+        int mRefCount;
+
+        LocalPlugin(DmtBasePlugin plugin) {
+            mPlugin = plugin;
+        }
+    }
+
+    private DmtLocalPluginRegistry() {}
+
+    /**
+     * @param context the application context.
+     * @param uid the service action declared as {@code _uid} for the plug-in root.
+     * @return whether the uid is an in-process plug-in which isn't bound as a service
+     */
+    static boolean isLocal(Context context, String uid) {
+        return getPluginClass(context, uid) != null;
+    }
+
+    /**
+     * Returns the in-process plug-in for the uid, instantiating it if no other root
+     * holds it. Each successful call must be paired with a {@link #release}.
+     *
+     * @param context the application context, passed to the plug-in constructor.
+     * @param uid the service action declared as {@code _uid} for the plug-in root.
+     * @return the plug-in, or null if the uid must be bound as a service.
+     */
+    static IDmtPlugin acquire(Context context, String uid) {
+        Class<? extends DmtBasePlugin> pluginClass = getPluginClass(context, uid);
+        if (pluginClass == null) {
+            return null;
+        }
+
+        synchronized (sPlugins) {
+            LocalPlugin local = sPlugins.get(uid);
+            if (local != null) {
+                local.mRefCount++;
+                return local.mPlugin;
+            }
+        }
+
+        // not holding the lock while instantiating: the constructor runs on the main
+        // thread, which may itself be waiting here
+        DmtBasePlugin plugin = instantiate(context, pluginClass);
+        if (plugin == null) {
+            synchronized (sClasses) {
+                sClasses.put(uid, null);
+            }
+            return null;
+        }
+
+        synchronized (sPlugins) {
+            LocalPlugin local = sPlugins.get(uid);
+            if (local == null) {
+                logd("Using in-process plug-in " + uid);
+                local = new LocalPlugin(plugin);
+                sPlugins.put(uid, local);
+            }
+            local.mRefCount++;
+            return local.mPlugin;
+        }
+    }
+
+    /**
+     * Release a plug-in returned by {@link #acquire}; the last release drops it.
+     * Does nothing for uids which aren't in-process plug-ins.
+     */
+    static void release(String uid) {
+        synchronized (sPlugins) {
+            LocalPlugin local = sPlugins.get(uid);
+            if (local != null && --local.mRefCount == 0) {
+                if (DBG) logd("Dropping in-process plug-in " + uid);
+                sPlugins.remove(uid);
+            }
+        }
+    }
+
+    /**
+     * Drop all in-process plug-ins. Called when the DM service is destroyed.
+     */
+    static void clear() {
+        synchronized (sPlugins) {
+            sPlugins.clear();
+        }
+        synchronized (sClasses) {
+            sClasses.clear();
+        }
+    }
+
+    private static Class<? extends DmtBasePlugin> getPluginClass(Context context,
+            String uid) {
+        synchronized (sClasses) {
+            if (sClasses.containsKey(uid)) {
+                return sClasses.get(uid);
+            }
+        }
+        Class<? extends DmtBasePlugin> pluginClass = findLocalPluginClass(context, uid);
+        synchronized (sClasses) {
+            sClasses.put(uid, pluginClass);
+        }
+        return pluginClass;
+    }
+
+    /**
+     * @return the plug-in class if the uid's service runs in our process, else null
+     */
+    private static Class<? extends DmtBasePlugin> findLocalPluginClass(Context context,
+            String uid) {
+        List<ResolveInfo> services = context.getPackageManager()
+                .queryIntentServices(new Intent(uid), 0);
+        if (services == null || services.isEmpty()) {
+            return null;
+        }
+
+        ServiceInfo serviceInfo = services.get(0).serviceInfo;
+        if (!serviceInfo.packageName.equals(context.getPackageName())
+                || !TextUtils.equals(serviceInfo.processName,
+                        context.getApplicationInfo().processName)) {
+            return null;
+        }
+
+        try {
+            Class<?> cls = Class.forName(uid);
+            if (DmtBasePlugin.class.isAssignableFrom(cls)) {
+                return cls.asSubclass(DmtBasePlugin.class);
+            }
+            if (DBG) logd(uid + " is not a DmtBasePlugin");
+        } catch (ClassNotFoundException e) {
+            if (DBG) logd("no plug-in class for " + uid);
+        }
+        return null;
+    }
+
+    /**
+     * Construct the plug-in on the main thread, where its service would have created it;
+     * plug-ins may create Handlers or register listeners in their constructor.
+     */
+    private static DmtBasePlugin instantiate(final Context context,
+            final Class<? extends DmtBasePlugin> pluginClass) {
+        FutureTask<DmtBasePlugin> task = new FutureTask<DmtBasePlugin>(
+                new Callable<DmtBasePlugin>() {
+                    @Override
+                    public DmtBasePlugin call() throws Exception {
+                        return pluginClass.getConstructor(Context.class).newInstance(context);
+                    }
+                });
+
+        Looper mainLooper = Looper.getMainLooper();
+        if (Looper.myLooper() == mainLooper) {
+            task.run();
+        } else {
+            new Handler(mainLooper).post(task);
+        }
+
+        try {
+            return task.get(DmtPluginConnectionPool.CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            loge("Can't instantiate plug-in " + pluginClass.getName()
+                    + ", binding its service", e);
+            task.cancel(false);
+            return null;
+        }
+    }
+
+    private static void logd(String msg) {
+        Log.d(TAG, msg);
+    }
+
+    private static void loge(String msg, Throwable tr) {
+        Log.e(TAG, msg, tr);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.impl;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.omadm.plugin.DmtData;
+import com.android.omadm.plugin.DmtException;
+import com.android.omadm.plugin.DmtPath;
+import com.android.omadm.plugin.DmtPluginNode;
+
+import java.util.Map;
+
+/**
+ * Flattens plug-in nodes into the string arrays passed to the native plug-in tree.
+ * Kept apart from {@link DmtPluginManager} so it doesn't depend on the binder classes.
+ */
+final class DmtNodeArrays {
+
+    private static final String TAG = "DM_DmtPluginManager";
+
+    private DmtNodeArrays() {
+    }
+
+    /**
+     * Returns one triple per node: the path relative to the root, the type, and for
+     * interior nodes the child names separated by '\n', otherwise "".
+     *
+     * @param rootPath full path of the plug-in root.
+     * @param pluginNodes the nodes by full path.
+     * @throws DmtException if a node is missing or has an invalid type or child name.
+     * @return the triples.
+     */
+    static String[] fromNodes(String rootPath, Map<String, DmtPluginNode> pluginNodes)
+            throws DmtException {
+        if (pluginNodes.isEmpty()) {
+            // FIXME: zero-length array constructed
+            return new String[0];
+        }
+
+        String[] resStrArr = new String[pluginNodes.size() * 3];
+
+        int i = 0;
+        for (Map.Entry<String, DmtPluginNode> entry : pluginNodes.entrySet()) {
+            DmtPluginNode tmpNode = entry.getValue();
+            if (tmpNode == null) {
+                throw new DmtException("Invalid map of all nodes");
+            }
+            resStrArr[i] = getRelativePath(rootPath, entry.getKey());
+            resStrArr[i + 1] = Integer.toString(tmpNode.getType());
+            switch (tmpNode.getType()) {
+                case DmtData.NODE:
+                    StringBuilder tmpSB = new StringBuilder("");
+                    DmtData data = tmpNode.getValue();
+                    if (data != null) {
+                        Map<String, DmtData> childNodes = data.getChildNodeMap();
+                        for (String subNodeName : childNodes.keySet()) {
+                            if (TextUtils.isEmpty(subNodeName)) {
+                                Log.e(TAG, "invalid interior node value for " + subNodeName
+                                        + "!!!");
+                                throw new DmtException("Invalid interior node value");
+                            } else {
+                                tmpSB.append(subNodeName).append('\n');
+                            }
+                        }
+                    }
+                    resStrArr[i + 2] = tmpSB.toString();
+                    break;
+
+                case DmtData.NULL:
+                case DmtData.STRING:
+                case DmtData.INT:
+                case DmtData.BOOL:
+                case DmtData.BIN:
+                case DmtData.DATE:
+                case DmtData.TIME:
+                case DmtData.FLOAT:
+                case DmtData.STREAM:
+                    resStrArr[i + 2] = "";
+                    break;
+
+                default:
+                    Log.e(TAG, "invalid node type " + tmpNode.getType() + "!!!!");
+                    throw new DmtException("Invalid node type");
+            }
+            i += 3;
+        }
+        return resStrArr;
+    }
+
+    /**
+     * @param rootPath full path of the plug-in root.
+     * @param path full path of a node.
+     * @return the path relative to the root, "" for the root itself, or the path as
+     *         it is if it isn't below the root.
+     */
+    static String getRelativePath(String rootPath, String path) {
+        if (TextUtils.isEmpty(path) || path.equals(rootPath)) {
+            return "";
+        }
+
+        if (DmtPath.isPrefix(rootPath, path)) {
+            return path.substring(rootPath.length() + 1);
+        }
+
+        return path;
+    }
+}
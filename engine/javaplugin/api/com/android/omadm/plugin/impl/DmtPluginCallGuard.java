@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.impl;
+
+import android.os.RemoteException;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Deadline and circuit breaker for the calls to one plug-in service, shared by all roots
+ * with the same {@code _uid}. Calls with a deadline run on a watchdog pool thread so the
+ * session thread can give up on a plug-in that hangs in a binder call, and the wait for the
+ * plug-in's previous call counts against the same deadline. An abandoned call keeps the
+ * plug-in busy until it returns, so the next call never overlaps it. After
+ * {@link #FAILURE_THRESHOLD} consecutive timeouts or RemoteExceptions the breaker opens
+ * and the plug-in isn't called again until the next session. Calls to one plug-in are
+ * made one at a time, so prefetch reads don't overlap with the session thread's calls.
+ */
+final class DmtPluginCallGuard {
+
+    private static final String TAG = "DM_DmtPluginCallGuard";
+
+    /** Plug-in parameter with the call deadline of the root in milliseconds, 0 for none. */
+    static final String PARAM_TIMEOUT = "_timeout";
+
+    /** Deadline of the calls of a root without {@code _timeout}, except exec and commit. */
+    static final long DEFAULT_TIMEOUT_MS = 30000;
+
+    /** No deadline, the call runs on the calling thread. */
+    static final long NO_TIMEOUT = 0;
+
+    /** Consecutive failures which open the breaker. */
+    static final int FAILURE_THRESHOLD = 3;
+
+    /** Thrown instead of calling a plug-in whose breaker is open. */
+    static final class CircuitOpenException extends Exception {
+        CircuitOpenException(String uid) {
+            super("circuit open for plug-in " + uid);
+        }
+    }
+
+    private static final Map<String, DmtPluginCallGuard> sGuards =
+            new HashMap<String, DmtPluginCallGuard>();
+
+    private static final ExecutorService sWatchdogExecutor = Executors.newCachedThreadPool(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "DmtPluginCall");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final String mUid;
+
+    /*
+     * held while calling the plug-in; plug-ins aren't required to be thread safe. A
+     * semaphore rather than a lock, so an abandoned call's watchdog thread releases it.
+     */
+    private final Semaphore mCallPermit = new Semaphore(1);
+
+    private int mConsecutiveFailures;
+    private boolean mOpen;
+    private int mTripCount;
+
+    private DmtPluginCallGuard(String uid) {
+        mUid = uid;
+    }
+
+    static DmtPluginCallGuard forUid(String uid) {
+        synchronized (sGuards) {
+            DmtPluginCallGuard guard = sGuards.get(uid);
+            if (guard == null) {
+                guard = new DmtPluginCallGuard(uid);
+                sGuards.put(uid, guard);
+            }
+            return guard;
+        }
+    }
+
+    /**
+     * Parse the {@code _timeout} parameter of a plug-in root.
+     *
+     * @param defaultMs the deadline to use if the parameter is empty or invalid
+     */
+    static long parseTimeout(String timeout, long defaultMs) {
+        if (TextUtils.isEmpty(timeout)) {
+            return defaultMs;
+        }
+        try {
+            long value = Long.parseLong(timeout.trim());
+            return value >= 0 ? value : defaultMs;
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "invalid plug-in timeout: " + timeout);
+            return defaultMs;
+        }
+    }
+
+    /**
+     * Close all breakers. Called at the start of each session; trip counts are kept.
+     */
+    static void resetAll() {
+        synchronized (sGuards) {
+            for (DmtPluginCallGuard guard : sGuards.values()) {
+                guard.reset();
+            }
+        }
+    }
+
+    /**
+     * @return number of times each plug-in's breaker has opened, keyed by uid
+     */
+    static Map<String, Integer> getTripCounts() {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        synchronized (sGuards) {
+            for (DmtPluginCallGuard guard : sGuards.values()) {
+                counts.put(guard.mUid, guard.getTripCount());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return whether the breaker of each plug-in is currently open, keyed by uid
+     */
+    static Map<String, Boolean> getOpenStates() {
+        Map<String, Boolean> states = new HashMap<String, Boolean>();
+        synchronized (sGuards) {
+            for (DmtPluginCallGuard guard : sGuards.values()) {
+                states.put(guard.mUid, guard.isOpen());
+            }
+        }
+        return states;
+    }
+
+    synchronized boolean isOpen() {
+        return mOpen;
+    }
+
+    synchronized int getTripCount() {
+        return mTripCount;
+    }
+
+    /**
+     * Run a plug-in call with a deadline.
+     *
+     * @param call the binder call
+     * @param timeoutMs the deadline, or 0 to call on the current thread without one
+     * @return the result of the call
+     * @throws CircuitOpenException if the breaker is open, the plug-in isn't called
+     * @throws TimeoutException if the plug-in's previous call didn't return or the call
+     *         didn't finish in time; it is abandoned
+     * @throws RemoteException if the binder call failed
+     */
+    <T> T call(Callable<T> call, long timeoutMs) throws Exception {
+        T result;
+        try {
+            long start = System.nanoTime();
+            acquirePermit(timeoutMs);
+            // checked holding the permit, the breaker may have opened while waiting
+            if (isOpen()) {
+                mCallPermit.release();
+                throw new CircuitOpenException(mUid);
+            }
+            if (timeoutMs == NO_TIMEOUT) {
+                try {
+                    result = call.call();
+                } finally {
+                    mCallPermit.release();
+                }
+            } else {
+                result = callWithDeadline(call, getRemainingMs(timeoutMs, start));
+            }
+        } catch (TimeoutException e) {
+            onFailure("timed out after " + timeoutMs + " ms");
+            throw e;
+        } catch (RemoteException e) {
+            onFailure(e.toString());
+            throw e;
+        }
+
+        onSuccess();
+        return result;
+    }
+
+    /**
+     * Wait for the plug-in's previous call to return, at most until the deadline.
+     */
+    private void acquirePermit(long timeoutMs) throws InterruptedException, TimeoutException {
+        if (timeoutMs == NO_TIMEOUT) {
+            mCallPermit.acquire();
+        } else if (!mCallPermit.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("plug-in " + mUid + " is busy");
+        }
+    }
+
+    /**
+     * @return what is left of the deadline after waiting for the lock, at least 1 ms
+     */
+    private static long getRemainingMs(long timeoutMs, long start) {
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return Math.max(1, timeoutMs - waitedMs);
+    }
+
+    /**
+     * Run the call on a watchdog thread, which releases the permit when the call returns.
+     * A call that times out is abandoned, not cancelled: binder calls can't be
+     * interrupted, and the permit must stay taken until the plug-in is done with it.
+     */
+    private <T> T callWithDeadline(final Callable<T> call, long timeoutMs) throws Exception {
+        Future<T> future;
+        try {
+            future = sWatchdogExecutor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    try {
+                        return call.call();
+                    } finally {
+                        mCallPermit.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            mCallPermit.release();
+            throw e;
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        mConsecutiveFailures = 0;
+    }
+
+    private synchronized void onFailure(String reason) {
+        mConsecutiveFailures++;
+        Log.e(TAG, "plug-in " + mUid + " call failed (" + mConsecutiveFailures + "): " + reason);
+        if (!mOpen && mConsecutiveFailures >= FAILURE_THRESHOLD) {
+            mOpen = true;
+            mTripCount++;
+            Log.e(TAG, "opening circuit for plug-in " + mUid + ", trips=" + mTripCount);
+        }
+    }
+
+    private synchronized void reset() {
+        mOpen = false;
+        mConsecutiveFailures = 0;
+    }
+}
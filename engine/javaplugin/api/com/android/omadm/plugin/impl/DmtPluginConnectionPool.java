@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.impl;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.ResolveInfo;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.omadm.plugin.IDmtPlugin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bound plug-in services shared by all {@link DmtPluginManager} instances.
+ * Each plug-in service is bound once per {@code _uid} and the binding is reused by every
+ * root the service serves. Services are bound asynchronously at warm-up, so the engine
+ * thread only waits if a plug-in node is used before its service has connected.
+ * Plug-ins running in our own process are not bound at all, see
+ * {@link DmtLocalPluginRegistry}.
+ */
+final class DmtPluginConnectionPool {
+
+    private static final String TAG = "DM_DmtPluginConnectionPool";
+    private static final boolean DBG = false;
+
+    /** Maximum time to wait for a plug-in service to connect. */
+    static final long CONNECT_TIMEOUT_MS = 10000;
+
+    private static final String UID_PREFIX = "_uid=";
+
+    private static final Map<String, PluginBinding> sBindings =
+            new HashMap<String, PluginBinding>();
+
+    private DmtPluginConnectionPool() {}
+
+    /**
+     * Start binding all plug-in services listed in the plug-in configuration file.
+     * Returns without waiting for the services to connect.
+     *
+     * @param context the application context to bind with.
+     * @param configFile the sysplugins.ini file.
+     */
+    static void prebind(Context context, File configFile) {
+        for (String uid : readPluginUids(configFile)) {
+            if (!DmtLocalPluginRegistry.isLocal(context, uid)) {
+                getBinding(context, uid).bind();
+            }
+        }
+    }
+
+    /**
+     * Returns the connected plug-in service for the uid, binding it if necessary.
+     * Must be paired with a {@link #release}.
+     *
+     * @param context the application context to bind with.
+     * @param uid the service action declared as {@code _uid} for the plug-in root.
+     * @return the plug-in interface, or null if the service could not be bound in time.
+     */
+    static IDmtPlugin acquire(Context context, String uid) {
+        IDmtPlugin plugin = DmtLocalPluginRegistry.acquire(context, uid);
+        if (plugin != null) {
+            return plugin;
+        }
+        return getBinding(context, uid).waitForPlugin(CONNECT_TIMEOUT_MS);
+    }
+
+    /**
+     * Called when a root is done with the plug-in returned by {@link #acquire}. Service
+     * bindings stay in the pool for the other roots and sessions; an in-process plug-in
+     * is dropped when no root holds it, as its service would on unbind.
+     *
+     * @param uid the service action declared as {@code _uid} for the plug-in root.
+     */
+    static void release(String uid) {
+        DmtLocalPluginRegistry.release(uid);
+    }
+
+    /**
+     * Unbind all plug-in services and drop the in-process plug-ins.
+     * Called when the DM service is destroyed.
+     */
+    static void unbindAll() {
+        DmtLocalPluginRegistry.clear();
+
+        List<PluginBinding> bindings;
+        synchronized (sBindings) {
+            bindings = new ArrayList<PluginBinding>(sBindings.values());
+            sBindings.clear();
+        }
+        for (PluginBinding binding : bindings) {
+            binding.unbind();
+        }
+    }
+
+    private static PluginBinding getBinding(Context context, String uid) {
+        synchronized (sBindings) {
+            PluginBinding binding = sBindings.get(uid);
+            if (binding == null) {
+                binding = new PluginBinding(context, uid);
+                sBindings.put(uid, binding);
+            }
+            return binding;
+        }
+    }
+
+    private static Set<String> readPluginUids(File configFile) {
+        Set<String> uids = new LinkedHashSet<String>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(configFile));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith(UID_PREFIX)) {
+                    uids.add(line.substring(UID_PREFIX.length()).trim());
+                }
+            }
+        } catch (IOException e) {
+            loge("can't read plug-in config " + configFile, e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return uids;
+    }
+
+    /**
+     * Binding to one plug-in service. The binding is dropped when the service process dies
+     * and re-established by the next {@link #waitForPlugin} call.
+     */
+    private static final class PluginBinding implements ServiceConnection,
+            IBinder.DeathRecipient {
+
+        private final Context mContext;
+        private final String mUid;
+
+        private IDmtPlugin mPlugin;
+        private boolean mBound;
+
+        PluginBinding(Context context, String uid) {
+            mContext = context;
+            mUid = uid;
+        }
+
+        /**
+         * Start binding the service if it isn't bound yet.
+         * @return true if the service is bound or being bound
+         */
+        synchronized boolean bind() {
+            if (mBound) {
+                return true;
+            }
+
+            Intent intent = new Intent(mUid);
+            if (!isBindable(intent)) {
+                return false;
+            }
+
+            if (DBG) logd("Calling bindService: uid=\"" + mUid + '"');
+            try {
+                mBound = mContext.bindService(intent, this, Context.BIND_AUTO_CREATE);
+            } catch (Exception e) {
+                loge("bindService exception for " + mUid, e);
+                mBound = false;
+            }
+            if (!mBound) {
+                loge("Unable to bind plug-in service " + mUid);
+            }
+            return mBound;
+        }
+
+        synchronized IDmtPlugin waitForPlugin(long timeoutMs) {
+            if (mPlugin != null) {
+                return mPlugin;
+            }
+
+            if (!bind()) {
+                return null;
+            }
+
+            long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+            long remaining = timeoutMs;
+            while (mPlugin == null && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - SystemClock.elapsedRealtime();
+            }
+
+            if (mPlugin == null) {
+                loge("Timed out waiting for plug-in service " + mUid);
+            }
+            return mPlugin;
+        }
+
+        synchronized void unbind() {
+            if (mPlugin != null) {
+                mPlugin.asBinder().unlinkToDeath(this, 0);
+                mPlugin = null;
+            }
+            if (mBound) {
+                mBound = false;
+                try {
+                    mContext.unbindService(this);
+                } catch (Exception e) {
+                    loge("unbindService exception for " + mUid, e);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void onServiceConnected(ComponentName className, IBinder service) {
+            logd("Plug-in service connected: " + className);
+
+            try {
+                service.linkToDeath(this, 0);
+            } catch (RemoteException e) {
+                loge("Plug-in service " + mUid + " died while connecting", e);
+                return;
+            }
+
+            mPlugin = IDmtPlugin.Stub.asInterface(service);
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void onServiceDisconnected(ComponentName className) {
+            logd("Plug-in service disconnected. className:" + className);
+            mPlugin = null;
+        }
+
+        @Override
+        public void binderDied() {
+            loge("Plug-in service " + mUid + " died, rebinding on next use");
+            // drop the binding, the next waitForPlugin() binds a fresh one
+            unbind();
+        }
+
+        /**
+         * A plug-in declared in our own package whose uid is not a class is not a
+         * service we can bind; keep the behaviour of the original per-root binding.
+         */
+        private boolean isBindable(Intent intent) {
+            List<ResolveInfo> intentServices = mContext.getPackageManager()
+                    .queryIntentServices(intent, 0);
+            if (intentServices == null) {
+                return true;
+            }
+
+            for (ResolveInfo resolveInfo : intentServices) {
+                if (resolveInfo.serviceInfo.packageName.equals(mContext.getPackageName())) {
+                    try {
+                        Class.forName(mUid);
+                    } catch (ClassNotFoundException e) {
+                        loge("ClassNotFoundException for plug-in " + mUid, e);
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private static void logd(String msg) {
+        Log.d(TAG, msg);
+    }
+
+    private static void loge(String msg) {
+        Log.e(TAG, msg);
+    }
+
+    private static void loge(String msg, Throwable tr) {
+        Log.e(TAG, msg, tr);
+    }
+}
@@ -16,27 +16,33 @@
 
 package com.android.omadm.plugin.impl;
 
-import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
-import android.content.ServiceConnection;
-import android.content.pm.ResolveInfo;
-import android.os.IBinder;
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.omadm.plugin.DmtData;
 import com.android.omadm.plugin.DmtException;
+import com.android.omadm.plugin.DmtPath;
 import com.android.omadm.plugin.DmtPluginNode;
+import com.android.omadm.plugin.DmtPluginResult;
 import com.android.omadm.plugin.ErrorCodes;
 import com.android.omadm.plugin.IDmtPlugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This class does not manage DMT plugins. It is a proxy between native plugin and java plugins.
@@ -47,80 +53,50 @@ public final class DmtPluginManager {
     private static final String TAG = "DM_DmtPluginManager";
     private static final boolean DBG = false;
 
+    /* IDmtPlugin versions which added the read result and the child nodes methods */
+    private static final int READ_RESULT_PROTOCOL_VERSION = 2;
+    private static final int CHILD_NODES_PROTOCOL_VERSION = 3;
+    private static final int ROLLBACK_PROTOCOL_VERSION = 4;
+
+    /* Plug-ins with an older IDmtPlugin version read DmtData parcels without a version */
+    private static final int VERSIONED_PARCEL_PROTOCOL_VERSION = 4;
+
+    /* Operation names for the plug-in call statistics */
+    private static final String OP_INIT = "init";
+    private static final String OP_RELEASE = "release";
+    private static final String OP_GET_PROTOCOL_VERSION = "getProtocolVersion";
+    private static final String OP_SET_SERVER_ID = "setServerID";
+    private static final String OP_GET_NODE_VALUE = "getNodeValue";
+    private static final String OP_GET_NODE_VALUES = "getNodeValues";
+    private static final String OP_OPEN_NODE_STREAM = "openNodeStream";
+    private static final String OP_GET_NODES = "getNodes";
+    private static final String OP_GET_CHILD_NODES = "getChildNodes";
+    private static final String OP_SET_NODE_VALUE = "setNodeValue";
+    private static final String OP_CREATE_INTERIOR_NODE = "createInteriorNode";
+    private static final String OP_CREATE_LEAF_NODE = "createLeafNode";
+    private static final String OP_RENAME_NODE = "renameNode";
+    private static final String OP_DELETE_NODE = "deleteNode";
+    private static final String OP_EXEC = "exec";
+    private static final String OP_COMMIT = "commit";
+    private static final String OP_ROLLBACK = "rollback";
+
     private static Context sContext;
 
     /* Parameters of the plug-in */
     private String mPath;
+    private DmtPath mRootPath;
     private String mUid;
     private String mServerID;   // FIXME: mServerID is never set, remove?
     private Map<String, String> mParameters;
-
-    private final class DmtServiceConnection implements ServiceConnection {
-
-        DmtServiceConnection() {
-        }
-
-        @Override
-        public synchronized void onServiceConnected(ComponentName className, IBinder service) {
-            logd("Enter onServiceConnected...");
-            logd("Class:" + className + " service:" + service);
-
-            mPluginConnection = IDmtPlugin.Stub.asInterface(service);
-
-            try {
-                notifyAll();
-            } catch (Exception e) {
-                loge("onServiceConnected(): exception", e);
-            }
-        }
-
-        @Override
-        public void onServiceDisconnected(ComponentName className) {
-            logd("Plug-in service disconnected. className:" + className);
-            mPluginConnection = null;
-        }
-
-        public synchronized void waitForConnection() {
-            try {
-                Intent intent = new Intent(mUid);
-                intent.putExtra("rootPath", mPath);
-                boolean currentPackageMatch = false;
-                List<ResolveInfo> intentServices = sContext.getPackageManager()
-                        .queryIntentServices(intent, 0);
-                if (intentServices != null) {
-                    for (ResolveInfo resolveInfo : intentServices) {
-                        logd("getPackageName is: " + sContext.getPackageName());
-                        logd("resolveInfo.serviceInfo.packageName is: "
-                                + resolveInfo.serviceInfo.packageName);
-                        if(resolveInfo.serviceInfo.packageName.equals(sContext.getPackageName())) {
-                            try {
-                                Class.forName(mUid);
-                            } catch (ClassNotFoundException e1) {
-                                loge("ClassNotFoundException in waitForConnection", e1);
-                                currentPackageMatch = true;
-                            }
-                        }
-                    }
-                }
-
-                if (currentPackageMatch) {
-                    return;
-                }
-
-                if (DBG) logd("Calling bindService: uid=\"" + mUid + "\" path=\"" + mPath + '"');
-                sContext.bindService(intent, mConnector,Context.BIND_AUTO_CREATE);
-
-                wait(10000);        // FIXME: wait not in loop!
-                if (DBG) logd("Waiting is finished");
-            } catch (Exception e) {
-                loge("exception in waitForConnection", e);
-            }
-        }
-    }
-
-    private final DmtServiceConnection mConnector = new DmtServiceConnection();
+    private long mCacheTtl = DmtPluginValueCache.TTL_NONE;   // from the _cache parameter
+    private long mCallTimeoutMs = DmtPluginCallGuard.DEFAULT_TIMEOUT_MS;   // from _timeout
+    private long mExecTimeoutMs = DmtPluginCallGuard.NO_TIMEOUT;   // exec and commit, from _timeout
 
     private IDmtPlugin mPluginConnection;
+    private DmtPluginCallGuard mGuard;
+
+    /* IDmtPlugin version implemented by the bound plug-in, 0 for legacy plug-ins */
+    private int mProtocolVersion;
 
     public DmtPluginManager() {
         logd("DmtPluginManager.java constructor...");
@@ -141,6 +117,82 @@ public final class DmtPluginManager {
         sContext = appContext;
     }
 
+    /**
+     * Start binding all plug-in services listed in the plug-in configuration file,
+     * so they are connected before the first session touches a plug-in node.
+     * Returns without waiting for the services.
+     *
+     * @param configFile the sysplugins.ini file.
+     */
+    public static void prebindPlugins(File configFile) {
+        if (sContext == null) {
+            loge("Undefined context!");
+            return;
+        }
+        DmtPluginConnectionPool.prebind(sContext, configFile);
+    }
+
+    /**
+     * Called when a DM session starts; expires values cached for the previous session,
+     * drops unread prefetched values and closes the circuit breakers opened during it.
+     */
+    public static void startSession() {
+        DmtPluginValueCache.startSession();
+        DmtPluginPrefetcher.clear();
+        DmtPluginCallGuard.resetAll();
+        DmtPluginStats.startSession();
+    }
+
+    /**
+     * Print call counts, result codes and latencies of the plug-in calls, together
+     * with the value cache and circuit breaker state.
+     *
+     * @param pw the writer to print to.
+     * @param sessionOnly true for the calls of the current session only.
+     */
+    public static void dumpPluginStats(PrintWriter pw, boolean sessionOnly) {
+        DmtPluginStats.dump(pw, sessionOnly);
+        pw.println("Plug-in value cache: hits=" + getCacheHitCount()
+                + " misses=" + getCacheMissCount());
+        pw.println("Plug-in circuit breakers: open=" + getCircuitOpenStates()
+                + " trips=" + getCircuitTripCounts());
+    }
+
+    /**
+     * @return number of times the circuit breaker of each plug-in opened, keyed by uid
+     */
+    public static Map<String, Integer> getCircuitTripCounts() {
+        return DmtPluginCallGuard.getTripCounts();
+    }
+
+    /**
+     * @return whether the circuit breaker of each plug-in is open, keyed by uid
+     */
+    public static Map<String, Boolean> getCircuitOpenStates() {
+        return DmtPluginCallGuard.getOpenStates();
+    }
+
+    /**
+     * @return number of plug-in value reads served from the value cache
+     */
+    public static long getCacheHitCount() {
+        return DmtPluginValueCache.getHitCount();
+    }
+
+    /**
+     * @return number of plug-in value reads of cached roots that went to the plug-in
+     */
+    public static long getCacheMissCount() {
+        return DmtPluginValueCache.getMissCount();
+    }
+
+    /**
+     * Unbind all pooled plug-in services.
+     */
+    public static void unbindPlugins() {
+        DmtPluginConnectionPool.unbindAll();
+    }
+
     /**
      * Initialize Java plugin. Called from JNI in:
      *  engine/javaplugin/nativelib/src/DmtJavaPluginManager.cc
@@ -176,6 +228,13 @@ public final class DmtPluginManager {
 
             if ("_uid".equals(parameters[i])) {
                 mUid = parameters[i + 1];
+            } else if (DmtPluginValueCache.PARAM_CACHE.equals(parameters[i])) {
+                mCacheTtl = DmtPluginValueCache.parsePolicy(parameters[i + 1]);
+            } else if (DmtPluginCallGuard.PARAM_TIMEOUT.equals(parameters[i])) {
+                mCallTimeoutMs = DmtPluginCallGuard.parseTimeout(parameters[i + 1],
+                        DmtPluginCallGuard.DEFAULT_TIMEOUT_MS);
+                mExecTimeoutMs = DmtPluginCallGuard.parseTimeout(parameters[i + 1],
+                        DmtPluginCallGuard.NO_TIMEOUT);
             }
         }
 
@@ -186,6 +245,8 @@ public final class DmtPluginManager {
 
         mParameters = params;
         mPath       = path;
+        mRootPath   = DmtPath.of(path);
+        mGuard      = DmtPluginCallGuard.forUid(mUid);
 
         return bindPluginService();
     }
@@ -198,7 +259,7 @@ public final class DmtPluginManager {
      * @param correlator correlator.
      * @return {@link ErrorCodes#SYNCML_DM_SUCCESS} on success, error code on failure.
      */
-    public int executeNode(String args, String correlator) {
+    public int executeNode(final String args, final String correlator) {
         if (DBG) logd("Enter executeNode(\"" + args + "\", \"" + correlator + "\")");
 
         if (mPluginConnection == null) {
@@ -206,11 +267,19 @@ public final class DmtPluginManager {
             return ErrorCodes.SYNCML_DM_FAIL;
         }
 
+        // the command may change any node of the root
+        invalidate(mPath);
+
         try {
-            return mPluginConnection.exec(mPath, args, correlator);
+            return callPlugin(OP_EXEC, new PluginCall<Integer>() {
+                @Override
+                Integer call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.exec(mPath, args, correlator);
+                }
+            });
         } catch (Exception e) {
             loge("Exception in executeNode", e);
-            return ErrorCodes.SYNCML_DM_FAIL;
+            return getErrorCode(e);
         }
     }
 
@@ -228,12 +297,56 @@ public final class DmtPluginManager {
             return ErrorCodes.SYNCML_DM_FAIL;
         }
 
+        // values prefetched before the commit may be stale once it is applied
+        invalidate(mPath);
+
         try {
-            return mPluginConnection.commit();
+            return callPlugin(OP_COMMIT, new PluginCall<Integer>() {
+                @Override
+                Integer call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.commit();
+                }
+            });
         } catch (Exception e) {
             loge("Exception in commit", e);
+            return getErrorCode(e);
+        }
+    }
+
+    /**
+     * Drops the changes made since the last commit, when an Atomic command fails.
+     * Called from JNI.
+     *
+     * @return {@link ErrorCodes#SYNCML_DM_SUCCESS} on success,
+     *         {@link ErrorCodes#SYNCML_DM_UNSUPPORTED_OPERATION} if the plug-in can't
+     *         roll back, error code on failure.
+     */
+    public int rollback() {
+        if (DBG) logd("Enter rollback... " + mPath);
+
+        if (mPluginConnection == null) {
+            loge("There is no bound plug-in");
             return ErrorCodes.SYNCML_DM_FAIL;
         }
+
+        if (mProtocolVersion < ROLLBACK_PROTOCOL_VERSION) {
+            return ErrorCodes.SYNCML_DM_UNSUPPORTED_OPERATION;
+        }
+
+        // values read during the Atomic command may be gone after the rollback
+        invalidate(mPath);
+
+        try {
+            return callPlugin(OP_ROLLBACK, new PluginCall<Integer>() {
+                @Override
+                Integer call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.rollback();
+                }
+            });
+        } catch (Exception e) {
+            loge("Exception in rollback", e);
+            return getErrorCode(e);
+        }
     }
 
     /**
@@ -242,7 +355,7 @@ public final class DmtPluginManager {
      *
      * @param serverID service ID.
      */
-    public void setServerID(String serverID) {
+    public void setServerID(final String serverID) {
         if (DBG) logd("Enter setServerID(\"" + serverID + "\")");
 
         if (mPluginConnection == null) {
@@ -251,7 +364,13 @@ public final class DmtPluginManager {
         }
 
         try {
-            mPluginConnection.setServerID(serverID);
+            callPlugin(OP_SET_SERVER_ID, new PluginCall<Void>() {
+                @Override
+                Void call(IDmtPlugin plugin) throws RemoteException {
+                    plugin.setServerID(serverID);
+                    return null;
+                }
+            });
         } catch (Exception e) {
             loge("Exception in setServerID", e);
        }
@@ -272,11 +391,17 @@ public final class DmtPluginManager {
             return ErrorCodes.SYNCML_DM_FAIL;
         }
 
+        final String fullPath = getFullPath(path);
         try {
-            return mPluginConnection.createInteriorNode(getFullPath(path));
+            return callPlugin(OP_CREATE_INTERIOR_NODE, new PluginCall<Integer>() {
+                @Override
+                Integer call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.createInteriorNode(fullPath);
+                }
+            });
         } catch (Exception e) {
             loge("Exception in createInteriorNode", e);
-            return ErrorCodes.SYNCML_DM_FAIL;
+            return getErrorCode(e);
         }
     }
 
@@ -302,13 +427,20 @@ public final class DmtPluginManager {
             return ErrorCodes.SYNCML_DM_FAIL;
         }
 
-        DmtData data = new DmtData(value, type);
+        final DmtData data = newLeafData(value, type);
+        final String fullPath = getFullPath(path);
 
         try {
-            return mPluginConnection.createLeafNode(getFullPath(path), data);
+            invalidate(fullPath);
+            return callPlugin(OP_CREATE_LEAF_NODE, new PluginCall<Integer>() {
+                @Override
+                Integer call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.createLeafNode(fullPath, data);
+                }
+            });
         } catch (Exception e) {
             loge("Exception in createLeafNode", e);
-            return ErrorCodes.SYNCML_DM_FAIL;
+            return getErrorCode(e);
         }
     }
 
@@ -323,7 +455,7 @@ public final class DmtPluginManager {
      * @param newNodeName new node name.
      * @return {@link ErrorCodes#SYNCML_DM_SUCCESS} on success, error code on failure.
      */
-    public int renameNode(String path, String newNodeName) {
+    public int renameNode(String path, final String newNodeName) {
         if (DBG) logd("Enter renameNode(\"" + path + "\", \"" + newNodeName + "\")");
 
         if (mPluginConnection == null) {
@@ -336,11 +468,18 @@ public final class DmtPluginManager {
             return ErrorCodes.SYNCML_DM_FAIL;
         }
 
+        final String fullPath = getFullPath(path);
         try {
-            return mPluginConnection.renameNode(getFullPath(path), newNodeName);
+            invalidate(fullPath);
+            return callPlugin(OP_RENAME_NODE, new PluginCall<Integer>() {
+                @Override
+                Integer call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.renameNode(fullPath, newNodeName);
+                }
+            });
         } catch (Exception e) {
             loge("Exception in renameNode", e);
-            return ErrorCodes.SYNCML_DM_FAIL;
+            return getErrorCode(e);
         }
     }
 
@@ -359,11 +498,18 @@ public final class DmtPluginManager {
             return ErrorCodes.SYNCML_DM_FAIL;
         }
 
+        final String fullPath = getFullPath(path);
         try {
-            return mPluginConnection.deleteNode(getFullPath(path));
+            invalidate(fullPath);
+            return callPlugin(OP_DELETE_NODE, new PluginCall<Integer>() {
+                @Override
+                Integer call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.deleteNode(fullPath);
+                }
+            });
         } catch (Exception e) {
             loge("Exception in deleteNode", e);
-            return ErrorCodes.SYNCML_DM_FAIL;
+            return getErrorCode(e);
         }
     }
 
@@ -389,14 +535,21 @@ public final class DmtPluginManager {
             return ErrorCodes.SYNCML_DM_FAIL;
         }
 
-        DmtData data = new DmtData(value, type);
+        final DmtData data = newLeafData(value, type);
+        final String fullPath = getFullPath(path);
 
         try {
             logd("Update leaf node: path = " + path + ", data = " + data.getString());
-            return mPluginConnection.updateLeafNode(getFullPath(path), data);
+            invalidate(fullPath);
+            return callPlugin(OP_SET_NODE_VALUE, new PluginCall<Integer>() {
+                @Override
+                Integer call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.updateLeafNode(fullPath, data);
+                }
+            });
         } catch (Exception e) {
             loge("Exception in setNodeValue", e);
-            return ErrorCodes.SYNCML_DM_FAIL;
+            return getErrorCode(e);
         }
     }
 
@@ -411,54 +564,274 @@ public final class DmtPluginManager {
     public String[] getNodeValue(String path) throws DmtException {
         if (DBG) logd("Enter getNodeValue(\"" + path + "\")");
 
+        String[] value = DmtPluginPrefetcher.take(getFullPath(path));
+        if (value != null) {
+            return value;
+        }
+        return getCachedNodeValue(path);
+    }
+
+    private String[] getCachedNodeValue(String path) throws DmtException {
+        if (mCacheTtl == DmtPluginValueCache.TTL_NONE) {
+            return readNodeValue(path);
+        }
+
+        String fullPath = getFullPath(path);
+        String[] value = DmtPluginValueCache.get(fullPath);
+        if (value == null) {
+            value = readNodeValue(path);
+            if (value.length == 2) {
+                DmtPluginValueCache.put(fullPath, mCacheTtl, value);
+            }
+        }
+        return value;
+    }
+
+    private String[] readNodeValue(String path) throws DmtException {
         if (mPluginConnection == null) {
             loge("There is no bound plug-in");
             throw new DmtException("There is no bound plug-in");
         }
 
-        DmtData data;
+        final String fullPath = getFullPath(path);
+        DmtPluginResult result;
         try {
-            data = mPluginConnection.getNodeValue(getFullPath(path));
+            result = callPlugin(OP_GET_NODE_VALUE, new PluginCall<DmtPluginResult>() {
+                @Override
+                DmtPluginResult call(IDmtPlugin plugin) throws RemoteException {
+                    if (supportsReadResult()) {
+                        return plugin.getNodeValueResult(fullPath);
+                    }
+                    DmtData data = plugin.getNodeValue(fullPath);
+                    return new DmtPluginResult(data == null ? plugin.getOperationResult()
+                            : ErrorCodes.SYNCML_DM_SUCCESS, data);
+                }
+            });
         } catch (Exception e) {
             loge("Exception in getNodeValue", e);
+            if (isGuardFailure(e)) {
+                // the plug-in is hung or its breaker is open, fail just this node
+                return new String[] { Integer.toString(ErrorCodes.SYNCML_DM_COMMAND_FAILED) };
+            }
             throw new DmtException(e.getMessage());
         }
 
-        if (data == null) {
-            int retcode;
-            try {
-                retcode = mPluginConnection.getOperationResult();
-            } catch (Exception e) {
-                loge("Exception in getNodeValue", e);
-                throw new DmtException(e.getMessage());
-            }
+        DmtData data = result.getValue();
+        int retcode = result.getStatus();
 
+        if (data == null) {
             if (retcode == ErrorCodes.SYNCML_DM_SUCCESS) {
                 loge("Invalid plug-in implementation!");
                 throw new DmtException("Invalid plug-in implementation!");
             }
             /*
-             * Added this block to return Error code to DM Engine since
-             * throwing an exception is causing a VM error and aborting
-             * the app. 
+             * Return the error code to DM Engine since throwing an
+             * exception is causing a VM error and aborting the app.
              */
-            else if (retcode == ErrorCodes.SYNCML_DM_UNSUPPORTED_OPERATION) {
+            if (retcode == ErrorCodes.SYNCML_DM_UNSUPPORTED_OPERATION) {
                 loge("Get feature not implemented on this node");
-                String[] errString = new String[1];
-                errString[0] = Integer.toString(retcode);
-                return errString;
-            }
-            
-            else {
+            } else {
                 loge("Error occurred while doing a get on this node");
-                String[] errString = new String[1];
-                errString[0] = Integer.toString(retcode);
-                return errString;
             }
+            return new String[] { Integer.toString(retcode) };
+        }
+
+        return toValueArray(data);
+    }
+
+    /**
+     * Reads the value of a {@link DmtData#STREAM} leaf node and hands its descriptor to
+     * the caller, so the engine reads the value in chunks. The value is neither cached
+     * nor prefetched since a stream can only be read once.
+     * Called from JNI.
+     *
+     * @param path path to the leaf node.
+     * @return array of (result code, descriptor, size); the caller owns and closes the
+     *         descriptor, which is -1 if the result code is an error.
+     */
+    public long[] openNodeStream(String path) {
+        if (DBG) logd("Enter openNodeStream(\"" + path + "\")");
+
+        long[] result = { ErrorCodes.SYNCML_DM_FAIL, -1, 0 };
+        if (mPluginConnection == null) {
+            loge("There is no bound plug-in");
+            return result;
+        }
+
+        final String fullPath = getFullPath(path);
+        DmtPluginResult pluginResult;
+        try {
+            pluginResult = callPlugin(OP_OPEN_NODE_STREAM, new PluginCall<DmtPluginResult>() {
+                @Override
+                DmtPluginResult call(IDmtPlugin plugin) throws RemoteException {
+                    if (supportsReadResult()) {
+                        return plugin.getNodeValueResult(fullPath);
+                    }
+                    DmtData data = plugin.getNodeValue(fullPath);
+                    return new DmtPluginResult(data == null ? plugin.getOperationResult()
+                            : ErrorCodes.SYNCML_DM_SUCCESS, data);
+                }
+            });
+        } catch (Exception e) {
+            loge("Exception in openNodeStream", e);
+            result[0] = getErrorCode(e);
+            return result;
+        }
+
+        DmtData data = pluginResult.getValue();
+        if (data == null) {
+            if (pluginResult.getStatus() != ErrorCodes.SYNCML_DM_SUCCESS) {
+                result[0] = pluginResult.getStatus();
+            }
+            return result;
+        }
+
+        try {
+            ParcelFileDescriptor stream = data.getStream();
+            if (stream == null) {
+                loge("Invalid plug-in implementation!");
+                return result;
+            }
+            result[0] = ErrorCodes.SYNCML_DM_SUCCESS;
+            result[1] = stream.detachFd();
+            result[2] = data.getStreamSize();
+        } catch (DmtException e) {
+            loge("node " + path + " doesn't have a stream value");
+        }
+        return result;
+    }
+
+    /**
+     * Returns values of several leaf nodes with a single plug-in call if the plug-in
+     * supports it, otherwise with one call per node.
+     *
+     * @param paths paths to the leaf nodes.
+     * @return String array with a (result code, value type, value) triple for each path;
+     *         type and value are empty strings if the result code is an error.
+     * @throws DmtException in case of error.
+     */
+    public String[] getNodeValues(String[] paths) throws DmtException {
+        if (DBG) logd("Enter getNodeValues(" + Arrays.toString(paths) + ')');
+
+        String[] resStrArr = new String[paths.length * 3];
+
+        if (!supportsReadResult() || mCacheTtl != DmtPluginValueCache.TTL_NONE) {
+            // per node reads go through the value cache
+            for (int i = 0; i < paths.length; i++) {
+                try {
+                    setValueTriple(resStrArr, i, getCachedNodeValue(paths[i]));
+                } catch (DmtException e) {
+                    setErrorTriple(resStrArr, i, ErrorCodes.SYNCML_DM_FAIL);
+                }
+            }
+            return resStrArr;
+        }
+
+        final List<String> fullPaths = new ArrayList<String>(paths.length);
+        for (String path : paths) {
+            fullPaths.add(getFullPath(path));
+        }
+
+        List<DmtPluginResult> results;
+        try {
+            results = callPlugin(OP_GET_NODE_VALUES, new PluginCall<List<DmtPluginResult>>() {
+                @Override
+                List<DmtPluginResult> call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.getNodeValues(fullPaths);
+                }
+            });
+        } catch (Exception e) {
+            loge("Exception in getNodeValues", e);
+            if (isGuardFailure(e)) {
+                for (int i = 0; i < paths.length; i++) {
+                    setErrorTriple(resStrArr, i, ErrorCodes.SYNCML_DM_COMMAND_FAILED);
+                }
+                return resStrArr;
+            }
+            throw new DmtException(e.getMessage());
+        }
+
+        if (results == null || results.size() != paths.length) {
+            loge("Invalid plug-in implementation!");
+            throw new DmtException("Invalid plug-in implementation!");
+        }
+
+        for (int i = 0; i < paths.length; i++) {
+            DmtPluginResult result = results.get(i);
+            DmtData data = result.getValue();
+            if (data == null || result.getStatus() != ErrorCodes.SYNCML_DM_SUCCESS) {
+                setErrorTriple(resStrArr, i,
+                        result.getStatus() == ErrorCodes.SYNCML_DM_SUCCESS
+                                ? ErrorCodes.SYNCML_DM_FAIL : result.getStatus());
+                continue;
+            }
+            try {
+                setValueTriple(resStrArr, i, toValueArray(data));
+            } catch (DmtException e) {
+                setErrorTriple(resStrArr, i, ErrorCodes.SYNCML_DM_FAIL);
+            }
+        }
+        return resStrArr;
+    }
+
+    /**
+     * Starts reading the values of several leaf nodes on the prefetch pool and returns
+     * without waiting. Each value is returned by the next {@link #getNodeValue} call for
+     * its path, so the engine can prefetch the nodes of a Get command from several
+     * plug-ins in parallel and still execute the command one item at a time.
+     * Called from JNI.
+     *
+     * @param paths paths to the leaf nodes.
+     */
+    public void prefetchNodeValues(final String[] paths) {
+        if (DBG) logd("Enter prefetchNodeValues(" + Arrays.toString(paths) + ')');
+
+        if (mPluginConnection == null || paths.length == 0) {
+            return;
+        }
+
+        List<String> fullPaths = new ArrayList<String>(paths.length);
+        for (String path : paths) {
+            fullPaths.add(getFullPath(path));
+        }
+
+        DmtPluginPrefetcher.submit(this, fullPaths, new Callable<String[]>() {
+            @Override
+            public String[] call() throws DmtException {
+                return getNodeValues(paths);
+            }
+        });
+    }
+
+    /**
+     * Drops the values prefetched for this root which weren't read. Called when the
+     * Get command they were prefetched for has finished.
+     * Called from JNI.
+     */
+    public void clearPrefetchedValues() {
+        DmtPluginPrefetcher.release(this);
+    }
 
-            //throw new DmtException(retcode, "Value is not set");
+    private static void setValueTriple(String[] resStrArr, int index, String[] value) {
+        if (value.length == 1) {
+            // single element arrays carry the error code from getNodeValue()
+            setErrorTriple(resStrArr, index, Integer.parseInt(value[0]));
+            return;
         }
+        int i = index * 3;
+        resStrArr[i] = Integer.toString(ErrorCodes.SYNCML_DM_SUCCESS);
+        resStrArr[i + 1] = value[0];
+        resStrArr[i + 2] = value[1];
+    }
+
+    private static void setErrorTriple(String[] resStrArr, int index, int retcode) {
+        int i = index * 3;
+        resStrArr[i] = Integer.toString(retcode);
+        resStrArr[i + 1] = "";
+        resStrArr[i + 2] = "";
+    }
 
+    private static String[] toValueArray(DmtData data) throws DmtException {
         int dataType = data.getType();
 
         switch (dataType) {
@@ -476,6 +849,10 @@ public final class DmtPluginManager {
                 resStrArr[1] = TextUtils.isEmpty(value) ? "" : value;
                 return resStrArr;
 
+            case DmtData.STREAM:
+                // the node wasn't declared as a stream, pass the value inline
+                return new String[] { Integer.toString(DmtData.BIN), readStream(data) };
+
             case DmtData.NODE:
                 throw new DmtException("Operation not allowed for interior node!");
 
@@ -484,6 +861,34 @@ public final class DmtPluginManager {
         }
     }
 
+    private static String readStream(DmtData data) throws DmtException {
+        ParcelFileDescriptor stream = data.getStream();
+        if (stream == null) {
+            return "";
+        }
+
+        byte[] value = new byte[data.getStreamSize()];
+        InputStream is = new ParcelFileDescriptor.AutoCloseInputStream(stream);
+        try {
+            int offset = 0;
+            while (offset < value.length) {
+                int count = is.read(value, offset, value.length - offset);
+                if (count < 0) {
+                    break;
+                }
+                offset += count;
+            }
+            return new String(value, 0, offset);
+        } catch (IOException e) {
+            throw new DmtException(ErrorCodes.SYNCML_DM_IO_FAILURE, e.getMessage());
+        } finally {
+            try {
+                is.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
     /**
      * Gets a set of nodes for the specified path.
      * Called from JNI.
@@ -503,23 +908,32 @@ public final class DmtPluginManager {
             throw new DmtException("There is no bound plug-in");
         }
 
-        Map<String, DmtPluginNode> pluginNodes;
+        DmtPluginResult result;
         try {
-            pluginNodes = (Map<String, DmtPluginNode>) mPluginConnection.getNodes(mPath);
-        } catch (RemoteException e) {
-            loge("RemoteException in getNodes", e);
-            throw new DmtException(e.getMessage());
+            result = callPlugin(OP_GET_NODES, new PluginCall<DmtPluginResult>() {
+                @Override
+                DmtPluginResult call(IDmtPlugin plugin) throws RemoteException {
+                    if (supportsReadResult()) {
+                        return plugin.getNodesResult(mPath);
+                    }
+                    Map<String, DmtPluginNode> nodes =
+                            (Map<String, DmtPluginNode>) plugin.getNodes(mPath);
+                    return new DmtPluginResult(nodes == null ? plugin.getOperationResult()
+                            : ErrorCodes.SYNCML_DM_SUCCESS, nodes);
+                }
+            });
+        } catch (Exception e) {
+            loge("Exception in getNodes", e);
+            throw new DmtException(getErrorCode(e), e.getMessage());
         }
 
-        if (pluginNodes == null) {
-            int retcode;
-            try {
-                retcode = mPluginConnection.getOperationResult();
-            } catch (Exception e) {
-                loge("Exception in getNodes", e);
-                throw new DmtException(e.getMessage());
-            }
+        if (result == null) {
+            throw new DmtException("Invalid plug-in implementation!");
+        }
+        Map<String, DmtPluginNode> pluginNodes = result.getNodes();
+        int retcode = result.getStatus();
 
+        if (pluginNodes == null) {
             if (retcode == ErrorCodes.SYNCML_DM_SUCCESS) {
                 loge("Invalid plug-in implementation!");
                 throw new DmtException("Invalid plug-in implementation!");
@@ -528,59 +942,68 @@ public final class DmtPluginManager {
             throw new DmtException(retcode, "Value is not set");
         }
 
-        if (pluginNodes.isEmpty()) {
-            // FIXME: zero-length array constructed
-            return new String[0];
+        return toNodeArray(pluginNodes);
+    }
+
+    /**
+     * Gets one interior node and its direct leaf children, so the plug-in subtree can
+     * be loaded on demand. Called from JNI.
+     *
+     * @param path path to the interior node, relative to the plug-in root.
+     * @return a String array containing triples of (key, type, value) as Strings, as
+     *         {@link #getNodes()} does, or null if the plug-in can only return its
+     *         whole subtree.
+     * @throws DmtException on any exception
+     */
+    public String[] getChildNodes(String path) throws DmtException {
+        if (DBG) logd("Enter getChildNodes(\"" + path + "\")");
+
+        if (mPluginConnection == null) {
+            loge("There is no bound plug-in");
+            throw new DmtException("There is no bound plug-in");
         }
 
-        if (DBG) logd("Data plugin has " + pluginNodes.size() + " nodes.");
-        String[] resStrArr = new String[pluginNodes.size() * 3];
-
-        int i = 0;
-        for (String key : pluginNodes.keySet()) {
-            if (DBG) logd("No." + i + " : " + key);
-            DmtPluginNode tmpNode = pluginNodes.get(key);
-            if (tmpNode == null) {
-                throw new DmtException("Invalid map of all nodes");
-            }
-            resStrArr[i] = getRelativePath(key);
-            resStrArr[i + 1] = Integer.toString(tmpNode.getType());
-            switch (tmpNode.getType()) {
-                case DmtData.NODE:
-                    StringBuilder tmpSB = new StringBuilder("");
-                    DmtData data = tmpNode.getValue();
-                    if (data != null) {
-                        Map<String, DmtData> childNodes = data.getChildNodeMap();
-                        for (String subNodeName : childNodes.keySet()) {
-                            if (TextUtils.isEmpty(subNodeName)) {
-                                loge("invalid interior node value for " + subNodeName + "!!!");
-                                throw new DmtException("Invalid interior node value");
-                            } else {
-                                tmpSB.append(subNodeName).append('\n');
-                            }
-                        }
-                    }
-                    resStrArr[i + 2] = tmpSB.toString();
-                    break;
+        if (mProtocolVersion < CHILD_NODES_PROTOCOL_VERSION) {
+            return null;
+        }
 
-                case DmtData.NULL:
-                case DmtData.STRING:
-                case DmtData.INT:
-                case DmtData.BOOL:
-                case DmtData.BIN:
-                case DmtData.DATE:
-                case DmtData.TIME:
-                case DmtData.FLOAT:
-                    resStrArr[i + 2] = "";
-                    break;
+        final String fullPath = getFullPath(path);
+        DmtPluginResult result;
+        try {
+            result = callPlugin(OP_GET_CHILD_NODES, new PluginCall<DmtPluginResult>() {
+                @Override
+                DmtPluginResult call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.getChildNodes(fullPath);
+                }
+            });
+        } catch (Exception e) {
+            loge("Exception in getChildNodes", e);
+            throw new DmtException(getErrorCode(e), e.getMessage());
+        }
 
-                default:
-                    loge("invalid node type " + tmpNode.getType() + "!!!!");
-                    throw new DmtException("Invalid node type");
+        if (result == null) {
+            throw new DmtException("Invalid plug-in implementation!");
+        }
+        if (result.getStatus() == ErrorCodes.SYNCML_DM_UNSUPPORTED_OPERATION) {
+            return null;
+        }
+
+        Map<String, DmtPluginNode> pluginNodes = result.getNodes();
+        if (pluginNodes == null) {
+            if (result.getStatus() == ErrorCodes.SYNCML_DM_SUCCESS) {
+                loge("Invalid plug-in implementation!");
+                throw new DmtException("Invalid plug-in implementation!");
             }
-            i += 3;
+
+            throw new DmtException(result.getStatus(), "Value is not set");
         }
-        return resStrArr;
+
+        return toNodeArray(pluginNodes);
+    }
+
+    private String[] toNodeArray(Map<String, DmtPluginNode> pluginNodes) throws DmtException {
+        if (DBG) logd("Data plugin has " + pluginNodes.size() + " nodes.");
+        return DmtNodeArrays.fromNodes(mPath, pluginNodes);
     }
 
     public void release() {
@@ -591,18 +1014,20 @@ public final class DmtPluginManager {
         }
 
         try {
-            mPluginConnection.release();
+            callPlugin(OP_RELEASE, new PluginCall<Void>() {
+                @Override
+                Void call(IDmtPlugin plugin) throws RemoteException {
+                    plugin.release();
+                    return null;
+                }
+            });
         } catch (Exception e) {
             loge("exception releasing plugin", e);
         }
 
         mPluginConnection = null;
-
-        try {
-            sContext.unbindService(mConnector);
-        } catch (Exception e) {
-            loge("unbindService exception in release", e);
-        }
+        DmtPluginConnectionPool.release(mUid);
+        DmtPluginPrefetcher.release(this);
     }
 
     private boolean bindPluginService() {
@@ -618,15 +1043,15 @@ public final class DmtPluginManager {
             return true;
         }
 
+        boolean initialized = false;
         try {
             logd("uid      = " + mUid);
             logd("rootPath = " + mPath);
 
-            mConnector.waitForConnection();
+            mPluginConnection = DmtPluginConnectionPool.acquire(sContext, mUid);
 
             if (mPluginConnection == null) {
                 loge("Impossible to bind to plug-in!...");
-                sContext.unbindService(mConnector);
                 return false;
             }
 
@@ -637,23 +1062,168 @@ public final class DmtPluginManager {
                 mPluginConnection.setServerID(mServerID);
             }
 
-            return mPluginConnection.init(mPath, mParameters);
+            mProtocolVersion = getProtocolVersion();
+            if (DBG) logd("protocol version = " + mProtocolVersion);
+
+            initialized = callPlugin(OP_INIT, new PluginCall<Boolean>() {
+                @Override
+                Boolean call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.init(mPath, mParameters);
+                }
+            });
+            return initialized;
         } catch (Exception e) {
             loge("bindPluginService: Unable to get service " + mUid, e);
             return false;
+        } finally {
+            // a root which failed to initialize doesn't keep the plug-in: the reference
+            // is dropped now, not when (if ever) release() is called for the root
+            if (!initialized && mPluginConnection != null) {
+                mPluginConnection = null;
+                DmtPluginConnectionPool.release(mUid);
+            }
         }
     }
 
-    private String getRelativePath(String path) {
-        if (TextUtils.isEmpty(path) || path.equals(mPath)) {
-            return "";
+    private int getProtocolVersion() {
+        try {
+            // plug-ins built with the old interface don't handle the transaction and
+            // the proxy reads 0 from the empty reply
+            return callPlugin(OP_GET_PROTOCOL_VERSION, new PluginCall<Integer>() {
+                @Override
+                Integer call(IDmtPlugin plugin) throws RemoteException {
+                    return plugin.getProtocolVersion();
+                }
+
+                @Override
+                int getStatus(Integer version) {
+                    return ErrorCodes.SYNCML_DM_SUCCESS;
+                }
+            });
+        } catch (Exception e) {
+            loge("getProtocolVersion failed, using legacy calls", e);
+            return 0;
+        }
+    }
+
+    /**
+     * A binder call to the bound plug-in, run by {@link #callPlugin}.
+     */
+    private abstract class PluginCall<T> implements Callable<T> {
+        private final IDmtPlugin mPlugin = mPluginConnection;
+
+        @Override
+        public final T call() throws RemoteException {
+            return call(mPlugin);
+        }
+
+        abstract T call(IDmtPlugin plugin) throws RemoteException;
+
+        /**
+         * @return the result code of the call for the statistics
+         */
+        int getStatus(T result) {
+            return getResultStatus(result);
+        }
+    }
+
+    /**
+     * Run a plug-in call with the deadline of the root, unless the plug-in's
+     * circuit breaker is open, and record its result code and latency. Exec and
+     * commit may legitimately run for minutes and only have a deadline if the root
+     * sets {@code _timeout}; all other calls default to
+     * {@link DmtPluginCallGuard#DEFAULT_TIMEOUT_MS}.
+     */
+    private <T> T callPlugin(String operation, PluginCall<T> call) throws Exception {
+        long start = SystemClock.elapsedRealtimeNanos();
+        int status = ErrorCodes.SYNCML_DM_FAIL;
+        try {
+            long timeoutMs = OP_EXEC.equals(operation) || OP_COMMIT.equals(operation)
+                    ? mExecTimeoutMs : mCallTimeoutMs;
+            T result = mGuard.call(call, timeoutMs);
+            status = call.getStatus(result);
+            return result;
+        } catch (Exception e) {
+            status = getErrorCode(e);
+            throw e;
+        } finally {
+            DmtPluginStats.record(mUid, operation, status,
+                    SystemClock.elapsedRealtimeNanos() - start);
         }
+    }
 
-        if (path.startsWith(mPath + '/')) {
-            return path.substring(mPath.length() + 1);
+    private static int getResultStatus(Object result) {
+        if (result instanceof Integer) {
+            return (Integer) result;
+        }
+        if (result instanceof Boolean) {
+            return (Boolean) result ? ErrorCodes.SYNCML_DM_SUCCESS : ErrorCodes.SYNCML_DM_FAIL;
         }
+        if (result instanceof DmtPluginResult) {
+            return ((DmtPluginResult) result).getStatus();
+        }
+        return ErrorCodes.SYNCML_DM_SUCCESS;
+    }
+
+    /**
+     * Drop the cached and prefetched values of a node which is written.
+     */
+    private static void invalidate(String fullPath) {
+        DmtPluginValueCache.invalidate(fullPath);
+        DmtPluginPrefetcher.invalidate(fullPath);
+    }
+
+    /**
+     * @return whether the call was abandoned or refused by the call guard
+     */
+    private static boolean isGuardFailure(Exception e) {
+        return e instanceof TimeoutException
+                || e instanceof DmtPluginCallGuard.CircuitOpenException;
+    }
+
+    private static int getErrorCode(Exception e) {
+        return isGuardFailure(e) ? ErrorCodes.SYNCML_DM_COMMAND_FAILED
+                : ErrorCodes.SYNCML_DM_FAIL;
+    }
 
-        return path;
+    /**
+     * @return a leaf value for the plug-in, parceled in the layout of its IDmtPlugin version
+     */
+    private DmtData newLeafData(String value, int type) {
+        if (mProtocolVersion < VERSIONED_PARCEL_PROTOCOL_VERSION) {
+            return new LegacyParcelData(value, type);
+        }
+        return new DmtData(value, type);
+    }
+
+    /**
+     * Leaf value written with {@link DmtData#PARCELABLE_WRITE_LEGACY}, for plug-ins which
+     * read DmtData parcels without a version. The generated IDmtPlugin proxy writes
+     * arguments without flags, so the layout is chosen by the class of the argument.
+     */
+    private static final class LegacyParcelData extends DmtData {
+        LegacyParcelData(String value, int type) {
+            super(value, type);
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags | PARCELABLE_WRITE_LEGACY);
+        }
+
+        @Override
+        public int describeContents() {
+            // the legacy layout has no STREAM values and no shared memory
+            return 0;
+        }
+    }
+
+    private boolean supportsReadResult() {
+        return mProtocolVersion >= READ_RESULT_PROTOCOL_VERSION;
+    }
+
+    private String getRelativePath(String path) {
+        return DmtNodeArrays.getRelativePath(mPath, path);
     }
 
     private String getFullPath(String path) {
@@ -665,7 +1235,7 @@ public final class DmtPluginManager {
             return path;
         }
 
-        return mPath + '/' + path;
+        return mRootPath.child(path).toString();
     }
 
     private static void logd(String msg) {
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.impl;
+
+import android.util.Log;
+
+import com.android.omadm.plugin.ErrorCodes;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leaf values read ahead of a Get command. The DM engine hands each plug-in root the
+ * leaf paths a Get command is about to read; the roots read them on a small pool, one
+ * task per root, while the engine goes on to execute the command's items one at a time.
+ * Each prefetched value is handed to the first {@link DmtPluginManager#getNodeValue}
+ * call for its path and then dropped. Values are dropped as well when the Get command
+ * finishes, when the node is written, when the root executes, commits or prefetches
+ * again and when a session starts.
+ */
+final class DmtPluginPrefetcher {
+
+    private static final String TAG = "DM_DmtPluginPrefetcher";
+
+    /** Roots read in parallel; more roots queue behind them. */
+    static final int POOL_SIZE = 4;
+
+    private static final class Entry {
+        final DmtPluginManager mOwner;      // the root which prefetched the value
+        final Future<String[]> mFuture;     // (result code, type, value) triples
+        final int mIndex;                   // index of the triple for this path
+
+        Entry(DmtPluginManager owner, Future<String[]> future, int index) {
+            mOwner = owner;
+            mFuture = future;
+            mIndex = index;
+        }
+    }
+
+    /* full path -> pending or completed read */
+    private static final Map<String, Entry> sEntries = new HashMap<String, Entry>();
+
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(
+            POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "DmtPluginPrefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    static {
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private DmtPluginPrefetcher() {}
+
+    /**
+     * Start reading the values of one root and return without waiting. Values the
+     * root prefetched before and nobody read are dropped.
+     *
+     * @param owner the plug-in manager of the root.
+     * @param fullPaths full paths of the leaf nodes.
+     * @param read reads the nodes and returns a (result code, type, value) triple per
+     *        path, as {@link DmtPluginManager#getNodeValues} does.
+     */
+    static void submit(DmtPluginManager owner, List<String> fullPaths, Callable<String[]> read) {
+        synchronized (sEntries) {
+            drop(owner);
+            Future<String[]> future = sExecutor.submit(read);
+            for (int i = 0; i < fullPaths.size(); i++) {
+                sEntries.put(fullPaths.get(i), new Entry(owner, future, i));
+            }
+        }
+    }
+
+    /**
+     * Take the prefetched value of a node, waiting for its read to finish. The read
+     * is bounded by the call deadline of the root.
+     *
+     * @param fullPath the full path of the node.
+     * @return the (type, value) pair or the single element error code array, as
+     *         returned by {@link DmtPluginManager#getNodeValue}, or null if the node
+     *         wasn't prefetched or the read failed.
+     */
+    static String[] take(String fullPath) {
+        Entry entry;
+        synchronized (sEntries) {
+            if (sEntries.isEmpty()) {
+                return null;
+            }
+            entry = sEntries.remove(fullPath);
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        String[] triples;
+        try {
+            triples = entry.mFuture.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "prefetch of " + fullPath + " failed", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Log.e(TAG, "interrupted waiting for " + fullPath);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        int i = entry.mIndex * 3;
+        if (triples == null || triples.length <= i + 2 || triples[i] == null) {
+            return null;
+        }
+        if (!Integer.toString(ErrorCodes.SYNCML_DM_SUCCESS).equals(triples[i])) {
+            return new String[] { triples[i] };
+        }
+        return new String[] { triples[i + 1], triples[i + 2] };
+    }
+
+    /**
+     * Drop the prefetched value of the node and of all nodes below it.
+     */
+    static void invalidate(String path) {
+        synchronized (sEntries) {
+            if (sEntries.isEmpty()) {
+                return;
+            }
+            sEntries.remove(path);
+
+            String prefix = path + '/';
+            for (Iterator<String> it = sEntries.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the values prefetched by one root. Called when its Get command finishes and
+     * when the root is released.
+     */
+    static void release(DmtPluginManager owner) {
+        synchronized (sEntries) {
+            drop(owner);
+        }
+    }
+
+    /**
+     * Drop all prefetched values. Called when a DM session starts.
+     */
+    static void clear() {
+        synchronized (sEntries) {
+            sEntries.clear();
+        }
+    }
+
+    private static void drop(DmtPluginManager owner) {
+        for (Iterator<Entry> it = sEntries.values().iterator(); it.hasNext(); ) {
+            if (it.next().mOwner == owner) {
+                it.remove();
+            }
+        }
+    }
+}
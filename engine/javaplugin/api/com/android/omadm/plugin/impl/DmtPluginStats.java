@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.impl;
+
+import android.util.SparseIntArray;
+
+import com.android.omadm.plugin.ErrorCodes;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Call counts, result codes and latency histograms of plug-in calls, per plug-in uid
+ * and operation. Kept since the process started and for the current session. Recording
+ * a call is a couple of map lookups and counter updates, cheap enough to leave on.
+ */
+final class DmtPluginStats {
+
+    /** Upper bounds of the latency histogram buckets in ms; the last bucket is unbounded. */
+    private static final int[] BUCKET_BOUNDS_MS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000
+    };
+
+    private static final class OperationStats {
+        int mCount;
+        int mErrorCount;
+        long mTotalMicros;
+        long mMaxMicros;
+        final int[] mBuckets = new int[BUCKET_BOUNDS_MS.length + 1];
+        final SparseIntArray mErrorCodes = new SparseIntArray();
+
+        void record(int status, long micros) {
+            mCount++;
+            mTotalMicros += micros;
+            if (micros > mMaxMicros) {
+                mMaxMicros = micros;
+            }
+            mBuckets[getBucket(micros)]++;
+            if (status != ErrorCodes.SYNCML_DM_SUCCESS) {
+                mErrorCount++;
+                mErrorCodes.put(status, mErrorCodes.get(status) + 1);
+            }
+        }
+    }
+
+    /* uid -> operation -> stats, sorted for the dump */
+    private static final Map<String, Map<String, OperationStats>> sTotal =
+            new TreeMap<String, Map<String, OperationStats>>();
+    private static final Map<String, Map<String, OperationStats>> sSession =
+            new TreeMap<String, Map<String, OperationStats>>();
+
+    private DmtPluginStats() {}
+
+    /**
+     * Record one plug-in call.
+     *
+     * @param uid the plug-in uid.
+     * @param operation the operation name.
+     * @param status the result code of the call.
+     * @param nanos the duration of the call.
+     */
+    static synchronized void record(String uid, String operation, int status, long nanos) {
+        long micros = nanos / 1000;
+        getStats(sTotal, uid, operation).record(status, micros);
+        getStats(sSession, uid, operation).record(status, micros);
+    }
+
+    /**
+     * Clear the statistics of the current session. Called when a DM session starts.
+     */
+    static synchronized void startSession() {
+        sSession.clear();
+    }
+
+    /**
+     * Print the statistics.
+     *
+     * @param pw the writer to print to.
+     * @param sessionOnly true for the current session, false for all calls since boot.
+     */
+    static synchronized void dump(PrintWriter pw, boolean sessionOnly) {
+        Map<String, Map<String, OperationStats>> stats = sessionOnly ? sSession : sTotal;
+        pw.println(sessionOnly ? "Plug-in calls in this session:" : "Plug-in calls since boot:");
+        if (stats.isEmpty()) {
+            pw.println("  none");
+            return;
+        }
+
+        for (Map.Entry<String, Map<String, OperationStats>> plugin : stats.entrySet()) {
+            pw.println("  " + plugin.getKey());
+            for (Map.Entry<String, OperationStats> entry : plugin.getValue().entrySet()) {
+                dumpOperation(pw, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static void dumpOperation(PrintWriter pw, String operation, OperationStats op) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("    ").append(operation)
+                .append(": count=").append(op.mCount)
+                .append(" errors=").append(op.mErrorCount)
+                .append(" avg=").append(formatMillis(op.mTotalMicros / op.mCount))
+                .append(" max=").append(formatMillis(op.mMaxMicros));
+        pw.println(sb);
+
+        sb.setLength(0);
+        sb.append("      latency:");
+        for (int i = 0; i < op.mBuckets.length; i++) {
+            if (op.mBuckets[i] == 0) {
+                continue;
+            }
+            sb.append(' ');
+            if (i < BUCKET_BOUNDS_MS.length) {
+                sb.append("<=").append(BUCKET_BOUNDS_MS[i]);
+            } else {
+                sb.append('>').append(BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1]);
+            }
+            sb.append("ms:").append(op.mBuckets[i]);
+        }
+        pw.println(sb);
+
+        if (op.mErrorCodes.size() > 0) {
+            sb.setLength(0);
+            sb.append("      result codes:");
+            for (int i = 0; i < op.mErrorCodes.size(); i++) {
+                sb.append(' ').append(op.mErrorCodes.keyAt(i))
+                        .append(':').append(op.mErrorCodes.valueAt(i));
+            }
+            pw.println(sb);
+        }
+    }
+
+    private static OperationStats getStats(Map<String, Map<String, OperationStats>> stats,
+            String uid, String operation) {
+        Map<String, OperationStats> plugin = stats.get(uid);
+        if (plugin == null) {
+            plugin = new TreeMap<String, OperationStats>();
+            stats.put(uid, plugin);
+        }
+        OperationStats op = plugin.get(operation);
+        if (op == null) {
+            op = new OperationStats();
+            plugin.put(operation, op);
+        }
+        return op;
+    }
+
+    private static int getBucket(long micros) {
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            if (micros <= BUCKET_BOUNDS_MS[i] * 1000L) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MS.length;
+    }
+
+    private static String formatMillis(long micros) {
+        return (micros / 1000) + "." + (micros % 1000 / 100) + "ms";
+    }
+}
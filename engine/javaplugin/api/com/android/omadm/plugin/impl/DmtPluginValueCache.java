@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.impl;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Cache of leaf values read from Java plug-ins, shared by all {@link DmtPluginManager}
+ * instances. The lifetime of cached values is set per plug-in root with the
+ * {@code _cache} parameter in sysplugins.ini:
+ * <ul>
+ * <li>{@code _cache=boot}: until the DM service process exits</li>
+ * <li>{@code _cache=session}: until the next DM session starts</li>
+ * <li>{@code _cache=<seconds>}: for the given number of seconds</li>
+ * </ul>
+ * Roots without the parameter are not cached. Values are dropped when a node is
+ * replaced, created, renamed or deleted through the DM engine.
+ */
+final class DmtPluginValueCache {
+
+    private static final String TAG = "DM_DmtPluginValueCache";
+
+    /** Plug-in parameter with the cache policy of the root. */
+    static final String PARAM_CACHE = "_cache";
+
+    /** Values are not cached. */
+    static final long TTL_NONE = 0;
+
+    /** Values are valid for the current session. */
+    static final long TTL_SESSION = -1;
+
+    /** Values are valid until the process exits. */
+    static final long TTL_BOOT = -2;
+
+    private static final class Entry {
+        final String[] mValue;
+        final int mSession;     // session the value was read in, for TTL_SESSION
+        final long mExpires;    // elapsedRealtime() deadline, for timed entries
+
+        Entry(String[] value, int session, long expires) {
+            mValue = value;
+            mSession = session;
+            mExpires = expires;
+        }
+    }
+
+    private static final Map<String, Entry> sEntries = new HashMap<String, Entry>();
+
+    private static int sSession;
+    private static long sHits;
+    private static long sMisses;
+
+    private DmtPluginValueCache() {}
+
+    /**
+     * Parse the {@code _cache} parameter of a plug-in root.
+     * @return the TTL in milliseconds, or one of the {@code TTL_*} constants
+     */
+    static long parsePolicy(String policy) {
+        if (TextUtils.isEmpty(policy)) {
+            return TTL_NONE;
+        }
+        if ("boot".equalsIgnoreCase(policy)) {
+            return TTL_BOOT;
+        }
+        if ("session".equalsIgnoreCase(policy)) {
+            return TTL_SESSION;
+        }
+        try {
+            long seconds = Long.parseLong(policy.trim());
+            return seconds > 0 ? seconds * 1000 : TTL_NONE;
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "invalid cache policy: " + policy);
+            return TTL_NONE;
+        }
+    }
+
+    /**
+     * @return the cached (type, value) pair for the full path, or null on a miss
+     */
+    static synchronized String[] get(String path) {
+        Entry entry = sEntries.get(path);
+        if (entry != null && !isValid(entry)) {
+            sEntries.remove(path);
+            entry = null;
+        }
+
+        if (entry == null) {
+            sMisses++;
+            return null;
+        }
+        sHits++;
+        return entry.mValue;
+    }
+
+    static synchronized void put(String path, long ttl, String[] value) {
+        if (ttl == TTL_NONE) {
+            return;
+        }
+        long expires = ttl > 0 ? SystemClock.elapsedRealtime() + ttl : Long.MAX_VALUE;
+        int session = ttl == TTL_SESSION ? sSession : -1;
+        sEntries.put(path, new Entry(value, session, expires));
+    }
+
+    /**
+     * Drop the cached value of the node and of all nodes below it.
+     */
+    static synchronized void invalidate(String path) {
+        if (sEntries.isEmpty()) {
+            return;
+        }
+        sEntries.remove(path);
+
+        String prefix = path + '/';
+        for (Iterator<String> it = sEntries.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Expire all values cached with the session policy.
+     */
+    static synchronized void startSession() {
+        sSession++;
+        for (Iterator<Entry> it = sEntries.values().iterator(); it.hasNext(); ) {
+            if (!isValid(it.next())) {
+                it.remove();
+            }
+        }
+        Log.d(TAG, "new session, hits=" + sHits + " misses=" + sMisses
+                + " entries=" + sEntries.size());
+    }
+
+    static synchronized long getHitCount() {
+        return sHits;
+    }
+
+    static synchronized long getMissCount() {
+        return sMisses;
+    }
+
+    private static boolean isValid(Entry entry) {
+        if (entry.mSession >= 0 && entry.mSession != sSession) {
+            return false;
+        }
+        return SystemClock.elapsedRealtime() < entry.mExpires;
+    }
+}
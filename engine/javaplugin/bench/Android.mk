@@ -0,0 +1,38 @@
+# Copyright 2014 The Android Open Source Project
+
+LOCAL_PATH:= $(call my-dir)
+
+include $(CLEAR_VARS)
+
+# Host JVM benchmark of the plug-in API. Built with "make dm_plugin_api_bench"; run:
+#   java -jar $ANDROID_HOST_OUT/framework/dm_plugin_api_bench.jar [max nodes] [out.json]
+# and compare the output with a file in baselines/ taken on the same kind of machine.
+# The android.* classes in stubs/ stand in for the framework on the host.
+# For JMH runs outside the platform build use pom.xml in this directory.
+LOCAL_MODULE_TAGS := tests
+
+DM_PLUGIN_API_PATH := ../api/com/android/omadm/plugin
+
+LOCAL_SRC_FILES := \
+ $(call all-java-files-under, src) \
+ $(call all-java-files-under, stubs) \
+ $(DM_PLUGIN_API_PATH)/DmtData.java \
+ $(DM_PLUGIN_API_PATH)/DmtException.java \
+ $(DM_PLUGIN_API_PATH)/DmtManagementObject.java \
+ $(DM_PLUGIN_API_PATH)/DmtNodeDelta.java \
+ $(DM_PLUGIN_API_PATH)/DmtNodeStore.java \
+ $(DM_PLUGIN_API_PATH)/DmtPath.java \
+ $(DM_PLUGIN_API_PATH)/DmtPathUtils.java \
+ $(DM_PLUGIN_API_PATH)/DmtPluginNode.java \
+ $(DM_PLUGIN_API_PATH)/DmtPluginResult.java \
+ $(DM_PLUGIN_API_PATH)/DmtSharedMemory.java \
+ $(DM_PLUGIN_API_PATH)/ErrorCodes.java \
+ $(DM_PLUGIN_API_PATH)/IDmtRootPlugin.java \
+ $(DM_PLUGIN_API_PATH)/IDmtSubTree.java \
+ $(DM_PLUGIN_API_PATH)/impl/DmtNodeArrays.java
+
+LOCAL_JAR_MANIFEST := manifest.txt
+
+LOCAL_MODULE := dm_plugin_api_bench
+
+include $(BUILD_HOST_JAVA_LIBRARY)
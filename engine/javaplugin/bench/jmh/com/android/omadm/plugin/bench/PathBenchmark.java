@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.bench;
+
+import com.android.omadm.plugin.DmtPathUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The string based path helpers ({@code old*}, see {@link StringPathUtils}) next to the
+ * DmtPath based {@link DmtPathUtils} ({@code new*}) on the paths of the same tree.
+ * One operation is a pass over all paths of the tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+
+    private static final String ROOT = PluginApiBench.ROOT;
+
+    @Param({"100", "10000"})
+    int nodes;
+
+    String[] mPaths;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mPaths = new PluginApiBench.Tree(nodes + 1).mPaths;
+    }
+
+    @Benchmark
+    public int oldSplitPath() {
+        int n = 0;
+        for (String path : mPaths) {
+            n += StringPathUtils.splitPath(path)[1].length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int newSplitPath() {
+        int n = 0;
+        for (String path : mPaths) {
+            n += DmtPathUtils.splitPath(path)[1].length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int oldIsSubPath() {
+        int n = 0;
+        for (String path : mPaths) {
+            if (StringPathUtils.isSubPath(ROOT, path)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int newIsSubPath() {
+        int n = 0;
+        for (String path : mPaths) {
+            if (DmtPathUtils.isSubPath(ROOT, path)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int oldToRelativePath() {
+        int n = 0;
+        for (String path : mPaths) {
+            n += StringPathUtils.toRelativePath(ROOT, path).length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int newToRelativePath() {
+        int n = 0;
+        for (String path : mPaths) {
+            n += DmtPathUtils.toRelativePath(ROOT, path).length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int oldGetSubNodeName() {
+        int n = 0;
+        for (String path : mPaths) {
+            n += StringPathUtils.getSubNodeName(ROOT, path).length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int newGetSubNodeName() {
+        int n = 0;
+        for (String path : mPaths) {
+            n += DmtPathUtils.getSubNodeName(ROOT, path).length();
+        }
+        return n;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.bench;
+
+import android.os.Parcel;
+
+import com.android.omadm.plugin.DmtData;
+import com.android.omadm.plugin.DmtException;
+import com.android.omadm.plugin.DmtPath;
+import com.android.omadm.plugin.DmtPathUtils;
+import com.android.omadm.plugin.DmtPluginNode;
+import com.android.omadm.plugin.DmtPluginResult;
+import com.android.omadm.plugin.ErrorCodes;
+import com.android.omadm.plugin.impl.NodeArraysAccess;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH version of the {@link PluginApiBench} cases. One operation is a pass over all
+ * nodes of the tree, so divide the score by the node count ({@code nodes + 1}) to
+ * compare it with the ns/node figures in baselines/.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluginApiBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    int nodes;
+
+    PluginApiBench.Tree mTree;
+    PluginApiBench.BenchObject mObject;
+
+    @Setup(Level.Trial)
+    public void setUp() throws DmtException {
+        mTree = new PluginApiBench.Tree(nodes + 1);
+        mObject = mTree.build();
+    }
+
+    /** A freshly built object for each call of the benchmarks which modify it. */
+    @State(Scope.Thread)
+    public static class FreshObject {
+        PluginApiBench.BenchObject mObject;
+
+        @Setup(Level.Invocation)
+        public void setUp(PluginApiBenchmark bench) throws DmtException {
+            mObject = bench.mTree.build();
+        }
+    }
+
+    @Benchmark
+    public int pathSplitPath() {
+        int n = 0;
+        for (String path : mTree.mPaths) {
+            n += DmtPathUtils.splitPath(path)[1].length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int pathIsSubPath() {
+        int n = 0;
+        for (String path : mTree.mPaths) {
+            if (DmtPathUtils.isSubPath(PluginApiBench.ROOT, path)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int pathToRelativePath() {
+        int n = 0;
+        for (String path : mTree.mPaths) {
+            n += DmtPathUtils.toRelativePath(PluginApiBench.ROOT, path).length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int dmtpathParse() {
+        int n = 0;
+        for (String path : mTree.mPaths) {
+            n += DmtPath.of(path).length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int dmtpathParentAndName() {
+        int n = 0;
+        for (String path : mTree.mPaths) {
+            DmtPath p = DmtPath.of(path);
+            n += p.parent().length() + p.name().length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int dmtpathIsPrefixOf() {
+        int n = 0;
+        for (String path : mTree.mPaths) {
+            if (mTree.mRoot.isPrefixOf(path)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int moBuild() throws DmtException {
+        return mTree.build().getSnapshot().size();
+    }
+
+    @Benchmark
+    public int moDeleteInterior(FreshObject fresh) throws DmtException {
+        PluginApiBench.BenchObject mo = fresh.mObject;
+        for (String path : mTree.mInteriorPaths) {
+            PluginApiBench.check(mo.delete(path));
+        }
+        return mo.getSnapshot().size();
+    }
+
+    @Benchmark
+    public int moGetNodes() throws DmtException {
+        int n = 0;
+        for (String path : mTree.mInteriorPaths) {
+            n += mObject.getNodes(path).size();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int parcelResult() throws DmtException {
+        DmtPluginResult result = new DmtPluginResult(ErrorCodes.SYNCML_DM_SUCCESS,
+                mObject.getNodes(PluginApiBench.ROOT));
+        Parcel parcel = Parcel.obtain();
+        try {
+            result.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return DmtPluginResult.CREATOR.createFromParcel(parcel).getNodes().size();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Benchmark
+    public int parcelLeafValues() throws DmtException {
+        int n = 0;
+        Parcel parcel = Parcel.obtain();
+        try {
+            for (DmtPluginNode node : mObject.getSnapshot().values()) {
+                if (node.isLeaf()) {
+                    parcel.setDataPosition(0);
+                    node.getValue().writeToParcel(parcel, 0);
+                    parcel.setDataPosition(0);
+                    n += DmtData.CREATOR.createFromParcel(parcel).getType();
+                }
+            }
+        } finally {
+            parcel.recycle();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int flattenGetNodes() throws DmtException {
+        Map<String, DmtPluginNode> nodes = mObject.getNodes(PluginApiBench.ROOT);
+        return NodeArraysAccess.fromNodes(PluginApiBench.ROOT, nodes).length;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.bench;
+
+import com.android.omadm.plugin.DmtPathUtils;
+
+import java.util.Arrays;
+
+/**
+ * The string based path helpers {@link DmtPathUtils} had before DmtPath, kept as the
+ * "old" side of {@link PathBenchmark}. Prefix checks build {@code rootPath + '/'} on
+ * every call.
+ */
+final class StringPathUtils {
+
+    private StringPathUtils() {}
+
+    static String getSubNodeName(String rootPath, String nodePath) {
+        if (!DmtPathUtils.isValidPath(rootPath) || !DmtPathUtils.isValidPath(nodePath)) {
+            return null;
+        }
+
+        String prefix = rootPath + '/';
+
+        if (!nodePath.startsWith(prefix)) {
+            return null;
+        }
+
+        int nameEnd = nodePath.indexOf('/', prefix.length());
+        if (nameEnd == -1) {
+            return nodePath.substring(prefix.length());
+        }
+        return nodePath.substring(prefix.length(), nameEnd);
+    }
+
+    static String[] splitPath(String nodePath) {
+        String[] data = new String[2];
+        Arrays.fill(data, null);
+
+        if (!DmtPathUtils.isValidPath(nodePath)) {
+            return data;
+        }
+
+        int index = nodePath.lastIndexOf('/');
+        if (index == -1) {
+            data[1] = nodePath;
+            return data;
+        }
+
+        if (nodePath.length() == 1) {
+            return data;
+        }
+
+        if (index == 0) {
+            data[1] = nodePath.substring(1);
+            return data;
+        }
+
+        if (index == nodePath.length() - 1) {
+            data[0] = nodePath.substring(0, index);
+            return data;
+        }
+
+        data[0] = nodePath.substring(0, index);
+        data[1] = nodePath.substring(index + 1);
+
+        return data;
+    }
+
+    static boolean isSubPath(String rootPath, String nodePath) {
+        if (!DmtPathUtils.isValidPath(rootPath) || !DmtPathUtils.isValidPath(nodePath)) {
+            return false;
+        }
+
+        if (nodePath.equals(rootPath)) {
+            return true;
+        }
+
+        return nodePath.startsWith(rootPath + '/');
+    }
+
+    static String toRelativePath(String rootPath, String path) {
+        String r = path;
+
+        // deal with the root path of plugin tree
+        if (rootPath.equals(path) || path.isEmpty()) {
+            r = DmtPathUtils.ROOTNODE;
+        }
+        else if (path.startsWith(rootPath)) {
+            r = path.substring(rootPath.length() + 1);
+        }
+        return r;
+    }
+}
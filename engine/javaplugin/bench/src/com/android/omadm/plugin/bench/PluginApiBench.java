@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.bench;
+
+import android.os.Parcel;
+
+import com.android.omadm.plugin.DmtData;
+import com.android.omadm.plugin.DmtException;
+import com.android.omadm.plugin.DmtManagementObject;
+import com.android.omadm.plugin.DmtPath;
+import com.android.omadm.plugin.DmtPathUtils;
+import com.android.omadm.plugin.DmtPluginNode;
+import com.android.omadm.plugin.DmtPluginResult;
+import com.android.omadm.plugin.ErrorCodes;
+import com.android.omadm.plugin.impl.NodeArraysAccess;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Host JVM timings of the plug-in API paths that scale with the size of a management
+ * object: path handling, building and deleting nodes, parceling plug-in results and
+ * flattening getNodes() results for the engine.
+ *
+ * Usage: PluginApiBench [max nodes] [output.json]
+ *
+ * Each case runs on trees of 100 up to max nodes (default 100000), first untimed
+ * until the JIT has settled and then for a fixed time; the median time per node of
+ * the timed runs is reported. Compare the output with the files in baselines/ taken
+ * on the same machine before and after a change. The same cases run under JMH from
+ * the Maven build in this directory, see {@code PluginApiBenchmark}.
+ */
+public final class PluginApiBench {
+
+    static final String ROOT = "./Bench";
+
+    /** leaf nodes below each interior node */
+    static final int LEAVES = 9;
+
+    private static final long WARMUP_NANOS = 300L * 1000 * 1000;
+    private static final long MEASURE_NANOS = 1000L * 1000 * 1000;
+    private static final int MIN_RUNS = 5;
+
+    /* keeps the JIT from dropping the measured work */
+    private static volatile int sSink;
+
+    private final List<String> mResults = new ArrayList<String>();
+
+    private PluginApiBench() {
+    }
+
+    /** Operation measured per node of a tree built by {@link #setUp}. */
+    private abstract static class Case {
+        final String mName;
+
+        Case(String name) {
+            mName = name;
+        }
+
+        /** Called before each timed run, not included in the time. */
+        void setUp(Tree tree) throws DmtException {
+        }
+
+        /** @return a value depending on the work done */
+        abstract int run(Tree tree) throws DmtException;
+    }
+
+    static final class BenchObject extends DmtManagementObject {
+        BenchObject(String path) throws DmtException {
+            super(path, null);
+        }
+
+        @Override
+        protected String resolve(String tag, boolean getSemantics) {
+            return tag;
+        }
+
+        int delete(String path) {
+            return deleteNode_(path);
+        }
+    }
+
+    /** Paths of a tree of the given size: interior nodes below the root, each with leaves. */
+    static final class Tree {
+        final int mSize;
+        final String[] mPaths;
+        final String[] mInteriorPaths;
+        final DmtPath mRoot = DmtPath.of(ROOT);
+        BenchObject mObject;
+
+        Tree(int size) {
+            mSize = size;
+            int interior = Math.max(1, (size - 1) / (LEAVES + 1));
+            mInteriorPaths = new String[interior];
+            List<String> paths = new ArrayList<String>(size);
+            for (int i = 0; i < interior; i++) {
+                String path = ROOT + "/Node" + i;
+                mInteriorPaths[i] = path;
+                paths.add(path);
+                for (int j = 0; j < LEAVES; j++) {
+                    paths.add(path + "/Leaf" + j);
+                }
+            }
+            mPaths = paths.toArray(new String[paths.size()]);
+        }
+
+        BenchObject build() throws DmtException {
+            BenchObject mo = new BenchObject(ROOT);
+            for (String path : mInteriorPaths) {
+                check(mo.createInteriorNode(path));
+                for (int j = 0; j < LEAVES; j++) {
+                    check(mo.createLeafNode(path + "/Leaf" + j, new DmtData("value" + j)));
+                }
+            }
+            return mo;
+        }
+    }
+
+    static void check(int status) throws DmtException {
+        if (status != ErrorCodes.SYNCML_DM_SUCCESS) {
+            throw new DmtException(status, "benchmark setup failed");
+        }
+    }
+
+    private static Case[] cases() {
+        return new Case[] {
+            new Case("path.splitPath") {
+                @Override
+                int run(Tree tree) {
+                    int n = 0;
+                    for (String path : tree.mPaths) {
+                        n += DmtPathUtils.splitPath(path)[1].length();
+                    }
+                    return n;
+                }
+            },
+            new Case("path.isSubPath") {
+                @Override
+                int run(Tree tree) {
+                    int n = 0;
+                    for (String path : tree.mPaths) {
+                        if (DmtPathUtils.isSubPath(ROOT, path)) {
+                            n++;
+                        }
+                    }
+                    return n;
+                }
+            },
+            new Case("path.toRelativePath") {
+                @Override
+                int run(Tree tree) {
+                    int n = 0;
+                    for (String path : tree.mPaths) {
+                        n += DmtPathUtils.toRelativePath(ROOT, path).length();
+                    }
+                    return n;
+                }
+            },
+            new Case("dmtpath.parse") {
+                @Override
+                int run(Tree tree) {
+                    int n = 0;
+                    for (String path : tree.mPaths) {
+                        n += DmtPath.of(path).length();
+                    }
+                    return n;
+                }
+            },
+            new Case("dmtpath.parentAndName") {
+                @Override
+                int run(Tree tree) {
+                    int n = 0;
+                    for (String path : tree.mPaths) {
+                        DmtPath p = DmtPath.of(path);
+                        n += p.parent().length() + p.name().length();
+                    }
+                    return n;
+                }
+            },
+            new Case("dmtpath.isPrefixOf") {
+                @Override
+                int run(Tree tree) {
+                    int n = 0;
+                    for (String path : tree.mPaths) {
+                        if (tree.mRoot.isPrefixOf(path)) {
+                            n++;
+                        }
+                    }
+                    return n;
+                }
+            },
+            new Case("mo.build") {
+                @Override
+                int run(Tree tree) throws DmtException {
+                    return tree.build().getSnapshot().size();
+                }
+            },
+            new Case("mo.deleteInterior") {
+                @Override
+                void setUp(Tree tree) throws DmtException {
+                    tree.mObject = tree.build();
+                }
+
+                @Override
+                int run(Tree tree) throws DmtException {
+                    BenchObject mo = tree.mObject;
+                    for (String path : tree.mInteriorPaths) {
+                        check(mo.delete(path));
+                    }
+                    return mo.getSnapshot().size();
+                }
+            },
+            new Case("mo.getNodes") {
+                @Override
+                void setUp(Tree tree) throws DmtException {
+                    if (tree.mObject == null || tree.mObject.getSnapshot().size() != tree.mSize) {
+                        tree.mObject = tree.build();
+                    }
+                }
+
+                @Override
+                int run(Tree tree) throws DmtException {
+                    int n = 0;
+                    for (String path : tree.mInteriorPaths) {
+                        n += tree.mObject.getNodes(path).size();
+                    }
+                    return n;
+                }
+            },
+            new Case("parcel.result") {
+                @Override
+                void setUp(Tree tree) throws DmtException {
+                    if (tree.mObject == null || tree.mObject.getSnapshot().size() != tree.mSize) {
+                        tree.mObject = tree.build();
+                    }
+                }
+
+                @Override
+                int run(Tree tree) throws DmtException {
+                    DmtPluginResult result = new DmtPluginResult(ErrorCodes.SYNCML_DM_SUCCESS,
+                            tree.mObject.getNodes(ROOT));
+                    Parcel parcel = Parcel.obtain();
+                    try {
+                        result.writeToParcel(parcel, 0);
+                        parcel.setDataPosition(0);
+                        return DmtPluginResult.CREATOR.createFromParcel(parcel).getNodes().size();
+                    } finally {
+                        parcel.recycle();
+                    }
+                }
+            },
+            new Case("parcel.leafValues") {
+                @Override
+                void setUp(Tree tree) throws DmtException {
+                    if (tree.mObject == null || tree.mObject.getSnapshot().size() != tree.mSize) {
+                        tree.mObject = tree.build();
+                    }
+                }
+
+                @Override
+                int run(Tree tree) throws DmtException {
+                    int n = 0;
+                    Parcel parcel = Parcel.obtain();
+                    try {
+                        for (DmtPluginNode node : tree.mObject.getSnapshot().values()) {
+                            if (node.isLeaf()) {
+                                parcel.setDataPosition(0);
+                                node.getValue().writeToParcel(parcel, 0);
+                                parcel.setDataPosition(0);
+                                n += DmtData.CREATOR.createFromParcel(parcel).getType();
+                            }
+                        }
+                    } finally {
+                        parcel.recycle();
+                    }
+                    return n;
+                }
+            },
+            new Case("flatten.getNodes") {
+                @Override
+                void setUp(Tree tree) throws DmtException {
+                    if (tree.mObject == null || tree.mObject.getSnapshot().size() != tree.mSize) {
+                        tree.mObject = tree.build();
+                    }
+                }
+
+                @Override
+                int run(Tree tree) throws DmtException {
+                    Map<String, DmtPluginNode> nodes = tree.mObject.getNodes(ROOT);
+                    return NodeArraysAccess.fromNodes(ROOT, nodes).length;
+                }
+            },
+        };
+    }
+
+    private void measure(Case c, Tree tree) throws DmtException {
+        long end = System.nanoTime() + WARMUP_NANOS;
+        do {
+            c.setUp(tree);
+            sSink += c.run(tree);
+        } while (System.nanoTime() < end);
+
+        List<Long> times = new ArrayList<Long>();
+        long total = 0;
+        while (total < MEASURE_NANOS || times.size() < MIN_RUNS) {
+            c.setUp(tree);
+            long start = System.nanoTime();
+            sSink += c.run(tree);
+            long time = System.nanoTime() - start;
+            times.add(time);
+            total += time;
+        }
+
+        long[] sorted = new long[times.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = times.get(i);
+        }
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+        int nodes = tree.mPaths.length;
+        double nsPerNode = median / nodes;
+
+        System.out.println(String.format(Locale.US, "%-22s %7d nodes %12.1f ns/node (%d runs)",
+                c.mName, nodes, nsPerNode, sorted.length));
+        mResults.add(String.format(Locale.US,
+                "    {\"case\": \"%s\", \"nodes\": %d, \"nsPerNode\": %.1f, \"runs\": %d}",
+                c.mName, nodes, nsPerNode, sorted.length));
+    }
+
+    private void writeJson(String fileName) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8");
+        try {
+            out.write("{\n");
+            out.write("  \"jvm\": \"" + System.getProperty("java.vm.name") + " "
+                    + System.getProperty("java.version") + "\",\n");
+            out.write("  \"os\": \"" + System.getProperty("os.name") + " "
+                    + System.getProperty("os.arch") + "\",\n");
+            out.write("  \"results\": [\n");
+            for (int i = 0; i < mResults.size(); i++) {
+                out.write(mResults.get(i));
+                out.write(i < mResults.size() - 1 ? ",\n" : "\n");
+            }
+            out.write("  ]\n}\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxNodes = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        PluginApiBench bench = new PluginApiBench();
+        for (int size = 100; size <= maxNodes; size *= 10) {
+            Tree tree = new Tree(size + 1);
+            for (Case c : cases()) {
+                bench.measure(c, tree);
+            }
+        }
+        if (args.length > 1) {
+            bench.writeJson(args[1]);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.plugin.impl;
+
+import com.android.omadm.plugin.DmtException;
+import com.android.omadm.plugin.DmtPluginNode;
+
+import java.util.Map;
+
+/** Gives the benchmark access to the package-private getNodes() flattening. */
+public final class NodeArraysAccess {
+
+    private NodeArraysAccess() {
+    }
+
+    public static String[] fromNodes(String rootPath, Map<String, DmtPluginNode> nodes)
+            throws DmtException {
+        return DmtNodeArrays.fromNodes(rootPath, nodes);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * Host stand-in for the framework MemoryFile. There's no ashmem on the host, so
+ * creating one always fails and large plug-in results are parceled inline.
+ */
+public class MemoryFile {
+
+    public MemoryFile(String name, int length) throws IOException {
+        throw new IOException("no ashmem on the host");
+    }
+
+    public void writeBytes(byte[] buffer, int srcOffset, int destOffset, int count)
+            throws IOException {
+        throw new IOException("no ashmem on the host");
+    }
+
+    public FileDescriptor getFileDescriptor() throws IOException {
+        throw new IOException("no ashmem on the host");
+    }
+
+    public void close() {
+    }
+}
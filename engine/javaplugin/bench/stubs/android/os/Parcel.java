@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.io.FileDescriptor;
+import java.util.Arrays;
+
+/**
+ * Host stand-in for the framework Parcel. Values are written into a byte array with
+ * the same 4 byte alignment and UTF-16 strings as the native Parcel, so the benchmark
+ * measures a comparable amount of copying. File descriptors aren't supported.
+ */
+public final class Parcel {
+
+    private static final int POOL_SIZE = 6;
+    private static final Parcel[] sPool = new Parcel[POOL_SIZE];
+
+    private byte[] mData = new byte[256];
+    private int mSize;
+    private int mPosition;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        synchronized (sPool) {
+            for (int i = 0; i < POOL_SIZE; i++) {
+                Parcel p = sPool[i];
+                if (p != null) {
+                    sPool[i] = null;
+                    return p;
+                }
+            }
+        }
+        return new Parcel();
+    }
+
+    public void recycle() {
+        mSize = 0;
+        mPosition = 0;
+        synchronized (sPool) {
+            for (int i = 0; i < POOL_SIZE; i++) {
+                if (sPool[i] == null) {
+                    sPool[i] = this;
+                    return;
+                }
+            }
+        }
+    }
+
+    public int dataSize() {
+        return mSize;
+    }
+
+    public int dataPosition() {
+        return mPosition;
+    }
+
+    public void setDataPosition(int pos) {
+        mPosition = pos;
+    }
+
+    public byte[] marshall() {
+        return Arrays.copyOf(mData, mSize);
+    }
+
+    public void unmarshall(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, mData, 0, length);
+        mSize = length;
+        mPosition = 0;
+    }
+
+    public void appendFrom(Parcel parcel, int offset, int length) {
+        ensureCapacity(mPosition + length);
+        System.arraycopy(parcel.mData, offset, mData, mPosition, length);
+        advance(length);
+    }
+
+    public void writeInt(int val) {
+        ensureCapacity(mPosition + 4);
+        mData[mPosition] = (byte) val;
+        mData[mPosition + 1] = (byte) (val >> 8);
+        mData[mPosition + 2] = (byte) (val >> 16);
+        mData[mPosition + 3] = (byte) (val >> 24);
+        advance(4);
+    }
+
+    public int readInt() {
+        if (mPosition + 4 > mSize) {
+            return 0;
+        }
+        int val = (mData[mPosition] & 0xff)
+                | (mData[mPosition + 1] & 0xff) << 8
+                | (mData[mPosition + 2] & 0xff) << 16
+                | (mData[mPosition + 3] & 0xff) << 24;
+        mPosition += 4;
+        return val;
+    }
+
+    public void writeLong(long val) {
+        writeInt((int) val);
+        writeInt((int) (val >>> 32));
+    }
+
+    public long readLong() {
+        long low = readInt() & 0xffffffffL;
+        return low | ((long) readInt() << 32);
+    }
+
+    public void writeFloat(float val) {
+        writeInt(Float.floatToRawIntBits(val));
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        int length = val.length();
+        writeInt(length);
+        int size = pad((length + 1) * 2);
+        ensureCapacity(mPosition + size);
+        int pos = mPosition;
+        for (int i = 0; i < length; i++) {
+            char c = val.charAt(i);
+            mData[pos++] = (byte) c;
+            mData[pos++] = (byte) (c >> 8);
+        }
+        Arrays.fill(mData, pos, mPosition + size, (byte) 0);
+        advance(size);
+    }
+
+    public String readString() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        int pos = mPosition;
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ((mData[pos] & 0xff) | (mData[pos + 1] & 0xff) << 8);
+            pos += 2;
+        }
+        mPosition += pad((length + 1) * 2);
+        return new String(chars);
+    }
+
+    public void writeByteArray(byte[] b) {
+        if (b == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(b.length);
+        int size = pad(b.length);
+        ensureCapacity(mPosition + size);
+        System.arraycopy(b, 0, mData, mPosition, b.length);
+        Arrays.fill(mData, mPosition + b.length, mPosition + size, (byte) 0);
+        advance(size);
+    }
+
+    public byte[] createByteArray() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] b = Arrays.copyOfRange(mData, mPosition, mPosition + length);
+        mPosition += pad(length);
+        return b;
+    }
+
+    public void readByteArray(byte[] val) {
+        int length = readInt();
+        if (length != val.length) {
+            throw new RuntimeException("bad array lengths");
+        }
+        System.arraycopy(mData, mPosition, val, 0, length);
+        mPosition += pad(length);
+    }
+
+    public void writeFileDescriptor(FileDescriptor val) {
+        throw new UnsupportedOperationException("no file descriptors on the host");
+    }
+
+    public ParcelFileDescriptor readFileDescriptor() {
+        throw new UnsupportedOperationException("no file descriptors on the host");
+    }
+
+    private static int pad(int size) {
+        return (size + 3) & ~3;
+    }
+
+    private void advance(int length) {
+        mPosition += length;
+        if (mPosition > mSize) {
+            mSize = mPosition;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mData.length) {
+            mData = Arrays.copyOf(mData, Math.max(capacity, mData.length * 2));
+        }
+    }
+}
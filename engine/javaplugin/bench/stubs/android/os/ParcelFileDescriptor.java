@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Host stand-in for the framework ParcelFileDescriptor. The benchmark doesn't use
+ * STREAM values, so descriptors can't be parceled or read.
+ */
+public class ParcelFileDescriptor implements Parcelable, Closeable {
+
+    private ParcelFileDescriptor() {
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    public int describeContents() {
+        return CONTENTS_FILE_DESCRIPTOR;
+    }
+
+    @Override
+    public void writeToParcel(Parcel out, int flags) {
+        throw new UnsupportedOperationException("no file descriptors on the host");
+    }
+
+    public static final Parcelable.Creator<ParcelFileDescriptor> CREATOR =
+            new Parcelable.Creator<ParcelFileDescriptor>() {
+        @Override
+        public ParcelFileDescriptor createFromParcel(Parcel in) {
+            throw new UnsupportedOperationException("no file descriptors on the host");
+        }
+
+        @Override
+        public ParcelFileDescriptor[] newArray(int size) {
+            return new ParcelFileDescriptor[size];
+        }
+    };
+
+    public static class AutoCloseInputStream extends FileInputStream {
+        public AutoCloseInputStream(ParcelFileDescriptor pfd) {
+            super(new FileDescriptor());
+        }
+
+        @Override
+        public int read() throws IOException {
+            throw new IOException("no file descriptors on the host");
+        }
+    }
+}
@@ -21,6 +21,7 @@ DM_PLUGIN_INCLUDES := \
  $(LOCAL_PATH)/../../dmlib/api/native \
  $(LOCAL_PATH)/../../dmlib/api/native/plugin \
  $(LOCAL_PATH)/../../xpl/hdr \
+ $(LOCAL_PATH)/../../jni \
  $(JNI_H_INCLUDE)
 
 ############################################
@@ -70,6 +70,7 @@ typedef DmtJavaItem<jobject>      DmtJObject;
 typedef DmtJavaItem<jclass>       DmtJClass;
 typedef DmtJavaItem<jstring>      DmtJString;
 typedef DmtJavaItem<jobjectArray> DmtJObjectArray;
+typedef DmtJavaItem<jlongArray>   DmtJLongArray;
 
 #endif // __cplusplus
 
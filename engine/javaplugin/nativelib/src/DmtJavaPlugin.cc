@@ -15,6 +15,7 @@
  */
 
 #include "plugin/dmtPlugin.hpp"
+#include "plugin/dmtPrefetchPlugin.hpp"
 #include "DmtJavaPluginTree.h"
 #include "DmtJavaPluginManager.h"
 #include "DmtJavaPluginCommon.h"
@@ -76,6 +77,20 @@ SYNCML_DM_RET_STATUS_T DMT_PluginLib_Data_GetPluginTree(
     return retcode;
 }
 
+//Support prefetching the values of a Get command
+extern "C"
+SYNCML_DM_RET_STATUS_T DMT_PluginLib_Data_GetPrefetchTree(
+    PDmtAPIPluginTree&         pPluginTree,
+    DmtPrefetchPluginTree*&    pPrefetchTree
+)
+{
+    // every tree of this library is created by DMT_PluginLib_Data_GetPluginTree
+    pPrefetchTree = (pPluginTree == NULL ? NULL
+            : static_cast<DmtJavaPluginTree*>((DmtAPIPluginTree*)pPluginTree));
+
+    return SYNCML_DM_SUCCESS;
+}
+
 extern "C"
 int DMT_PluginLib_GetAPIVersion(void)
 {
@@ -18,14 +18,15 @@
 #include "DmtJavaPluginNode.h"
 #include "DmtJavaPluginCommon.h"
 #include "DmtJavaMethod.h"
+#include "DMJniCache.h"
 
 #include <android_runtime/AndroidRuntime.h>
 
 #include <stdlib.h>
 
-#define DECLARE_METHOD(method, methodName, methodParam)                                     \
-    DmtJavaMethod method(mEnv, mJavaPluginManager, (methodName), (methodParam));            \
-    if (!method.isFound())                                                                  \
+#define DECLARE_METHOD(method, cachedID, methodName, methodParam)                           \
+    jmethodID method = GetMethodID(&DMJniPluginManager::cachedID, (methodName), (methodParam)); \
+    if (method == NULL)                                                                     \
     {                                                                                       \
         DmtJavaPlugin_Debug("Failed to get %s() method\n", (methodName));                   \
         return SYNCML_DM_FAIL;                                                              \
@@ -93,15 +94,42 @@ bool DmtJavaPluginManager::InitJNIEnv()
     return JNI_CreateJavaVM(&jvm, &mEnv, &initArgs) == JNI_OK;
 }
 
+jmethodID DmtJavaPluginManager::GetMethodID(jmethodID DMJniPluginManager::* cachedID,
+                                            const char* methodName,
+                                            const char* methodParam)
+{
+    const DMJniCache* pJniCache = getJniCache();
+    if (pJniCache != NULL && pJniCache->pluginManager.clazz != NULL)
+    {
+        return pJniCache->pluginManager.*cachedID;
+    }
+
+    // not hosted by the DM service (or the class wasn't visible at load time)
+    DmtJavaMethod javaMethod(mEnv, mJavaPluginManager, methodName, methodParam);
+    return javaMethod.getMethodID();
+}
+
 bool DmtJavaPluginManager::InitJavaPluginManager()
 {
-    DmtJavaMethod constructor(mEnv,"com/android/omadm/plugin/impl/DmtPluginManager", "<init>", "()V");
-    if (!constructor.isFound())
+    DmtJObject localPluginManager(mEnv);
+
+    const DMJniCache* pJniCache = getJniCache();
+    if (pJniCache != NULL && pJniCache->pluginManager.clazz != NULL)
     {
-        return false;
+        localPluginManager = mEnv->NewObject(pJniCache->pluginManager.clazz,
+                                             pJniCache->pluginManager.constructor);
+    }
+    else
+    {
+        DmtJavaMethod constructor(mEnv,"com/android/omadm/plugin/impl/DmtPluginManager", "<init>", "()V");
+        if (!constructor.isFound())
+        {
+            return false;
+        }
+
+        localPluginManager = mEnv->NewObject(constructor.getClass(), constructor.getMethodID());
     }
 
-    DmtJObject localPluginManager(mEnv, mEnv->NewObject(constructor.getClass(), constructor.getMethodID()));
     if (!localPluginManager)
     {
         DmtJavaPlugin_Debug("Failed to create new object for DmtPluginManager!\n");
@@ -121,15 +149,19 @@ bool DmtJavaPluginManager::InitJavaPlugin(const char* pPath, DMStringMap& mapPar
         return false;
     }
 
-    DmtJavaMethod javaMethod(mEnv, mJavaPluginManager, "initJavaPlugin", "(Ljava/lang/String;[Ljava/lang/String;)Z");
-    if (!javaMethod.isFound())
+    jmethodID javaMethod = GetMethodID(&DMJniPluginManager::initJavaPlugin, "initJavaPlugin",
+                                       "(Ljava/lang/String;[Ljava/lang/String;)Z");
+    if (javaMethod == NULL)
     {
         DmtJavaPlugin_Debug("Failed to get loadJavaPlugin()\n");
         return false;
     }
 
     DmtJString objPath(mEnv, mEnv->NewStringUTF(pPath));
-    DmtJClass  classString(mEnv, mEnv->FindClass("java/lang/String"));
+    const DMJniCache* pJniCache = getJniCache();
+    DmtJClass  classString(mEnv, pJniCache != NULL
+                                 ? static_cast<jclass>(mEnv->NewLocalRef(pJniCache->stringClass))
+                                 : mEnv->FindClass("java/lang/String"));
     DmtJObjectArray objStrArray(mEnv, mEnv->NewObjectArray(mapParameters.size() * 2, classString, NULL));
     if (!objPath || !classString || !objStrArray)
     {
@@ -160,8 +192,8 @@ bool DmtJavaPluginManager::InitJavaPlugin(const char* pPath, DMStringMap& mapPar
 
 void DmtJavaPluginManager::ReleasePluginManager()
 {
-    DmtJavaMethod javaMethod(mEnv, mJavaPluginManager, "release", "()V");
-    if (!javaMethod.isFound()) {
+    jmethodID javaMethod = GetMethodID(&DMJniPluginManager::release, "release", "()V");
+    if (javaMethod == NULL) {
         DmtJavaPlugin_Debug("Fail to get release() method\n");
         return;
     }
@@ -282,6 +314,11 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::SetDmtNodeValue(const char* pType,
             data.SetString(pValue, SYNCML_DM_DATAFORMAT_FLOAT);
             break;
 
+        case JAVA_SYNCML_DM_DATAFORMAT_STREAM:
+            // the value is read in chunks, see DmtJavaPluginNode
+            data.SetBinary(NULL, 0);
+            break;
+
         case JAVA_SYNCML_DM_DATAFORMAT_NODE:
             {
                 DMStringVector vec;
@@ -316,7 +353,7 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::SetServerID(PDmtTree pTree)
         return SYNCML_DM_FAIL;
     }
 
-    DECLARE_METHOD(javaMethod, "setServerID", "(Ljava/lang/String;)V");
+    DECLARE_METHOD(javaMethod, setServerID, "setServerID", "(Ljava/lang/String;)V");
     DECLARE_STRING(objServerID, pTree->GetPrincipal().getName().c_str());
 
     mEnv->CallVoidMethod(mJavaPluginManager, javaMethod, objServerID.getValue());
@@ -331,7 +368,7 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::SetNodeValue(const char* pPath, con
         return SYNCML_DM_FAIL;
     }
 
-    DECLARE_METHOD(javaMethod, "setNodeValue", "(Ljava/lang/String;ILjava/lang/String;)I");
+    DECLARE_METHOD(javaMethod, setNodeValue, "setNodeValue", "(Ljava/lang/String;ILjava/lang/String;)I");
 
     jint type = 0;
     char* pValue = NULL;
@@ -362,7 +399,7 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::GetNodeValue(const char* pPath, Dmt
         return SYNCML_DM_FAIL;
     }
 
-    DECLARE_METHOD(javaMethod, "getNodeValue", "(Ljava/lang/String;)[Ljava/lang/String;");
+    DECLARE_METHOD(javaMethod, getNodeValue, "getNodeValue", "(Ljava/lang/String;)[Ljava/lang/String;");
     DECLARE_STRING(objPath, pPath);
 
     /* The getNodeValue return objStrArray with 2 elements.         */
@@ -405,6 +442,44 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::GetNodeValue(const char* pPath, Dmt
     return SetDmtNodeValue(pType, pValue, data);
 }
 
+SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::OpenNodeStream(const char* pPath, int& fd, UINT32& size)
+{
+    fd = -1;
+    size = 0;
+
+    if(!InitJNIEnv())
+    {
+        DmtJavaPlugin_Debug("Init JNI Env failed...\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    DECLARE_METHOD(javaMethod, openNodeStream, "openNodeStream", "(Ljava/lang/String;)[J");
+    DECLARE_STRING(objPath, pPath);
+
+    /* The openNodeStream returns (result code, descriptor, size). */
+    DmtJLongArray objResult(mEnv);
+    objResult = static_cast<jlongArray>(mEnv->CallObjectMethod(mJavaPluginManager,
+                                                               javaMethod,
+                                                               (jstring)objPath));
+    if (mEnv->ExceptionCheck() || !objResult || mEnv->GetArrayLength(objResult) != 3)
+    {
+        DmtJavaPlugin_Debug("Got an error for openNodeStream()\n");
+        mEnv->ExceptionClear();
+        return SYNCML_DM_FAIL;
+    }
+
+    jlong result[3];
+    mEnv->GetLongArrayRegion(objResult, 0, 3, result);
+
+    SYNCML_DM_RET_STATUS_T retcode = (SYNCML_DM_RET_STATUS_T)result[0];
+    if (retcode == SYNCML_DM_SUCCESS)
+    {
+        fd = (int)result[1];
+        size = (UINT32)result[2];
+    }
+    return retcode;
+}
+
 SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::CreateInteriorNode(const char* pPath)
 {
     if(!InitJNIEnv())
@@ -413,7 +488,7 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::CreateInteriorNode(const char* pPat
         return SYNCML_DM_FAIL;
     }
 
-    DECLARE_METHOD(javaMethod, "createInteriorNode", "(Ljava/lang/String;)I");
+    DECLARE_METHOD(javaMethod, createInteriorNode, "createInteriorNode", "(Ljava/lang/String;)I");
     DECLARE_STRING(objPath, pPath);
 
     SYNCML_DM_RET_STATUS_T retcode = mEnv->CallIntMethod(mJavaPluginManager, javaMethod, objPath.getValue());
@@ -429,7 +504,7 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::CreateLeafNode(const char* pPath, c
         return SYNCML_DM_FAIL;
     }
 
-    DECLARE_METHOD(javaMethod, "createLeafNode", "(Ljava/lang/String;ILjava/lang/String;)I");
+    DECLARE_METHOD(javaMethod, createLeafNode, "createLeafNode", "(Ljava/lang/String;ILjava/lang/String;)I");
 
     jint type = 0;
     char* pValue = NULL;
@@ -460,7 +535,7 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::RenameNode(const char* pPath, const
         return SYNCML_DM_FAIL;
     }
 
-    DECLARE_METHOD(javaMethod, "renameNode", "(Ljava/lang/String;Ljava/lang/String;)I");
+    DECLARE_METHOD(javaMethod, renameNode, "renameNode", "(Ljava/lang/String;Ljava/lang/String;)I");
     DECLARE_STRING(objPath, pPath);
     DECLARE_STRING(objNewNodeName, pNewNodeName);
 
@@ -478,7 +553,7 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::DeleteNode(const char* pPath)
         return SYNCML_DM_FAIL;
     }
 
-    DECLARE_METHOD(javaMethod, "deleteNode", "(Ljava/lang/String;)I");
+    DECLARE_METHOD(javaMethod, deleteNode, "deleteNode", "(Ljava/lang/String;)I");
     DECLARE_STRING(objPath, pPath);
 
     SYNCML_DM_RET_STATUS_T retcode = mEnv->CallIntMethod(mJavaPluginManager, javaMethod, objPath.getValue());
@@ -494,7 +569,22 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::Commit()
         return SYNCML_DM_FAIL;
     }
 
-    DECLARE_METHOD(javaMethod, "commit", "()I");
+    DECLARE_METHOD(javaMethod, commit, "commit", "()I");
+
+    SYNCML_DM_RET_STATUS_T retcode = mEnv->CallIntMethod(mJavaPluginManager, javaMethod);
+    CHECK_EXCEPTION(retcode);
+    return retcode;
+}
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::Rollback()
+{
+    if(!InitJNIEnv())
+    {
+        DmtJavaPlugin_Debug("Init JNI Env failed...\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    DECLARE_METHOD(javaMethod, rollback, "rollback", "()I");
 
     SYNCML_DM_RET_STATUS_T retcode = mEnv->CallIntMethod(mJavaPluginManager, javaMethod);
     CHECK_EXCEPTION(retcode);
@@ -533,7 +623,7 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::ExecuteNode(const char* pArgs,
         return SYNCML_DM_FAIL;
     }
 
-    DECLARE_METHOD(javaMethod, "executeNode", "(Ljava/lang/String;Ljava/lang/String;)I");
+    DECLARE_METHOD(javaMethod, executeNode, "executeNode", "(Ljava/lang/String;Ljava/lang/String;)I");
     DECLARE_STRING(objArgs, pArgs);
     DECLARE_STRING(objCorrelator, (pCorrelator == NULL ? "" : pCorrelator) );
 
@@ -562,7 +652,7 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::BuildPluginTree(PDmtJavaPluginTree
         return SYNCML_DM_FAIL;
     }
 
-    DECLARE_METHOD(javaMethod, "getNodes", "()[Ljava/lang/String;");
+    DECLARE_METHOD(javaMethod, getNodes, "getNodes", "()[Ljava/lang/String;");
 
     DmtJObjectArray objStrArray(mEnv);
     objStrArray = (jobjectArray)(mEnv->CallObjectMethod(mJavaPluginManager, javaMethod));
@@ -572,6 +662,126 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::BuildPluginTree(PDmtJavaPluginTree
         return SYNCML_DM_FAIL;
     }
 
+    return AddPluginNodes(pTree, objStrArray);
+}
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::LoadChildNodes(PDmtJavaPluginTree pTree,
+                                                            const char* pPath)
+{
+    if (pTree == NULL)
+    {
+        DmtJavaPlugin_Debug("Tree is NULL\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    if (!mIsInitialized)
+    {
+        DmtJavaPlugin_Debug("Plug-in is not initialized\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    if(!InitJNIEnv())
+    {
+        DmtJavaPlugin_Debug("Init JNI Env failed...\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    DECLARE_METHOD(javaMethod, getChildNodes, "getChildNodes", "(Ljava/lang/String;)[Ljava/lang/String;");
+    DECLARE_STRING(objPath, pPath);
+
+    DmtJObjectArray objStrArray(mEnv);
+    objStrArray = (jobjectArray)(mEnv->CallObjectMethod(mJavaPluginManager, javaMethod,
+                                                        objPath.getValue()));
+    if (mEnv->ExceptionCheck())
+    {
+        DmtJavaPlugin_Debug("Fail to get child nodes of %s\n", pPath);
+        mEnv->ExceptionClear();
+        return SYNCML_DM_FAIL;
+    }
+
+    if (!objStrArray)
+    {
+        // the plug-in only returns its whole subtree
+        return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+    }
+
+    return AddPluginNodes(pTree, objStrArray);
+}
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::PrefetchNodeValues(const DMStringVector& aPaths)
+{
+    if (!mIsInitialized)
+    {
+        DmtJavaPlugin_Debug("Plug-in is not initialized\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    if(!InitJNIEnv())
+    {
+        DmtJavaPlugin_Debug("Init JNI Env failed...\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    DECLARE_METHOD(javaMethod, prefetchNodeValues, "prefetchNodeValues", "([Ljava/lang/String;)V");
+
+    const DMJniCache* pJniCache = getJniCache();
+    DmtJClass  classString(mEnv, pJniCache != NULL
+                                 ? static_cast<jclass>(mEnv->NewLocalRef(pJniCache->stringClass))
+                                 : mEnv->FindClass("java/lang/String"));
+    DmtJObjectArray objStrArray(mEnv, mEnv->NewObjectArray(aPaths.size(), classString, NULL));
+    if (!classString || !objStrArray)
+    {
+        DmtJavaPlugin_Debug("Failed to create jobjectArray\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    for (int i = 0; i < aPaths.size(); i++)
+    {
+        DECLARE_STRING(objPath, aPaths[i].c_str());
+        mEnv->SetObjectArrayElement(objStrArray, i, objPath);
+    }
+
+    mEnv->CallVoidMethod(mJavaPluginManager, javaMethod, objStrArray.getValue());
+    if (mEnv->ExceptionCheck())
+    {
+        DmtJavaPlugin_Debug("Fail to prefetch node values\n");
+        mEnv->ExceptionClear();
+        return SYNCML_DM_FAIL;
+    }
+
+    return SYNCML_DM_SUCCESS;
+}
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::ClearPrefetchedValues()
+{
+    if (!mIsInitialized)
+    {
+        DmtJavaPlugin_Debug("Plug-in is not initialized\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    if(!InitJNIEnv())
+    {
+        DmtJavaPlugin_Debug("Init JNI Env failed...\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    DECLARE_METHOD(javaMethod, clearPrefetchedValues, "clearPrefetchedValues", "()V");
+
+    mEnv->CallVoidMethod(mJavaPluginManager, javaMethod);
+    if (mEnv->ExceptionCheck())
+    {
+        DmtJavaPlugin_Debug("Fail to clear prefetched values\n");
+        mEnv->ExceptionClear();
+        return SYNCML_DM_FAIL;
+    }
+
+    return SYNCML_DM_SUCCESS;
+}
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::AddPluginNodes(PDmtJavaPluginTree pTree,
+                                                            jobjectArray objStrArray)
+{
     if ((mEnv->GetArrayLength(objStrArray) % 3) != 0)
     {
         DmtJavaPlugin_Debug("Array count is invalid!\n");
@@ -606,7 +816,9 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginManager::BuildPluginTree(PDmtJavaPluginTree
             return retcode;
         }
 
-        PDmtJavaPluginNode pNode = new DmtJavaPluginNode(pTree, pPath, data);
+        // STREAM nodes are external storage nodes, their values are read in chunks
+        BOOLEAN isESN = (atoi(pType) == JAVA_SYNCML_DM_DATAFORMAT_STREAM);
+        PDmtJavaPluginNode pNode = new DmtJavaPluginNode(pTree, pPath, data, isESN);
 
         pTree->SetNode(pPath, static_cast<PDmtNode>(pNode));
     }
@@ -19,6 +19,7 @@
 
 #include "DmtJavaItem.h"
 #include "DmtJavaPluginTree.h"
+#include "DMJniCache.h"
 
 #include "jem_defs.hpp"
 
@@ -37,7 +38,8 @@ enum {
     JAVA_SYNCML_DM_DATAFORMAT_XML    = 7,
     JAVA_SYNCML_DM_DATAFORMAT_DATE   = 8,
     JAVA_SYNCML_DM_DATAFORMAT_TIME   = 10,
-    JAVA_SYNCML_DM_DATAFORMAT_FLOAT  = 11
+    JAVA_SYNCML_DM_DATAFORMAT_FLOAT  = 11,
+    JAVA_SYNCML_DM_DATAFORMAT_STREAM = 12
 };
 
 class DmtJavaPluginManager : public JemBaseObject
@@ -54,6 +56,13 @@ public:
         const char*    pPath,
         const DmtData& data);
 
+    /* Opens the value stream of a STREAM node. The caller owns and closes */
+    /* the returned descriptor.                                          */
+    SYNCML_DM_RET_STATUS_T OpenNodeStream(
+        const char* pPath,
+        int&        fd,
+        UINT32&     size);
+
     SYNCML_DM_RET_STATUS_T CreateInteriorNode(
         const char* pPath);
 
@@ -70,6 +79,8 @@ public:
 
     SYNCML_DM_RET_STATUS_T Commit();
 
+    SYNCML_DM_RET_STATUS_T Rollback();
+
     SYNCML_DM_RET_STATUS_T ExecuteNode(
         const char* pArgs,
         const char* pCorrelator,
@@ -79,6 +90,20 @@ public:
     SYNCML_DM_RET_STATUS_T BuildPluginTree(
         PDmtJavaPluginTree pTree);
 
+    /* Adds one interior node and its leaf children to the tree. Returns  */
+    /* SYNCML_DM_FEATURE_NOT_SUPPORTED if the plug-in can't load by level. */
+    SYNCML_DM_RET_STATUS_T LoadChildNodes(
+        PDmtJavaPluginTree pTree,
+        const char*        pPath);
+
+    /* Starts reading the leaf values on the Java prefetch pool; the next */
+    /* GetNodeValue() of each path returns the prefetched value.          */
+    SYNCML_DM_RET_STATUS_T PrefetchNodeValues(
+        const DMStringVector& aPaths);
+
+    /* Drops the values prefetched for this root which weren't read.      */
+    SYNCML_DM_RET_STATUS_T ClearPrefetchedValues();
+
 private:
     bool InitJNIEnv();
     bool InitJavaPluginManager();
@@ -86,6 +111,11 @@ private:
 
     void ReleasePluginManager();
 
+    jmethodID GetMethodID(
+        jmethodID DMJniPluginManager::* cachedID,
+        const char* methodName,
+        const char* methodParam);
+
     SYNCML_DM_RET_STATUS_T GetDmtNodeValue(
         jint&          type,
         char*&         pValue,
@@ -99,6 +129,10 @@ private:
     SYNCML_DM_RET_STATUS_T SetServerID(
         PDmtTree pTree);
 
+    SYNCML_DM_RET_STATUS_T AddPluginNodes(
+        PDmtJavaPluginTree pTree,
+        jobjectArray       objStrArray);
+
     JNIEnv*    mEnv;
     DmtJObject mJavaPluginManager;
     bool       mIsInitialized;
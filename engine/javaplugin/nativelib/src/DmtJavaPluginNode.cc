@@ -14,6 +14,9 @@
  * limitations under the License.
  */
 
+#include <errno.h>
+#include <unistd.h>
+
 #include "dmt.hpp"
 #include "plugin/dmtPlugin.hpp"
 #include "DmtJavaPluginNode.h"
@@ -21,19 +24,22 @@
 #include "DmtJavaPluginCommon.h"
 
 DmtJavaPluginNode::DmtJavaPluginNode(PDmtJavaPluginTree ptrTree, const char* path, 
-             const DmtData& data):DmtRWPluginNode()
+             const DmtData& data, BOOLEAN isESN):DmtRWPluginNode(),
+             m_nStreamFd(-1), m_nStreamSize(0), m_nStreamOffset(0)
 {
-    Init(static_cast<PDmtPluginTree>(ptrTree), path, data); 
+    Init(static_cast<PDmtPluginTree>(ptrTree), path, data, isESN); 
     m_javaPluginTree = ptrTree;
 }
 
 DmtJavaPluginNode::~DmtJavaPluginNode()
 {
+    CloseStream();
     m_javaPluginTree = NULL;
 }
 
 DmtJavaPluginNode::DmtJavaPluginNode(PDmtJavaPluginTree ptrTree, const char* path, 
-             const DMStringVector& childNodeNames):DmtRWPluginNode()
+             const DMStringVector& childNodeNames):DmtRWPluginNode(),
+             m_nStreamFd(-1), m_nStreamSize(0), m_nStreamOffset(0)
 {
     Init(static_cast<PDmtPluginTree>(ptrTree), path, childNodeNames); 
     m_javaPluginTree = ptrTree;
@@ -48,9 +54,41 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::GetValue(DmtData& oData) const
         DmtJavaPlugin_Debug("This is a interior node!\n");  
         return DmtPluginNode::GetValue(oData);
     }
+    if (m_bESN)
+    {
+        // the value of a stream node is only read in chunks
+        return oData.SetBinary(NULL, 0);
+    }
     return m_javaPluginTree->GetNodeValueInternal(m_strPath.c_str(), oData);
 }
 
+SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::GetAttributes(DmtAttributes& oAttr) const
+{
+    if (!m_bESN)
+    {
+        return DmtPluginNode::GetAttributes(oAttr);
+    }
+
+    // the size of a stream is only known once the plug-in has opened it; unless a
+    // chunk read is in progress, open it for the size only, as no read may follow
+    if (m_nStreamFd < 0)
+    {
+        SYNCML_DM_RET_STATUS_T res = OpenStream();
+        if (res != SYNCML_DM_SUCCESS)
+        {
+            return res;
+        }
+        CloseStream();
+    }
+
+    SYNCML_DM_RET_STATUS_T res = DmtPluginNode::GetAttributes(oAttr);
+    if (res == SYNCML_DM_SUCCESS)
+    {
+        oAttr.SetSize((INT32)m_nStreamSize);
+    }
+    return res;
+}
+
 SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::SetValue(const DmtData& oData)
 {
      DmtJavaPlugin_Debug("Inside DmtJavaPluginNode::SetValue:\n");
@@ -68,3 +106,131 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::SetValue(const DmtData& oData)
      DmtJavaPlugin_Debug("m_strPath.c_str() is %s\n", m_strPath.c_str());
      return m_javaPluginTree->SetNodeValueInternal(m_strPath.c_str(), oData);
 }
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::OpenStream() const
+{
+    CloseStream();
+
+    int fd = -1;
+    UINT32 size = 0;
+    SYNCML_DM_RET_STATUS_T res = m_javaPluginTree->OpenNodeStreamInternal(m_strPath.c_str(), fd, size);
+    if (res != SYNCML_DM_SUCCESS)
+    {
+        return res;
+    }
+    if (fd < 0)
+    {
+        DmtJavaPlugin_Debug("No stream for %s\n", m_strPath.c_str());
+        return SYNCML_DM_FAIL;
+    }
+
+    m_nStreamFd = fd;
+    m_nStreamSize = size;
+    m_nStreamOffset = 0;
+    return SYNCML_DM_SUCCESS;
+}
+
+void DmtJavaPluginNode::CloseStream() const
+{
+    if (m_nStreamFd >= 0)
+    {
+        close(m_nStreamFd);
+        m_nStreamFd = -1;
+    }
+}
+
+#ifdef LOB_SUPPORT
+/*
+ * Fills the chunk buffer from the value stream. The stream is closed once the size
+ * announced by the plug-in has been read, or earlier if it ends before.
+ */
+SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::ReadChunk(DmtDataChunk& dmtChunkData)
+{
+    UINT32 nRead = 0;
+    UINT8* pBuffer = NULL;
+
+    if (m_nStreamFd >= 0)
+    {
+        dmtChunkData.GetChunkData(&pBuffer);
+        if (pBuffer == NULL)
+        {
+            return SYNCML_DM_INVALID_PARAMETER;
+        }
+
+        UINT32 nLen = DmtDataChunk::GetChunkSize();
+        if (nLen > m_nStreamSize - m_nStreamOffset)
+        {
+            nLen = m_nStreamSize - m_nStreamOffset;
+        }
+
+        while (nRead < nLen)
+        {
+            ssize_t nCount = read(m_nStreamFd, pBuffer + nRead, nLen - nRead);
+            if (nCount < 0 && errno == EINTR)
+            {
+                continue;
+            }
+            if (nCount < 0)
+            {
+                DmtJavaPlugin_Error("Failed to read stream of %s, errno = %d\n", m_strPath.c_str(), errno);
+                CloseStream();
+                return SYNCML_DM_IO_FAILURE;
+            }
+            if (nCount == 0)
+            {
+                break;
+            }
+            nRead += nCount;
+        }
+
+        m_nStreamOffset += nRead;
+        if (nRead < nLen || m_nStreamOffset >= m_nStreamSize)
+        {
+            CloseStream();
+        }
+    }
+
+    dmtChunkData.SetReturnLen(nRead);
+    return SYNCML_DM_SUCCESS;
+}
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::GetFirstChunk(DmtDataChunk& dmtChunkData)
+{
+    if (!m_bESN)
+    {
+        return SYNCML_DM_COMMAND_NOT_ALLOWED;
+    }
+
+    SYNCML_DM_RET_STATUS_T res = OpenStream();
+    if (res != SYNCML_DM_SUCCESS)
+    {
+        return res;
+    }
+    return ReadChunk(dmtChunkData);
+}
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::GetNextChunk(DmtDataChunk& dmtChunkData)
+{
+    if (!m_bESN)
+    {
+        return SYNCML_DM_COMMAND_NOT_ALLOWED;
+    }
+    return ReadChunk(dmtChunkData);
+}
+
+/* Stream values are read only. */
+SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::SetFirstChunk(DmtDataChunk& dmtChunkData)
+{
+    return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+}
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::SetNextChunk(DmtDataChunk& dmtChunkData)
+{
+    return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+}
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginNode::SetLastChunk(DmtDataChunk& dmtChunkData)
+{
+    return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+}
+#endif
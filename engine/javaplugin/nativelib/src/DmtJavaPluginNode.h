@@ -26,16 +26,34 @@ class DmtJavaPluginTree;
 class DmtJavaPluginNode : public DmtRWPluginNode
 {
 public:
-    DmtJavaPluginNode(JemSmartPtr<DmtJavaPluginTree> ptrTree, const char* path, const DmtData& data);
+    DmtJavaPluginNode(JemSmartPtr<DmtJavaPluginTree> ptrTree, const char* path, const DmtData& data, BOOLEAN isESN = FALSE);
     DmtJavaPluginNode(JemSmartPtr<DmtJavaPluginTree> ptrTree, const char* path, const DMStringVector & childNodeNames);
     virtual SYNCML_DM_RET_STATUS_T GetValue(DmtData& oData) const;
     virtual SYNCML_DM_RET_STATUS_T SetValue(const DmtData& value);
+    virtual SYNCML_DM_RET_STATUS_T GetAttributes(DmtAttributes& oAttr) const;
+#ifdef LOB_SUPPORT
+    virtual SYNCML_DM_RET_STATUS_T GetFirstChunk(DmtDataChunk& dmtChunkData);
+    virtual SYNCML_DM_RET_STATUS_T GetNextChunk(DmtDataChunk& dmtChunkData);
+    virtual SYNCML_DM_RET_STATUS_T SetFirstChunk(DmtDataChunk& dmtChunkData);
+    virtual SYNCML_DM_RET_STATUS_T SetNextChunk(DmtDataChunk& dmtChunkData);
+    virtual SYNCML_DM_RET_STATUS_T SetLastChunk(DmtDataChunk& dmtChunkData);
+#endif
 
 protected:
     virtual ~DmtJavaPluginNode();
     JemSmartPtr<DmtJavaPluginTree> m_javaPluginTree;
 private:
-
+    SYNCML_DM_RET_STATUS_T OpenStream() const;
+    void CloseStream() const;
+#ifdef LOB_SUPPORT
+    SYNCML_DM_RET_STATUS_T ReadChunk(DmtDataChunk& dmtChunkData);
+#endif
+
+    /* value stream of an ESN; opened by GetFirstChunk() and closed at its */
+    /* end, or opened and closed again by GetAttributes() for the size     */
+    mutable int    m_nStreamFd;
+    mutable UINT32 m_nStreamSize;
+    mutable UINT32 m_nStreamOffset;
 };
 
 typedef JemSmartPtr<DmtJavaPluginNode> PDmtJavaPluginNode;
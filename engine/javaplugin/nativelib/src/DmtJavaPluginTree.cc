@@ -20,7 +20,7 @@
 #include "DmtJavaPluginCommon.h"
 
 DmtJavaPluginTree::DmtJavaPluginTree(const char* rootPath, DMMap<DMString, DMString>& mapParameters)
-   : DmtRWPluginTree(), mIsAtomic(FALSE)
+   : DmtRWPluginTree(), mIsAtomic(FALSE), mIsLazy(FALSE)
 {
     DmtJavaPlugin_Debug("Inside: DmtJavaPluginTree constructor...\n");
     Init(rootPath);
@@ -166,9 +166,74 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginTree::GetNode(const char* szPath, PDmtNode&
         szPath = "";
     }
     DmtJavaPlugin_Debug("DmtJavaPluginTree::GetNode(%s)\n", szPath);
+
+    SYNCML_DM_RET_STATUS_T res = DmtPluginTree::GetNode(szPath, ptrNode);
+    if (res != SYNCML_DM_NOT_FOUND || !mIsLazy)
+    {
+        return res;
+    }
+
+    res = LoadPath(szPath);
+    if (res != SYNCML_DM_SUCCESS)
+    {
+        return res;
+    }
     return DmtPluginTree::GetNode(szPath, ptrNode);
 }
 
+/*
+ * Loads the interior nodes on the way to path which haven't been loaded yet, one
+ * level per plug-in call. Nodes which are not listed as children of their parent
+ * are not looked up in the plug-in.
+ */
+SYNCML_DM_RET_STATUS_T DmtJavaPluginTree::LoadPath(const char* path)
+{
+    DmtJavaPlugin_Debug("Inside: DmtJavaPluginTree::LoadPath, path = %s\n", path);
+
+    DMString strParent;     // the root is loaded by BuildPluginTree()
+    const char* pName = path;
+    while (*pName)
+    {
+        const char* pNameEnd = strchr(pName, '/');
+        DMString strName = (pNameEnd != NULL) ? DMString(pName, pNameEnd - pName) : DMString(pName);
+        DMString strNode = (pNameEnd != NULL) ? DMString(path, pNameEnd - path) : DMString(path);
+
+        PDmtNode ptrNode;
+        if (DmtPluginTree::GetNode(strNode.c_str(), ptrNode) == SYNCML_DM_SUCCESS)
+        {
+            if (ptrNode->IsLeaf() && pNameEnd != NULL)
+            {
+                return SYNCML_DM_NOT_FOUND;
+            }
+        }
+        else
+        {
+            DMStringVector aChildren;
+            SYNCML_DM_RET_STATUS_T res = GetChildNodeNames(strParent.c_str(), aChildren);
+            if (res != SYNCML_DM_SUCCESS || aChildren.find(strName) < 0)
+            {
+                return SYNCML_DM_NOT_FOUND;
+            }
+
+            res = m_pluginManager->LoadChildNodes(this, strNode.c_str());
+            DmtJavaPlugin_Debug("LoadChildNodes(%s) res = %d\n", strNode.c_str(), res);
+            if (res != SYNCML_DM_SUCCESS)
+            {
+                return res;
+            }
+        }
+
+        if (pNameEnd == NULL)
+        {
+            break;
+        }
+        strParent = strNode;
+        pName = pNameEnd + 1;
+    }
+
+    return SYNCML_DM_SUCCESS;
+}
+
 SYNCML_DM_RET_STATUS_T DmtJavaPluginTree::BuildPluginTree()
 {
     DmtJavaPlugin_Debug("Inside: DmtJavaPluginTree::BuildPluginTree\n");
@@ -178,8 +243,17 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginTree::BuildPluginTree()
         return SYNCML_DM_FAIL;
     }
 
-    SYNCML_DM_RET_STATUS_T res = m_pluginManager->BuildPluginTree(this);
-    DmtJavaPlugin_Debug("Leave: DmtJavaPluginTree::BuildPluginTree, res = %d\n", res);
+    // load the root level only if the plug-in supports it, the rest on demand
+    SYNCML_DM_RET_STATUS_T res = m_pluginManager->LoadChildNodes(this, "");
+    if (res == SYNCML_DM_SUCCESS)
+    {
+        mIsLazy = TRUE;
+    }
+    else if (res == SYNCML_DM_FEATURE_NOT_SUPPORTED)
+    {
+        res = m_pluginManager->BuildPluginTree(this);
+    }
+    DmtJavaPlugin_Debug("Leave: DmtJavaPluginTree::BuildPluginTree, lazy = %d, res = %d\n", mIsLazy, res);
     return res;
 }
 
@@ -221,6 +295,65 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginTree::SetNodeValueInternal(const char* path,
     return res;
 }
 
+SYNCML_DM_RET_STATUS_T DmtJavaPluginTree::OpenNodeStreamInternal(const char* path, int& fd, UINT32& size)
+{
+    DmtJavaPlugin_Debug("Inside: DmtJavaPluginTree::OpenNodeStreamInternal, path = %s\n", path);
+    if (m_pluginManager == NULL)
+    {
+        DmtJavaPlugin_Debug("Plugin manager is not created\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    SYNCML_DM_RET_STATUS_T res = m_pluginManager->OpenNodeStream(path, fd, size);
+    DmtJavaPlugin_Debug("Leave: DmtJavaPluginTree::OpenNodeStreamInternal, res = %d, size = %u\n", res, size);
+    return res;
+}
+
+/*
+ * Loads the nodes on the way to the paths here, on the session thread, and hands the
+ * leaf paths to the Java plug-in manager, which reads their values on its prefetch pool.
+ */
+SYNCML_DM_RET_STATUS_T DmtJavaPluginTree::PrefetchNodeValues(const DMStringVector& aPaths)
+{
+    DmtJavaPlugin_Debug("Inside: DmtJavaPluginTree::PrefetchNodeValues, %d paths\n", aPaths.size());
+    if (m_pluginManager == NULL)
+    {
+        DmtJavaPlugin_Debug("Plugin manager is not created\n");
+        return SYNCML_DM_FAIL;
+    }
+
+    DMStringVector aLeafPaths;
+    for (INT32 i = 0; i < aPaths.size(); i++)
+    {
+        PDmtNode ptrNode;
+        // stream values are read in chunks, they can't be prefetched
+        if (GetNode(aPaths[i], ptrNode) == SYNCML_DM_SUCCESS && ptrNode->IsLeaf()
+                && !ptrNode->IsExternalStorageNode())
+        {
+            aLeafPaths.push_back(aPaths[i]);
+        }
+    }
+
+    if (aLeafPaths.size() == 0)
+    {
+        return SYNCML_DM_SUCCESS;
+    }
+
+    SYNCML_DM_RET_STATUS_T res = m_pluginManager->PrefetchNodeValues(aLeafPaths);
+    DmtJavaPlugin_Debug("Leave: DmtJavaPluginTree::PrefetchNodeValues, res = %d\n", res);
+    return res;
+}
+
+SYNCML_DM_RET_STATUS_T DmtJavaPluginTree::ClearPrefetchedValues()
+{
+    DmtJavaPlugin_Debug("Inside: DmtJavaPluginTree::ClearPrefetchedValues\n");
+    if (m_pluginManager == NULL)
+    {
+        return SYNCML_DM_SUCCESS;
+    }
+    return m_pluginManager->ClearPrefetchedValues();
+}
+
 BOOLEAN DmtJavaPluginTree::IsAtomic()
 {
     DmtJavaPlugin_Debug("DmtJavaPluginTree::IsAtomic\n");
@@ -269,7 +402,17 @@ SYNCML_DM_RET_STATUS_T DmtJavaPluginTree::Begin()
 
 SYNCML_DM_RET_STATUS_T DmtJavaPluginTree::Rollback()
 {
-    DmtJavaPlugin_Debug("DmtJavaPluginTree::Rollback\n");
+    DmtJavaPlugin_Debug("Inside: DmtJavaPluginTree::Rollback\n");
     mIsAtomic = FALSE;
-    return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+
+    if (m_pluginManager == NULL)
+    {
+        DmtJavaPlugin_Debug("Plugin manager is not created\n");
+        return SYNCML_DM_FEATURE_NOT_SUPPORTED;
+    }
+
+    // plug-ins which can't roll back return SYNCML_DM_FEATURE_NOT_SUPPORTED
+    SYNCML_DM_RET_STATUS_T res = m_pluginManager->Rollback();
+    DmtJavaPlugin_Debug("Leave: DmtJavaPluginTree::Rollback, res = %d\n", res);
+    return res;
 }
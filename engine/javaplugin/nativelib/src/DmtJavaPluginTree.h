@@ -20,10 +20,11 @@
 #include "dmt.hpp"
 #include "jem_defs.hpp"
 #include "plugin/dmtRWPlugin.hpp"
+#include "plugin/dmtPrefetchPlugin.hpp"
 
 class DmtJavaPluginManager;
 
-class DmtJavaPluginTree : public DmtRWPluginTree
+class DmtJavaPluginTree : public DmtRWPluginTree, public DmtPrefetchPluginTree
 {
 public:
     DmtJavaPluginTree(const char* rootPath, DMMap<DMString, DMString>& mapParameters);
@@ -41,6 +42,9 @@ public:
     DMString& GetRootPath();
     SYNCML_DM_RET_STATUS_T GetNodeValueInternal(const char* path, DmtData& value);
     SYNCML_DM_RET_STATUS_T SetNodeValueInternal(const char* path, const DmtData& value);
+    SYNCML_DM_RET_STATUS_T OpenNodeStreamInternal(const char* path, int& fd, UINT32& size);
+    virtual SYNCML_DM_RET_STATUS_T PrefetchNodeValues(const DMStringVector& aPaths);
+    virtual SYNCML_DM_RET_STATUS_T ClearPrefetchedValues();
     virtual BOOLEAN IsAtomic();
     virtual SYNCML_DM_RET_STATUS_T Flush();
     virtual SYNCML_DM_RET_STATUS_T Commit();
@@ -51,9 +55,12 @@ protected:
     virtual ~DmtJavaPluginTree();
 
 private:
+    SYNCML_DM_RET_STATUS_T LoadPath(const char* path);
+
     JemSmartPtr<DmtJavaPluginManager> m_pluginManager;
     DMMap<DMString, DMString> m_parameters;
     BOOLEAN mIsAtomic;
+    BOOLEAN mIsLazy;    // interior nodes are loaded from the plug-in on first access
 };
 
 typedef JemSmartPtr<DmtJavaPluginTree> PDmtJavaPluginTree;
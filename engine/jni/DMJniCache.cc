@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <string.h>
+
+#include "DMServiceMain.h"
+#include "DMJniCache.h"
+
+static DMJniCache s_jniCache;
+static bool s_bJniCacheReady = false;
+
+static jclass FindGlobalClass(JNIEnv* env, const char* szClassName)
+{
+    jclass localClass = env->FindClass(szClassName);
+    if (localClass == NULL) {
+        env->ExceptionClear();
+        LOGE("DMJniCache: can't find class %s", szClassName);
+        return NULL;
+    }
+
+    jclass globalClass = static_cast<jclass>(env->NewGlobalRef(localClass));
+    env->DeleteLocalRef(localClass);
+    return globalClass;
+}
+
+static bool GetMethod(JNIEnv* env, jclass clazz, jmethodID& methodID, const char* szName,
+        const char* szSignature)
+{
+    methodID = env->GetMethodID(clazz, szName, szSignature);
+    if (methodID == NULL) {
+        env->ExceptionClear();
+        LOGE("DMJniCache: can't find method %s%s", szName, szSignature);
+        return false;
+    }
+    return true;
+}
+
+static bool CacheHttpConnector(JNIEnv* env, DMJniHttpConnector& c)
+{
+    c.clazz = FindGlobalClass(env, "com/android/omadm/service/DMHttpConnector");
+    return c.clazz != NULL
+        && GetMethod(env, c.clazz, c.sendRequest, "sendRequest",
+                "(Ljava/lang/String;[BLjava/lang/String;)I")
+        && GetMethod(env, c.clazz, c.getResponseLength, "getResponseLength", "()J")
+        && GetMethod(env, c.clazz, c.getResponseData, "getResponseData", "()[B")
+        && GetMethod(env, c.clazz, c.getResponseHeader, "getResponseHeader",
+                "(Ljava/lang/String;)Ljava/lang/String;")
+        && GetMethod(env, c.clazz, c.setContentType, "setContentType",
+                "(Ljava/lang/String;)V")
+        && GetMethod(env, c.clazz, c.enableApnByName, "enableApnByName",
+                "(Ljava/lang/String;)V");
+}
+
+static bool CacheAlert(JNIEnv* env, DMJniAlert& c)
+{
+    c.clazz = FindGlobalClass(env, "com/android/omadm/service/DMAlert");
+    return c.clazz != NULL
+        && GetMethod(env, c.clazz, c.showDisplayAlert, "showDisplayAlert",
+                "(ILjava/lang/String;II)I")
+        && GetMethod(env, c.clazz, c.showConfirmAlert, "showConfirmAlert",
+                "(ILjava/lang/String;II)I")
+        && GetMethod(env, c.clazz, c.showTextInputAlert, "showTextInputAlert",
+                "(ILjava/lang/String;Ljava/lang/String;IIIII)Ljava/lang/String;")
+        && GetMethod(env, c.clazz, c.showSingleChoiceAlert, "showSingleChoiceAlert",
+                "(ILjava/lang/String;[Ljava/lang/String;III)Ljava/lang/String;")
+        && GetMethod(env, c.clazz, c.showMultipleChoiceAlert, "showMultipleChoiceAlert",
+                "(ILjava/lang/String;[Ljava/lang/String;[ZII)I");
+}
+
+static bool CacheSession(JNIEnv* env, DMJniSession& c)
+{
+    c.clazz = FindGlobalClass(env, "com/android/omadm/service/DMSession");
+    return c.clazz != NULL
+        && GetMethod(env, c.clazz, c.getNetConnector, "getNetConnector",
+                "()Lcom/android/omadm/service/DMHttpConnector;")
+        && GetMethod(env, c.clazz, c.getDMAlert, "getDMAlert",
+                "()Lcom/android/omadm/service/DMAlert;");
+}
+
+static bool CachePkg0Notification(JNIEnv* env, DMJniPkg0Notification& c)
+{
+    c.clazz = FindGlobalClass(env, "com/android/omadm/service/DMPkg0Notification");
+    return c.clazz != NULL
+        && GetMethod(env, c.clazz, c.setServerID, "setServerID", "(Ljava/lang/String;)V")
+        && GetMethod(env, c.clazz, c.setSessionID, "setSessionID", "(I)V")
+        && GetMethod(env, c.clazz, c.setUIMode, "setUIMode", "(I)V")
+        && GetMethod(env, c.clazz, c.setInitiator, "setInitiator", "(I)V")
+        && GetMethod(env, c.clazz, c.setAuthFlag, "setAuthFlag", "(I)V");
+}
+
+static bool CacheTreeChangeListener(JNIEnv* env, DMJniTreeChangeListener& c)
+{
+    c.clazz = FindGlobalClass(env, "com/android/omadm/service/NativeDM$TreeChangeListener");
+    return c.clazz != NULL
+        && GetMethod(env, c.clazz, c.onTreeChanged, "onTreeChanged",
+                "([Ljava/lang/String;[I[I[Ljava/lang/String;)V");
+}
+
+static bool CachePluginManager(JNIEnv* env, DMJniPluginManager& c)
+{
+    c.clazz = FindGlobalClass(env, "com/android/omadm/plugin/impl/DmtPluginManager");
+    bool bFound = c.clazz != NULL
+        && GetMethod(env, c.clazz, c.constructor, "<init>", "()V")
+        && GetMethod(env, c.clazz, c.initJavaPlugin, "initJavaPlugin",
+                "(Ljava/lang/String;[Ljava/lang/String;)Z")
+        && GetMethod(env, c.clazz, c.release, "release", "()V")
+        && GetMethod(env, c.clazz, c.setServerID, "setServerID", "(Ljava/lang/String;)V")
+        && GetMethod(env, c.clazz, c.getNodeValue, "getNodeValue",
+                "(Ljava/lang/String;)[Ljava/lang/String;")
+        && GetMethod(env, c.clazz, c.setNodeValue, "setNodeValue",
+                "(Ljava/lang/String;ILjava/lang/String;)I")
+        && GetMethod(env, c.clazz, c.createInteriorNode, "createInteriorNode",
+                "(Ljava/lang/String;)I")
+        && GetMethod(env, c.clazz, c.createLeafNode, "createLeafNode",
+                "(Ljava/lang/String;ILjava/lang/String;)I")
+        && GetMethod(env, c.clazz, c.renameNode, "renameNode",
+                "(Ljava/lang/String;Ljava/lang/String;)I")
+        && GetMethod(env, c.clazz, c.deleteNode, "deleteNode", "(Ljava/lang/String;)I")
+        && GetMethod(env, c.clazz, c.commit, "commit", "()I")
+        && GetMethod(env, c.clazz, c.rollback, "rollback", "()I")
+        && GetMethod(env, c.clazz, c.executeNode, "executeNode",
+                "(Ljava/lang/String;Ljava/lang/String;)I")
+        && GetMethod(env, c.clazz, c.getNodes, "getNodes", "()[Ljava/lang/String;")
+        && GetMethod(env, c.clazz, c.getChildNodes, "getChildNodes",
+                "(Ljava/lang/String;)[Ljava/lang/String;")
+        && GetMethod(env, c.clazz, c.prefetchNodeValues, "prefetchNodeValues",
+                "([Ljava/lang/String;)V")
+        && GetMethod(env, c.clazz, c.clearPrefetchedValues, "clearPrefetchedValues", "()V")
+        && GetMethod(env, c.clazz, c.openNodeStream, "openNodeStream",
+                "(Ljava/lang/String;)[J");
+
+    if (!bFound && c.clazz != NULL) {
+        env->DeleteGlobalRef(c.clazz);
+    }
+    if (!bFound) {
+        // the java plugin library falls back to per-call lookups
+        memset(&c, 0, sizeof(c));
+    }
+    return bFound;
+}
+
+int registerJniCache(JNIEnv* env)
+{
+    memset(&s_jniCache, 0, sizeof(s_jniCache));
+
+    s_jniCache.stringClass = FindGlobalClass(env, "java/lang/String");
+    if (s_jniCache.stringClass == NULL
+            || !CacheHttpConnector(env, s_jniCache.httpConnector)
+            || !CacheAlert(env, s_jniCache.alert)
+            || !CacheSession(env, s_jniCache.session)
+            || !CachePkg0Notification(env, s_jniCache.pkg0Notification)
+            || !CacheTreeChangeListener(env, s_jniCache.treeChangeListener)) {
+        LOGE("registerJniCache: failed to resolve service callbacks");
+        releaseJniCache(env);
+        return JNI_FALSE;
+    }
+
+    if (!CachePluginManager(env, s_jniCache.pluginManager)) {
+        LOGW("registerJniCache: DmtPluginManager not cached");
+    }
+
+    s_bJniCacheReady = true;
+    return JNI_TRUE;
+}
+
+void releaseJniCache(JNIEnv* env)
+{
+    s_bJniCacheReady = false;
+
+    jclass classes[] = {
+        s_jniCache.stringClass,
+        s_jniCache.httpConnector.clazz,
+        s_jniCache.alert.clazz,
+        s_jniCache.session.clazz,
+        s_jniCache.pkg0Notification.clazz,
+        s_jniCache.treeChangeListener.clazz,
+        s_jniCache.pluginManager.clazz,
+    };
+    for (size_t i = 0; i < sizeof(classes) / sizeof(classes[0]); ++i) {
+        if (classes[i] != NULL) {
+            env->DeleteGlobalRef(classes[i]);
+        }
+    }
+    memset(&s_jniCache, 0, sizeof(s_jniCache));
+}
+
+const DMJniCache* getJniCache()
+{
+    return s_bJniCacheReady ? &s_jniCache : NULL;
+}
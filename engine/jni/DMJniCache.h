@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef DM_JNI_CACHE_HEADER
+#define DM_JNI_CACHE_HEADER
+
+#include <jni.h>
+
+/*
+ * Class references and method IDs of every Java callback made by the native
+ * engine. They are resolved once from JNI_OnLoad, where the application class
+ * loader is still on the stack, and shared by all sessions afterwards.
+ * All class references are global references and stay valid until unload.
+ */
+
+struct DMJniHttpConnector {
+    jclass    clazz;
+    jmethodID sendRequest;
+    jmethodID getResponseLength;
+    jmethodID getResponseData;
+    jmethodID getResponseHeader;
+    jmethodID setContentType;
+    jmethodID enableApnByName;
+};
+
+struct DMJniAlert {
+    jclass    clazz;
+    jmethodID showDisplayAlert;
+    jmethodID showConfirmAlert;
+    jmethodID showTextInputAlert;
+    jmethodID showSingleChoiceAlert;
+    jmethodID showMultipleChoiceAlert;
+};
+
+struct DMJniSession {
+    jclass    clazz;
+    jmethodID getNetConnector;
+    jmethodID getDMAlert;
+};
+
+struct DMJniPkg0Notification {
+    jclass    clazz;
+    jmethodID setServerID;
+    jmethodID setSessionID;
+    jmethodID setUIMode;
+    jmethodID setInitiator;
+    jmethodID setAuthFlag;
+};
+
+struct DMJniTreeChangeListener {
+    jclass    clazz;
+    jmethodID onTreeChanged;
+};
+
+struct DMJniPluginManager {
+    jclass    clazz;
+    jmethodID constructor;
+    jmethodID initJavaPlugin;
+    jmethodID release;
+    jmethodID setServerID;
+    jmethodID getNodeValue;
+    jmethodID setNodeValue;
+    jmethodID createInteriorNode;
+    jmethodID createLeafNode;
+    jmethodID renameNode;
+    jmethodID deleteNode;
+    jmethodID commit;
+    jmethodID rollback;
+    jmethodID executeNode;
+    jmethodID getNodes;
+    jmethodID getChildNodes;
+    jmethodID prefetchNodeValues;
+    jmethodID clearPrefetchedValues;
+    jmethodID openNodeStream;
+};
+
+struct DMJniCache {
+    jclass                stringClass;
+    DMJniHttpConnector    httpConnector;
+    DMJniAlert            alert;
+    DMJniSession          session;
+    DMJniPkg0Notification pkg0Notification;
+    DMJniTreeChangeListener treeChangeListener;
+    DMJniPluginManager    pluginManager;  // clazz is NULL if the plugin API isn't loaded
+};
+
+/**
+ * Resolve and cache all class references and method IDs. Called from JNI_OnLoad.
+ * \return JNI_TRUE if all mandatory service callbacks were found.
+ */
+int registerJniCache(JNIEnv* env);
+
+/**
+ * Release the global class references held by the cache.
+ */
+void releaseJniCache(JNIEnv* env);
+
+/**
+ * \return the cache populated by registerJniCache(), or NULL if it hasn't run
+ * (e.g. when the engine is hosted outside the DM service process).
+ */
+const DMJniCache* getJniCache();
+
+#endif
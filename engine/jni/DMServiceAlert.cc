@@ -15,6 +15,7 @@
  */
 
 #include "DMServiceAlert.h"
+#include "DMJniCache.h"
 #include "xpl_dm_ServerAlert.h"
 
 #include <android_runtime/AndroidRuntime.h>
@@ -23,7 +24,8 @@
  * Constructor
  *
  **/
-DMServiceAlert::DMServiceAlert() : m_jDmEnv(NULL), m_jDmAlertCls(NULL), m_jDmAlertObj(NULL)
+DMServiceAlert::DMServiceAlert() : m_jDmEnv(NULL), m_pMethods(NULL), m_jDmAlertObj(NULL),
+        m_jStringCls(NULL)
 {
    LOGD("DMServiceAlert: enter  DMServiceAlert::DMServiceAlert()");
    m_jDmEnv = android::AndroidRuntime::getJNIEnv();
@@ -33,19 +35,20 @@ DMServiceAlert::DMServiceAlert() : m_jDmEnv(NULL), m_jDmAlertCls(NULL), m_jDmAle
    }
    LOGD("DMServiceAlert: Get JNI Env success.");
 
+   const DMJniCache* pJniCache = getJniCache();
+   if ( NULL == pJniCache ) {
+      LOGE("DMServiceAlert: JNI cache not initialized!");
+      return;
+   }
+   m_pMethods = &pJniCache->alert;
+   m_jStringCls = pJniCache->stringClass;
+
    m_jDmAlertObj = getDMAlert(m_jDmEnv);
    if ( NULL == m_jDmAlertObj) {
       LOGE("DMServiceAlert: m_jDmEnv->CallObjectMethod failed!");
       return;
    }
    LOGD("DMServiceAlert: Get DmAlert Object success");
-
-   m_jDmAlertCls = m_jDmEnv->GetObjectClass(m_jDmAlertObj);
-   if ( NULL == m_jDmAlertCls ) {
-      LOGE("DMServiceAlert: m_jDmEnv->GetObjectClass failed!");
-      return;
-   }
-   LOGD("DMServiceAlert: Get DmAlert Class success.");
 }
 
 /**
@@ -58,10 +61,6 @@ DMServiceAlert::~DMServiceAlert()
       return;
    }
 
-   if ( m_jDmAlertCls ) {
-      m_jDmEnv->DeleteLocalRef(m_jDmAlertCls);
-   }
-
    if ( m_jDmAlertObj ) {
       m_jDmEnv->DeleteLocalRef(m_jDmAlertObj);
    }
@@ -85,21 +84,12 @@ DMServiceAlert::showDisplayAlert(INT32 minDisplayTime, const DMString& msg, INT3
       return SYNCML_DM_FAIL;
    }
 
-   m_jDmAlertMID = m_jDmEnv->GetMethodID(m_jDmAlertCls,
-                                         "showDisplayAlert",
-                                         "(ILjava/lang/String;II)I");
-   if (NULL == m_jDmAlertMID) {
-      LOGE("DMServiceAlert: m_jDmEnv->GetMethodID(showDisplayAlert) failed");
-      return SYNCML_DM_FAIL;
-   }
-
-   LOGD("DMServiceAlert: m_jDmEnv->GetMethodID(showDisplayAlert) success.");
    jint t = minDisplayTime;
    jstring m = m_jDmEnv->NewStringUTF(msg.c_str());
    jint tl = title;
    jint ic = icon;
 
-   jint r = m_jDmEnv->CallIntMethod(m_jDmAlertObj, m_jDmAlertMID, t, m, tl, ic);
+   jint r = m_jDmEnv->CallIntMethod(m_jDmAlertObj, m_pMethods->showDisplayAlert, t, m, tl, ic);
    m_jDmEnv->DeleteLocalRef(m);
    LOGD("DMServiceAlert: DisplayAlert result: %d", r);
 
@@ -145,21 +135,12 @@ DMServiceAlert::showConfirmAlert(INT32 maxDisplayTime, const DMString& msg,
    }
  #endif
 
-   m_jDmAlertMID = m_jDmEnv->GetMethodID(m_jDmAlertCls,
-                                         "showConfirmAlert",
-                                         "(ILjava/lang/String;II)I");
-   if ( NULL == m_jDmAlertMID ) {
-      LOGE("DMServiceAlert: m_jDmEnv->GetMethodID(showConfirmAlert) failed");
-      return SYNCML_DM_FAIL;
-   }
-
-   LOGD("DMServiceAlert: m_jDmEnv->GetMethodID(showConfirmAlert) success.");
    jint t = maxDisplayTime;
    jstring m = m_jDmEnv->NewStringUTF(msg.c_str());
    jint tl = title;
    jint ic = icon;
 
-   jint r = m_jDmEnv->CallIntMethod(m_jDmAlertObj, m_jDmAlertMID, t, m, tl, ic);
+   jint r = m_jDmEnv->CallIntMethod(m_jDmAlertObj, m_pMethods->showConfirmAlert, t, m, tl, ic);
    m_jDmEnv->DeleteLocalRef(m);
    LOGD("DMServiceAlert: ConfirmAlert result: %d", r);
 
@@ -205,15 +186,6 @@ DMServiceAlert::showTextInputAlert( INT32 maxDisplayTime,
       return SYNCML_DM_FAIL;
    }
 
-   m_jDmAlertMID = m_jDmEnv->GetMethodID(m_jDmAlertCls,
-                                         "showTextInputAlert",
-                                         "(ILjava/lang/String;Ljava/lang/String;IIIII)Ljava/lang/String;");
-   if ( NULL == m_jDmAlertMID ) {
-      LOGE("DMServiceAlert: m_jDmEnv->GetMethodID(showTextInputAlert) failed");
-      return SYNCML_DM_FAIL;
-   }
-
-   LOGD("DMServiceAlert: m_jDmEnv->GetMethodID(showTextInputAlert) success.");
    jint t = maxDisplayTime;
    jstring m = m_jDmEnv->NewStringUTF(msg.c_str());
    jstring d = m_jDmEnv->NewStringUTF(defaultResponse.c_str());
@@ -223,7 +195,7 @@ DMServiceAlert::showTextInputAlert( INT32 maxDisplayTime,
    jint tl = title;
    jint ic = icon;
 
-   jstring r = (jstring)m_jDmEnv->CallObjectMethod(m_jDmAlertObj, m_jDmAlertMID, t, m, d, l, i, e, tl, ic);
+   jstring r = (jstring)m_jDmEnv->CallObjectMethod(m_jDmAlertObj, m_pMethods->showTextInputAlert, t, m, d, l, i, e, tl, ic);
    m_jDmEnv->DeleteLocalRef(m);
 
    const char *rlt = m_jDmEnv->GetStringUTFChars(r, 0);
@@ -263,19 +235,10 @@ DMServiceAlert::showSingleChoiceAlert(INT32 maxDisplayTime, const DMString& msg,
       return SYNCML_DM_FAIL;
    }
 
-   m_jDmAlertMID = m_jDmEnv->GetMethodID(m_jDmAlertCls,
-                                         "showSingleChoiceAlert",
-                                         "(ILjava/lang/String;[Ljava/lang/String;III)Ljava/lang/String;");
-   if ( NULL == m_jDmAlertMID ) {
-      LOGE("DMServiceAlert: m_jDmEnv->GetMethodID(showSingleChoiceAlert) failed");
-      return SYNCML_DM_FAIL;
-   }
-
-   LOGD("DMServiceAlert: m_jDmEnv->GetMethodID(showSingleChoiceAlert) success.");
    jint t = maxDisplayTime;
    jstring m = m_jDmEnv->NewStringUTF(msg.c_str());
    int size = choices.size();
-   jobjectArray c = m_jDmEnv->NewObjectArray(size, m_jDmEnv->FindClass("java/lang/String"), NULL);
+   jobjectArray c = m_jDmEnv->NewObjectArray(size, m_jStringCls, NULL);
    for ( int i = 0; i < size; i ++ ) {
       m_jDmEnv->SetObjectArrayElement(c, i, m_jDmEnv->NewStringUTF(choices[i].c_str()));
    }
@@ -283,7 +246,7 @@ DMServiceAlert::showSingleChoiceAlert(INT32 maxDisplayTime, const DMString& msg,
    jint tl = title;
    jint ic = icon;
 
-   jstring r = (jstring)m_jDmEnv->CallObjectMethod(m_jDmAlertObj, m_jDmAlertMID, t, m, c, d, tl, ic);
+   jstring r = (jstring)m_jDmEnv->CallObjectMethod(m_jDmAlertObj, m_pMethods->showSingleChoiceAlert, t, m, c, d, tl, ic);
     // FIXME: delete local refs to object array strings
    m_jDmEnv->DeleteLocalRef(m);
 
@@ -325,22 +288,12 @@ DMServiceAlert::showMultipleChoiceAlert(INT32 maxDisplayTime, const DMString& ms
       return SYNCML_DM_FAIL;
    }
 
-   m_jDmAlertMID = m_jDmEnv->GetMethodID(m_jDmAlertCls,
-                                         "showMultipleChoiceAlert",
-                                         "(ILjava/lang/String;[Ljava/lang/String;[ZII)I");
-   if ( NULL == m_jDmAlertMID ) {
-      LOGE("DMServiceAlert: m_jDmEnv->GetMethodID(showMultipleChoiceAlert) failed");
-      return SYNCML_DM_FAIL;
-   }
-
-   LOGD("DMServiceAlert: m_jDmEnv->GetMethodID(showMultipleChoiceAlert) success.");
    jint t = maxDisplayTime;
    jstring m = m_jDmEnv->NewStringUTF(msg.c_str());
 
    int size = choices.size();
    LOGD("DMServiceAlert: showMultipleChoiceAlert choices size: %d", size);
-   jclass s = m_jDmEnv->FindClass("java/lang/String");
-   jobjectArray c = m_jDmEnv->NewObjectArray(size, s, NULL);
+   jobjectArray c = m_jDmEnv->NewObjectArray(size, m_jStringCls, NULL);
    for (int i = 0; i < size; ++i) {
       m_jDmEnv->SetObjectArrayElement(c, i, m_jDmEnv->NewStringUTF(choices[i].c_str()));
    }
@@ -364,7 +317,7 @@ DMServiceAlert::showMultipleChoiceAlert(INT32 maxDisplayTime, const DMString& ms
    jint tl = title;
    jint ic = icon;
 
-   jint r = m_jDmEnv->CallIntMethod(m_jDmAlertObj, m_jDmAlertMID, t, m, c, d, tl, ic);
+   jint r = m_jDmEnv->CallIntMethod(m_jDmAlertObj, m_pMethods->showMultipleChoiceAlert, t, m, c, d, tl, ic);
     // FIXME: delete local refs to object array strings
    m_jDmEnv->DeleteLocalRef(m);
 
@@ -187,12 +187,12 @@ public:
 private:
 
     JNIEnv*    m_jDmEnv;
-    jclass     m_jDmAlertCls;
+    const struct DMJniAlert* m_pMethods;    // cached in JNI_OnLoad
     jobject    m_jDmAlertObj;
-    jmethodID  m_jDmAlertMID;
+    jclass     m_jStringCls;
 
     bool isJvmNull() {
-        return (m_jDmEnv == NULL || m_jDmAlertCls == NULL || m_jDmAlertObj == NULL);
+        return (m_jDmEnv == NULL || m_pMethods == NULL || m_jDmAlertObj == NULL);
     }
 };
 
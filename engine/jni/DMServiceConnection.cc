@@ -19,59 +19,26 @@
 #include "dm_tpt_connection.H"
 #include "dm_tpt_utils.h"
 #include "DMServiceMain.h"
+#include "DMJniCache.h"
 #include <android_runtime/AndroidRuntime.h>
 
-SYNCML_DM_OTAConnection::SYNCML_DM_OTAConnection() : m_maxAcptSize(0), m_szURL()
+SYNCML_DM_OTAConnection::SYNCML_DM_OTAConnection() : m_maxAcptSize(0), m_szURL(),
+        m_jNetConnObj(NULL), m_pMethods(NULL)
 {
-    JNIEnv* jEnv = NULL;
-
-    if (android::AndroidRuntime::getJavaVM()) {
-        jEnv = android::AndroidRuntime::getJNIEnv();
-        m_jNetConnObj = getNetConnector();
-    } else {
+    if (!android::AndroidRuntime::getJavaVM()) {
         return;
     }
 
-    jclass jNetConnCls = jEnv->GetObjectClass(m_jNetConnObj);
-    if (jNetConnCls == NULL) {
-        LOGD(("FindClass return Error"));
-        goto end;
-    }
-
-    m_jSendRequest = jEnv->GetMethodID(jNetConnCls, "sendRequest",
-            "(Ljava/lang/String;[BLjava/lang/String;)I");
-    if (m_jSendRequest == NULL) {
-        LOGD(("GetMethod 'sendRequest' return Error"));
-        goto end;
-    }
-
-    m_jGetRespLength = jEnv->GetMethodID(jNetConnCls, "getResponseLength", "()J");
-    if (m_jGetRespLength == NULL) {
-        LOGD(("GetMethod 'getResponseLength' return Error"));
-        goto end;
-    }
-
-    m_jGetRespData = jEnv->GetMethodID(jNetConnCls, "getResponseData", "()[B");
-    if (m_jGetRespData == NULL) {
-        LOGD(("GetMethod 'getResponseData' return Error"));
-        goto end;
-    }
-
-    m_jSetContentType = jEnv->GetMethodID(jNetConnCls, "setContentType", "(Ljava/lang/String;)V");
-    if (m_jSetContentType == NULL) {
-        LOGD(("GetMethod 'setContentType' return Error"));
-        goto end;
+    const DMJniCache* pJniCache = getJniCache();
+    if (pJniCache == NULL) {
+        LOGD(("JNI cache not initialized"));
+        return;
     }
 
-    m_jEnbleApnByName = jEnv->GetMethodID(jNetConnCls, "enableApnByName", "(Ljava/lang/String;)V");
-    if (m_jEnbleApnByName == NULL) {
-        LOGD(("GetMethod 'enableApnByName' return Error"));
-        goto end;
-    }
+    m_pMethods = &pJniCache->httpConnector;
+    m_jNetConnObj = getNetConnector();
 
     LOGD("constructed successfully");
-end:
-    return;
 }
 
 SYNCML_DM_OTAConnection::~SYNCML_DM_OTAConnection()
@@ -85,11 +52,15 @@ SYNCML_DM_OTAConnection::Init(UINT32 dwMaxAcptSize, XPL_ADDR_TYPE_T AddressType,
 {
     LOGD("dwMaxAcptSize=%d, AddressType=%d", dwMaxAcptSize, AddressType);
 
+    if (m_pMethods == NULL || m_jNetConnObj == NULL) {
+        return SYNCML_DM_FAIL;
+    }
+
     if (ConRef != NULL) {
         LOGD("ConRef=%s", ConRef);
         JNIEnv* jEnv = android::AndroidRuntime::getJNIEnv();
         jstring jConRef = jEnv->NewStringUTF(ConRef);
-        jEnv->CallVoidMethod(m_jNetConnObj, m_jEnbleApnByName, jConRef);
+        jEnv->CallVoidMethod(m_jNetConnObj, m_pMethods->enableApnByName, jConRef);
     }
 
     m_maxAcptSize = dwMaxAcptSize;
@@ -126,10 +97,13 @@ SYNCML_DM_OTAConnection::Send(const SYNCML_DM_INDIRECT_BUFFER_T* psSendSyncMLDoc
     if (!psCredHdr->isCorrect())
         return SYNCML_DM_FAIL;
 
+    if (m_pMethods == NULL || m_jNetConnObj == NULL)
+        return SYNCML_DM_FAIL;
+
     JNIEnv* jEnv = android::AndroidRuntime::getJNIEnv();
 
     jstring jContentType = jEnv->NewStringUTF((const char*)pbContType);
-    jEnv->CallVoidMethod(m_jNetConnObj, m_jSetContentType, jContentType);
+    jEnv->CallVoidMethod(m_jNetConnObj, m_pMethods->setContentType, jContentType);
 
     CPCHAR strUrl = m_szURL.c_str();
     LOGD("url=%s", strUrl);
@@ -159,7 +133,7 @@ SYNCML_DM_OTAConnection::Send(const SYNCML_DM_INDIRECT_BUFFER_T* psSendSyncMLDoc
     while (wNumRetries < DMTPT_MAX_RETRIES)
     {
         jResult = static_cast<SYNCML_DM_RET_STATUS_T>(jEnv->CallIntMethod(
-                m_jNetConnObj, m_jSendRequest, jurl, jDataArray, jstrMac /*hmac*/));
+                m_jNetConnObj, m_pMethods->sendRequest, jurl, jDataArray, jstrMac /*hmac*/));
 
         LOGD("Send result=%d", static_cast<int>(jResult));
 
@@ -181,10 +155,10 @@ SYNCML_DM_OTAConnection::Send(const SYNCML_DM_INDIRECT_BUFFER_T* psSendSyncMLDoc
         }
 
         if (static_cast<int>(jResult) == 200) {
-            jlong jResponseLen = jEnv->CallLongMethod(m_jNetConnObj, m_jGetRespLength);
+            jlong jResponseLen = jEnv->CallLongMethod(m_jNetConnObj, m_pMethods->getResponseLength);
             LOGD("response length=%lld", jResponseLen);
             if(jResponseLen > 0 && jResponseLen <= m_maxAcptSize){
-                jbyteArray jData = (jbyteArray)jEnv->CallObjectMethod(m_jNetConnObj, m_jGetRespData);
+                jbyteArray jData = (jbyteArray)jEnv->CallObjectMethod(m_jNetConnObj, m_pMethods->getResponseData);
                 jEnv->GetByteArrayRegion(jData, 0, jResponseLen, (jbyte*)psRecvSyncMLDocument->pData);
                 psRecvSyncMLDocument->dataSize = jResponseLen;
                 //Get header:x-syncml-hmac
@@ -192,9 +166,8 @@ SYNCML_DM_OTAConnection::Send(const SYNCML_DM_INDIRECT_BUFFER_T* psSendSyncMLDoc
                 m_pCredHeaders->clear();
                 jstring jstrHMAC = jEnv->NewStringUTF("x-syncml-hmac");
                 jobject jobjHMACValue = NULL;
-                jclass jNetConnCls = jEnv->GetObjectClass(m_jNetConnObj);
-                jmethodID jmethodGetHeader = jEnv->GetMethodID(jNetConnCls, "getResponseHeader","(Ljava/lang/String;)Ljava/lang/String;");
-                jobjHMACValue = jEnv->CallObjectMethod(m_jNetConnObj, jmethodGetHeader, jstrHMAC);
+                jobjHMACValue = jEnv->CallObjectMethod(m_jNetConnObj,
+                        m_pMethods->getResponseHeader, jstrHMAC);
                 if(jobjHMACValue != NULL)
                 {
                     LOGD("Get hmac header successfully!");
@@ -22,6 +22,7 @@
 #include "DMServiceMain.h"
 #include "dmt.hpp"
 #include "DMTreeManager.h"
+#include "DMJniCache.h"
 static jobject g_sessionObj;
 int g_cancelSession;
 
@@ -155,7 +156,7 @@ JNIEXPORT jint
 parsePkg0(JNIEnv* env, jclass, jbyteArray jPkg0, jobject jNotification)
 {
     LOGD("Enter parsePkg0");
-    jclass notifClass = env->GetObjectClass(jNotification);
+    const DMJniPkg0Notification& notifMethods = getJniCache()->pkg0Notification;
 
     if (jPkg0 == NULL) {
         return static_cast<jint>(SYNCML_DM_FAIL);
@@ -173,28 +174,18 @@ parsePkg0(JNIEnv* env, jclass, jbyteArray jPkg0, jobject jNotification)
 	return static_cast<jint>(SYNCML_DM_FAIL);
     }
 
-    jmethodID jSetServerID = env->GetMethodID( notifClass, "setServerID", "(Ljava/lang/String;)V");
-
     if(isUtf8Valid(notif.getServerID().c_str())) {
         jstring jServerID = env->NewStringUTF(notif.getServerID().c_str());
-        env->CallVoidMethod(jNotification, jSetServerID, jServerID);
+        env->CallVoidMethod(jNotification, notifMethods.setServerID, jServerID);
     } else {
         LOGE("Invalid Server ID, not legal UTF8");
         return static_cast<jint>(SYNCML_DM_FAIL);
     }
 
-
-    jmethodID jSetSessionID = env->GetMethodID( notifClass, "setSessionID", "(I)V");
-    env->CallVoidMethod(jNotification, jSetSessionID, (jint)notif.getSessionID());
-
-    jmethodID jSetUIMode = env->GetMethodID( notifClass, "setUIMode", "(I)V");
-    env->CallVoidMethod(jNotification, jSetUIMode, (jint)notif.getUIMode());
-
-    jmethodID jSetInitiator = env->GetMethodID( notifClass, "setInitiator", "(I)V");
-    env->CallVoidMethod(jNotification, jSetInitiator, (jint)notif.getInitiator());
-
-    jmethodID jSetAuthFlag = env->GetMethodID( notifClass, "setAuthFlag", "(I)V");
-    env->CallVoidMethod(jNotification, jSetAuthFlag, (jint)notif.getAuthFlag());
+    env->CallVoidMethod(jNotification, notifMethods.setSessionID, (jint)notif.getSessionID());
+    env->CallVoidMethod(jNotification, notifMethods.setUIMode, (jint)notif.getUIMode());
+    env->CallVoidMethod(jNotification, notifMethods.setInitiator, (jint)notif.getInitiator());
+    env->CallVoidMethod(jNotification, notifMethods.setAuthFlag, (jint)notif.getAuthFlag());
 
     env->ReleaseByteArrayElements(jPkg0, pkg0Buf, 0);
 
@@ -339,12 +330,7 @@ JNIEXPORT jint JNICALL startFotaNotifySession(JNIEnv* jenv, jclass,
 jobject getNetConnector()
 {
     JNIEnv* env = android::AndroidRuntime::getJNIEnv();
-
-    jclass jdmSessionClz = env->GetObjectClass(g_sessionObj);
-    jmethodID jgetNet = env->GetMethodID(jdmSessionClz,
-            "getNetConnector",
-            "()Lcom/android/omadm/service/DMHttpConnector;");
-    return env->CallObjectMethod(g_sessionObj, jgetNet);
+    return env->CallObjectMethod(g_sessionObj, getJniCache()->session.getNetConnector);
 }
 
 jobject getDMAlert(JNIEnv* env)
@@ -355,23 +341,7 @@ jobject getDMAlert(JNIEnv* env)
        return NULL;
    }
 
-   jclass jdmSessionClz = env->GetObjectClass(g_sessionObj);
-   if (NULL == jdmSessionClz) {
-       LOGE(("DM Alert: env->GetObjectClass(g_sessionObj) failed!"));
-       return NULL;
-   }
-   LOGD(("DM Alert: success env->GetObjectClass(...)"));
-
-   jmethodID jdmGetDMAlert = env->GetMethodID(jdmSessionClz,
-            "getDMAlert",
-            "()Lcom/android/omadm/service/DMAlert;");
-   if ( NULL == jdmGetDMAlert ) {
-       LOGE(("DM Alert: env->GetMethodID(jdmSessionClz) failed!"));
-       return NULL;
-   }
-   LOGD(("DM Alert: success env->GetMethodID(...)"));
-
-   return env->CallObjectMethod(g_sessionObj, jdmGetDMAlert);
+   return env->CallObjectMethod(g_sessionObj, getJniCache()->session.getDMAlert);
 }
 
 JNIEXPORT jint JNICALL cancelSession(JNIEnv*, jclass)
@@ -563,5 +533,10 @@ JNI_OnLoad(JavaVM* /*vm*/, void* /*reserved*/)
         return -1;
     }
 
+    if (registerJniCache(env) != JNI_TRUE) {
+        LOGE("Resolve Java callbacks Error");
+        return -1;
+    }
+
     return (registerNatives(env) == JNI_TRUE) ? JNI_VERSION_1_6 : -1;
 }
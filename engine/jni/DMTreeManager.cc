@@ -17,7 +17,9 @@
 #include <android_runtime/AndroidRuntime.h>
 #include "utils/Log.h"
 #include "DMServiceMain.h"
+#include "DMJniCache.h"
 #include "dmt.hpp"
+#include "dm_tree_class.H"
 #include <stdarg.h>
 #include <dmMemory.h>
 
@@ -26,12 +28,14 @@ extern "C" {
 }
 
 static const int RESULT_BUF_SIZE = 8192; /*2048*/
+static const int MAX_FLOAT_STRING_LENGTH = 32;
 
 // FIXME: get rid of these static variables!
 static PDmtTree ptrTree = NULL;
 static DMString s_strRootPath;
 static DmtPrincipal principal("localhost");
 static bool bShowTimestamp = false;
+static jobject s_jTreeChangeListener = NULL;
 
 static PDmtTree GetTree();
 static SYNCML_DM_RET_STATUS_T PrintNode(PDmtNode ptrNode);
@@ -191,6 +195,247 @@ JNIEXPORT jstring JNICALL getNodeValue(JNIEnv* jenv, jclass, jstring jszNode)
     return NULL;    // return NULL reference on error
 }
 
+/**
+ * Look up a leaf node and fetch its value without any string conversion.
+ * Returns SYNCML_DM_SUCCESS only if the node exists, is not an ESN node
+ * and its value could be read.
+ */
+static SYNCML_DM_RET_STATUS_T GetLeafData(JNIEnv* jenv, jstring jszNode, DmtData& oData)
+{
+    if (jszNode == NULL) {
+        return SYNCML_DM_INVALID_PARAMETER;
+    }
+
+    const char* szNode = jenv->GetStringUTFChars(jszNode, NULL);
+    DMString strNode(szNode);
+    jenv->ReleaseStringUTFChars(jszNode, szNode);
+
+    PDmtNode ptrNode = GetNode(strNode);
+    if (!ptrNode || !ptrNode->IsLeaf() || ptrNode->IsExternalStorageNode()) {
+        return SYNCML_DM_FAIL;
+    }
+
+    return ptrNode->GetValue(oData);
+}
+
+/**
+ * Replace the value of an existing leaf node with an already typed DmtData.
+ */
+static jint SetLeafData(JNIEnv* jenv, jstring jszNode, const DmtData& oData)
+{
+    if (jszNode == NULL) {
+        return static_cast<jint>(SYNCML_DM_INVALID_PARAMETER);
+    }
+
+    const char* szNode = jenv->GetStringUTFChars(jszNode, NULL);
+    DMString strNode(szNode);
+    jenv->ReleaseStringUTFChars(jszNode, szNode);
+
+    PDmtNode ptrNode = GetNode(strNode);
+    if (!ptrNode) {
+        return static_cast<jint>(SYNCML_DM_ENTRY_NOT_EXIST);
+    }
+
+    SYNCML_DM_RET_STATUS_T ret = ptrNode->SetValue(oData);
+    if (ret != SYNCML_DM_SUCCESS) {
+        LOGE("can't set value of node %s: %d", strNode.c_str(), ret);
+    }
+    return static_cast<jint>(ret);
+}
+
+/**
+ * Create a leaf node from an already typed DmtData.
+ */
+static jint CreateLeafData(JNIEnv* jenv, jstring jszNode, const DmtData& oData)
+{
+    if (jszNode == NULL) {
+        return static_cast<jint>(SYNCML_DM_INVALID_PARAMETER);
+    }
+
+    GetTree();
+    if (!ptrTree) {
+        return static_cast<jint>(SYNCML_DM_FAIL);
+    }
+
+    const char* szNode = jenv->GetStringUTFChars(jszNode, NULL);
+    PDmtNode ptrNode;
+    SYNCML_DM_RET_STATUS_T ret = ptrTree->CreateLeafNode(szNode, ptrNode, oData);
+    if (ret == SYNCML_DM_SUCCESS) {
+        LOGI("node %s (type %d) created successfully\n", szNode, oData.GetType());
+    } else {
+        LOGE("can't create node %s", szNode);
+    }
+    jenv->ReleaseStringUTFChars(jszNode, szNode);
+
+    return static_cast<jint>(ret);
+}
+
+/**
+ * Throw a DmtException carrying the engine status of a failed typed read, so
+ * that the caller can tell a missing or mistyped node from a stored value.
+ */
+static void ThrowReadError(JNIEnv* jenv, jstring jszNode, SYNCML_DM_RET_STATUS_T ret)
+{
+    jclass clazz = jenv->FindClass("com/android/omadm/plugin/DmtException");
+    if (clazz == NULL) {
+        return;     // NoClassDefFoundError is pending
+    }
+
+    jmethodID ctor = jenv->GetMethodID(clazz, "<init>", "(ILjava/lang/String;)V");
+    jstring jMessage = NULL;
+    if (ctor != NULL) {
+        DMString strMessage("can't read value of node ");
+        if (jszNode != NULL) {
+            const char* szNode = jenv->GetStringUTFChars(jszNode, NULL);
+            strMessage += szNode;
+            jenv->ReleaseStringUTFChars(jszNode, szNode);
+        }
+        jMessage = jenv->NewStringUTF(strMessage.c_str());
+    }
+    if (jMessage != NULL) {
+        jobject exception = jenv->NewObject(clazz, ctor, static_cast<jint>(ret), jMessage);
+        if (exception != NULL) {
+            jenv->Throw(static_cast<jthrowable>(exception));
+            jenv->DeleteLocalRef(exception);
+        }
+        jenv->DeleteLocalRef(jMessage);
+    }
+    jenv->DeleteLocalRef(clazz);
+}
+
+JNIEXPORT jint JNICALL getNodeIntValue(JNIEnv* jenv, jclass, jstring jszNode)
+{
+    DmtData oData;
+    INT32 nValue = 0;
+    SYNCML_DM_RET_STATUS_T ret = GetLeafData(jenv, jszNode, oData);
+    if (ret == SYNCML_DM_SUCCESS) {
+        ret = oData.GetInt(nValue);
+    }
+    if (ret != SYNCML_DM_SUCCESS) {
+        ThrowReadError(jenv, jszNode, ret);
+        return 0;
+    }
+    return static_cast<jint>(nValue);
+}
+
+JNIEXPORT jboolean JNICALL getNodeBooleanValue(JNIEnv* jenv, jclass, jstring jszNode)
+{
+    DmtData oData;
+    BOOLEAN bValue = FALSE;
+    SYNCML_DM_RET_STATUS_T ret = GetLeafData(jenv, jszNode, oData);
+    if (ret == SYNCML_DM_SUCCESS) {
+        ret = oData.GetBoolean(bValue);
+    }
+    if (ret != SYNCML_DM_SUCCESS) {
+        ThrowReadError(jenv, jszNode, ret);
+        return JNI_FALSE;
+    }
+    return bValue ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jfloat JNICALL getNodeFloatValue(JNIEnv* jenv, jclass, jstring jszNode)
+{
+    DmtData oData;
+    SYNCML_DM_RET_STATUS_T ret = GetLeafData(jenv, jszNode, oData);
+    if (ret == SYNCML_DM_SUCCESS && oData.GetType() != SYNCML_DM_DATAFORMAT_FLOAT) {
+        ret = SYNCML_DM_INVALID_PARAMETER;
+    }
+
+    float fValue = 0.0f;
+    if (ret == SYNCML_DM_SUCCESS) {
+        // the engine keeps float values in their (trimmed) text form
+        const char* szValue = oData.GetStringValue().c_str();
+        char* pEnd = NULL;
+        fValue = strtof(szValue, &pEnd);
+        if (pEnd == szValue) {
+            ret = SYNCML_DM_FAIL;
+        }
+    }
+    if (ret != SYNCML_DM_SUCCESS) {
+        ThrowReadError(jenv, jszNode, ret);
+        return 0.0f;
+    }
+    return static_cast<jfloat>(fValue);
+}
+
+/**
+ * Copy a BIN leaf value into the caller-supplied buffer. Returns the full
+ * length of the value; if the buffer is NULL or too small nothing is copied,
+ * so the caller can size a buffer and retry. Returns -1 on error.
+ */
+JNIEXPORT jint JNICALL getNodeBinaryValue(JNIEnv* jenv, jclass, jstring jszNode,
+        jbyteArray jBuffer)
+{
+    DmtData oData;
+    if (GetLeafData(jenv, jszNode, oData) != SYNCML_DM_SUCCESS
+            || oData.GetType() != SYNCML_DM_DATAFORMAT_BIN) {
+        return -1;
+    }
+
+    const DMVector<UINT8>& value = oData.GetBinaryValue();
+    jsize valueLen = value.size();
+    if (jBuffer != NULL && valueLen > 0 && jenv->GetArrayLength(jBuffer) >= valueLen) {
+        jenv->SetByteArrayRegion(jBuffer, 0, valueLen,
+                reinterpret_cast<const jbyte*>(((DMVector<UINT8>&) value).get_data()));
+    }
+    return valueLen;
+}
+
+JNIEXPORT jint JNICALL setNodeIntValue(JNIEnv* jenv, jclass, jstring jszNode, jint value)
+{
+    return SetLeafData(jenv, jszNode, DmtData(static_cast<INT32>(value)));
+}
+
+JNIEXPORT jint JNICALL setNodeBooleanValue(JNIEnv* jenv, jclass, jstring jszNode,
+        jboolean value)
+{
+    return SetLeafData(jenv, jszNode, DmtData(static_cast<BOOLEAN>(value ? TRUE : FALSE)));
+}
+
+JNIEXPORT jint JNICALL setNodeFloatValue(JNIEnv* jenv, jclass, jstring jszNode, jfloat value)
+{
+    char szValue[MAX_FLOAT_STRING_LENGTH];
+    snprintf(szValue, sizeof(szValue), "%g", static_cast<double>(value));
+    return SetLeafData(jenv, jszNode, DmtData(szValue, SYNCML_DM_DATAFORMAT_FLOAT));
+}
+
+JNIEXPORT jint JNICALL setNodeBinaryValue(JNIEnv* jenv, jclass, jstring jszNode,
+        jbyteArray jValue, jint offset, jint length)
+{
+    if (jValue == NULL || offset < 0 || length < 0
+            || offset + length > jenv->GetArrayLength(jValue)) {
+        return static_cast<jint>(SYNCML_DM_INVALID_PARAMETER);
+    }
+
+    // critical access avoids the extra copy GetByteArrayElements may make;
+    // DmtData copies the bytes before we release the array
+    jbyte* pValue = static_cast<jbyte*>(jenv->GetPrimitiveArrayCritical(jValue, NULL));
+    if (pValue == NULL) {
+        return static_cast<jint>(SYNCML_DM_DEVICE_FULL);
+    }
+    DmtData oData(reinterpret_cast<const UINT8*>(pValue + offset), length);
+    jenv->ReleasePrimitiveArrayCritical(jValue, pValue, JNI_ABORT);
+
+    return SetLeafData(jenv, jszNode, oData);
+}
+
+JNIEXPORT jint JNICALL createLeafInteger(JNIEnv* jenv, jclass, jstring jszNode, jint value)
+{
+    return CreateLeafData(jenv, jszNode, DmtData(static_cast<INT32>(value)));
+}
+
+JNIEXPORT jint JNICALL createLeafBoolean(JNIEnv* jenv, jclass, jstring jszNode, jboolean value)
+{
+    return CreateLeafData(jenv, jszNode, DmtData(static_cast<BOOLEAN>(value ? TRUE : FALSE)));
+}
+
+JNIEXPORT jint JNICALL createLeafFloat(JNIEnv* jenv, jclass, jstring jszNode, jfloat value)
+{
+    char szValue[MAX_FLOAT_STRING_LENGTH];
+    snprintf(szValue, sizeof(szValue), "%g", static_cast<double>(value));
+    return CreateLeafData(jenv, jszNode, DmtData(szValue, SYNCML_DM_DATAFORMAT_FLOAT));
+}
+
 JNIEXPORT jstring JNICALL executePlugin(JNIEnv* jenv, jclass, jstring jszNode, jstring jszData)
 {
     resultBuf[0] = 0x0;
@@ -306,6 +551,7 @@ JNIEXPORT jint JNICALL createLeafByte(JNIEnv *jenv, jclass clz, jstring jszNode,
 
     if ( ptrTree == NULL ) {
         DmFreeMem(pData);
+        jenv->ReleaseStringUTFChars(jszNode, szNode);
         return SYNCML_DM_FAIL;
     }
 
@@ -321,6 +567,10 @@ JNIEXPORT jint JNICALL createLeafByte(JNIEnv *jenv, jclass clz, jstring jszNode,
     } else {
         LOGE("can't create node %s", strNode.c_str());
     }
+
+    // DmtData keeps its own copy of the value
+    DmFreeMem(pData);
+    jenv->ReleaseStringUTFChars(jszNode, szNode);
     return static_cast<jint>(ret);
 }
 
@@ -344,6 +594,95 @@ JNIEXPORT jint JNICALL deleteNode(JNIEnv *jenv, jclass, jstring jszNode)
     return static_cast<jint>(ret);
 }
 
+/*
+ * Called by the engine once per commit. All changes of the committed file set
+ * are passed to the Java listener with a single upcall.
+ */
+static void OnTreeChanged(const DMTreeChangeVector& aChanges, void* /*pContext*/)
+{
+    const DMJniCache* pJniCache = getJniCache();
+    JNIEnv* jenv = android::AndroidRuntime::getJNIEnv();
+    if (s_jTreeChangeListener == NULL || pJniCache == NULL || jenv == NULL) {
+        LOGW("OnTreeChanged: dropping %d changes, no listener", aChanges.size());
+        return;
+    }
+
+    jsize count = aChanges.size();
+    jobjectArray jPaths = jenv->NewObjectArray(count, pJniCache->stringClass, NULL);
+    jobjectArray jNewNames = jenv->NewObjectArray(count, pJniCache->stringClass, NULL);
+    jintArray jActions = jenv->NewIntArray(count);
+    jintArray jFormats = jenv->NewIntArray(count);
+    jint* pActions = NULL;
+    jint* pFormats = NULL;
+
+    if (jPaths == NULL || jNewNames == NULL || jActions == NULL || jFormats == NULL) {
+        LOGE("OnTreeChanged: out of memory");
+        jenv->ExceptionClear();
+        goto end;
+    }
+
+    pActions = jenv->GetIntArrayElements(jActions, NULL);
+    pFormats = jenv->GetIntArrayElements(jFormats, NULL);
+    if (pActions == NULL || pFormats == NULL) {
+        jenv->ExceptionClear();
+        goto end;
+    }
+
+    for (jsize i = 0; i < count; i++) {
+        jstring jPath = jenv->NewStringUTF(aChanges[i].m_strURI.c_str());
+        jenv->SetObjectArrayElement(jPaths, i, jPath);
+        jenv->DeleteLocalRef(jPath);
+        // null unless the node was renamed
+        if (aChanges[i].m_strNewName.length() > 0) {
+            jstring jNewName = jenv->NewStringUTF(aChanges[i].m_strNewName.c_str());
+            jenv->SetObjectArrayElement(jNewNames, i, jNewName);
+            jenv->DeleteLocalRef(jNewName);
+        }
+        pActions[i] = aChanges[i].m_eAction;
+        // node formats share their values with DmtData types, unknown maps to UNDEFINED
+        pFormats[i] = aChanges[i].m_eFormat == SYNCML_DM_FORMAT_INVALID
+                ? SYNCML_DM_DATAFORMAT_NULL : aChanges[i].m_eFormat;
+    }
+    jenv->ReleaseIntArrayElements(jActions, pActions, 0);
+    jenv->ReleaseIntArrayElements(jFormats, pFormats, 0);
+    pActions = NULL;
+    pFormats = NULL;
+
+    jenv->CallVoidMethod(s_jTreeChangeListener, pJniCache->treeChangeListener.onTreeChanged,
+            jPaths, jActions, jFormats, jNewNames);
+    if (jenv->ExceptionCheck()) {
+        LOGE("OnTreeChanged: listener threw an exception");
+        jenv->ExceptionDescribe();
+        jenv->ExceptionClear();
+    }
+
+end:
+    if (pActions != NULL) {
+        jenv->ReleaseIntArrayElements(jActions, pActions, JNI_ABORT);
+    }
+    if (pFormats != NULL) {
+        jenv->ReleaseIntArrayElements(jFormats, pFormats, JNI_ABORT);
+    }
+    if (jPaths != NULL) jenv->DeleteLocalRef(jPaths);
+    if (jNewNames != NULL) jenv->DeleteLocalRef(jNewNames);
+    if (jActions != NULL) jenv->DeleteLocalRef(jActions);
+    if (jFormats != NULL) jenv->DeleteLocalRef(jFormats);
+}
+
+JNIEXPORT void JNICALL setTreeChangeListener(JNIEnv* jenv, jclass, jobject jListener)
+{
+    if (s_jTreeChangeListener != NULL) {
+        dmTreeObj.SetTreeChangeListener(NULL, NULL);
+        jenv->DeleteGlobalRef(s_jTreeChangeListener);
+        s_jTreeChangeListener = NULL;
+    }
+
+    if (jListener != NULL) {
+        s_jTreeChangeListener = jenv->NewGlobalRef(jListener);
+        dmTreeObj.SetTreeChangeListener(OnTreeChanged, NULL);
+    }
+}
+
 static PDmtTree GetTree()
 {
     if (ptrTree) return ptrTree;
@@ -557,6 +896,42 @@ static JNINativeMethod gMethods[] = {
     {"getNodeValue",
         "(Ljava/lang/String;)Ljava/lang/String;",
         (void*)getNodeValue},
+    {"getNodeIntValue",
+        "(Ljava/lang/String;)I",
+        (void*)getNodeIntValue},
+    {"getNodeBooleanValue",
+        "(Ljava/lang/String;)Z",
+        (void*)getNodeBooleanValue},
+    {"getNodeFloatValue",
+        "(Ljava/lang/String;)F",
+        (void*)getNodeFloatValue},
+    {"getNodeBinaryValue",
+        "(Ljava/lang/String;[B)I",
+        (void*)getNodeBinaryValue},
+    {"setNodeIntValue",
+        "(Ljava/lang/String;I)I",
+        (void*)setNodeIntValue},
+    {"setNodeBooleanValue",
+        "(Ljava/lang/String;Z)I",
+        (void*)setNodeBooleanValue},
+    {"setNodeFloatValue",
+        "(Ljava/lang/String;F)I",
+        (void*)setNodeFloatValue},
+    {"setNodeBinaryValue",
+        "(Ljava/lang/String;[BII)I",
+        (void*)setNodeBinaryValue},
+    {"createLeafInteger",
+        "(Ljava/lang/String;I)I",
+        (void*)createLeafInteger},
+    {"createLeafBoolean",
+        "(Ljava/lang/String;Z)I",
+        (void*)createLeafBoolean},
+    {"createLeafFloat",
+        "(Ljava/lang/String;F)I",
+        (void*)createLeafFloat},
+    {"setTreeChangeListener",
+        "(Lcom/android/omadm/service/NativeDM$TreeChangeListener;)V",
+        (void*)setTreeChangeListener},
 };
 
 int registerDMTreeNatives(JNIEnv *env)
@@ -127,6 +127,8 @@ CPCHAR XPL_DM_GetEnv(SYNCML_DM_ENVIRONMENT_T env_var)
             return getenv("DM_AGING_CHECK_INTERVAL");
         case SYNCML_DM_MEMORY_AGING_TIME :
             return getenv("DM_AGING_TIME");
+        case SYNCML_DM_MEMORY_BUDGET :
+            return getenv("DM_MEMORY_BUDGET");
         case SYNCML_DM_POWER_FAIL_IJECTION :
             return getenv("power_fail");
             
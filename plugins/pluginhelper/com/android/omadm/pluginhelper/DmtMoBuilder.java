@@ -16,11 +16,11 @@
 
 package com.android.omadm.pluginhelper;
 
-import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.omadm.plugin.DmtData;
 import com.android.omadm.plugin.DmtException;
+import com.android.omadm.plugin.DmtPath;
 import com.android.omadm.plugin.DmtPathUtils;
 import com.android.omadm.plugin.DmtPluginNode;
 import com.android.omadm.plugin.ErrorCodes;
@@ -50,7 +50,7 @@ public class DmtMoBuilder {
      */
     public boolean isNodeExist(String nodePath) {
         Log.d(TAG, "--ENTER-- DmtMoBuilder.isNodeExist()");
-        return (mNodes.get(nodePath) != null);
+        return mNodes.containsKey(nodePath);
     }
 
     /**
@@ -68,12 +68,15 @@ public class DmtMoBuilder {
 
         Log.d(TAG, "--ENTER-- DmtMoBuilder.createLeafNode(" + nodePath + "," + nodeValue.getString() + ")");
 
-        String[] data = DmtPathUtils.splitPath(nodePath);
+        if (!DmtPathUtils.isValidPath(nodePath)) {
+            return ErrorCodes.SYNCML_DM_INVALID_URI;
+        }
 
-        String rootNodePath = data[0];
-        String nodeName     = data[1];
+        DmtPath path = DmtPath.of(nodePath);
+        DmtPath rootPath = path.parent();
+        String nodeName = path.name();
 
-        if (TextUtils.isEmpty(rootNodePath) || TextUtils.isEmpty(nodeName)) {
+        if (rootPath == null || rootPath.isEmpty() || nodeName.isEmpty()) {
             return ErrorCodes.SYNCML_DM_INVALID_URI;
         }
 
@@ -81,12 +84,12 @@ public class DmtMoBuilder {
             return updateLeafNode(nodePath, nodeValue);
         }
 
-        int retcode = createInteriorNode(rootNodePath);
+        int retcode = createInteriorNode(rootPath);
         if (retcode != ErrorCodes.SYNCML_DM_SUCCESS) {
             return retcode;
         }
 
-        retcode = addNameToInteriorNode(rootNodePath, nodeName);
+        retcode = addNameToInteriorNode(rootPath.toString(), nodeName);
         if (retcode != ErrorCodes.SYNCML_DM_SUCCESS) {
             return retcode;
         }
@@ -132,6 +135,56 @@ public class DmtMoBuilder {
         return createLeafNode(nodePath, new DmtData(nodeValue));
     }
 
+    /**
+     * Creates a leaf node whose value is read by the loader when it is first accessed,
+     * for nodes backed by expensive sources. The parent node is updated automatically.
+     *
+     * @param nodePath path to the new node.
+     * @param nodeType type of the value, defined as constants in {@link DmtData}.
+     * @param loader reads the node value on first access.
+     * @return {@link ErrorCodes#SYNCML_DM_SUCCESS} on success; otherwise, an error code.
+     */
+    public int createLazyLeafNode(String nodePath, int nodeType,
+            DmtPluginNode.ValueLoader loader) {
+        Log.d(TAG, String.format("DmtMoBuilder.createLazyLeafNode(%s, %d)", nodePath, nodeType));
+        if (loader == null || nodeType == DmtData.NODE) {
+            return ErrorCodes.SYNCML_DM_INVALID_PARAMETER;
+        }
+
+        if (!DmtPathUtils.isValidPath(nodePath)) {
+            return ErrorCodes.SYNCML_DM_INVALID_URI;
+        }
+
+        DmtPath path = DmtPath.of(nodePath);
+        DmtPath rootPath = path.parent();
+        String nodeName = path.name();
+
+        if (rootPath == null || rootPath.isEmpty() || nodeName.isEmpty()) {
+            return ErrorCodes.SYNCML_DM_INVALID_URI;
+        }
+
+        DmtPluginNode node = mNodes.get(nodePath);
+        if (node != null) {
+            if (!node.isLeaf()) {
+                return ErrorCodes.SYNCML_DM_COMMAND_NOT_ALLOWED;
+            }
+        } else {
+            int retcode = createInteriorNode(rootPath);
+            if (retcode != ErrorCodes.SYNCML_DM_SUCCESS) {
+                return retcode;
+            }
+
+            retcode = addNameToInteriorNode(rootPath.toString(), nodeName);
+            if (retcode != ErrorCodes.SYNCML_DM_SUCCESS) {
+                return retcode;
+            }
+        }
+
+        mNodes.put(nodePath, new DmtPluginNode(nodePath, nodeType, loader));
+
+        return ErrorCodes.SYNCML_DM_SUCCESS;
+    }
+
     /**
      * Creates a new interior node in the subtree. The parent node is updated automatically.
      *
@@ -140,15 +193,22 @@ public class DmtMoBuilder {
      */
     public int createInteriorNode(String nodePath) {
         Log.d(TAG, "--ENTER-- DmtMoBuilder.createInteriorNode(" + nodePath + ")");
-        String[] data = DmtPathUtils.splitPath(nodePath);
+        if (!DmtPathUtils.isValidPath(nodePath)) {
+            return ErrorCodes.SYNCML_DM_INVALID_URI;
+        }
+        return createInteriorNode(DmtPath.of(nodePath));
+    }
 
-        String rootNodePath = data[0];
-        String nodeName     = data[1];
+    /* the parents of the path share its string and are copied only when created */
+    private int createInteriorNode(DmtPath path) {
+        DmtPath rootPath = path.parent();
+        String nodeName = path.name();
 
-        if (TextUtils.isEmpty(rootNodePath) || TextUtils.isEmpty(nodeName)) {
+        if (rootPath == null || rootPath.isEmpty() || nodeName.isEmpty()) {
             return ErrorCodes.SYNCML_DM_INVALID_URI;
         }
 
+        String nodePath = path.toString();
         if (!DmtPathUtils.isSubPath(mPath, nodePath)) {
             return ErrorCodes.SYNCML_DM_INVALID_URI;
         }
@@ -159,12 +219,12 @@ public class DmtMoBuilder {
             return node.isLeaf() ? ErrorCodes.SYNCML_DM_ENTRY_EXIST : ErrorCodes.SYNCML_DM_SUCCESS;
         }
 
-        int retcode = createInteriorNode(rootNodePath);
+        int retcode = createInteriorNode(rootPath);
         if (retcode != ErrorCodes.SYNCML_DM_SUCCESS) {
             return retcode;
         }
 
-        retcode = addNameToInteriorNode(rootNodePath, nodeName);
+        retcode = addNameToInteriorNode(rootPath.toString(), nodeName);
         if (retcode != ErrorCodes.SYNCML_DM_SUCCESS) {
             return retcode;
         }
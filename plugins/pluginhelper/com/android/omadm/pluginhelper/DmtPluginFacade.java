@@ -22,7 +22,10 @@ import com.android.omadm.plugin.DmtBasePlugin;
 import com.android.omadm.plugin.DmtData;
 import com.android.omadm.plugin.DmtException;
 import com.android.omadm.plugin.DmtManagementObject;
+import com.android.omadm.plugin.DmtNodeDelta;
 import com.android.omadm.plugin.DmtPluginNode;
+import com.android.omadm.plugin.DmtPluginResult;
+import com.android.omadm.plugin.ErrorCodes;
 
 import java.util.Map;
 
@@ -39,10 +42,24 @@ public class DmtPluginFacade extends DmtBasePlugin {
             super(path, null);
         }
 
+        /**
+         * Returns the nodes being changed; use {@link #getSnapshot()} to read them.
+         */
         public Map<String, DmtPluginNode> getData() {
             return mNodes;
         }
 
+        /**
+         * Lets the adaptor fill the nodes and makes them the committed state.
+         */
+        synchronized void load(IDmtPluginAdaptor adaptor) throws Exception {
+            try {
+                adaptor.load(mNodes);
+            } finally {
+                markCommitted();
+            }
+        }
+
         @Override
         protected String resolve(String tag, boolean getSemantics) throws DmtException {
             if (tag != null) {
@@ -82,11 +99,12 @@ public class DmtPluginFacade extends DmtBasePlugin {
         }
         boolean status;
         try {
-            Map<String, DmtPluginNode> nodes = mManagementObject.getData();
-            Log.d(TAG, "DmtPluginFacade.init() - before load nodes.size() = " + nodes.size());
-            mAdaptor.load(nodes);
+            Log.d(TAG, "DmtPluginFacade.init() - before load nodes.size() = "
+                    + mManagementObject.getSnapshot().size());
+            mManagementObject.load(mAdaptor);
             status = true;
-            Log.d(TAG, "DmtPluginFacade.init() - after load nodes.size() = " + nodes.size());
+            Log.d(TAG, "DmtPluginFacade.init() - after load nodes.size() = "
+                    + mManagementObject.getSnapshot().size());
         } catch (Exception e) {
             Log.e(TAG, "DmtPluginFacade.init(): EXCEPTION = " + e.getMessage());
             status = false;
@@ -162,6 +180,18 @@ public class DmtPluginFacade extends DmtBasePlugin {
         return nodes;
     }
 
+    public DmtPluginResult getChildNodes(String path) {
+        Log.d(TAG, String.format("DmtPluginFacade.getChildNodes(%s)", path));
+        try {
+            return new DmtPluginResult(ErrorCodes.SYNCML_DM_SUCCESS,
+                    mManagementObject.getChildNodes(path));
+        } catch (DmtException de) {
+            Log.e(TAG, "DmtPluginNode.getChildNodes(): " + path + " e = " + de);
+            setOperationResult(de.getCode());
+            return new DmtPluginResult(de.getCode(), (Map<String, DmtPluginNode>) null);
+        }
+    }
+
     public DmtData getNodeValue(String path) {
         Log.d(TAG, String.format("DmtPluginFacade.getNodeValue(%s)", path));
         DmtData datum = null;
@@ -177,11 +207,29 @@ public class DmtPluginFacade extends DmtBasePlugin {
     public int commit() {
         Log.d(TAG, String.format("DmtPluginFacade.commit()"));
         if (getOperationResult() == 0) {
+            // the adaptor writes a snapshot while changes go on
+            DmtNodeDelta changes = mManagementObject.getUncommittedChanges();
             int status;
-            status = setOperationResult(mAdaptor.commit(mManagementObject.getData()));
-            return status;
+            if (changes.isEmpty()) {
+                status = ErrorCodes.SYNCML_DM_SUCCESS;
+            } else if (mAdaptor instanceof IDmtPluginDeltaAdaptor) {
+                Log.d(TAG, "DmtPluginFacade.commit() - " + changes);
+                status = ((IDmtPluginDeltaAdaptor) mAdaptor).commitChanges(changes);
+            } else {
+                status = mAdaptor.commit(changes.getNodes());
+            }
+            if (status == ErrorCodes.SYNCML_DM_SUCCESS) {
+                mManagementObject.markCommitted(changes);
+            }
+            return setOperationResult(status);
         } else {
             return getOperationResult();
         }
     }
+
+    public int rollback() {
+        Log.d(TAG, "DmtPluginFacade.rollback()");
+        mManagementObject.rollback();
+        return setOperationResult(ErrorCodes.SYNCML_DM_SUCCESS);
+    }
 }
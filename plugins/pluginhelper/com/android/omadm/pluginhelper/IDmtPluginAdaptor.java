@@ -32,6 +32,12 @@ public interface IDmtPluginAdaptor {
 
     void load(Map<String, DmtPluginNode> data) throws Exception;
 
+    /**
+     * Writes the nodes to storage.
+     *
+     * @param data a snapshot of the nodes, which can't be changed and doesn't change
+     *        while it is written.
+     */
     int commit(Map<String, DmtPluginNode> data);
 
     void release();
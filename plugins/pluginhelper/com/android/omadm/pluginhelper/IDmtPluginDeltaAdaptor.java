@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.omadm.pluginhelper;
+
+import com.android.omadm.plugin.DmtNodeDelta;
+
+/**
+ * Adaptor which writes only the nodes changed since the last commit. {@link DmtPluginFacade}
+ * calls {@link #commitChanges} instead of {@link #commit} for it, and doesn't call it at
+ * all if nothing changed.
+ */
+public interface IDmtPluginDeltaAdaptor extends IDmtPluginAdaptor {
+
+    /**
+     * Writes the changes made since the last successful commit to storage.
+     *
+     * @param changes the net changes; {@link DmtNodeDelta#getNodes()} has all nodes.
+     * @return ErrorCodes.SYNCML_DM_SUCCESS in success case, otherwise an error; the
+     *         changes are offered again with the next commit after an error.
+     */
+    int commitChanges(DmtNodeDelta changes);
+}